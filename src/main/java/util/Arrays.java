@@ -39,6 +39,8 @@ import java.util.function.IntToDoubleFunction;
 import java.util.function.IntToLongFunction;
 import java.util.function.IntUnaryOperator;
 import java.util.function.LongBinaryOperator;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 import java.util.function.UnaryOperator;
 import java.util.stream.DoubleStream;
 import java.util.stream.IntStream;
@@ -1183,6 +1185,406 @@ public class Arrays {
                  MIN_ARRAY_SORT_GRAN : g, cmp).invoke();
     }
 
+    /*
+     * Radix sorting of primitive arrays, and of object arrays by
+     * primitive keys.
+     */
+
+    /**
+     * Sorts the specified array into ascending numerical order.
+     *
+     * @implNote The sorting algorithm is a least-significant-digit radix
+     * sort that consumes eight bits per pass and skips passes in which
+     * every element has the same digit, so it runs in time linear in the
+     * length of the array.  It requires a working space the size of the
+     * array.  Arrays shorter than an internal threshold are sorted using
+     * {@link Arrays#sort(int[]) Arrays.sort} instead.
+     *
+     * @param a the array to be sorted
+     *
+     * @see #sort(int[])
+     */
+    public static void radixSort(int[] a) {
+        RadixSort.sort(a, 0, a.length - 1);
+    }
+
+    /**
+     * Sorts the specified range of the array into ascending numerical order.
+     * The range to be sorted extends from the index {@code fromIndex},
+     * inclusive, to the index {@code toIndex}, exclusive. If
+     * {@code fromIndex == toIndex}, the range to be sorted is empty.
+     *
+     * @implNote The sorting algorithm is the radix sort described for
+     * {@link #radixSort(int[])}.
+     *
+     * @param a the array to be sorted
+     * @param fromIndex the index of the first element, inclusive, to be sorted
+     * @param toIndex the index of the last element, exclusive, to be sorted
+     *
+     * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+     * @throws ArrayIndexOutOfBoundsException
+     *     if {@code fromIndex < 0} or {@code toIndex > a.length}
+     */
+    public static void radixSort(int[] a, int fromIndex, int toIndex) {
+        rangeCheck(a.length, fromIndex, toIndex);
+        RadixSort.sort(a, fromIndex, toIndex - 1);
+    }
+
+    /**
+     * Sorts the specified array into ascending numerical order.
+     *
+     * @implNote The sorting algorithm is a least-significant-digit radix
+     * sort that consumes eight bits per pass and skips passes in which
+     * every element has the same digit, so it runs in time linear in the
+     * length of the array.  It requires a working space the size of the
+     * array.  Arrays shorter than an internal threshold are sorted using
+     * {@link Arrays#sort(long[]) Arrays.sort} instead.
+     *
+     * @param a the array to be sorted
+     *
+     * @see #sort(long[])
+     */
+    public static void radixSort(long[] a) {
+        RadixSort.sort(a, 0, a.length - 1);
+    }
+
+    /**
+     * Sorts the specified range of the array into ascending numerical order.
+     * The range to be sorted extends from the index {@code fromIndex},
+     * inclusive, to the index {@code toIndex}, exclusive. If
+     * {@code fromIndex == toIndex}, the range to be sorted is empty.
+     *
+     * @implNote The sorting algorithm is the radix sort described for
+     * {@link #radixSort(long[])}.
+     *
+     * @param a the array to be sorted
+     * @param fromIndex the index of the first element, inclusive, to be sorted
+     * @param toIndex the index of the last element, exclusive, to be sorted
+     *
+     * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+     * @throws ArrayIndexOutOfBoundsException
+     *     if {@code fromIndex < 0} or {@code toIndex > a.length}
+     */
+    public static void radixSort(long[] a, int fromIndex, int toIndex) {
+        rangeCheck(a.length, fromIndex, toIndex);
+        RadixSort.sort(a, fromIndex, toIndex - 1);
+    }
+
+    /**
+     * Sorts the specified array into ascending numerical order, using the
+     * same total order as {@link #sort(float[])}: {@code -0.0f} is treated
+     * as less than {@code 0.0f}, and all {@code Float.NaN} values are placed
+     * at the end.
+     *
+     * @implNote NaNs are first moved to the end of the array.  The remaining
+     * values are radix sorted, as described for {@link #radixSort(int[])},
+     * through bit patterns remapped so that their integer order is the
+     * floating-point order.  This requires a working space of twice the
+     * size of the array.
+     *
+     * @param a the array to be sorted
+     *
+     * @see #sort(float[])
+     */
+    public static void radixSort(float[] a) {
+        RadixSort.sort(a, 0, a.length - 1);
+    }
+
+    /**
+     * Sorts the specified range of the array into ascending numerical order,
+     * using the same total order as {@link #sort(float[])}.  The range to be
+     * sorted extends from the index {@code fromIndex}, inclusive, to the
+     * index {@code toIndex}, exclusive. If {@code fromIndex == toIndex}, the
+     * range to be sorted is empty.
+     *
+     * @implNote The sorting algorithm is the radix sort described for
+     * {@link #radixSort(float[])}.
+     *
+     * @param a the array to be sorted
+     * @param fromIndex the index of the first element, inclusive, to be sorted
+     * @param toIndex the index of the last element, exclusive, to be sorted
+     *
+     * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+     * @throws ArrayIndexOutOfBoundsException
+     *     if {@code fromIndex < 0} or {@code toIndex > a.length}
+     */
+    public static void radixSort(float[] a, int fromIndex, int toIndex) {
+        rangeCheck(a.length, fromIndex, toIndex);
+        RadixSort.sort(a, fromIndex, toIndex - 1);
+    }
+
+    /**
+     * Sorts the specified array into ascending numerical order, using the
+     * same total order as {@link #sort(double[])}: {@code -0.0d} is treated
+     * as less than {@code 0.0d}, and all {@code Double.NaN} values are placed
+     * at the end.
+     *
+     * @implNote NaNs are first moved to the end of the array.  The remaining
+     * values are radix sorted, as described for {@link #radixSort(long[])},
+     * through bit patterns remapped so that their integer order is the
+     * floating-point order.  This requires a working space of twice the
+     * size of the array.
+     *
+     * @param a the array to be sorted
+     *
+     * @see #sort(double[])
+     */
+    public static void radixSort(double[] a) {
+        RadixSort.sort(a, 0, a.length - 1);
+    }
+
+    /**
+     * Sorts the specified range of the array into ascending numerical order,
+     * using the same total order as {@link #sort(double[])}.  The range to be
+     * sorted extends from the index {@code fromIndex}, inclusive, to the
+     * index {@code toIndex}, exclusive. If {@code fromIndex == toIndex}, the
+     * range to be sorted is empty.
+     *
+     * @implNote The sorting algorithm is the radix sort described for
+     * {@link #radixSort(double[])}.
+     *
+     * @param a the array to be sorted
+     * @param fromIndex the index of the first element, inclusive, to be sorted
+     * @param toIndex the index of the last element, exclusive, to be sorted
+     *
+     * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+     * @throws ArrayIndexOutOfBoundsException
+     *     if {@code fromIndex < 0} or {@code toIndex > a.length}
+     */
+    public static void radixSort(double[] a, int fromIndex, int toIndex) {
+        rangeCheck(a.length, fromIndex, toIndex);
+        RadixSort.sort(a, fromIndex, toIndex - 1);
+    }
+
+    /**
+     * Sorts the specified array into ascending numerical order.
+     *
+     * @implNote The sorting algorithm makes one parallel
+     * most-significant-digit pass that distributes the array into buckets
+     * by the top eight bits in which its elements differ, then sorts the
+     * buckets in parallel with the radix sort of {@link
+     * #radixSort(int[]) Arrays.radixSort}.  If the length of the specified
+     * array is less than the minimum granularity, it is sorted using {@link
+     * #radixSort(int[]) Arrays.radixSort} directly.  The algorithm requires
+     * a working space the size of the original array.  The {@link
+     * ForkJoinPool#commonPool() ForkJoin common pool} is used to execute
+     * any parallel tasks.
+     *
+     * @param a the array to be sorted
+     *
+     * @see #parallelSort(int[])
+     */
+    public static void parallelRadixSort(int[] a) {
+        int n = a.length, p, g;
+        if (n <= MIN_ARRAY_SORT_GRAN ||
+            (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            RadixSort.sort(a, 0, n - 1);
+        else
+            new ArraysParallelSortHelpers.FJRadixInt.Sorter
+                (a, new int[n], 0, n,
+                 ((g = n / (p << 2)) <= MIN_ARRAY_SORT_GRAN) ?
+                 MIN_ARRAY_SORT_GRAN : g).invoke();
+    }
+
+    /**
+     * Sorts the specified range of the array into ascending numerical order.
+     * The range to be sorted extends from the index {@code fromIndex},
+     * inclusive, to the index {@code toIndex}, exclusive. If
+     * {@code fromIndex == toIndex}, the range to be sorted is empty.
+     *
+     * @implNote The sorting algorithm is the parallel radix sort described
+     * for {@link #parallelRadixSort(int[])}.  It requires a working space
+     * the size of the specified range of the original array.
+     *
+     * @param a the array to be sorted
+     * @param fromIndex the index of the first element, inclusive, to be sorted
+     * @param toIndex the index of the last element, exclusive, to be sorted
+     *
+     * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+     * @throws ArrayIndexOutOfBoundsException
+     *     if {@code fromIndex < 0} or {@code toIndex > a.length}
+     */
+    public static void parallelRadixSort(int[] a, int fromIndex, int toIndex) {
+        rangeCheck(a.length, fromIndex, toIndex);
+        int n = toIndex - fromIndex, p, g;
+        if (n <= MIN_ARRAY_SORT_GRAN ||
+            (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            RadixSort.sort(a, fromIndex, toIndex - 1);
+        else
+            new ArraysParallelSortHelpers.FJRadixInt.Sorter
+                (a, new int[n], fromIndex, n,
+                 ((g = n / (p << 2)) <= MIN_ARRAY_SORT_GRAN) ?
+                 MIN_ARRAY_SORT_GRAN : g).invoke();
+    }
+
+    /**
+     * Sorts the specified array into ascending numerical order.
+     *
+     * @implNote The sorting algorithm is the parallel radix sort described
+     * for {@link #parallelRadixSort(int[])}, applied to {@code long}
+     * values.
+     *
+     * @param a the array to be sorted
+     *
+     * @see #parallelSort(long[])
+     */
+    public static void parallelRadixSort(long[] a) {
+        int n = a.length, p, g;
+        if (n <= MIN_ARRAY_SORT_GRAN ||
+            (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            RadixSort.sort(a, 0, n - 1);
+        else
+            new ArraysParallelSortHelpers.FJRadixLong.Sorter
+                (a, new long[n], 0, n,
+                 ((g = n / (p << 2)) <= MIN_ARRAY_SORT_GRAN) ?
+                 MIN_ARRAY_SORT_GRAN : g).invoke();
+    }
+
+    /**
+     * Sorts the specified range of the array into ascending numerical order.
+     * The range to be sorted extends from the index {@code fromIndex},
+     * inclusive, to the index {@code toIndex}, exclusive. If
+     * {@code fromIndex == toIndex}, the range to be sorted is empty.
+     *
+     * @implNote The sorting algorithm is the parallel radix sort described
+     * for {@link #parallelRadixSort(int[])}, applied to {@code long}
+     * values.
+     *
+     * @param a the array to be sorted
+     * @param fromIndex the index of the first element, inclusive, to be sorted
+     * @param toIndex the index of the last element, exclusive, to be sorted
+     *
+     * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+     * @throws ArrayIndexOutOfBoundsException
+     *     if {@code fromIndex < 0} or {@code toIndex > a.length}
+     */
+    public static void parallelRadixSort(long[] a, int fromIndex, int toIndex) {
+        rangeCheck(a.length, fromIndex, toIndex);
+        int n = toIndex - fromIndex, p, g;
+        if (n <= MIN_ARRAY_SORT_GRAN ||
+            (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            RadixSort.sort(a, fromIndex, toIndex - 1);
+        else
+            new ArraysParallelSortHelpers.FJRadixLong.Sorter
+                (a, new long[n], fromIndex, n,
+                 ((g = n / (p << 2)) <= MIN_ARRAY_SORT_GRAN) ?
+                 MIN_ARRAY_SORT_GRAN : g).invoke();
+    }
+
+    /**
+     * Sorts the specified array of objects into ascending order of the
+     * {@code int} keys extracted by the given function.  The function is
+     * applied exactly once to each element, and the elements are never
+     * compared with each other.
+     *
+     * <p>This sort is guaranteed to be <i>stable</i>:  elements with equal
+     * keys will not be reordered as a result of the sort.
+     *
+     * @implNote The extracted keys are sorted, carrying their elements, by
+     * the radix sort described for {@link #radixSort(int[])}.  This
+     * requires working space for two keys and two references per element.
+     *
+     * @param <T> the class of the objects to be sorted
+     * @param a the array to be sorted
+     * @param keyExtractor the function extracting the sort key of an element
+     * @throws NullPointerException if the array or function is null
+     *
+     * @see #sort(Object[], Comparator)
+     * @see Comparator#comparingInt(java.util.function.ToIntFunction)
+     */
+    public static <T> void sortByIntKey(T[] a, ToIntFunction<? super T> keyExtractor) {
+        Objects.requireNonNull(keyExtractor);
+        RadixSort.sortByIntKey(a, 0, a.length - 1, keyExtractor);
+    }
+
+    /**
+     * Sorts the specified range of the array of objects into ascending
+     * order of the {@code int} keys extracted by the given function.  The
+     * range to be sorted extends from index {@code fromIndex}, inclusive, to
+     * index {@code toIndex}, exclusive.  (If {@code fromIndex==toIndex}, the
+     * range to be sorted is empty.)
+     *
+     * <p>This sort is guaranteed to be <i>stable</i>:  elements with equal
+     * keys will not be reordered as a result of the sort.
+     *
+     * @implNote The sorting algorithm is the one described for
+     * {@link #sortByIntKey(Object[], ToIntFunction)}.
+     *
+     * @param <T> the class of the objects to be sorted
+     * @param a the array to be sorted
+     * @param fromIndex the index of the first element (inclusive) to be
+     *        sorted
+     * @param toIndex the index of the last element (exclusive) to be sorted
+     * @param keyExtractor the function extracting the sort key of an element
+     * @throws NullPointerException if the array or function is null
+     * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+     * @throws ArrayIndexOutOfBoundsException if {@code fromIndex < 0} or
+     *         {@code toIndex > a.length}
+     */
+    public static <T> void sortByIntKey(T[] a, int fromIndex, int toIndex,
+                                        ToIntFunction<? super T> keyExtractor) {
+        Objects.requireNonNull(keyExtractor);
+        rangeCheck(a.length, fromIndex, toIndex);
+        RadixSort.sortByIntKey(a, fromIndex, toIndex - 1, keyExtractor);
+    }
+
+    /**
+     * Sorts the specified array of objects into ascending order of the
+     * {@code long} keys extracted by the given function.  The function is
+     * applied exactly once to each element, and the elements are never
+     * compared with each other.
+     *
+     * <p>This sort is guaranteed to be <i>stable</i>:  elements with equal
+     * keys will not be reordered as a result of the sort.
+     *
+     * @implNote The extracted keys are sorted, carrying their elements, by
+     * the radix sort described for {@link #radixSort(long[])}.  This
+     * requires working space for two keys and two references per element.
+     *
+     * @param <T> the class of the objects to be sorted
+     * @param a the array to be sorted
+     * @param keyExtractor the function extracting the sort key of an element
+     * @throws NullPointerException if the array or function is null
+     *
+     * @see #sort(Object[], Comparator)
+     * @see Comparator#comparingLong(java.util.function.ToLongFunction)
+     */
+    public static <T> void sortByLongKey(T[] a, ToLongFunction<? super T> keyExtractor) {
+        Objects.requireNonNull(keyExtractor);
+        RadixSort.sortByLongKey(a, 0, a.length - 1, keyExtractor);
+    }
+
+    /**
+     * Sorts the specified range of the array of objects into ascending
+     * order of the {@code long} keys extracted by the given function.  The
+     * range to be sorted extends from index {@code fromIndex}, inclusive, to
+     * index {@code toIndex}, exclusive.  (If {@code fromIndex==toIndex}, the
+     * range to be sorted is empty.)
+     *
+     * <p>This sort is guaranteed to be <i>stable</i>:  elements with equal
+     * keys will not be reordered as a result of the sort.
+     *
+     * @implNote The sorting algorithm is the one described for
+     * {@link #sortByLongKey(Object[], ToLongFunction)}.
+     *
+     * @param <T> the class of the objects to be sorted
+     * @param a the array to be sorted
+     * @param fromIndex the index of the first element (inclusive) to be
+     *        sorted
+     * @param toIndex the index of the last element (exclusive) to be sorted
+     * @param keyExtractor the function extracting the sort key of an element
+     * @throws NullPointerException if the array or function is null
+     * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+     * @throws ArrayIndexOutOfBoundsException if {@code fromIndex < 0} or
+     *         {@code toIndex > a.length}
+     */
+    public static <T> void sortByLongKey(T[] a, int fromIndex, int toIndex,
+                                         ToLongFunction<? super T> keyExtractor) {
+        Objects.requireNonNull(keyExtractor);
+        rangeCheck(a.length, fromIndex, toIndex);
+        RadixSort.sortByLongKey(a, fromIndex, toIndex - 1, keyExtractor);
+    }
+
     /*
      * Sorting of complex type arrays.
      */
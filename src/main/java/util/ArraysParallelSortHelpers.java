@@ -1010,4 +1010,262 @@ import java.util.concurrent.CountedCompleter;
         }
     } // FJDouble
 
+    /*
+     * Parallel radix sorts.  These do not use the sort-merge scheme
+     * above.  Instead a Sorter makes one most-significant-digit pass
+     * over the array in parallel chunks and then sorts the resulting
+     * buckets, which are independent, with sequential LSD radix sorts
+     * (see RadixSort) in parallel:
+     *
+     *  1. Each chunk finds its min and max.  Every element shares
+     *     the bits above the highest bit in which the global min and
+     *     max differ, so the MSD digit is taken as the eight bits
+     *     ending at that bit; for keys confined to a narrow range
+     *     this still spreads them across the buckets.
+     *  2. Each chunk counts its digits.  The counts are turned into
+     *     per-chunk bucket cursors, chunk after chunk within each
+     *     digit, so the scatter that follows is stable.
+     *  3. Each chunk scatters its elements into the workspace.
+     *  4. Each non-empty bucket is LSD-sorted on the bits below the
+     *     MSD digit back into the main array.
+     *
+     * Steps are separated by invokeAll barriers; the chunk tasks are
+     * reinitialized and reused across steps 1-3.
+     */
+
+    /** int radix sort support class */
+    static final class FJRadixInt {
+        static final class Sorter extends RecursiveAction {
+            static final long serialVersionUID = 2446542900576103244L;
+            final int[] a, w;
+            final int base, size, gran;
+            Sorter(int[] a, int[] w, int base, int size, int gran) {
+                this.a = a; this.w = w; this.base = base; this.size = size;
+                this.gran = gran;
+            }
+            public final void compute() {
+                int[] a = this.a, w = this.w;
+                int b = this.base, n = this.size, g = this.gran;
+                int nc = (n + g - 1) / g;
+                Chunk[] cs = new Chunk[nc];
+                for (int j = 0, lo = b; j < nc; ++j, lo += g)
+                    cs[j] = new Chunk(a, w, lo, Math.min(g, b + n - lo));
+                invokeAll(cs);
+                int min = cs[0].min, max = cs[0].max;
+                for (int j = 1; j < nc; ++j) {
+                    min = Math.min(min, cs[j].min);
+                    max = Math.max(max, cs[j].max);
+                }
+                int diff = min ^ max;
+                if (diff == 0)
+                    return; // all elements equal
+                int shift = Math.max(0, Integer.SIZE - RadixSort.RADIX_BITS -
+                                     Integer.numberOfLeadingZeros(diff));
+                for (Chunk c : cs) {
+                    c.reinitialize(); c.phase = Chunk.COUNT; c.shift = shift;
+                }
+                invokeAll(cs);
+                int[] start = new int[RadixSort.RADIX + 1];
+                for (int d = 0, pos = 0; d < RadixSort.RADIX; ++d) {
+                    start[d] = pos;
+                    for (Chunk c : cs) {
+                        int k = c.count[d];
+                        c.count[d] = pos;
+                        pos += k;
+                    }
+                }
+                start[RadixSort.RADIX] = n;
+                for (Chunk c : cs) {
+                    c.reinitialize(); c.phase = Chunk.SCATTER;
+                }
+                invokeAll(cs);
+                int passes = (shift + RadixSort.RADIX_BITS - 1) / RadixSort.RADIX_BITS;
+                java.util.ArrayList<Bucket> bs = new java.util.ArrayList<>();
+                for (int d = 0; d < RadixSort.RADIX; ++d) {
+                    int lo = start[d], len = start[d + 1] - lo;
+                    if (len > 0)
+                        bs.add(new Bucket(a, w, b + lo, lo, len, passes));
+                }
+                invokeAll(bs);
+            }
+        }
+
+        static final class Chunk extends RecursiveAction {
+            static final long serialVersionUID = 2446542900576103244L;
+            static final int BOUNDS = 0, COUNT = 1, SCATTER = 2;
+            final int[] a, w;
+            final int base, size;
+            int phase, shift, min, max;
+            int[] count;
+            Chunk(int[] a, int[] w, int base, int size) {
+                this.a = a; this.w = w; this.base = base; this.size = size;
+            }
+            public final void compute() {
+                int[] a = this.a, w = this.w;
+                int b = this.base, f = b + this.size, s = this.shift;
+                if (phase == BOUNDS) {
+                    int lo = a[b], hi = lo;
+                    for (int i = b + 1; i < f; ++i) {
+                        int v = a[i];
+                        if (v < lo) lo = v;
+                        else if (v > hi) hi = v;
+                    }
+                    min = lo; max = hi;
+                }
+                else if (phase == COUNT) {
+                    int[] c = count = new int[RadixSort.RADIX];
+                    for (int i = b; i < f; ++i)
+                        ++c[((a[i] ^ Integer.MIN_VALUE) >>> s) & RadixSort.DIGIT_MASK];
+                }
+                else {
+                    int[] c = count;
+                    for (int i = b; i < f; ++i) {
+                        int v = a[i];
+                        w[c[((v ^ Integer.MIN_VALUE) >>> s) & RadixSort.DIGIT_MASK]++] = v;
+                    }
+                }
+            }
+        }
+
+        static final class Bucket extends RecursiveAction {
+            static final long serialVersionUID = 2446542900576103244L;
+            final int[] a, w;
+            final int base, wbase, size, passes;
+            Bucket(int[] a, int[] w, int base, int wbase, int size,
+                   int passes) {
+                this.a = a; this.w = w; this.base = base; this.wbase = wbase;
+                this.size = size; this.passes = passes;
+            }
+            public final void compute() {
+                int[] a = this.a, w = this.w;
+                int b = this.base, wb = this.wbase, n = this.size;
+                if (passes == 0 || n < RadixSort.RADIX_SORT_THRESHOLD) {
+                    System.arraycopy(w, wb, a, b, n);
+                    if (passes != 0 && n > 1)
+                        RadixSort.sort(a, b, b + n - 1);
+                }
+                else if (RadixSort.lsd(w, wb, a, b, n, passes) == w)
+                    System.arraycopy(w, wb, a, b, n);
+            }
+        }
+    } // FJRadixInt
+
+    /** long radix sort support class */
+    static final class FJRadixLong {
+        static final class Sorter extends RecursiveAction {
+            static final long serialVersionUID = 2446542900576103244L;
+            final long[] a, w;
+            final int base, size, gran;
+            Sorter(long[] a, long[] w, int base, int size, int gran) {
+                this.a = a; this.w = w; this.base = base; this.size = size;
+                this.gran = gran;
+            }
+            public final void compute() {
+                long[] a = this.a, w = this.w;
+                int b = this.base, n = this.size, g = this.gran;
+                int nc = (n + g - 1) / g;
+                Chunk[] cs = new Chunk[nc];
+                for (int j = 0, lo = b; j < nc; ++j, lo += g)
+                    cs[j] = new Chunk(a, w, lo, Math.min(g, b + n - lo));
+                invokeAll(cs);
+                long min = cs[0].min, max = cs[0].max;
+                for (int j = 1; j < nc; ++j) {
+                    min = Math.min(min, cs[j].min);
+                    max = Math.max(max, cs[j].max);
+                }
+                long diff = min ^ max;
+                if (diff == 0L)
+                    return; // all elements equal
+                int shift = Math.max(0, Long.SIZE - RadixSort.RADIX_BITS -
+                                     Long.numberOfLeadingZeros(diff));
+                for (Chunk c : cs) {
+                    c.reinitialize(); c.phase = Chunk.COUNT; c.shift = shift;
+                }
+                invokeAll(cs);
+                int[] start = new int[RadixSort.RADIX + 1];
+                for (int d = 0, pos = 0; d < RadixSort.RADIX; ++d) {
+                    start[d] = pos;
+                    for (Chunk c : cs) {
+                        int k = c.count[d];
+                        c.count[d] = pos;
+                        pos += k;
+                    }
+                }
+                start[RadixSort.RADIX] = n;
+                for (Chunk c : cs) {
+                    c.reinitialize(); c.phase = Chunk.SCATTER;
+                }
+                invokeAll(cs);
+                int passes = (shift + RadixSort.RADIX_BITS - 1) / RadixSort.RADIX_BITS;
+                java.util.ArrayList<Bucket> bs = new java.util.ArrayList<>();
+                for (int d = 0; d < RadixSort.RADIX; ++d) {
+                    int lo = start[d], len = start[d + 1] - lo;
+                    if (len > 0)
+                        bs.add(new Bucket(a, w, b + lo, lo, len, passes));
+                }
+                invokeAll(bs);
+            }
+        }
+
+        static final class Chunk extends RecursiveAction {
+            static final long serialVersionUID = 2446542900576103244L;
+            static final int BOUNDS = 0, COUNT = 1, SCATTER = 2;
+            final long[] a, w;
+            final int base, size;
+            int phase, shift;
+            long min, max;
+            int[] count;
+            Chunk(long[] a, long[] w, int base, int size) {
+                this.a = a; this.w = w; this.base = base; this.size = size;
+            }
+            public final void compute() {
+                long[] a = this.a, w = this.w;
+                int b = this.base, f = b + this.size, s = this.shift;
+                if (phase == BOUNDS) {
+                    long lo = a[b], hi = lo;
+                    for (int i = b + 1; i < f; ++i) {
+                        long v = a[i];
+                        if (v < lo) lo = v;
+                        else if (v > hi) hi = v;
+                    }
+                    min = lo; max = hi;
+                }
+                else if (phase == COUNT) {
+                    int[] c = count = new int[RadixSort.RADIX];
+                    for (int i = b; i < f; ++i)
+                        ++c[(int) ((a[i] ^ Long.MIN_VALUE) >>> s) & RadixSort.DIGIT_MASK];
+                }
+                else {
+                    int[] c = count;
+                    for (int i = b; i < f; ++i) {
+                        long v = a[i];
+                        w[c[(int) ((v ^ Long.MIN_VALUE) >>> s) & RadixSort.DIGIT_MASK]++] = v;
+                    }
+                }
+            }
+        }
+
+        static final class Bucket extends RecursiveAction {
+            static final long serialVersionUID = 2446542900576103244L;
+            final long[] a, w;
+            final int base, wbase, size, passes;
+            Bucket(long[] a, long[] w, int base, int wbase, int size,
+                   int passes) {
+                this.a = a; this.w = w; this.base = base; this.wbase = wbase;
+                this.size = size; this.passes = passes;
+            }
+            public final void compute() {
+                long[] a = this.a, w = this.w;
+                int b = this.base, wb = this.wbase, n = this.size;
+                if (passes == 0 || n < RadixSort.RADIX_SORT_THRESHOLD) {
+                    System.arraycopy(w, wb, a, b, n);
+                    if (passes != 0 && n > 1)
+                        RadixSort.sort(a, b, b + n - 1);
+                }
+                else if (RadixSort.lsd(w, wb, a, b, n, passes) == w)
+                    System.arraycopy(w, wb, a, b, n);
+            }
+        }
+    } // FJRadixLong
+
 }
@@ -0,0 +1,2558 @@
+package util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * A B+-tree based {@link NavigableMap} implementation.  The map is
+ * sorted according to the {@linkplain Comparable natural ordering} of
+ * its keys, or by a {@link Comparator} provided at map creation time,
+ * depending on which constructor is used.
+ *
+ * <p>This class is a drop-in alternative to {@link TreeMap} with much
+ * better memory locality.  Instead of one node object per mapping, the
+ * tree has wide nodes holding up to {@value #NODE_CAPACITY} keys in a
+ * sorted array: a lookup does a short descent of binary searches over
+ * contiguous arrays, and all mappings live in the leaves, which are
+ * linked to each other so that iteration and range scans read one
+ * array after another without revisiting the interior of the tree.
+ * Every node but the root is kept at least half full.
+ *
+ * <p>A map built by {@link #BTreeMap(SortedMap)}, or filled by
+ * {@link #putAll} while empty from a {@code SortedMap} with the same
+ * ordering, is bulk-loaded in linear time into fully packed leaves.
+ * The spliterators of the views split along node boundaries, so a
+ * parallel stream over the map, or over an ascending sub-map, hands
+ * each worker whole subtrees.
+ *
+ * <p>{@code subMap}, {@code headMap}, {@code tailMap} and
+ * {@code descendingMap} behave exactly as they do for {@code TreeMap}:
+ * they return views backed by this map, and attempts to insert a key
+ * outside the range of a view throw {@code IllegalArgumentException}.
+ * All {@code Map.Entry} pairs returned by the navigation methods of
+ * this class and its views are snapshots of the mappings at the time
+ * they were produced and do not support {@code Entry.setValue}; entries
+ * of {@code entrySet()} iterators do.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * If multiple threads access a map concurrently, and at least one of
+ * the threads modifies the map structurally, it <em>must</em> be
+ * synchronized externally.  The iterators and spliterators of its
+ * views are <em>fail-fast</em> in the same way as those of
+ * {@code TreeMap}: a structural modification made other than through
+ * the iterator's own {@code remove} method makes them throw a
+ * {@link ConcurrentModificationException} on a best-effort basis.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @see TreeMap
+ * @see BTreeSet
+ */
+public class BTreeMap<K,V>
+    extends AbstractMap<K,V>
+    implements NavigableMap<K,V>, Cloneable, Serializable
+{
+    /*
+     * Overview:
+     *
+     * Interior nodes (Inner) hold n children and n - 1 separator keys;
+     * every key in children[i] is less than keys[i], which is less
+     * than or equal to every key in children[i + 1], so a search for a
+     * key descends into the child after the last separator not greater
+     * than it.  Leaves hold the keys and values in parallel arrays and
+     * are doubly linked in key order.  All leaves are at the same
+     * depth, "height" levels below the root.
+     *
+     * Inserting into a full leaf splits it into two halves and adds the
+     * first key of the right half to the parent as a separator, which
+     * may in turn split the parent, up to a new root.  Removing from a
+     * leaf that falls below half full borrows a mapping from a sibling
+     * if one can spare it, or else merges the two, removing a
+     * separator from the parent, which may in turn need rebalancing.
+     * Neither operation keeps parent pointers; the rare split or
+     * rebalance re-descends from the root to record the path.
+     * Deleted keys may live on as separators, which is harmless since
+     * separators only need to order the subtrees around them.
+     *
+     * A position in the map is a leaf and an index within it.  Lookups
+     * return positions as Cursors; iterators and spliterators track
+     * them as fields and step along the leaf links.  An iterator's end
+     * is the position of the first mapping outside its range, so the
+     * bound is checked by identity rather than by comparing keys.
+     *
+     * The root leaf of a small map starts with short arrays that grow
+     * until the leaf first splits; all other nodes are allocated at
+     * full capacity.  The root is null when the map is empty.
+     */
+
+    /**
+     * The maximum number of keys in a leaf, and of children of an
+     * interior node.
+     */
+    static final int NODE_CAPACITY = 64;
+
+    /**
+     * The minimum number of keys in a non-root leaf, and of children of
+     * a non-root interior node.
+     */
+    static final int MIN_FILL = NODE_CAPACITY >>> 1;
+
+    /**
+     * The initial array length of the root leaf of a new map.
+     */
+    static final int INITIAL_LEAF_CAPACITY = 8;
+
+    /**
+     * The comparator used to maintain order in this map, or null if it
+     * uses the natural ordering of its keys.
+     *
+     * @serial
+     */
+    private final Comparator<? super K> comparator;
+
+    private transient Node root;
+
+    /**
+     * The leftmost and rightmost leaves, or null if the map is empty.
+     */
+    private transient Leaf first, last;
+
+    /**
+     * The number of interior levels above the leaves.
+     */
+    private transient int height;
+
+    /**
+     * The number of entries in the map.
+     */
+    private transient int size;
+
+    /**
+     * The number of structural modifications to the map.
+     */
+    transient int modCount;
+
+    /**
+     * Constructs a new, empty map, using the natural ordering of its
+     * keys.  All keys inserted into the map must implement the
+     * {@link Comparable} interface and be mutually comparable.
+     */
+    public BTreeMap() {
+        comparator = null;
+    }
+
+    /**
+     * Constructs a new, empty map, ordered according to the given
+     * comparator.
+     *
+     * @param comparator the comparator that will be used to order this
+     *        map.  If {@code null}, the {@linkplain Comparable natural
+     *        ordering} of the keys will be used.
+     */
+    public BTreeMap(Comparator<? super K> comparator) {
+        this.comparator = comparator;
+    }
+
+    /**
+     * Constructs a new map containing the same mappings as the given
+     * map, ordered according to the <em>natural ordering</em> of its
+     * keys.
+     *
+     * @param  m the map whose mappings are to be placed in this map
+     * @throws ClassCastException if the keys in m are not {@link Comparable},
+     *         or are not mutually comparable
+     * @throws NullPointerException if the specified map is null
+     */
+    public BTreeMap(Map<? extends K, ? extends V> m) {
+        comparator = null;
+        putAll(m);
+    }
+
+    /**
+     * Constructs a new map containing the same mappings and using the
+     * same ordering as the specified sorted map.  This method runs in
+     * linear time, building the tree bottom-up from packed leaves.
+     *
+     * @param  m the sorted map whose mappings are to be placed in this map,
+     *         and whose comparator is to be used to sort this map
+     * @throws NullPointerException if the specified map is null
+     */
+    public BTreeMap(SortedMap<K, ? extends V> m) {
+        comparator = m.comparator();
+        try {
+            buildFromSorted(m.size(), m.entrySet().iterator(), null, null);
+        } catch (IOException | ClassNotFoundException cannotHappen) {
+        }
+    }
+
+    /* ---------------- Nodes -------------- */
+
+    /**
+     * Base class of tree nodes.
+     */
+    abstract static class Node {
+        Object[] keys;
+        int size;       // number of keys in use
+
+        Node(int capacity) {
+            keys = new Object[capacity];
+        }
+    }
+
+    /**
+     * Leaf node, holding mappings in parallel arrays.
+     */
+    static final class Leaf extends Node {
+        Object[] vals;
+        Leaf prev, next;
+
+        Leaf(int capacity) {
+            super(capacity);
+            vals = new Object[capacity];
+        }
+    }
+
+    /**
+     * Interior node, holding size separators and size + 1 children.
+     */
+    static final class Inner extends Node {
+        final Node[] children = new Node[NODE_CAPACITY];
+
+        Inner() {
+            super(NODE_CAPACITY - 1);
+        }
+    }
+
+    /**
+     * A position in the tree: a leaf and an index less than its size.
+     */
+    static final class Cursor {
+        final Leaf leaf;
+        final int index;
+
+        Cursor(Leaf leaf, int index) {
+            this.leaf = leaf;
+            this.index = index;
+        }
+    }
+
+    /* ---------------- Searching -------------- */
+
+    /**
+     * Compares two keys using the correct comparison method for this
+     * map.
+     */
+    @SuppressWarnings("unchecked")
+    final int compare(Object k1, Object k2) {
+        return comparator == null ? ((Comparable<? super K>)k1).compareTo((K)k2)
+            : comparator.compare((K)k1, (K)k2);
+    }
+
+    /**
+     * Binary searches keys[0, n) for the given key, returning its
+     * index if present, else (-(insertion point) - 1).
+     */
+    @SuppressWarnings("unchecked")
+    final int search(Object[] keys, int n, Object key) {
+        int low = 0, high = n - 1;
+        Comparator<? super K> cpr = comparator;
+        if (cpr == null) {
+            Comparable<? super K> k = (Comparable<? super K>) key;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int c = k.compareTo((K)keys[mid]);
+                if (c > 0)
+                    low = mid + 1;
+                else if (c < 0)
+                    high = mid - 1;
+                else
+                    return mid;
+            }
+        } else {
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int c = cpr.compare((K)key, (K)keys[mid]);
+                if (c > 0)
+                    low = mid + 1;
+                else if (c < 0)
+                    high = mid - 1;
+                else
+                    return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Returns the index of the child of p whose subtree would hold key.
+     */
+    final int childIndex(Inner p, Object key) {
+        int i = search(p.keys, p.size, key);
+        return (i >= 0) ? i + 1 : -i - 1;
+    }
+
+    /**
+     * Returns the leaf that holds, or would hold, the given key, or
+     * null if the map is empty.
+     */
+    final Leaf leafFor(Object key) {
+        if (key == null && comparator == null)
+            throw new NullPointerException();
+        Node n = root;
+        for (int h = height; h > 0; --h) {
+            Inner p = (Inner) n;
+            n = p.children[childIndex(p, key)];
+        }
+        return (Leaf) n;
+    }
+
+    /**
+     * Descends to the leaf for the given key, recording the interior
+     * nodes passed in path and the child indices taken in slots.
+     */
+    private Leaf pathTo(Object key, Inner[] path, int[] slots) {
+        Node n = root;
+        for (int d = 0, h = height; d < h; ++d) {
+            Inner p = (Inner) n;
+            int ci = childIndex(p, key);
+            path[d] = p;
+            slots[d] = ci;
+            n = p.children[ci];
+        }
+        return (Leaf) n;
+    }
+
+    /**
+     * Returns a cursor at the given index of leaf l, which may be one
+     * position past either end of the leaf, in which case the cursor
+     * is at the adjacent end of the neighbouring leaf; null if there
+     * is no such leaf.
+     */
+    static Cursor cursor(Leaf l, int i) {
+        if (i < 0) {
+            if ((l = l.prev) == null)
+                return null;
+            i = l.size - 1;
+        } else if (i >= l.size) {
+            if ((l = l.next) == null)
+                return null;
+            i = 0;
+        }
+        return new Cursor(l, i);
+    }
+
+    /*
+     * Relation flags for near(), as in ConcurrentSkipListMap.  GT
+     * alone means strictly greater; LT|EQ means less or equal.
+     */
+    static final int EQ = 1;
+    static final int LT = 2;
+    static final int GT = 0;
+
+    /**
+     * Returns the cursor of the closest mapping with a key in the
+     * given relation to key, or null if there is none.
+     *
+     * @param rel one of LT, LT|EQ, GT, GT|EQ
+     */
+    final Cursor near(Object key, int rel) {
+        Leaf l = leafFor(key);
+        if (l == null)
+            return null;
+        int i = search(l.keys, l.size, key);
+        if (i >= 0) {
+            if ((rel & EQ) == 0)
+                i += ((rel & LT) != 0) ? -1 : 1;
+        } else {
+            i = -i - 1;     // index of the first greater key
+            if ((rel & LT) != 0)
+                --i;
+        }
+        return cursor(l, i);
+    }
+
+    final Cursor firstCursor() {
+        return (first == null) ? null : new Cursor(first, 0);
+    }
+
+    final Cursor lastCursor() {
+        return (last == null) ? null : new Cursor(last, last.size - 1);
+    }
+
+    /**
+     * Returns the number of mappings from cursor position (l, i) up to
+     * but excluding position (f, fi), or to the end if f is null.
+     */
+    static int count(Leaf l, int i, Leaf f, int fi) {
+        int n = 0;
+        for (; l != null && l != f; l = l.next, i = 0)
+            n += l.size - i;
+        if (l != null)
+            n += fi - i;
+        return n;
+    }
+
+    /* ---------------- Query Operations -------------- */
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns {@code true} if this map contains a mapping for the
+     * specified key.
+     *
+     * @param key key whose presence in this map is to be tested
+     * @return {@code true} if this map contains a mapping for the
+     *         specified key
+     * @throws ClassCastException if the specified key cannot be compared
+     *         with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     */
+    public boolean containsKey(Object key) {
+        Leaf l = leafFor(key);
+        return l != null && search(l.keys, l.size, key) >= 0;
+    }
+
+    /**
+     * Returns {@code true} if this map maps one or more keys to the
+     * specified value.  This scans the leaves in order, and takes time
+     * linear in the map size.
+     *
+     * @param value value whose presence in this map is to be tested
+     * @return {@code true} if a mapping to {@code value} exists;
+     *         {@code false} otherwise
+     */
+    public boolean containsValue(Object value) {
+        for (Leaf l = first; l != null; l = l.next) {
+            Object[] vs = l.vals;
+            for (int i = 0, n = l.size; i < n; ++i) {
+                if (valEquals(value, vs[i]))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or {@code null} if this map contains no mapping for the key.
+     *
+     * @throws ClassCastException if the specified key cannot be compared
+     *         with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Leaf l = leafFor(key);
+        if (l != null) {
+            int i = search(l.keys, l.size, key);
+            if (i >= 0)
+                return (V) l.vals[i];
+        }
+        return null;
+    }
+
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public K firstKey() {
+        return key(firstCursor());
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public K lastKey() {
+        return key(lastCursor());
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this map.
+     * If this map is empty and the specified map is a
+     * {@code SortedMap} with the same ordering, the tree is bulk-loaded
+     * in linear time.
+     *
+     * @param  map mappings to be stored in this map
+     * @throws ClassCastException if the class of a key or value in
+     *         the specified map prevents it from being stored in this map
+     * @throws NullPointerException if the specified map is null or
+     *         the specified map contains a null key and this map does not
+     *         permit null keys
+     */
+    public void putAll(Map<? extends K, ? extends V> map) {
+        int mapSize = map.size();
+        if (size == 0 && mapSize != 0 && map instanceof SortedMap) {
+            Comparator<?> c = ((SortedMap<?,?>)map).comparator();
+            if (c == comparator || (c != null && c.equals(comparator))) {
+                ++modCount;
+                try {
+                    buildFromSorted(mapSize, map.entrySet().iterator(),
+                                    null, null);
+                } catch (IOException | ClassNotFoundException cannotHappen) {
+                }
+                return;
+            }
+        }
+        super.putAll(map);
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     *
+     * @return the previous value associated with {@code key}, or
+     *         {@code null} if there was no mapping for {@code key}.
+     * @throws ClassCastException if the specified key cannot be compared
+     *         with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        if (root == null) {
+            compare(key, key); // type (and possibly null) check
+            Leaf l = new Leaf(INITIAL_LEAF_CAPACITY);
+            l.keys[0] = key;
+            l.vals[0] = value;
+            l.size = 1;
+            root = first = last = l;
+            size = 1;
+            modCount++;
+            return null;
+        }
+        Leaf l = leafFor(key);
+        int i = search(l.keys, l.size, key);
+        if (i >= 0) {
+            V oldValue = (V) l.vals[i];
+            l.vals[i] = value;
+            return oldValue;
+        }
+        i = -i - 1;
+        if (l.size < NODE_CAPACITY)
+            insertAt(l, i, key, value);
+        else
+            splitAndInsert(l, i, key, value);
+        size++;
+        modCount++;
+        return null;
+    }
+
+    /**
+     * Removes the mapping for this key from this map if present.
+     *
+     * @param  key key for which mapping should be removed
+     * @return the previous value associated with {@code key}, or
+     *         {@code null} if there was no mapping for {@code key}.
+     * @throws ClassCastException if the specified key cannot be compared
+     *         with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        Leaf l = leafFor(key);
+        if (l == null)
+            return null;
+        int i = search(l.keys, l.size, key);
+        if (i < 0)
+            return null;
+        V oldValue = (V) l.vals[i];
+        deleteAt(l, i);
+        return oldValue;
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     */
+    public void clear() {
+        modCount++;
+        size = 0;
+        height = 0;
+        root = first = last = null;
+    }
+
+    /**
+     * Returns a shallow copy of this {@code BTreeMap} instance.  (The
+     * keys and values themselves are not cloned.)  The copy is built
+     * with packed leaves.
+     *
+     * @return a shallow copy of this map
+     */
+    public Object clone() {
+        BTreeMap<?,?> clone;
+        try {
+            clone = (BTreeMap<?,?>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+
+        // Put clone into "virgin" state (except for comparator)
+        clone.root = clone.first = clone.last = null;
+        clone.size = 0;
+        clone.height = 0;
+        clone.modCount = 0;
+        clone.entrySet = null;
+        clone.values = null;
+        clone.navigableKeySet = null;
+        clone.descendingMap = null;
+
+        // Initialize clone with our mappings
+        try {
+            clone.buildFromSorted(size, entrySet().iterator(), null, null);
+        } catch (IOException | ClassNotFoundException cannotHappen) {
+        }
+
+        return clone;
+    }
+
+    // NavigableMap API methods
+
+    public Map.Entry<K,V> firstEntry() {
+        return exportEntry(firstCursor());
+    }
+
+    public Map.Entry<K,V> lastEntry() {
+        return exportEntry(lastCursor());
+    }
+
+    public Map.Entry<K,V> pollFirstEntry() {
+        Cursor c = firstCursor();
+        Map.Entry<K,V> result = exportEntry(c);
+        if (c != null)
+            deleteAt(c.leaf, c.index);
+        return result;
+    }
+
+    public Map.Entry<K,V> pollLastEntry() {
+        Cursor c = lastCursor();
+        Map.Entry<K,V> result = exportEntry(c);
+        if (c != null)
+            deleteAt(c.leaf, c.index);
+        return result;
+    }
+
+    /**
+     * @throws ClassCastException {@inheritDoc}
+     * @throws NullPointerException if the specified key is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     */
+    public Map.Entry<K,V> lowerEntry(K key) {
+        return exportEntry(near(key, LT));
+    }
+
+    /**
+     * @throws ClassCastException {@inheritDoc}
+     * @throws NullPointerException if the specified key is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     */
+    public K lowerKey(K key) {
+        return keyOrNull(near(key, LT));
+    }
+
+    /**
+     * @throws ClassCastException {@inheritDoc}
+     * @throws NullPointerException if the specified key is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     */
+    public Map.Entry<K,V> floorEntry(K key) {
+        return exportEntry(near(key, LT|EQ));
+    }
+
+    /**
+     * @throws ClassCastException {@inheritDoc}
+     * @throws NullPointerException if the specified key is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     */
+    public K floorKey(K key) {
+        return keyOrNull(near(key, LT|EQ));
+    }
+
+    /**
+     * @throws ClassCastException {@inheritDoc}
+     * @throws NullPointerException if the specified key is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     */
+    public Map.Entry<K,V> ceilingEntry(K key) {
+        return exportEntry(near(key, GT|EQ));
+    }
+
+    /**
+     * @throws ClassCastException {@inheritDoc}
+     * @throws NullPointerException if the specified key is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     */
+    public K ceilingKey(K key) {
+        return keyOrNull(near(key, GT|EQ));
+    }
+
+    /**
+     * @throws ClassCastException {@inheritDoc}
+     * @throws NullPointerException if the specified key is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     */
+    public Map.Entry<K,V> higherEntry(K key) {
+        return exportEntry(near(key, GT));
+    }
+
+    /**
+     * @throws ClassCastException {@inheritDoc}
+     * @throws NullPointerException if the specified key is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     */
+    public K higherKey(K key) {
+        return keyOrNull(near(key, GT));
+    }
+
+    // Views
+
+    /**
+     * Fields initialized to contain an instance of the entry set view
+     * the first time this view is requested.  Views are stateless, so
+     * there's no reason to create more than one.
+     */
+    private transient EntrySet entrySet;
+    private transient Collection<V> values;
+    private transient KeySet<K> navigableKeySet;
+    private transient NavigableMap<K,V> descendingMap;
+
+    /**
+     * Returns a {@link Set} view of the keys contained in this map, in
+     * ascending order.  See {@link TreeMap#keySet()}; in addition, the
+     * spliterator of the set splits along node boundaries.
+     */
+    public Set<K> keySet() {
+        return navigableKeySet();
+    }
+
+    public NavigableSet<K> navigableKeySet() {
+        KeySet<K> nks = navigableKeySet;
+        return (nks != null) ? nks : (navigableKeySet = new KeySet<>(this));
+    }
+
+    public NavigableSet<K> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    /**
+     * Returns a {@link Collection} view of the values contained in this
+     * map, in the ascending order of the corresponding keys.  See
+     * {@link TreeMap#values()}.
+     */
+    public Collection<V> values() {
+        Collection<V> vs = values;
+        if (vs == null) {
+            vs = new Values();
+            values = vs;
+        }
+        return vs;
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this map,
+     * in ascending key order.  See {@link TreeMap#entrySet()}.  The
+     * entries returned by its iterator support {@code setValue}.
+     */
+    public Set<Map.Entry<K,V>> entrySet() {
+        EntrySet es = entrySet;
+        return (es != null) ? es : (entrySet = new EntrySet());
+    }
+
+    public NavigableMap<K, V> descendingMap() {
+        NavigableMap<K, V> km = descendingMap;
+        return (km != null) ? km :
+            (descendingMap = new SubMap<>(this,
+                                          true, null, true,
+                                          true, null, true, true));
+    }
+
+    /**
+     * @throws ClassCastException       {@inheritDoc}
+     * @throws NullPointerException if {@code fromKey} or {@code toKey} is
+     *         null and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     * @throws IllegalArgumentException {@inheritDoc}
+     */
+    public NavigableMap<K,V> subMap(K fromKey, boolean fromInclusive,
+                                    K toKey,   boolean toInclusive) {
+        return new SubMap<>(this,
+                            false, fromKey, fromInclusive,
+                            false, toKey,   toInclusive, false);
+    }
+
+    /**
+     * @throws ClassCastException       {@inheritDoc}
+     * @throws NullPointerException if {@code toKey} is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     * @throws IllegalArgumentException {@inheritDoc}
+     */
+    public NavigableMap<K,V> headMap(K toKey, boolean inclusive) {
+        return new SubMap<>(this,
+                            true,  null,  true,
+                            false, toKey, inclusive, false);
+    }
+
+    /**
+     * @throws ClassCastException       {@inheritDoc}
+     * @throws NullPointerException if {@code fromKey} is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     * @throws IllegalArgumentException {@inheritDoc}
+     */
+    public NavigableMap<K,V> tailMap(K fromKey, boolean inclusive) {
+        return new SubMap<>(this,
+                            false, fromKey, inclusive,
+                            true,  null,    true, false);
+    }
+
+    /**
+     * @throws ClassCastException       {@inheritDoc}
+     * @throws NullPointerException if {@code fromKey} or {@code toKey} is
+     *         null and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     * @throws IllegalArgumentException {@inheritDoc}
+     */
+    public SortedMap<K,V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    /**
+     * @throws ClassCastException       {@inheritDoc}
+     * @throws NullPointerException if {@code toKey} is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     * @throws IllegalArgumentException {@inheritDoc}
+     */
+    public SortedMap<K,V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    /**
+     * @throws ClassCastException       {@inheritDoc}
+     * @throws NullPointerException if {@code fromKey} is null
+     *         and this map uses natural ordering, or its comparator
+     *         does not permit null keys
+     * @throws IllegalArgumentException {@inheritDoc}
+     */
+    public SortedMap<K,V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean replace(K key, V oldValue, V newValue) {
+        Leaf l = leafFor(key);
+        if (l != null) {
+            int i = search(l.keys, l.size, key);
+            if (i >= 0 && Objects.equals(oldValue, l.vals[i])) {
+                l.vals[i] = newValue;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V replace(K key, V value) {
+        Leaf l = leafFor(key);
+        if (l != null) {
+            int i = search(l.keys, l.size, key);
+            if (i >= 0) {
+                V oldValue = (V) l.vals[i];
+                l.vals[i] = value;
+                return oldValue;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = modCount;
+        for (Leaf l = first; l != null; l = l.next) {
+            Object[] ks = l.keys, vs = l.vals;
+            for (int i = 0, n = l.size; i < n; ++i)
+                action.accept((K) ks[i], (V) vs[i]);
+            if (expectedModCount != modCount)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        Objects.requireNonNull(function);
+        int expectedModCount = modCount;
+        for (Leaf l = first; l != null; l = l.next) {
+            Object[] ks = l.keys, vs = l.vals;
+            for (int i = 0, n = l.size; i < n; ++i)
+                vs[i] = function.apply((K) ks[i], (V) vs[i]);
+            if (expectedModCount != modCount)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /* ---------------- Insertion -------------- */
+
+    /**
+     * Inserts a mapping at index i of a leaf that has room for it,
+     * growing the arrays of a small root leaf as needed.
+     */
+    private static void insertAt(Leaf l, int i, Object key, Object value) {
+        int n = l.size;
+        if (n == l.keys.length) {
+            int cap = Math.min(NODE_CAPACITY, n << 1);
+            l.keys = Arrays.copyOf(l.keys, cap);
+            l.vals = Arrays.copyOf(l.vals, cap);
+        }
+        System.arraycopy(l.keys, i, l.keys, i + 1, n - i);
+        System.arraycopy(l.vals, i, l.vals, i + 1, n - i);
+        l.keys[i] = key;
+        l.vals[i] = value;
+        l.size = n + 1;
+    }
+
+    /**
+     * Splits the full leaf l in halves, inserts the mapping into the
+     * appropriate half, and adds the right half to the parent.
+     */
+    private void splitAndInsert(Leaf l, int i, Object key, Object value) {
+        int h = height;
+        Inner[] path = new Inner[h];
+        int[] slots = new int[h];
+        pathTo(key, path, slots);
+        int half = NODE_CAPACITY >>> 1, rest = NODE_CAPACITY - half;
+        Leaf r = new Leaf(NODE_CAPACITY);
+        System.arraycopy(l.keys, half, r.keys, 0, rest);
+        System.arraycopy(l.vals, half, r.vals, 0, rest);
+        Arrays.fill(l.keys, half, NODE_CAPACITY, null);
+        Arrays.fill(l.vals, half, NODE_CAPACITY, null);
+        r.size = rest;
+        l.size = half;
+        if ((r.next = l.next) != null)
+            r.next.prev = r;
+        else
+            last = r;
+        r.prev = l;
+        l.next = r;
+        if (i <= half)
+            insertAt(l, i, key, value);
+        else
+            insertAt(r, i - half, key, value);
+        insertChild(path, slots, h - 1, r.keys[0], r);
+    }
+
+    /**
+     * Inserts node right, with separator sep, after child slots[d] of
+     * path[d], splitting ancestors as needed.
+     */
+    private void insertChild(Inner[] path, int[] slots, int d,
+                             Object sep, Node right) {
+        for (;; --d) {
+            if (d < 0) {
+                Inner p = new Inner();
+                p.children[0] = root;
+                p.children[1] = right;
+                p.keys[0] = sep;
+                p.size = 1;
+                root = p;
+                ++height;
+                return;
+            }
+            Inner p = path[d];
+            int ci = slots[d] + 1, n = p.size;
+            if (n < NODE_CAPACITY - 1) {
+                System.arraycopy(p.keys, ci - 1, p.keys, ci, n - (ci - 1));
+                System.arraycopy(p.children, ci, p.children, ci + 1, n + 1 - ci);
+                p.keys[ci - 1] = sep;
+                p.children[ci] = right;
+                p.size = n + 1;
+                return;
+            }
+            // Lay out all NODE_CAPACITY + 1 children and split them
+            Object[] ks = new Object[NODE_CAPACITY];
+            Node[] cs = new Node[NODE_CAPACITY + 1];
+            System.arraycopy(p.keys, 0, ks, 0, ci - 1);
+            ks[ci - 1] = sep;
+            System.arraycopy(p.keys, ci - 1, ks, ci, n - (ci - 1));
+            System.arraycopy(p.children, 0, cs, 0, ci);
+            cs[ci] = right;
+            System.arraycopy(p.children, ci, cs, ci + 1, n + 1 - ci);
+            int h = (NODE_CAPACITY + 1) >>> 1;  // children kept in p
+            Inner q = new Inner();
+            System.arraycopy(cs, 0, p.children, 0, h);
+            Arrays.fill(p.children, h, NODE_CAPACITY, null);
+            System.arraycopy(ks, 0, p.keys, 0, h - 1);
+            Arrays.fill(p.keys, h - 1, NODE_CAPACITY - 1, null);
+            p.size = h - 1;
+            System.arraycopy(cs, h, q.children, 0, NODE_CAPACITY + 1 - h);
+            System.arraycopy(ks, h, q.keys, 0, NODE_CAPACITY - h);
+            q.size = NODE_CAPACITY - h;
+            sep = ks[h - 1];
+            right = q;
+        }
+    }
+
+    /* ---------------- Deletion -------------- */
+
+    /**
+     * Deletes the mapping at index i of leaf l, rebalancing as needed.
+     */
+    final void deleteAt(Leaf l, int i) {
+        Object key = l.keys[i];
+        int n = l.size - 1;
+        System.arraycopy(l.keys, i + 1, l.keys, i, n - i);
+        System.arraycopy(l.vals, i + 1, l.vals, i, n - i);
+        l.keys[n] = null;
+        l.vals[n] = null;
+        l.size = n;
+        --size;
+        ++modCount;
+        if (height == 0) {
+            if (n == 0)
+                root = first = last = null;
+        } else if (n < MIN_FILL) {
+            rebalance(key);
+        }
+    }
+
+    /**
+     * Restores the fill invariants along the path to the leaf that
+     * held the given (just deleted) key, bottom-up.
+     */
+    private void rebalance(Object key) {
+        int h = height;
+        Inner[] path = new Inner[h];
+        int[] slots = new int[h];
+        Node n = pathTo(key, path, slots);
+        for (int d = h - 1; d >= 0; --d) {
+            Inner p = path[d];
+            if (!fixUnderflow(p, slots[d], n))
+                return;
+            if (d == 0) {
+                if (p.size == 0) {
+                    root = p.children[0];
+                    p.children[0] = null;
+                    --height;
+                }
+                return;
+            }
+            if (p.size + 1 >= MIN_FILL)
+                return;
+            n = p;
+        }
+    }
+
+    /**
+     * Refills child n of p at index ci, which has fallen below
+     * MIN_FILL, by borrowing from a sibling or merging with it.
+     * Returns true if a merge removed a child from p.
+     */
+    private boolean fixUnderflow(Inner p, int ci, Node n) {
+        if (n instanceof Leaf) {
+            Leaf l = (Leaf) n;
+            if (ci > 0) {
+                Leaf s = (Leaf) p.children[ci - 1];
+                int sn = s.size;
+                if (sn > MIN_FILL) {
+                    System.arraycopy(l.keys, 0, l.keys, 1, l.size);
+                    System.arraycopy(l.vals, 0, l.vals, 1, l.size);
+                    l.keys[0] = s.keys[sn - 1];
+                    l.vals[0] = s.vals[sn - 1];
+                    s.keys[sn - 1] = s.vals[sn - 1] = null;
+                    s.size = sn - 1;
+                    l.size++;
+                    p.keys[ci - 1] = l.keys[0];
+                    return false;
+                }
+            }
+            if (ci < p.size) {
+                Leaf s = (Leaf) p.children[ci + 1];
+                int sn = s.size;
+                if (sn > MIN_FILL) {
+                    l.keys[l.size] = s.keys[0];
+                    l.vals[l.size] = s.vals[0];
+                    l.size++;
+                    System.arraycopy(s.keys, 1, s.keys, 0, sn - 1);
+                    System.arraycopy(s.vals, 1, s.vals, 0, sn - 1);
+                    s.keys[sn - 1] = s.vals[sn - 1] = null;
+                    s.size = sn - 1;
+                    p.keys[ci] = s.keys[0];
+                    return false;
+                }
+            }
+            if (ci > 0) {
+                mergeLeaves((Leaf) p.children[ci - 1], l);
+                removeChild(p, ci - 1);
+            } else {
+                mergeLeaves(l, (Leaf) p.children[1]);
+                removeChild(p, 0);
+            }
+            return true;
+        }
+        Inner c = (Inner) n;
+        if (ci > 0) {
+            Inner s = (Inner) p.children[ci - 1];
+            int sn = s.size;
+            if (sn + 1 > MIN_FILL) {  // rotate s's last child into c
+                System.arraycopy(c.keys, 0, c.keys, 1, c.size);
+                System.arraycopy(c.children, 0, c.children, 1, c.size + 1);
+                c.keys[0] = p.keys[ci - 1];
+                c.children[0] = s.children[sn];
+                c.size++;
+                p.keys[ci - 1] = s.keys[sn - 1];
+                s.keys[sn - 1] = null;
+                s.children[sn] = null;
+                s.size = sn - 1;
+                return false;
+            }
+        }
+        if (ci < p.size) {
+            Inner s = (Inner) p.children[ci + 1];
+            int sn = s.size;
+            if (sn + 1 > MIN_FILL) {  // rotate s's first child into c
+                c.keys[c.size] = p.keys[ci];
+                c.children[c.size + 1] = s.children[0];
+                c.size++;
+                p.keys[ci] = s.keys[0];
+                System.arraycopy(s.keys, 1, s.keys, 0, sn - 1);
+                System.arraycopy(s.children, 1, s.children, 0, sn);
+                s.keys[sn - 1] = null;
+                s.children[sn] = null;
+                s.size = sn - 1;
+                return false;
+            }
+        }
+        if (ci > 0) {
+            mergeInner((Inner) p.children[ci - 1], p.keys[ci - 1], c);
+            removeChild(p, ci - 1);
+        } else {
+            mergeInner(c, p.keys[0], (Inner) p.children[1]);
+            removeChild(p, 0);
+        }
+        return true;
+    }
+
+    /**
+     * Appends the mappings of leaf b to its left neighbour a and
+     * unlinks b.
+     */
+    private void mergeLeaves(Leaf a, Leaf b) {
+        System.arraycopy(b.keys, 0, a.keys, a.size, b.size);
+        System.arraycopy(b.vals, 0, a.vals, a.size, b.size);
+        a.size += b.size;
+        if ((a.next = b.next) != null)
+            a.next.prev = a;
+        else
+            last = a;
+        b.size = 0;     // invalidates stale LeafEntry positions
+        b.prev = b.next = null;
+    }
+
+    /**
+     * Appends separator sep and the contents of interior node b to its
+     * left neighbour a.
+     */
+    private static void mergeInner(Inner a, Object sep, Inner b) {
+        int n = a.size;
+        a.keys[n] = sep;
+        System.arraycopy(b.keys, 0, a.keys, n + 1, b.size);
+        System.arraycopy(b.children, 0, a.children, n + 1, b.size + 1);
+        a.size = n + 1 + b.size;
+    }
+
+    /**
+     * Removes separator k and child k + 1 from p.
+     */
+    private static void removeChild(Inner p, int k) {
+        int n = p.size;
+        System.arraycopy(p.keys, k + 1, p.keys, k, n - 1 - k);
+        System.arraycopy(p.children, k + 2, p.children, k + 1, n - 1 - k);
+        p.keys[n - 1] = null;
+        p.children[n] = null;
+        p.size = n - 1;
+    }
+
+    /* ---------------- Bulk loading -------------- */
+
+    /**
+     * Linear time tree building algorithm from sorted data.  Can accept
+     * keys and/or values from iterator or stream, as for
+     * {@link TreeMap}: if it is non-null, it supplies entries, or keys
+     * if defaultVal is non-null; otherwise str supplies alternating
+     * keys and values, or keys only if defaultVal is non-null.
+     *
+     * Leaves are filled as evenly as possible with at most
+     * NODE_CAPACITY mappings each, and each interior level is built
+     * the same way over the level below it, so every node but the
+     * root is at least half full.
+     *
+     * @param size the number of keys (or key-value pairs) to be read
+     * @param it if non-null, new entries are created from entries
+     *        or keys read from this iterator
+     * @param str if non-null, new entries are created from keys and
+     *        possibly values read from this stream in serialized form
+     * @param defaultVal if non-null, this default value is used for
+     *        each value in the map
+     */
+    @SuppressWarnings("unchecked")
+    private void buildFromSorted(int size, Iterator<?> it,
+                                 ObjectInputStream str,
+                                 V defaultVal)
+        throws IOException, ClassNotFoundException {
+        this.size = 0;
+        height = 0;
+        root = first = last = null;
+        if (size <= 0)
+            return;
+        int nleaves = (size + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        Node[] level = new Node[nleaves];
+        Object[] mins = new Object[nleaves];
+        Leaf prev = null;
+        for (int j = 0, remaining = size; j < nleaves; ++j) {
+            int n = remaining / (nleaves - j);
+            remaining -= n;
+            Leaf l = new Leaf((nleaves == 1) ? n : NODE_CAPACITY);
+            for (int k = 0; k < n; ++k) {
+                Object key, value;
+                if (it != null) {
+                    if (defaultVal == null) {
+                        Map.Entry<?,?> entry = (Map.Entry<?,?>) it.next();
+                        key = entry.getKey();
+                        value = entry.getValue();
+                    } else {
+                        key = it.next();
+                        value = defaultVal;
+                    }
+                } else { // use stream
+                    key = str.readObject();
+                    value = (defaultVal != null ? defaultVal : str.readObject());
+                }
+                l.keys[k] = key;
+                l.vals[k] = value;
+            }
+            l.size = n;
+            if ((l.prev = prev) != null)
+                prev.next = l;
+            else
+                first = l;
+            prev = l;
+            level[j] = l;
+            mins[j] = l.keys[0];
+        }
+        last = prev;
+        int h = 0;
+        for (int count = nleaves; count > 1; ++h) {
+            int nparents = (count + NODE_CAPACITY - 1) / NODE_CAPACITY;
+            for (int j = 0, c = 0, remaining = count; j < nparents; ++j) {
+                int n = remaining / (nparents - j);
+                remaining -= n;
+                Inner p = new Inner();
+                Object min = mins[c];
+                for (int k = 0; k < n; ++k, ++c) {
+                    p.children[k] = level[c];
+                    if (k > 0)
+                        p.keys[k - 1] = mins[c];
+                }
+                p.size = n - 1;
+                level[j] = p;   // j < c, so no unread node is overwritten
+                mins[j] = min;
+            }
+            count = nparents;
+        }
+        root = level[0];
+        height = h;
+        this.size = size;
+    }
+
+    /** Intended to be called only from BTreeSet.addAll */
+    void addAllForBTreeSet(SortedSet<? extends K> set, V defaultVal) {
+        try {
+            ++modCount;
+            buildFromSorted(set.size(), set.iterator(), null, defaultVal);
+        } catch (IOException | ClassNotFoundException cannotHappen) {
+        }
+    }
+
+    /** Intended to be called only from BTreeSet.readObject */
+    void readBTreeSet(int size, ObjectInputStream s, V defaultVal)
+        throws IOException, ClassNotFoundException {
+        buildFromSorted(size, null, s, defaultVal);
+    }
+
+    /* ---------------- Entries and cursors -------------- */
+
+    /**
+     * Test two values for equality.  Differs from o1.equals(o2) only in
+     * that it copes with {@code null} o1 properly.
+     */
+    static final boolean valEquals(Object o1, Object o2) {
+        return (o1==null ? o2==null : o1.equals(o2));
+    }
+
+    /**
+     * Returns an immutable snapshot of the mapping at the cursor, or
+     * null if the cursor is null.
+     */
+    @SuppressWarnings("unchecked")
+    static <K,V> Map.Entry<K,V> exportEntry(Cursor c) {
+        return (c == null) ? null :
+            new AbstractMap.SimpleImmutableEntry<>((K) c.leaf.keys[c.index],
+                                                   (V) c.leaf.vals[c.index]);
+    }
+
+    /**
+     * Returns the key at the cursor, or null if the cursor is null.
+     */
+    @SuppressWarnings("unchecked")
+    static <K> K keyOrNull(Cursor c) {
+        return (c == null) ? null : (K) c.leaf.keys[c.index];
+    }
+
+    /**
+     * Returns the key at the cursor.
+     *
+     * @throws NoSuchElementException if the cursor is null
+     */
+    @SuppressWarnings("unchecked")
+    static <K> K key(Cursor c) {
+        if (c == null)
+            throw new NoSuchElementException();
+        return (K) c.leaf.keys[c.index];
+    }
+
+    /**
+     * Entry returned by entry set iterators, reading and writing its
+     * value through the leaf that holds it.  If the tree has been
+     * restructured since the entry was created, the key is looked up
+     * again.
+     */
+    final class LeafEntry implements Map.Entry<K,V> {
+        private Leaf leaf;
+        private int index;
+        private final K key;
+        private V value;
+
+        @SuppressWarnings("unchecked")
+        LeafEntry(Leaf leaf, int index) {
+            this.leaf = leaf;
+            this.index = index;
+            this.key = (K) leaf.keys[index];
+            this.value = (V) leaf.vals[index];
+        }
+
+        /**
+         * Updates the position of the entry, returning false if its
+         * key is no longer in the map.
+         */
+        private boolean locate() {
+            if (index < leaf.size && leaf.keys[index] == key)
+                return true;
+            Leaf l = leafFor(key);
+            int i;
+            if (l == null || (i = search(l.keys, l.size, key)) < 0)
+                return false;
+            leaf = l;
+            index = i;
+            return true;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V getValue() {
+            if (locate())
+                value = (V) leaf.vals[index];
+            return value;
+        }
+
+        public V setValue(V value) {
+            V oldValue = getValue();
+            if (locate())
+                leaf.vals[index] = value;
+            this.value = value;
+            return oldValue;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+            return valEquals(key, e.getKey()) && valEquals(getValue(), e.getValue());
+        }
+
+        public int hashCode() {
+            V v = getValue();
+            int keyHash = (key==null ? 0 : key.hashCode());
+            int valueHash = (v==null ? 0 : v.hashCode());
+            return keyHash ^ valueHash;
+        }
+
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+
+    // View class support
+
+    class Values extends AbstractCollection<V> {
+        public Iterator<V> iterator() {
+            return new ValueIterator(firstCursor(), null, false);
+        }
+
+        public int size() {
+            return BTreeMap.this.size();
+        }
+
+        public boolean contains(Object o) {
+            return BTreeMap.this.containsValue(o);
+        }
+
+        public boolean remove(Object o) {
+            for (Leaf l = first; l != null; l = l.next) {
+                for (int i = 0, n = l.size; i < n; ++i) {
+                    if (valEquals(l.vals[i], o)) {
+                        deleteAt(l, i);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        public void clear() {
+            BTreeMap.this.clear();
+        }
+
+        public Spliterator<V> spliterator() {
+            return new ValueSpliterator<>(BTreeMap.this, first, 0, null, 0, size);
+        }
+    }
+
+    class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator(firstCursor(), null, false);
+        }
+
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> entry = (Map.Entry<?,?>) o;
+            Object key = entry.getKey();
+            Leaf l = leafFor(key);
+            int i;
+            return l != null && (i = search(l.keys, l.size, key)) >= 0 &&
+                valEquals(l.vals[i], entry.getValue());
+        }
+
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> entry = (Map.Entry<?,?>) o;
+            Object key = entry.getKey();
+            Leaf l = leafFor(key);
+            int i;
+            if (l != null && (i = search(l.keys, l.size, key)) >= 0 &&
+                valEquals(l.vals[i], entry.getValue())) {
+                deleteAt(l, i);
+                return true;
+            }
+            return false;
+        }
+
+        public int size() {
+            return BTreeMap.this.size();
+        }
+
+        public void clear() {
+            BTreeMap.this.clear();
+        }
+
+        public Spliterator<Map.Entry<K,V>> spliterator() {
+            return new EntrySpliterator<>(BTreeMap.this, first, 0, null, 0, size);
+        }
+    }
+
+    /*
+     * As for TreeMap, the KeySet class is static, delegating to a
+     * NavigableMap to allow use by SubMaps, at the price of type-tests
+     * in the following methods.
+     */
+
+    Iterator<K> keyIterator() {
+        return new KeyIterator(firstCursor(), null, false);
+    }
+
+    Iterator<K> descendingKeyIterator() {
+        return new KeyIterator(lastCursor(), null, true);
+    }
+
+    Spliterator<K> keySpliterator() {
+        return new KeySpliterator<>(this, first, 0, null, 0, size);
+    }
+
+    static <K> Spliterator<K> keySpliteratorFor(NavigableMap<K,?> m) {
+        if (m instanceof BTreeMap) {
+            @SuppressWarnings("unchecked") BTreeMap<K,Object> t =
+                (BTreeMap<K,Object>) m;
+            return t.keySpliterator();
+        }
+        @SuppressWarnings("unchecked") SubMap<K,?> s = (SubMap<K,?>) m;
+        return s.keySpliterator();
+    }
+
+    static final class KeySet<E> extends AbstractSet<E> implements NavigableSet<E> {
+        private final NavigableMap<E, ?> m;
+        KeySet(NavigableMap<E,?> map) { m = map; }
+
+        public Iterator<E> iterator() {
+            if (m instanceof BTreeMap)
+                return ((BTreeMap<E,?>)m).keyIterator();
+            else
+                return ((SubMap<E,?>)m).keyIterator();
+        }
+
+        public Iterator<E> descendingIterator() {
+            if (m instanceof BTreeMap)
+                return ((BTreeMap<E,?>)m).descendingKeyIterator();
+            else
+                return ((SubMap<E,?>)m).descendingKeyIterator();
+        }
+
+        public int size() { return m.size(); }
+        public boolean isEmpty() { return m.isEmpty(); }
+        public boolean contains(Object o) { return m.containsKey(o); }
+        public void clear() { m.clear(); }
+        public E lower(E e) { return m.lowerKey(e); }
+        public E floor(E e) { return m.floorKey(e); }
+        public E ceiling(E e) { return m.ceilingKey(e); }
+        public E higher(E e) { return m.higherKey(e); }
+        public E first() { return m.firstKey(); }
+        public E last() { return m.lastKey(); }
+        public Comparator<? super E> comparator() { return m.comparator(); }
+        public E pollFirst() {
+            Map.Entry<E,?> e = m.pollFirstEntry();
+            return (e == null) ? null : e.getKey();
+        }
+        public E pollLast() {
+            Map.Entry<E,?> e = m.pollLastEntry();
+            return (e == null) ? null : e.getKey();
+        }
+        public boolean remove(Object o) {
+            int oldSize = size();
+            m.remove(o);
+            return size() != oldSize;
+        }
+        public NavigableSet<E> subSet(E fromElement, boolean fromInclusive,
+                                      E toElement,   boolean toInclusive) {
+            return new KeySet<>(m.subMap(fromElement, fromInclusive,
+                                         toElement,   toInclusive));
+        }
+        public NavigableSet<E> headSet(E toElement, boolean inclusive) {
+            return new KeySet<>(m.headMap(toElement, inclusive));
+        }
+        public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+            return new KeySet<>(m.tailMap(fromElement, inclusive));
+        }
+        public SortedSet<E> subSet(E fromElement, E toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+        public SortedSet<E> headSet(E toElement) {
+            return headSet(toElement, false);
+        }
+        public SortedSet<E> tailSet(E fromElement) {
+            return tailSet(fromElement, true);
+        }
+        public NavigableSet<E> descendingSet() {
+            return new KeySet<>(m.descendingMap());
+        }
+
+        public Spliterator<E> spliterator() {
+            return keySpliteratorFor(m);
+        }
+    }
+
+    /**
+     * Base class for BTreeMap iterators, walking the leaves from a
+     * start position up to, but excluding, a fence position, in either
+     * direction.
+     */
+    abstract class PrivateIterator<T> implements Iterator<T> {
+        Leaf leaf;          // position of the next element, null if none
+        int index;
+        Leaf fenceLeaf;     // position of the first element not returned
+        int fenceIndex;
+        final boolean descending;
+        Object lastKey;     // key of the last element returned
+        boolean canRemove;
+        int expectedModCount;
+
+        PrivateIterator(Cursor first, Cursor fence, boolean descending) {
+            expectedModCount = modCount;
+            this.descending = descending;
+            if (first != null) {
+                leaf = first.leaf;
+                index = first.index;
+            }
+            if (fence != null) {
+                fenceLeaf = fence.leaf;
+                fenceIndex = fence.index;
+            }
+        }
+
+        public final boolean hasNext() {
+            return leaf != null && (leaf != fenceLeaf || index != fenceIndex);
+        }
+
+        abstract T element(Leaf l, int i);
+
+        public final T next() {
+            Leaf l = leaf;
+            int i = index;
+            if (l == null || (l == fenceLeaf && i == fenceIndex))
+                throw new NoSuchElementException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (descending) {
+                if (--index < 0 && (leaf = l.prev) != null)
+                    index = leaf.size - 1;
+            } else if (++index == l.size) {
+                leaf = l.next;
+                index = 0;
+            }
+            lastKey = l.keys[i];
+            canRemove = true;
+            return element(l, i);
+        }
+
+        /**
+         * Removes the last element returned.  Deletion may shift or
+         * move mappings between leaves, so the next and fence
+         * positions are looked up again by key afterwards.
+         */
+        public final void remove() {
+            if (!canRemove)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            Leaf nl = leaf, fl = fenceLeaf;
+            Object nextKey = (nl == null) ? null : nl.keys[index];
+            Object fenceKey = (fl == null) ? null : fl.keys[fenceIndex];
+            BTreeMap.this.remove(lastKey);
+            if (nl != null) {
+                Cursor c = near(nextKey, GT|EQ);
+                leaf = c.leaf;
+                index = c.index;
+            }
+            if (fl != null) {
+                Cursor c = near(fenceKey, GT|EQ);
+                fenceLeaf = c.leaf;
+                fenceIndex = c.index;
+            }
+            canRemove = false;
+            expectedModCount = modCount;
+        }
+    }
+
+    final class EntryIterator extends PrivateIterator<Map.Entry<K,V>> {
+        EntryIterator(Cursor first, Cursor fence, boolean descending) {
+            super(first, fence, descending);
+        }
+        Map.Entry<K,V> element(Leaf l, int i) {
+            return new LeafEntry(l, i);
+        }
+    }
+
+    final class ValueIterator extends PrivateIterator<V> {
+        ValueIterator(Cursor first, Cursor fence, boolean descending) {
+            super(first, fence, descending);
+        }
+        @SuppressWarnings("unchecked")
+        V element(Leaf l, int i) {
+            return (V) l.vals[i];
+        }
+    }
+
+    final class KeyIterator extends PrivateIterator<K> {
+        KeyIterator(Cursor first, Cursor fence, boolean descending) {
+            super(first, fence, descending);
+        }
+        @SuppressWarnings("unchecked")
+        K element(Leaf l, int i) {
+            return (K) l.keys[i];
+        }
+    }
+
+    // SubMaps
+
+    /**
+     * A range view of a BTreeMap, ascending or descending.  This
+     * combines the roles of TreeMap's AscendingSubMap and
+     * DescendingSubMap: bounds are kept in absolute (ascending) terms,
+     * and the public methods swap directions when descending.
+     *
+     * @serial include
+     */
+    static final class SubMap<K,V> extends AbstractMap<K,V>
+        implements NavigableMap<K,V>, Serializable {
+        private static final long serialVersionUID = 2765629423043303731L;
+
+        /**
+         * The backing map.
+         */
+        final BTreeMap<K,V> m;
+
+        /**
+         * Endpoints are represented as triples (fromStart, lo,
+         * loInclusive) and (toEnd, hi, hiInclusive), as in TreeMap's
+         * sub-maps.
+         */
+        final K lo, hi;
+        final boolean fromStart, toEnd;
+        final boolean loInclusive, hiInclusive;
+
+        /**
+         * Whether this view presents the range in descending order.
+         */
+        final boolean descending;
+
+        SubMap(BTreeMap<K,V> m,
+               boolean fromStart, K lo, boolean loInclusive,
+               boolean toEnd,     K hi, boolean hiInclusive,
+               boolean descending) {
+            if (!fromStart && !toEnd) {
+                if (m.compare(lo, hi) > 0)
+                    throw new IllegalArgumentException("fromKey > toKey");
+            } else {
+                if (!fromStart) // type check
+                    m.compare(lo, lo);
+                if (!toEnd)
+                    m.compare(hi, hi);
+            }
+
+            this.m = m;
+            this.fromStart = fromStart;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.toEnd = toEnd;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+        }
+
+        // internal utilities
+
+        final boolean tooLow(Object key) {
+            if (!fromStart) {
+                int c = m.compare(key, lo);
+                if (c < 0 || (c == 0 && !loInclusive))
+                    return true;
+            }
+            return false;
+        }
+
+        final boolean tooHigh(Object key) {
+            if (!toEnd) {
+                int c = m.compare(key, hi);
+                if (c > 0 || (c == 0 && !hiInclusive))
+                    return true;
+            }
+            return false;
+        }
+
+        final boolean inRange(Object key) {
+            return !tooLow(key) && !tooHigh(key);
+        }
+
+        final boolean inClosedRange(Object key) {
+            return (fromStart || m.compare(key, lo) >= 0)
+                && (toEnd || m.compare(hi, key) >= 0);
+        }
+
+        final boolean inRange(Object key, boolean inclusive) {
+            return inclusive ? inRange(key) : inClosedRange(key);
+        }
+
+        /*
+         * Absolute versions of relation operations.
+         */
+
+        final Cursor absLowest() {
+            Cursor c = (fromStart ? m.firstCursor() :
+                        m.near(lo, loInclusive ? GT|EQ : GT));
+            return (c == null || tooHigh(key(c))) ? null : c;
+        }
+
+        final Cursor absHighest() {
+            Cursor c = (toEnd ? m.lastCursor() :
+                        m.near(hi, hiInclusive ? LT|EQ : LT));
+            return (c == null || tooLow(key(c))) ? null : c;
+        }
+
+        final Cursor absCeiling(K key) {
+            if (tooLow(key))
+                return absLowest();
+            Cursor c = m.near(key, GT|EQ);
+            return (c == null || tooHigh(key(c))) ? null : c;
+        }
+
+        final Cursor absHigher(K key) {
+            if (tooLow(key))
+                return absLowest();
+            Cursor c = m.near(key, GT);
+            return (c == null || tooHigh(key(c))) ? null : c;
+        }
+
+        final Cursor absFloor(K key) {
+            if (tooHigh(key))
+                return absHighest();
+            Cursor c = m.near(key, LT|EQ);
+            return (c == null || tooLow(key(c))) ? null : c;
+        }
+
+        final Cursor absLower(K key) {
+            if (tooHigh(key))
+                return absHighest();
+            Cursor c = m.near(key, LT);
+            return (c == null || tooLow(key(c))) ? null : c;
+        }
+
+        /** Returns the absolute high fence for ascending traversal */
+        final Cursor absHighFence() {
+            return (toEnd ? null : m.near(hi, hiInclusive ? GT : GT|EQ));
+        }
+
+        /** Returns the absolute low fence for descending traversal */
+        final Cursor absLowFence() {
+            return (fromStart ? null : m.near(lo, loInclusive ? LT : LT|EQ));
+        }
+
+        // Relative versions, from the perspective of this view
+
+        final Cursor subLowest()       { return descending ? absHighest() : absLowest(); }
+        final Cursor subHighest()      { return descending ? absLowest() : absHighest(); }
+        final Cursor subCeiling(K key) { return descending ? absFloor(key) : absCeiling(key); }
+        final Cursor subHigher(K key)  { return descending ? absLower(key) : absHigher(key); }
+        final Cursor subFloor(K key)   { return descending ? absCeiling(key) : absFloor(key); }
+        final Cursor subLower(K key)   { return descending ? absHigher(key) : absLower(key); }
+
+        /** Returns ascending iterator from the perspective of this submap */
+        Iterator<K> keyIterator() {
+            return descending ? m.new KeyIterator(absHighest(), absLowFence(), true)
+                : m.new KeyIterator(absLowest(), absHighFence(), false);
+        }
+
+        /** Returns descending iterator from the perspective of this submap */
+        Iterator<K> descendingKeyIterator() {
+            return descending ? m.new KeyIterator(absLowest(), absHighFence(), false)
+                : m.new KeyIterator(absHighest(), absLowFence(), true);
+        }
+
+        Iterator<V> valueIterator() {
+            return descending ? m.new ValueIterator(absHighest(), absLowFence(), true)
+                : m.new ValueIterator(absLowest(), absHighFence(), false);
+        }
+
+        Iterator<Map.Entry<K,V>> entryIterator() {
+            return descending ? m.new EntryIterator(absHighest(), absLowFence(), true)
+                : m.new EntryIterator(absLowest(), absHighFence(), false);
+        }
+
+        /**
+         * Returns a node-splitting spliterator over an ascending view,
+         * or an iterator-based one over a descending view.
+         */
+        Spliterator<K> keySpliterator() {
+            if (descending)
+                return Spliterators.spliteratorUnknownSize(
+                    keyIterator(), Spliterator.DISTINCT | Spliterator.ORDERED);
+            Cursor c = absLowest(), f = absHighFence();
+            return (c == null) ? Spliterators.<K>emptySpliterator() :
+                new KeySpliterator<>(m, c.leaf, c.index,
+                                     f == null ? null : f.leaf,
+                                     f == null ? 0 : f.index, -1);
+        }
+
+        // public methods
+
+        private transient int size = -1, sizeModCount;
+
+        /**
+         * Returns the number of mappings in this view, counted by
+         * summing leaf sizes across the range and cached until the
+         * backing map is next modified.
+         */
+        public int size() {
+            if (fromStart && toEnd)
+                return m.size();
+            if (size == -1 || sizeModCount != m.modCount) {
+                sizeModCount = m.modCount;
+                Cursor c = absLowest(), f = absHighFence();
+                size = (c == null) ? 0 :
+                    count(c.leaf, c.index,
+                          f == null ? null : f.leaf, f == null ? 0 : f.index);
+            }
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return (fromStart && toEnd) ? m.isEmpty() : absLowest() == null;
+        }
+
+        public final boolean containsKey(Object key) {
+            return inRange(key) && m.containsKey(key);
+        }
+
+        public final V put(K key, V value) {
+            if (!inRange(key))
+                throw new IllegalArgumentException("key out of range");
+            return m.put(key, value);
+        }
+
+        public final V get(Object key) {
+            return !inRange(key) ? null :  m.get(key);
+        }
+
+        public final V remove(Object key) {
+            return !inRange(key) ? null : m.remove(key);
+        }
+
+        public Comparator<? super K> comparator() {
+            return descending ? Collections.reverseOrder(m.comparator())
+                : m.comparator();
+        }
+
+        public final Map.Entry<K,V> ceilingEntry(K key) {
+            return exportEntry(subCeiling(key));
+        }
+
+        public final K ceilingKey(K key) {
+            return keyOrNull(subCeiling(key));
+        }
+
+        public final Map.Entry<K,V> higherEntry(K key) {
+            return exportEntry(subHigher(key));
+        }
+
+        public final K higherKey(K key) {
+            return keyOrNull(subHigher(key));
+        }
+
+        public final Map.Entry<K,V> floorEntry(K key) {
+            return exportEntry(subFloor(key));
+        }
+
+        public final K floorKey(K key) {
+            return keyOrNull(subFloor(key));
+        }
+
+        public final Map.Entry<K,V> lowerEntry(K key) {
+            return exportEntry(subLower(key));
+        }
+
+        public final K lowerKey(K key) {
+            return keyOrNull(subLower(key));
+        }
+
+        public final K firstKey() {
+            return key(subLowest());
+        }
+
+        public final K lastKey() {
+            return key(subHighest());
+        }
+
+        public final Map.Entry<K,V> firstEntry() {
+            return exportEntry(subLowest());
+        }
+
+        public final Map.Entry<K,V> lastEntry() {
+            return exportEntry(subHighest());
+        }
+
+        public final Map.Entry<K,V> pollFirstEntry() {
+            Cursor c = subLowest();
+            Map.Entry<K,V> result = exportEntry(c);
+            if (c != null)
+                m.deleteAt(c.leaf, c.index);
+            return result;
+        }
+
+        public final Map.Entry<K,V> pollLastEntry() {
+            Cursor c = subHighest();
+            Map.Entry<K,V> result = exportEntry(c);
+            if (c != null)
+                m.deleteAt(c.leaf, c.index);
+            return result;
+        }
+
+        public NavigableMap<K,V> subMap(K fromKey, boolean fromInclusive,
+                                        K toKey,   boolean toInclusive) {
+            if (!inRange(fromKey, fromInclusive))
+                throw new IllegalArgumentException("fromKey out of range");
+            if (!inRange(toKey, toInclusive))
+                throw new IllegalArgumentException("toKey out of range");
+            return descending ?
+                new SubMap<>(m,
+                             false, toKey,   toInclusive,
+                             false, fromKey, fromInclusive, true) :
+                new SubMap<>(m,
+                             false, fromKey, fromInclusive,
+                             false, toKey,   toInclusive, false);
+        }
+
+        public NavigableMap<K,V> headMap(K toKey, boolean inclusive) {
+            if (!inRange(toKey, inclusive))
+                throw new IllegalArgumentException("toKey out of range");
+            return descending ?
+                new SubMap<>(m,
+                             false, toKey, inclusive,
+                             toEnd, hi,    hiInclusive, true) :
+                new SubMap<>(m,
+                             fromStart, lo,    loInclusive,
+                             false,     toKey, inclusive, false);
+        }
+
+        public NavigableMap<K,V> tailMap(K fromKey, boolean inclusive) {
+            if (!inRange(fromKey, inclusive))
+                throw new IllegalArgumentException("fromKey out of range");
+            return descending ?
+                new SubMap<>(m,
+                             fromStart, lo,      loInclusive,
+                             false,     fromKey, inclusive, true) :
+                new SubMap<>(m,
+                             false, fromKey, inclusive,
+                             toEnd, hi,      hiInclusive, false);
+        }
+
+        public final SortedMap<K,V> subMap(K fromKey, K toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        public final SortedMap<K,V> headMap(K toKey) {
+            return headMap(toKey, false);
+        }
+
+        public final SortedMap<K,V> tailMap(K fromKey) {
+            return tailMap(fromKey, true);
+        }
+
+        // Views
+        transient NavigableMap<K,V> descendingMapView;
+        transient EntrySetView entrySetView;
+        transient KeySet<K> navigableKeySetView;
+        transient Collection<V> valuesView;
+
+        public NavigableMap<K,V> descendingMap() {
+            NavigableMap<K,V> mv = descendingMapView;
+            return (mv != null) ? mv :
+                (descendingMapView =
+                 new SubMap<>(m,
+                              fromStart, lo, loInclusive,
+                              toEnd,     hi, hiInclusive, !descending));
+        }
+
+        public final NavigableSet<K> navigableKeySet() {
+            KeySet<K> nksv = navigableKeySetView;
+            return (nksv != null) ? nksv :
+                (navigableKeySetView = new KeySet<>(this));
+        }
+
+        public final Set<K> keySet() {
+            return navigableKeySet();
+        }
+
+        public NavigableSet<K> descendingKeySet() {
+            return descendingMap().navigableKeySet();
+        }
+
+        /**
+         * Returns the values of this view, read straight from the
+         * leaves rather than through entry set iterators.
+         */
+        public Collection<V> values() {
+            Collection<V> vs = valuesView;
+            return (vs != null) ? vs : (valuesView = new AbstractCollection<V>() {
+                public Iterator<V> iterator() { return valueIterator(); }
+                public int size() { return SubMap.this.size(); }
+                public boolean isEmpty() { return SubMap.this.isEmpty(); }
+                public void clear() { SubMap.this.clear(); }
+            });
+        }
+
+        public Set<Map.Entry<K,V>> entrySet() {
+            EntrySetView es = entrySetView;
+            return (es != null) ? es : (entrySetView = new EntrySetView());
+        }
+
+        final class EntrySetView extends AbstractSet<Map.Entry<K,V>> {
+            public Iterator<Map.Entry<K,V>> iterator() {
+                return entryIterator();
+            }
+
+            public int size() {
+                return SubMap.this.size();
+            }
+
+            public boolean isEmpty() {
+                return SubMap.this.isEmpty();
+            }
+
+            public boolean contains(Object o) {
+                if (!(o instanceof Map.Entry))
+                    return false;
+                Map.Entry<?,?> entry = (Map.Entry<?,?>) o;
+                Object key = entry.getKey();
+                if (!inRange(key))
+                    return false;
+                Leaf l = m.leafFor(key);
+                int i;
+                return l != null && (i = m.search(l.keys, l.size, key)) >= 0 &&
+                    valEquals(l.vals[i], entry.getValue());
+            }
+
+            public boolean remove(Object o) {
+                if (!(o instanceof Map.Entry))
+                    return false;
+                Map.Entry<?,?> entry = (Map.Entry<?,?>) o;
+                Object key = entry.getKey();
+                if (!inRange(key))
+                    return false;
+                Leaf l = m.leafFor(key);
+                int i;
+                if (l != null && (i = m.search(l.keys, l.size, key)) >= 0 &&
+                    valEquals(l.vals[i], entry.getValue())) {
+                    m.deleteAt(l, i);
+                    return true;
+                }
+                return false;
+            }
+
+            public Spliterator<Map.Entry<K,V>> spliterator() {
+                if (descending)
+                    return Spliterators.spliteratorUnknownSize(
+                        iterator(), Spliterator.DISTINCT | Spliterator.ORDERED);
+                Cursor c = absLowest(), f = absHighFence();
+                return (c == null) ? Spliterators.<Map.Entry<K,V>>emptySpliterator() :
+                    new EntrySpliterator<>(m, c.leaf, c.index,
+                                           f == null ? null : f.leaf,
+                                           f == null ? 0 : f.index, -1);
+            }
+        }
+    }
+
+    /**
+     * Save the state of the {@code BTreeMap} instance to a stream (i.e.,
+     * serialize it).
+     *
+     * @serialData The <em>size</em> of the BTreeMap (the number of key-value
+     *             mappings) is emitted (int), followed by the key (Object)
+     *             and value (Object) for each key-value mapping represented
+     *             by the BTreeMap. The key-value mappings are emitted in
+     *             key-order (as determined by the BTreeMap's Comparator,
+     *             or by the keys' natural ordering if the BTreeMap has no
+     *             Comparator).
+     */
+    private void writeObject(ObjectOutputStream s)
+        throws IOException {
+        // Write out the Comparator and any hidden stuff
+        s.defaultWriteObject();
+
+        // Write out size (number of Mappings)
+        s.writeInt(size);
+
+        // Write out keys and values (alternating)
+        for (Leaf l = first; l != null; l = l.next) {
+            for (int i = 0, n = l.size; i < n; ++i) {
+                s.writeObject(l.keys[i]);
+                s.writeObject(l.vals[i]);
+            }
+        }
+    }
+
+    /**
+     * Reconstitute the {@code BTreeMap} instance from a stream (i.e.,
+     * deserialize it).
+     */
+    private void readObject(final ObjectInputStream s)
+        throws IOException, ClassNotFoundException {
+        // Read in the Comparator and any hidden stuff
+        s.defaultReadObject();
+
+        // Read in size
+        int size = s.readInt();
+
+        buildFromSorted(size, null, s, null);
+    }
+
+    /**
+     * Base class for spliterators, covering the mappings from a start
+     * position up to, but excluding, a fence position (or the end of
+     * the map if fenceLeaf is null).
+     *
+     * To split, the range is located in the tree by descending from
+     * the root towards its first and last keys.  At the first interior
+     * node where they lie in different children, the range is cut at
+     * the leftmost leaf of the middle child between them, so each half
+     * covers whole subtrees and the cut costs O(height) key searches.
+     * A range within a single leaf is not split.  Sizes are exact
+     * until the first split and halved estimates after it, as for
+     * TreeMap.
+     */
+    static class BTreeMapSpliterator<K,V> {
+        final BTreeMap<K,V> map;
+        Leaf leaf;          // current position, null if at end of map
+        int index;
+        Leaf fenceLeaf;     // exclusive end position, null for end of map
+        int fenceIndex;
+        int est;            // size estimate; -1 until first use
+        boolean split;      // true after splitting, when est is inexact
+        int expectedModCount;
+
+        BTreeMapSpliterator(BTreeMap<K,V> map, Leaf leaf, int index,
+                            Leaf fenceLeaf, int fenceIndex, int est) {
+            this.map = map;
+            this.leaf = leaf;
+            this.index = index;
+            this.fenceLeaf = fenceLeaf;
+            this.fenceIndex = fenceIndex;
+            this.est = est;
+            this.expectedModCount = map.modCount;
+        }
+
+        final int getEstimate() {
+            int s = est;
+            if (s < 0)
+                est = s = (leaf == null) ? 0 :
+                    count(leaf, index, fenceLeaf, fenceIndex);
+            return s;
+        }
+
+        final boolean exhausted() {
+            return leaf == null || (leaf == fenceLeaf && index == fenceIndex);
+        }
+
+        /**
+         * Returns the leaf at which to split off the upper part of the
+         * range, or null if the range lies within one leaf.
+         */
+        final Leaf splitLeaf() {
+            Leaf l = leaf, f = fenceLeaf;
+            if (l == null || l == f)
+                return null;
+            BTreeMap<K,V> m = map;
+            Object lowKey = l.keys[index], highKey = null;
+            if (f != null) {  // the last key of the range
+                Leaf hl = (fenceIndex > 0) ? f : f.prev;
+                highKey = hl.keys[(fenceIndex > 0) ? fenceIndex - 1 : hl.size - 1];
+            }
+            Node n = m.root;
+            for (int h = m.height; h > 0; --h) {
+                Inner p = (Inner) n;
+                int cs = m.childIndex(p, lowKey);
+                int ce = (f == null) ? p.size : m.childIndex(p, highKey);
+                if (ce > cs) {
+                    Node c = p.children[(cs + ce + 1) >>> 1];
+                    while (c instanceof Inner)
+                        c = ((Inner) c).children[0];
+                    return (Leaf) c;
+                }
+                n = p.children[cs];
+            }
+            return null;
+        }
+
+        /**
+         * Moves this spliterator's start to the split leaf s, returning
+         * the estimate for the prefix.
+         */
+        final int cut(Leaf s) {
+            int e = getEstimate() >>> 1;
+            est = e;
+            split = true;
+            leaf = s;
+            index = 0;
+            return e;
+        }
+
+        public final long estimateSize() {
+            return (long)getEstimate();
+        }
+    }
+
+    static final class KeySpliterator<K,V>
+        extends BTreeMapSpliterator<K,V>
+        implements Spliterator<K> {
+        KeySpliterator(BTreeMap<K,V> map, Leaf leaf, int index,
+                       Leaf fenceLeaf, int fenceIndex, int est) {
+            super(map, leaf, index, fenceLeaf, fenceIndex, est);
+        }
+
+        public KeySpliterator<K,V> trySplit() {
+            Leaf s = splitLeaf();
+            if (s == null)
+                return null;
+            Leaf l = leaf;
+            int i = index;
+            KeySpliterator<K,V> prefix =
+                new KeySpliterator<>(map, l, i, s, 0, cut(s));
+            prefix.split = true;
+            prefix.expectedModCount = expectedModCount;
+            return prefix;
+        }
+
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super K> action) {
+            if (action == null)
+                throw new NullPointerException();
+            Leaf l = leaf, f = fenceLeaf;
+            int i = index, fi = fenceIndex;
+            leaf = f;
+            index = fi;
+            est = 0;
+            for (; l != null; l = l.next, i = 0) {
+                Object[] ks = l.keys;
+                for (int end = (l == f) ? fi : l.size; i < end; ++i)
+                    action.accept((K) ks[i]);
+                if (l == f)
+                    break;
+            }
+            if (map.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super K> action) {
+            if (action == null)
+                throw new NullPointerException();
+            if (exhausted())
+                return false;
+            Leaf l = leaf;
+            int i = index;
+            if (++index == l.size) {
+                leaf = l.next;
+                index = 0;
+            }
+            if (est > 0)
+                --est;
+            action.accept((K) l.keys[i]);
+            if (map.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            return true;
+        }
+
+        public int characteristics() {
+            return (split ? 0 : Spliterator.SIZED) |
+                Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.ORDERED;
+        }
+
+        public final Comparator<? super K>  getComparator() {
+            return map.comparator;
+        }
+    }
+
+    static final class ValueSpliterator<K,V>
+            extends BTreeMapSpliterator<K,V>
+            implements Spliterator<V> {
+        ValueSpliterator(BTreeMap<K,V> map, Leaf leaf, int index,
+                         Leaf fenceLeaf, int fenceIndex, int est) {
+            super(map, leaf, index, fenceLeaf, fenceIndex, est);
+        }
+
+        public ValueSpliterator<K,V> trySplit() {
+            Leaf s = splitLeaf();
+            if (s == null)
+                return null;
+            Leaf l = leaf;
+            int i = index;
+            ValueSpliterator<K,V> prefix =
+                new ValueSpliterator<>(map, l, i, s, 0, cut(s));
+            prefix.split = true;
+            prefix.expectedModCount = expectedModCount;
+            return prefix;
+        }
+
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super V> action) {
+            if (action == null)
+                throw new NullPointerException();
+            Leaf l = leaf, f = fenceLeaf;
+            int i = index, fi = fenceIndex;
+            leaf = f;
+            index = fi;
+            est = 0;
+            for (; l != null; l = l.next, i = 0) {
+                Object[] vs = l.vals;
+                for (int end = (l == f) ? fi : l.size; i < end; ++i)
+                    action.accept((V) vs[i]);
+                if (l == f)
+                    break;
+            }
+            if (map.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super V> action) {
+            if (action == null)
+                throw new NullPointerException();
+            if (exhausted())
+                return false;
+            Leaf l = leaf;
+            int i = index;
+            if (++index == l.size) {
+                leaf = l.next;
+                index = 0;
+            }
+            if (est > 0)
+                --est;
+            action.accept((V) l.vals[i]);
+            if (map.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            return true;
+        }
+
+        public int characteristics() {
+            return (split ? 0 : Spliterator.SIZED) | Spliterator.ORDERED;
+        }
+    }
+
+    static final class EntrySpliterator<K,V>
+        extends BTreeMapSpliterator<K,V>
+        implements Spliterator<Map.Entry<K,V>> {
+        EntrySpliterator(BTreeMap<K,V> map, Leaf leaf, int index,
+                         Leaf fenceLeaf, int fenceIndex, int est) {
+            super(map, leaf, index, fenceLeaf, fenceIndex, est);
+        }
+
+        public EntrySpliterator<K,V> trySplit() {
+            Leaf s = splitLeaf();
+            if (s == null)
+                return null;
+            Leaf l = leaf;
+            int i = index;
+            EntrySpliterator<K,V> prefix =
+                new EntrySpliterator<>(map, l, i, s, 0, cut(s));
+            prefix.split = true;
+            prefix.expectedModCount = expectedModCount;
+            return prefix;
+        }
+
+        public void forEachRemaining(Consumer<? super Map.Entry<K, V>> action) {
+            if (action == null)
+                throw new NullPointerException();
+            Leaf l = leaf, f = fenceLeaf;
+            int i = index, fi = fenceIndex;
+            leaf = f;
+            index = fi;
+            est = 0;
+            for (; l != null; l = l.next, i = 0) {
+                for (int end = (l == f) ? fi : l.size; i < end; ++i)
+                    action.accept(map.new LeafEntry(l, i));
+                if (l == f)
+                    break;
+            }
+            if (map.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+
+        public boolean tryAdvance(Consumer<? super Map.Entry<K,V>> action) {
+            if (action == null)
+                throw new NullPointerException();
+            if (exhausted())
+                return false;
+            Leaf l = leaf;
+            int i = index;
+            if (++index == l.size) {
+                leaf = l.next;
+                index = 0;
+            }
+            if (est > 0)
+                --est;
+            action.accept(map.new LeafEntry(l, i));
+            if (map.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            return true;
+        }
+
+        public int characteristics() {
+            return (split ? 0 : Spliterator.SIZED) |
+                Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.ORDERED;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Comparator<Map.Entry<K, V>> getComparator() {
+            // Adapt or create a key-based comparator
+            if (map.comparator != null) {
+                return Map.Entry.comparingByKey(map.comparator);
+            }
+            else {
+                return (Comparator<Map.Entry<K, V>> & Serializable) (e1, e2) -> {
+                    @SuppressWarnings("unchecked")
+                    Comparable<? super K> k1 = (Comparable<? super K>) e1.getKey();
+                    return k1.compareTo(e2.getKey());
+                };
+            }
+        }
+    }
+
+    private static final long serialVersionUID = 3817265143706240826L;
+}
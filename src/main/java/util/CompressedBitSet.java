@@ -0,0 +1,1882 @@
+package util;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A set of bits indexed by nonnegative integers, stored as compressed
+ * bitmap containers in the manner of Roaring bitmaps.  Where a
+ * {@link BitSet} needs one bit of storage for every index below its
+ * highest set bit, this class splits the index space into chunks of
+ * 2<sup>16</sup> bits by the high 16 bits of each index and stores
+ * only the chunks that contain set bits, each in whichever of three
+ * containers suits its contents:
+ *
+ * <ul>
+ * <li>an <em>array</em> container holds the low 16 bits of each set
+ *     bit in a sorted {@code char[]}, and is used for up to 4096 bits;
+ * <li>a <em>bitmap</em> container holds a {@code long[1024]}, and is
+ *     used for more than 4096 bits;
+ * <li>a <em>run</em> container holds sorted (start, length) pairs of
+ *     consecutive set bits.  Runs are produced by {@link #set(int, int)}
+ *     for whole chunks and by {@link #runOptimize()}.
+ * </ul>
+ *
+ * <p>The logical operations {@link #and}, {@link #or}, {@link #xor} and
+ * {@link #andNot} only visit the chunks present in both operands (for
+ * {@code and}) or in either, and combine two containers with merges of
+ * their arrays or word-wise operations on their bitmaps.  A run
+ * container taking part in such an operation, or being modified, is
+ * first expanded to an array or bitmap; call {@link #runOptimize()}
+ * afterwards to re-encode runs.
+ *
+ * <p>{@link #serialize(ByteBuffer)} writes the set in a portable
+ * little-endian format, and {@link #map(ByteBuffer)} returns a
+ * read-only {@link MappedView} over such an image, for example in a
+ * {@link java.nio.MappedByteBuffer}, that answers membership,
+ * cardinality and rank queries from the buffer in place without
+ * deserializing it.
+ *
+ * <p>Unless otherwise noted, passing a null parameter to any of the
+ * methods in a {@code CompressedBitSet} will result in a
+ * {@code NullPointerException}.
+ *
+ * <p>A {@code CompressedBitSet} is not safe for multithreaded use
+ * without external synchronization.
+ *
+ * @see BitSet
+ */
+public class CompressedBitSet implements Cloneable, Serializable {
+
+    private static final long serialVersionUID = -4381204578232459870L;
+
+    /*
+     * Tuning parameters and layout constants.
+     */
+
+    /**
+     * The largest cardinality held in an array container; a chunk
+     * with more set bits is held in a bitmap container.  At this size
+     * both take 8 KiB.
+     */
+    static final int ARRAY_MAX = 4096;
+
+    /**
+     * The number of words in a bitmap container.
+     */
+    static final int BITMAP_WORDS = 1 << 10;
+
+    /**
+     * The number of bits in a chunk.
+     */
+    static final int CHUNK_BITS = 1 << 16;
+
+    /**
+     * The number of values iterators fetch from a container at once.
+     */
+    static final int BLOCK_SIZE = 256;
+
+    /**
+     * The container type tags used in the serialized format.
+     */
+    static final int ARRAY = 0, BITMAP = 1, RUN = 2;
+
+    /**
+     * The first four bytes of a serialized image: "CBS1" read as a
+     * little-endian int.
+     */
+    static final int COOKIE = 0x31534243;
+
+    /**
+     * The size of the image header (cookie and container count), and
+     * of each container's descriptor that follows it: key (2 bytes),
+     * type (2), cardinality (4) and data offset (4).
+     */
+    static final int HEADER_BYTES = 8, DESCRIPTOR_BYTES = 12;
+
+    /**
+     * The high 16 bits of the chunks present, in ascending order.
+     */
+    private transient char[] keys;
+
+    /**
+     * The containers of the chunks present, parallel to keys.
+     */
+    private transient Container[] containers;
+
+    /**
+     * The number of chunks present.
+     */
+    private transient int size;
+
+    /**
+     * Creates a new, empty bit set.
+     */
+    public CompressedBitSet() {
+        keys = new char[4];
+        containers = new Container[4];
+    }
+
+    private CompressedBitSet(char[] keys, Container[] containers, int size) {
+        this.keys = keys;
+        this.containers = containers;
+        this.size = size;
+    }
+
+    /**
+     * Returns a new bit set containing the given bit indices.
+     *
+     * @param bitIndices the indices of the bits to set
+     * @return a bit set with exactly the given bits set
+     * @throws IndexOutOfBoundsException if any index is negative
+     */
+    public static CompressedBitSet of(int... bitIndices) {
+        CompressedBitSet s = new CompressedBitSet();
+        for (int i : bitIndices)
+            s.set(i);
+        return s;
+    }
+
+    /**
+     * Returns a new bit set containing the bits set in the given
+     * {@code BitSet}.
+     *
+     * @param set a bit set
+     * @return a compressed bit set with the same bits set
+     */
+    public static CompressedBitSet valueOf(BitSet set) {
+        CompressedBitSet s = new CompressedBitSet();
+        BitmapContainer b = null;   // gathers one chunk at a time
+        int high = -1;
+        for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+            if (i >>> 16 != high) {
+                if (b != null)
+                    s.append((char) high, b.normalize());
+                b = new BitmapContainer();
+                high = i >>> 16;
+            }
+            b.add((char) i);
+            if (i == Integer.MAX_VALUE)
+                break;
+        }
+        if (b != null)
+            s.append((char) high, b.normalize());
+        return s;
+    }
+
+    private static void checkIndex(int bitIndex) {
+        if (bitIndex < 0)
+            throw new IndexOutOfBoundsException("bitIndex < 0: " + bitIndex);
+    }
+
+    private static void checkRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0)
+            throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        if (toIndex < 0)
+            throw new IndexOutOfBoundsException("toIndex < 0: " + toIndex);
+        if (fromIndex > toIndex)
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex +
+                                                " > toIndex: " + toIndex);
+    }
+
+    /* ---------------- Chunk table -------------- */
+
+    /**
+     * Returns the index of the given key, or (-(insertion point) - 1).
+     */
+    private int indexOf(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insertAt(int i, char key, Container c) {
+        if (size == keys.length) {
+            int n = Math.max(4, size + (size >> 1));
+            keys = Arrays.copyOf(keys, n);
+            containers = Arrays.copyOf(containers, n);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = key;
+        containers[i] = c;
+        ++size;
+    }
+
+    private void removeAt(int i) {
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+        containers[--size] = null;
+    }
+
+    /**
+     * Adds a chunk with a key greater than all present ones.
+     */
+    private void append(char key, Container c) {
+        if (c != null)
+            insertAt(size, key, c);
+    }
+
+    /**
+     * Replaces the container at index i, removing the chunk if the
+     * new container is null (empty).
+     */
+    private void replaceAt(int i, Container c) {
+        if (c == null)
+            removeAt(i);
+        else
+            containers[i] = c;
+    }
+
+    /* ---------------- Single bits -------------- */
+
+    /**
+     * Returns the value of the bit with the specified index.
+     *
+     * @param bitIndex the bit index
+     * @return the value of the bit with the specified index
+     * @throws IndexOutOfBoundsException if the specified index is negative
+     */
+    public boolean get(int bitIndex) {
+        checkIndex(bitIndex);
+        int i = indexOf((char) (bitIndex >>> 16));
+        return i >= 0 && containers[i].contains((char) bitIndex);
+    }
+
+    /**
+     * Sets the bit at the specified index to {@code true}.
+     *
+     * @param bitIndex a bit index
+     * @throws IndexOutOfBoundsException if the specified index is negative
+     */
+    public void set(int bitIndex) {
+        checkIndex(bitIndex);
+        char key = (char) (bitIndex >>> 16);
+        int i = indexOf(key);
+        if (i >= 0)
+            containers[i] = containers[i].add((char) bitIndex);
+        else
+            insertAt(-i - 1, key, new ArrayContainer().add((char) bitIndex));
+    }
+
+    /**
+     * Sets the bit at the specified index to the specified value.
+     *
+     * @param bitIndex a bit index
+     * @param value a boolean value to set
+     * @throws IndexOutOfBoundsException if the specified index is negative
+     */
+    public void set(int bitIndex, boolean value) {
+        if (value)
+            set(bitIndex);
+        else
+            clear(bitIndex);
+    }
+
+    /**
+     * Sets the bit specified by the index to {@code false}.
+     *
+     * @param bitIndex the index of the bit to be cleared
+     * @throws IndexOutOfBoundsException if the specified index is negative
+     */
+    public void clear(int bitIndex) {
+        checkIndex(bitIndex);
+        int i = indexOf((char) (bitIndex >>> 16));
+        if (i >= 0)
+            replaceAt(i, containers[i].remove((char) bitIndex));
+    }
+
+    /**
+     * Sets the bit at the specified index to the complement of its
+     * current value.
+     *
+     * @param bitIndex the index of the bit to flip
+     * @throws IndexOutOfBoundsException if the specified index is negative
+     */
+    public void flip(int bitIndex) {
+        if (get(bitIndex))
+            clear(bitIndex);
+        else
+            set(bitIndex);
+    }
+
+    /* ---------------- Ranges -------------- */
+
+    /**
+     * Sets the bits from the specified {@code fromIndex} (inclusive) to the
+     * specified {@code toIndex} (exclusive) to {@code true}.  Chunks that
+     * are covered entirely are held as a single run.
+     *
+     * @param fromIndex index of the first bit to be set
+     * @param toIndex index after the last bit to be set
+     * @throws IndexOutOfBoundsException if {@code fromIndex} is negative,
+     *         or {@code toIndex} is negative, or {@code fromIndex} is
+     *         larger than {@code toIndex}
+     */
+    public void set(int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+        if (fromIndex == toIndex)
+            return;
+        int last = toIndex - 1;
+        for (int high = fromIndex >>> 16, endHigh = last >>> 16; high <= endHigh; ++high) {
+            int lo = (high == fromIndex >>> 16) ? fromIndex & 0xFFFF : 0;
+            int hi = (high == endHigh) ? (last & 0xFFFF) + 1 : CHUNK_BITS;
+            Container range = RunContainer.range(lo, hi);
+            int i = indexOf((char) high);
+            if (i < 0)
+                insertAt(-i - 1, (char) high, range);
+            else if (lo == 0 && hi == CHUNK_BITS)
+                containers[i] = range;
+            else
+                containers[i] = or(containers[i], range);
+        }
+    }
+
+    /**
+     * Sets the bits from the specified {@code fromIndex} (inclusive) to the
+     * specified {@code toIndex} (exclusive) to {@code false}.
+     *
+     * @param fromIndex index of the first bit to be cleared
+     * @param toIndex index after the last bit to be cleared
+     * @throws IndexOutOfBoundsException if {@code fromIndex} is negative,
+     *         or {@code toIndex} is negative, or {@code fromIndex} is
+     *         larger than {@code toIndex}
+     */
+    public void clear(int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+        if (fromIndex == toIndex)
+            return;
+        int last = toIndex - 1;
+        for (int high = fromIndex >>> 16, endHigh = last >>> 16; high <= endHigh; ++high) {
+            int i = indexOf((char) high);
+            if (i < 0)
+                continue;
+            int lo = (high == fromIndex >>> 16) ? fromIndex & 0xFFFF : 0;
+            int hi = (high == endHigh) ? (last & 0xFFFF) + 1 : CHUNK_BITS;
+            if (lo == 0 && hi == CHUNK_BITS)
+                removeAt(i);
+            else
+                replaceAt(i, andNot(containers[i], RunContainer.range(lo, hi)));
+        }
+    }
+
+    /**
+     * Sets all of the bits in this bit set to {@code false}.
+     */
+    public void clear() {
+        Arrays.fill(containers, 0, size, null);
+        size = 0;
+    }
+
+    /* ---------------- Queries -------------- */
+
+    /**
+     * Returns the number of bits set to {@code true} in this bit set.
+     *
+     * @return the number of bits set to {@code true} in this bit set
+     */
+    public int cardinality() {
+        int sum = 0;
+        for (int i = 0; i < size; ++i)
+            sum += containers[i].cardinality();
+        return sum;
+    }
+
+    /**
+     * Returns true if this bit set contains no bits that are set
+     * to {@code true}.
+     *
+     * @return boolean indicating whether this bit set is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the "logical size" of this bit set: the index of the
+     * highest set bit plus one.  Returns zero if the set contains no set
+     * bits.
+     *
+     * @return the logical size of this bit set
+     */
+    public int length() {
+        if (size == 0)
+            return 0;
+        return (keys[size - 1] << 16 | containers[size - 1].last()) + 1;
+    }
+
+    /**
+     * Returns the number of bits set to {@code true} at indices less than
+     * or equal to the given index.
+     *
+     * @param bitIndex a bit index
+     * @return the number of set bits at or below {@code bitIndex}
+     * @throws IndexOutOfBoundsException if the specified index is negative
+     */
+    public int rank(int bitIndex) {
+        checkIndex(bitIndex);
+        char key = (char) (bitIndex >>> 16);
+        int sum = 0;
+        for (int i = 0; i < size; ++i) {
+            char k = keys[i];
+            if (k < key)
+                sum += containers[i].cardinality();
+            else {
+                if (k == key)
+                    sum += containers[i].rank((char) bitIndex);
+                break;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the index of the set bit of the given rank, counting from
+     * zero: {@code select(0)} is the lowest set bit, and
+     * {@code select(rank(i) - 1) == i} for every set bit {@code i}.
+     *
+     * @param j the rank of the set bit to find
+     * @return the index of the {@code j}-th lowest set bit
+     * @throws IndexOutOfBoundsException if {@code j} is negative or not
+     *         less than the cardinality of this bit set
+     */
+    public int select(int j) {
+        if (j >= 0) {
+            for (int i = 0, left = j; i < size; ++i) {
+                Container c = containers[i];
+                int card = c.cardinality();
+                if (left < card)
+                    return keys[i] << 16 | c.select(left);
+                left -= card;
+            }
+        }
+        throw new IndexOutOfBoundsException("rank: " + j);
+    }
+
+    /**
+     * Returns the index of the first bit that is set to {@code true}
+     * that occurs on or after the specified starting index.  If no such
+     * bit exists then {@code -1} is returned.
+     *
+     * @param fromIndex the index to start checking from (inclusive)
+     * @return the index of the next set bit, or {@code -1} if there
+     *         is no such bit
+     * @throws IndexOutOfBoundsException if the specified index is negative
+     */
+    public int nextSetBit(int fromIndex) {
+        checkIndex(fromIndex);
+        char key = (char) (fromIndex >>> 16);
+        int i = indexOf(key), low = fromIndex & 0xFFFF;
+        if (i < 0) {
+            i = -i - 1;
+            low = 0;
+        }
+        int[] one = new int[1];
+        for (; i < size; ++i, low = 0) {
+            if (containers[i].fill(low, one, 0, keys[i] << 16) > 0)
+                return one[0];
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true if the specified set has any bits set to {@code true}
+     * that are also set to {@code true} in this set.
+     *
+     * @param set the set to intersect with
+     * @return boolean indicating whether this set intersects the
+     *         specified set
+     */
+    public boolean intersects(CompressedBitSet set) {
+        for (int i = 0, j = 0; i < size && j < set.size; ) {
+            char a = keys[i], b = set.keys[j];
+            if (a < b)
+                ++i;
+            else if (b < a)
+                ++j;
+            else if (and(containers[i++], set.containers[j++]) != null)
+                return true;
+        }
+        return false;
+    }
+
+    /* ---------------- Logical operations -------------- */
+
+    /**
+     * Performs a logical <b>AND</b> of this target bit set with the
+     * argument bit set.  Only chunks present in both sets are visited.
+     *
+     * @param set a bit set
+     */
+    public void and(CompressedBitSet set) {
+        if (this == set)
+            return;
+        int n = 0;
+        for (int i = 0, j = 0; i < size && j < set.size; ) {
+            char a = keys[i], b = set.keys[j];
+            if (a < b)
+                ++i;
+            else if (b < a)
+                ++j;
+            else {
+                Container c = and(containers[i++], set.containers[j++]);
+                if (c != null) {
+                    keys[n] = a;
+                    containers[n++] = c;
+                }
+            }
+        }
+        Arrays.fill(containers, n, size, null);
+        size = n;
+    }
+
+    /**
+     * Performs a logical <b>OR</b> of this bit set with the bit set
+     * argument.
+     *
+     * @param set a bit set
+     */
+    public void or(CompressedBitSet set) {
+        if (this == set)
+            return;
+        merge(set, OR);
+    }
+
+    /**
+     * Performs a logical <b>XOR</b> of this bit set with the bit set
+     * argument.
+     *
+     * @param set a bit set
+     */
+    public void xor(CompressedBitSet set) {
+        if (this == set) {
+            clear();
+            return;
+        }
+        merge(set, XOR);
+    }
+
+    /**
+     * Clears all of the bits in this bit set whose corresponding bit is
+     * set in the specified bit set.
+     *
+     * @param set the bit set with which to mask this bit set
+     */
+    public void andNot(CompressedBitSet set) {
+        if (this == set) {
+            clear();
+            return;
+        }
+        int n = 0;
+        for (int i = 0, j = 0; i < size; ) {
+            char a = keys[i];
+            while (j < set.size && set.keys[j] < a)
+                ++j;
+            Container c = containers[i++];
+            if (j < set.size && set.keys[j] == a)
+                c = andNot(c, set.containers[j++]);
+            if (c != null) {
+                keys[n] = a;
+                containers[n++] = c;
+            }
+        }
+        Arrays.fill(containers, n, size, null);
+        size = n;
+    }
+
+    private static final int OR = 0, XOR = 1;
+
+    /**
+     * Merges the chunks of the given set into this one using OR or
+     * XOR; chunks present only in the other set are copied.
+     */
+    private void merge(CompressedBitSet set, int op) {
+        int na = size, nb = set.size;
+        char[] k = new char[na + nb];
+        Container[] cs = new Container[na + nb];
+        int n = 0, i = 0, j = 0;
+        while (i < na || j < nb) {
+            char a = (i < na) ? keys[i] : Character.MAX_VALUE;
+            char b = (j < nb) ? set.keys[j] : Character.MAX_VALUE;
+            Container c;
+            if (j >= nb || (i < na && a < b)) {
+                c = containers[i++];
+                b = a;
+            } else if (i >= na || b < a) {
+                c = set.containers[j++].clone();
+            } else {
+                c = (op == OR) ? or(containers[i++], set.containers[j++])
+                    : xor(containers[i++], set.containers[j++]);
+            }
+            if (c != null) {
+                k[n] = b;
+                cs[n++] = c;
+            }
+        }
+        keys = k;
+        containers = cs;
+        size = n;
+    }
+
+    /**
+     * Re-encodes each container in whichever of the array, bitmap and
+     * run forms takes the least space.  Sets built from long stretches
+     * of consecutive bits shrink considerably.
+     *
+     * @return true if any container changed form
+     */
+    public boolean runOptimize() {
+        boolean changed = false;
+        for (int i = 0; i < size; ++i) {
+            Container c = containers[i], o = c.optimize();
+            if (o != c) {
+                containers[i] = o;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /* ---------------- Container operations -------------- */
+
+    /*
+     * The binary operations below return null for an empty result,
+     * and never modify or return their arguments (except that a
+     * result may be a new container of the same type).  Run
+     * containers are expanded first, so the remaining cases are
+     * array/array, array/bitmap and bitmap/bitmap.
+     */
+
+    static Container and(Container x, Container y) {
+        x = x.expand();
+        y = y.expand();
+        if (x instanceof ArrayContainer) {
+            if (y instanceof ArrayContainer)
+                return ArrayContainer.and((ArrayContainer) x, (ArrayContainer) y);
+            return ((ArrayContainer) x).filter((BitmapContainer) y, true);
+        }
+        if (y instanceof ArrayContainer)
+            return ((ArrayContainer) y).filter((BitmapContainer) x, true);
+        BitmapContainer a = (BitmapContainer) x, b = (BitmapContainer) y;
+        BitmapContainer r = new BitmapContainer();
+        int card = 0;
+        for (int w = 0; w < BITMAP_WORDS; ++w)
+            card += Long.bitCount(r.words[w] = a.words[w] & b.words[w]);
+        r.cardinality = card;
+        return r.normalize();
+    }
+
+    static Container or(Container x, Container y) {
+        x = x.expand();
+        y = y.expand();
+        if (x instanceof ArrayContainer && y instanceof ArrayContainer) {
+            ArrayContainer a = (ArrayContainer) x, b = (ArrayContainer) y;
+            if (a.cardinality + b.cardinality <= ARRAY_MAX)
+                return ArrayContainer.union(a, b);
+        }
+        BitmapContainer r = new BitmapContainer();
+        r.or(x);
+        r.or(y);
+        return r.normalize();
+    }
+
+    static Container xor(Container x, Container y) {
+        x = x.expand();
+        y = y.expand();
+        if (x instanceof ArrayContainer && y instanceof ArrayContainer) {
+            ArrayContainer a = (ArrayContainer) x, b = (ArrayContainer) y;
+            if (a.cardinality + b.cardinality <= ARRAY_MAX)
+                return ArrayContainer.xor(a, b);
+        }
+        BitmapContainer r = new BitmapContainer();
+        r.or(x);
+        r.xor(y);
+        return r.normalize();
+    }
+
+    static Container andNot(Container x, Container y) {
+        x = x.expand();
+        y = y.expand();
+        if (x instanceof ArrayContainer) {
+            if (y instanceof ArrayContainer)
+                return ArrayContainer.andNot((ArrayContainer) x, (ArrayContainer) y);
+            return ((ArrayContainer) x).filter((BitmapContainer) y, false);
+        }
+        BitmapContainer r = ((BitmapContainer) x).clone();
+        r.andNot(y);
+        return r.normalize();
+    }
+
+    /**
+     * A set of 16-bit values: the low bits of the set bits of one
+     * chunk.  Containers are never empty while in a set.
+     */
+    abstract static class Container implements Cloneable {
+        abstract int cardinality();
+        abstract boolean contains(char x);
+        /** Returns this or a replacement container with x added. */
+        abstract Container add(char x);
+        /** Returns this or a replacement container, or null if empty. */
+        abstract Container remove(char x);
+        /** Returns the number of values less than or equal to x. */
+        abstract int rank(char x);
+        /** Returns the j-th smallest value, counting from zero. */
+        abstract int select(int j);
+        /** Returns the largest value. */
+        abstract int last();
+        /**
+         * Writes the values not less than from, each or'ed with high,
+         * to buf starting at off until buf is full, and returns the
+         * number written.
+         */
+        abstract int fill(int from, int[] buf, int off, int high);
+        /** Returns an equivalent array or bitmap container. */
+        abstract Container expand();
+        /** Returns the type tag of the serialized format. */
+        abstract int type();
+        /** Returns the size of the serialized data, in bytes. */
+        abstract int serializedBytes();
+        /** Writes the serialized data at the buffer's position. */
+        abstract void serialize(ByteBuffer buf);
+
+        /**
+         * Returns the number of runs of consecutive values.
+         */
+        int runCount() {
+            int[] buf = new int[BLOCK_SIZE];
+            int runs = 0, prev = -2;
+            for (int from = 0, n; from < CHUNK_BITS &&
+                     (n = fill(from, buf, 0, 0)) > 0; ) {
+                for (int i = 0; i < n; ++i) {
+                    int v = buf[i];
+                    if (v != prev + 1)
+                        ++runs;
+                    prev = v;
+                }
+                from = prev + 1;
+            }
+            return runs;
+        }
+
+        /**
+         * Returns the smallest of the three encodings of this
+         * container's values; this if it is already the smallest.
+         */
+        Container optimize() {
+            int card = cardinality(), runs = runCount();
+            int runBytes = 2 + 4 * runs;
+            int plainBytes = (card <= ARRAY_MAX) ? 2 * card : 8 * BITMAP_WORDS;
+            if (runBytes < plainBytes)
+                return (this instanceof RunContainer) ? this : RunContainer.of(this, runs);
+            return expand();
+        }
+
+        /**
+         * Returns true if the other container holds the same values.
+         */
+        final boolean sameValues(Container o) {
+            return cardinality() == o.cardinality() && xor(this, o) == null;
+        }
+
+        @Override
+        public Container clone() {
+            try {
+                return (Container) super.clone();
+            } catch (CloneNotSupportedException e) {
+                throw new InternalError(e);
+            }
+        }
+    }
+
+    /**
+     * Container holding up to ARRAY_MAX values in a sorted array.
+     */
+    static final class ArrayContainer extends Container {
+        char[] content;
+        int cardinality;
+
+        ArrayContainer() {
+            content = new char[4];
+        }
+
+        ArrayContainer(char[] content, int cardinality) {
+            this.content = content;
+            this.cardinality = cardinality;
+        }
+
+        int cardinality() { return cardinality; }
+        int type() { return ARRAY; }
+        int last() { return content[cardinality - 1]; }
+        int select(int j) { return content[j]; }
+        Container expand() { return this; }
+
+        boolean contains(char x) {
+            return Arrays.binarySearch(content, 0, cardinality, x) >= 0;
+        }
+
+        Container add(char x) {
+            int i = Arrays.binarySearch(content, 0, cardinality, x);
+            if (i >= 0)
+                return this;
+            if (cardinality == ARRAY_MAX)
+                return toBitmap().add(x);
+            i = -i - 1;
+            if (cardinality == content.length)
+                content = Arrays.copyOf(content,
+                                        Math.min(ARRAY_MAX, cardinality << 1));
+            System.arraycopy(content, i, content, i + 1, cardinality - i);
+            content[i] = x;
+            ++cardinality;
+            return this;
+        }
+
+        Container remove(char x) {
+            int i = Arrays.binarySearch(content, 0, cardinality, x);
+            if (i >= 0) {
+                if (cardinality == 1)
+                    return null;
+                System.arraycopy(content, i + 1, content, i, cardinality - i - 1);
+                --cardinality;
+            }
+            return this;
+        }
+
+        int rank(char x) {
+            int i = Arrays.binarySearch(content, 0, cardinality, x);
+            return (i >= 0) ? i + 1 : -i - 1;
+        }
+
+        int fill(int from, int[] buf, int off, int high) {
+            int i = lowerBound(content, cardinality, from);
+            int n = Math.min(buf.length - off, cardinality - i);
+            for (int k = 0; k < n; ++k)
+                buf[off + k] = high | content[i + k];
+            return n;
+        }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer b = new BitmapContainer();
+            b.or(this);
+            return b;
+        }
+
+        /**
+         * Returns the values of this container that are (keep = true)
+         * or are not (keep = false) in the bitmap, or null if none.
+         */
+        Container filter(BitmapContainer b, boolean keep) {
+            char[] r = new char[cardinality];
+            int n = 0;
+            long[] words = b.words;
+            for (int i = 0; i < cardinality; ++i) {
+                char v = content[i];
+                if (((words[v >>> 6] & (1L << v)) != 0L) == keep)
+                    r[n++] = v;
+            }
+            return (n == 0) ? null : new ArrayContainer(r, n);
+        }
+
+        static Container and(ArrayContainer a, ArrayContainer b) {
+            char[] x = a.content, y = b.content, r = new char[Math.min(a.cardinality, b.cardinality)];
+            int i = 0, j = 0, n = 0, na = a.cardinality, nb = b.cardinality;
+            while (i < na && j < nb) {
+                char u = x[i], v = y[j];
+                if (u < v)
+                    ++i;
+                else if (v < u)
+                    ++j;
+                else {
+                    r[n++] = u; ++i; ++j;
+                }
+            }
+            return (n == 0) ? null : new ArrayContainer(r, n);
+        }
+
+        static Container union(ArrayContainer a, ArrayContainer b) {
+            char[] x = a.content, y = b.content, r = new char[a.cardinality + b.cardinality];
+            int i = 0, j = 0, n = 0, na = a.cardinality, nb = b.cardinality;
+            while (i < na && j < nb) {
+                char u = x[i], v = y[j];
+                if (u < v) {
+                    r[n++] = u; ++i;
+                } else if (v < u) {
+                    r[n++] = v; ++j;
+                } else {
+                    r[n++] = u; ++i; ++j;
+                }
+            }
+            while (i < na)
+                r[n++] = x[i++];
+            while (j < nb)
+                r[n++] = y[j++];
+            return (n == 0) ? null : new ArrayContainer(r, n);
+        }
+
+        static Container xor(ArrayContainer a, ArrayContainer b) {
+            char[] x = a.content, y = b.content, r = new char[a.cardinality + b.cardinality];
+            int i = 0, j = 0, n = 0, na = a.cardinality, nb = b.cardinality;
+            while (i < na && j < nb) {
+                char u = x[i], v = y[j];
+                if (u < v) {
+                    r[n++] = u; ++i;
+                } else if (v < u) {
+                    r[n++] = v; ++j;
+                } else {
+                    ++i; ++j;
+                }
+            }
+            while (i < na)
+                r[n++] = x[i++];
+            while (j < nb)
+                r[n++] = y[j++];
+            return (n == 0) ? null : new ArrayContainer(r, n);
+        }
+
+        static Container andNot(ArrayContainer a, ArrayContainer b) {
+            char[] x = a.content, y = b.content, r = new char[a.cardinality];
+            int i = 0, j = 0, n = 0, na = a.cardinality, nb = b.cardinality;
+            while (i < na && j < nb) {
+                char u = x[i], v = y[j];
+                if (u < v) {
+                    r[n++] = u; ++i;
+                } else if (v < u)
+                    ++j;
+                else {
+                    ++i; ++j;
+                }
+            }
+            while (i < na)
+                r[n++] = x[i++];
+            return (n == 0) ? null : new ArrayContainer(r, n);
+        }
+
+        int serializedBytes() { return 2 * cardinality; }
+
+        void serialize(ByteBuffer buf) {
+            for (int i = 0; i < cardinality; ++i)
+                buf.putChar(content[i]);
+        }
+
+        @Override
+        public ArrayContainer clone() {
+            return new ArrayContainer(Arrays.copyOf(content, cardinality), cardinality);
+        }
+    }
+
+    /**
+     * Container holding more than ARRAY_MAX values in a bitmap.
+     */
+    static final class BitmapContainer extends Container {
+        final long[] words;
+        int cardinality;
+
+        BitmapContainer() {
+            words = new long[BITMAP_WORDS];
+        }
+
+        private BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        int cardinality() { return cardinality; }
+        int type() { return BITMAP; }
+        Container expand() { return this; }
+
+        boolean contains(char x) {
+            return (words[x >>> 6] & (1L << x)) != 0L;
+        }
+
+        Container add(char x) {
+            long w = words[x >>> 6], m = 1L << x;
+            if ((w & m) == 0L) {
+                words[x >>> 6] = w | m;
+                ++cardinality;
+            }
+            return this;
+        }
+
+        Container remove(char x) {
+            long w = words[x >>> 6], m = 1L << x;
+            if ((w & m) != 0L) {
+                words[x >>> 6] = w & ~m;
+                if (--cardinality <= ARRAY_MAX)
+                    return toArray();
+            }
+            return this;
+        }
+
+        int rank(char x) {
+            int sum = 0, wi = x >>> 6;
+            for (int w = 0; w < wi; ++w)
+                sum += Long.bitCount(words[w]);
+            return sum + Long.bitCount(words[wi] & (-1L >>> (63 - (x & 63))));
+        }
+
+        int select(int j) {
+            for (int w = 0; w < BITMAP_WORDS; ++w) {
+                long word = words[w];
+                int c = Long.bitCount(word);
+                if (j < c) {
+                    for (; j > 0; --j)
+                        word &= word - 1;
+                    return w << 6 | Long.numberOfTrailingZeros(word);
+                }
+                j -= c;
+            }
+            throw new IndexOutOfBoundsException();
+        }
+
+        int last() {
+            int w = BITMAP_WORDS - 1;
+            while (words[w] == 0L)
+                --w;
+            return w << 6 | (63 - Long.numberOfLeadingZeros(words[w]));
+        }
+
+        int fill(int from, int[] buf, int off, int high) {
+            int n = off, w = from >>> 6;
+            if (w >= BITMAP_WORDS)
+                return 0;
+            long word = words[w] & (-1L << from);
+            while (n < buf.length) {
+                while (word == 0L) {
+                    if (++w == BITMAP_WORDS)
+                        return n - off;
+                    word = words[w];
+                }
+                buf[n++] = high | w << 6 | Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+            return n - off;
+        }
+
+        /** Adds the values of an array or bitmap container. */
+        void or(Container c) {
+            if (c instanceof ArrayContainer) {
+                ArrayContainer a = (ArrayContainer) c;
+                for (int i = 0; i < a.cardinality; ++i) {
+                    char v = a.content[i];
+                    words[v >>> 6] |= 1L << v;
+                }
+            } else {
+                long[] o = ((BitmapContainer) c).words;
+                for (int w = 0; w < BITMAP_WORDS; ++w)
+                    words[w] |= o[w];
+            }
+            recount();
+        }
+
+        /** Flips the values of an array or bitmap container. */
+        void xor(Container c) {
+            if (c instanceof ArrayContainer) {
+                ArrayContainer a = (ArrayContainer) c;
+                for (int i = 0; i < a.cardinality; ++i) {
+                    char v = a.content[i];
+                    words[v >>> 6] ^= 1L << v;
+                }
+            } else {
+                long[] o = ((BitmapContainer) c).words;
+                for (int w = 0; w < BITMAP_WORDS; ++w)
+                    words[w] ^= o[w];
+            }
+            recount();
+        }
+
+        /** Removes the values of an array or bitmap container. */
+        void andNot(Container c) {
+            if (c instanceof ArrayContainer) {
+                ArrayContainer a = (ArrayContainer) c;
+                for (int i = 0; i < a.cardinality; ++i) {
+                    char v = a.content[i];
+                    words[v >>> 6] &= ~(1L << v);
+                }
+            } else {
+                long[] o = ((BitmapContainer) c).words;
+                for (int w = 0; w < BITMAP_WORDS; ++w)
+                    words[w] &= ~o[w];
+            }
+            recount();
+        }
+
+        private void recount() {
+            int card = 0;
+            for (long w : words)
+                card += Long.bitCount(w);
+            cardinality = card;
+        }
+
+        /**
+         * Returns null if empty, an array container if small enough,
+         * else this.
+         */
+        Container normalize() {
+            if (cardinality == 0)
+                return null;
+            return (cardinality <= ARRAY_MAX) ? toArray() : this;
+        }
+
+        ArrayContainer toArray() {
+            char[] r = new char[cardinality];
+            int n = 0;
+            for (int w = 0; w < BITMAP_WORDS; ++w) {
+                for (long word = words[w]; word != 0L; word &= word - 1)
+                    r[n++] = (char) (w << 6 | Long.numberOfTrailingZeros(word));
+            }
+            return new ArrayContainer(r, n);
+        }
+
+        @Override
+        int runCount() {
+            int runs = 0;
+            long prev = 0L;
+            for (long w : words) {
+                // a run starts at each set bit whose lower neighbour is clear
+                runs += Long.bitCount(w & ~(w << 1 | prev >>> 63));
+                prev = w;
+            }
+            return runs;
+        }
+
+        int serializedBytes() { return 8 * BITMAP_WORDS; }
+
+        void serialize(ByteBuffer buf) {
+            for (long w : words)
+                buf.putLong(w);
+        }
+
+        @Override
+        public BitmapContainer clone() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+    }
+
+    /**
+     * Container holding runs of consecutive values as (start, length
+     * - 1) pairs, sorted by start.
+     */
+    static final class RunContainer extends Container {
+        final char[] runs;     // start, length - 1, start, length - 1, ...
+        final int nruns;
+        final int cardinality;
+
+        RunContainer(char[] runs, int nruns) {
+            this.runs = runs;
+            this.nruns = nruns;
+            int card = 0;
+            for (int r = 0; r < nruns; ++r)
+                card += runs[2 * r + 1] + 1;
+            this.cardinality = card;
+        }
+
+        /** Returns the container of the values [lo, hi), hi > lo. */
+        static RunContainer range(int lo, int hi) {
+            return new RunContainer(new char[] { (char) lo, (char) (hi - lo - 1) }, 1);
+        }
+
+        /** Returns the run encoding of a container with the given run count. */
+        static RunContainer of(Container c, int nruns) {
+            char[] runs = new char[2 * nruns];
+            int[] buf = new int[BLOCK_SIZE];
+            int r = -1, prev = -2;
+            for (int from = 0, n; from < CHUNK_BITS &&
+                     (n = c.fill(from, buf, 0, 0)) > 0; ) {
+                for (int i = 0; i < n; ++i) {
+                    int v = buf[i];
+                    if (v != prev + 1) {
+                        runs[2 * ++r] = (char) v;
+                    } else {
+                        ++runs[2 * r + 1];
+                    }
+                    prev = v;
+                }
+                from = prev + 1;
+            }
+            return new RunContainer(runs, nruns);
+        }
+
+        int cardinality() { return cardinality; }
+        int type() { return RUN; }
+
+        int last() {
+            return runs[2 * nruns - 2] + runs[2 * nruns - 1];
+        }
+
+        /**
+         * Returns the index of the last run starting at or before x,
+         * or -1 if none.
+         */
+        private int runFor(int x) {
+            int low = 0, high = nruns - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (runs[2 * mid] <= x)
+                    low = mid + 1;
+                else
+                    high = mid - 1;
+            }
+            return high;
+        }
+
+        boolean contains(char x) {
+            int r = runFor(x);
+            return r >= 0 && x - runs[2 * r] <= runs[2 * r + 1];
+        }
+
+        Container add(char x) {
+            return contains(x) ? this : expand().add(x);
+        }
+
+        Container remove(char x) {
+            return contains(x) ? expand().remove(x) : this;
+        }
+
+        int rank(char x) {
+            int sum = 0;
+            for (int r = 0; r < nruns; ++r) {
+                int start = runs[2 * r], len = runs[2 * r + 1] + 1;
+                if (x < start)
+                    break;
+                sum += Math.min(len, x - start + 1);
+            }
+            return sum;
+        }
+
+        int select(int j) {
+            for (int r = 0; r < nruns; ++r) {
+                int len = runs[2 * r + 1] + 1;
+                if (j < len)
+                    return runs[2 * r] + j;
+                j -= len;
+            }
+            throw new IndexOutOfBoundsException();
+        }
+
+        int fill(int from, int[] buf, int off, int high) {
+            int r = Math.max(0, runFor(from)), n = off;
+            for (; r < nruns && n < buf.length; ++r) {
+                int start = runs[2 * r], end = start + runs[2 * r + 1];
+                for (int v = Math.max(start, from); v <= end && n < buf.length; ++v)
+                    buf[n++] = high | v;
+            }
+            return n - off;
+        }
+
+        Container expand() {
+            if (cardinality <= ARRAY_MAX) {
+                char[] r = new char[cardinality];
+                int n = 0;
+                for (int k = 0; k < nruns; ++k) {
+                    for (int v = runs[2 * k], end = v + runs[2 * k + 1]; v <= end; ++v)
+                        r[n++] = (char) v;
+                }
+                return new ArrayContainer(r, n);
+            }
+            BitmapContainer b = new BitmapContainer();
+            long[] words = b.words;
+            for (int k = 0; k < nruns; ++k) {
+                int start = runs[2 * k], end = start + runs[2 * k + 1];
+                int ws = start >>> 6, we = end >>> 6;
+                long first = -1L << start, last = -1L >>> (63 - (end & 63));
+                if (ws == we)
+                    words[ws] |= first & last;
+                else {
+                    words[ws] |= first;
+                    for (int w = ws + 1; w < we; ++w)
+                        words[w] = -1L;
+                    words[we] |= last;
+                }
+            }
+            b.cardinality = cardinality;
+            return b;
+        }
+
+        @Override
+        int runCount() { return nruns; }
+
+        int serializedBytes() { return 2 + 4 * nruns; }
+
+        void serialize(ByteBuffer buf) {
+            buf.putChar((char) nruns);
+            for (int i = 0; i < 2 * nruns; ++i)
+                buf.putChar(runs[i]);
+        }
+
+        @Override
+        public RunContainer clone() {
+            return this;  // immutable
+        }
+    }
+
+    /**
+     * Returns the least index in [0, n) whose value is not less than
+     * x, or n if none.
+     */
+    static int lowerBound(char[] a, int n, int x) {
+        int low = 0, high = n;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (a[mid] < x)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /* ---------------- Serialized format -------------- */
+
+    /*
+     * The image is little-endian:
+     *
+     *   int    COOKIE
+     *   int    number of containers n
+     *   n x {  char key; char type; int cardinality; int offset }
+     *   container data, at the offsets given (from the image start):
+     *     array:  cardinality chars
+     *     bitmap: 1024 longs
+     *     run:    char nruns, then nruns (start, length - 1) char pairs
+     *
+     * Descriptors have a fixed size and are sorted by key, so a reader
+     * can binary search them in place.
+     */
+
+    /**
+     * Returns the number of bytes {@link #serialize(ByteBuffer)} will
+     * write.
+     *
+     * @return the size of the serialized image, in bytes
+     */
+    public int serializedSize() {
+        int bytes = HEADER_BYTES + DESCRIPTOR_BYTES * size;
+        for (int i = 0; i < size; ++i)
+            bytes += containers[i].serializedBytes();
+        return bytes;
+    }
+
+    /**
+     * Writes this bit set to the buffer in the portable format read by
+     * {@link #valueOf(ByteBuffer)} and {@link #map(ByteBuffer)}, starting
+     * at the buffer's position and advancing it past the image.  The
+     * buffer's byte order is not changed.
+     *
+     * @param buf the buffer to write to
+     * @throws java.nio.BufferOverflowException if fewer than
+     *         {@link #serializedSize()} bytes remain in the buffer
+     * @throws java.nio.ReadOnlyBufferException if the buffer is read-only
+     */
+    public void serialize(ByteBuffer buf) {
+        ByteBuffer b = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+        b.putInt(COOKIE).putInt(size);
+        int offset = HEADER_BYTES + DESCRIPTOR_BYTES * size;
+        for (int i = 0; i < size; ++i) {
+            Container c = containers[i];
+            b.putChar(keys[i]).putChar((char) c.type())
+                .putInt(c.cardinality()).putInt(offset);
+            offset += c.serializedBytes();
+        }
+        for (int i = 0; i < size; ++i)
+            containers[i].serialize(b);
+        buf.position(buf.position() + b.position());
+    }
+
+    /**
+     * Reads a bit set from the image at the buffer's position, as
+     * written by {@link #serialize(ByteBuffer)}, and advances the
+     * position past it.  The result is independent of the buffer.
+     *
+     * @param buf the buffer to read from
+     * @return a bit set with the bits set in the image
+     * @throws IllegalArgumentException if the buffer does not hold a
+     *         valid image
+     */
+    public static CompressedBitSet valueOf(ByteBuffer buf) {
+        MappedView v = new MappedView(buf);
+        int n = v.size;
+        char[] keys = new char[Math.max(4, n)];
+        Container[] cs = new Container[keys.length];
+        int end = HEADER_BYTES + DESCRIPTOR_BYTES * n;
+        for (int i = 0; i < n; ++i) {
+            keys[i] = v.key(i);
+            cs[i] = v.container(i);
+            end = Math.max(end, v.offset(i) + cs[i].serializedBytes());
+        }
+        buf.position(buf.position() + end);
+        return new CompressedBitSet(keys, cs, n);
+    }
+
+    /**
+     * Returns a read-only view of the image at the buffer's position, as
+     * written by {@link #serialize(ByteBuffer)}.  The view reads the
+     * buffer in place, so mapping a file with
+     * {@link java.nio.channels.FileChannel#map} gives access to a stored
+     * bit set without reading it all into the heap.  The buffer's
+     * position is not changed, and the image must not be modified while
+     * the view is in use.
+     *
+     * @param buf the buffer holding the image
+     * @return a view of the image
+     * @throws IllegalArgumentException if the buffer does not start
+     *         with a valid image header
+     */
+    public static MappedView map(ByteBuffer buf) {
+        return new MappedView(buf);
+    }
+
+    /**
+     * A read-only bit set backed by a serialized image in a
+     * {@link ByteBuffer}.  Membership, cardinality and rank queries are
+     * answered from the buffer in place; iteration decodes one
+     * container at a time.
+     *
+     * @see CompressedBitSet#map(ByteBuffer)
+     */
+    public static final class MappedView {
+        private final ByteBuffer buf;
+        private final int size;
+        private final int cardinality;
+
+        MappedView(ByteBuffer image) {
+            ByteBuffer b = image.slice().order(ByteOrder.LITTLE_ENDIAN);
+            try {
+                if (b.getInt(0) != COOKIE)
+                    throw new IllegalArgumentException("not a CompressedBitSet image");
+                int n = b.getInt(4);
+                if (n < 0 || n > CHUNK_BITS)
+                    throw new IllegalArgumentException("bad container count: " + n);
+                long card = 0L;
+                for (int i = 0; i < n; ++i)
+                    card += b.getInt(HEADER_BYTES + DESCRIPTOR_BYTES * i + 4);
+                this.buf = b;
+                this.size = n;
+                this.cardinality = (int) Math.min(card, Integer.MAX_VALUE);
+            } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+                throw new IllegalArgumentException("truncated CompressedBitSet image", e);
+            }
+        }
+
+        char key(int i) {
+            return buf.getChar(HEADER_BYTES + DESCRIPTOR_BYTES * i);
+        }
+
+        private int type(int i) {
+            return buf.getChar(HEADER_BYTES + DESCRIPTOR_BYTES * i + 2);
+        }
+
+        private int cardinality(int i) {
+            return buf.getInt(HEADER_BYTES + DESCRIPTOR_BYTES * i + 4);
+        }
+
+        int offset(int i) {
+            return buf.getInt(HEADER_BYTES + DESCRIPTOR_BYTES * i + 8);
+        }
+
+        private int indexOf(char key) {
+            int low = 0, high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char k = key(mid);
+                if (k < key)
+                    low = mid + 1;
+                else if (k > key)
+                    high = mid - 1;
+                else
+                    return mid;
+            }
+            return -(low + 1);
+        }
+
+        /**
+         * Decodes the container at index i.
+         */
+        Container container(int i) {
+            int type = type(i), card = cardinality(i), off = offset(i);
+            switch (type) {
+                case ARRAY: {
+                    char[] c = new char[card];
+                    for (int k = 0; k < card; ++k)
+                        c[k] = buf.getChar(off + 2 * k);
+                    return new ArrayContainer(c, card);
+                }
+                case BITMAP: {
+                    BitmapContainer b = new BitmapContainer();
+                    for (int w = 0; w < BITMAP_WORDS; ++w)
+                        b.words[w] = buf.getLong(off + 8 * w);
+                    b.cardinality = card;
+                    return b;
+                }
+                case RUN: {
+                    int nruns = buf.getChar(off);
+                    char[] runs = new char[2 * nruns];
+                    for (int k = 0; k < runs.length; ++k)
+                        runs[k] = buf.getChar(off + 2 + 2 * k);
+                    return new RunContainer(runs, nruns);
+                }
+                default:
+                    throw new IllegalArgumentException("bad container type: " + type);
+            }
+        }
+
+        /**
+         * Returns the value of the bit with the specified index.
+         *
+         * @param bitIndex the bit index
+         * @return the value of the bit with the specified index
+         * @throws IndexOutOfBoundsException if the specified index is negative
+         */
+        public boolean get(int bitIndex) {
+            checkIndex(bitIndex);
+            int i = indexOf((char) (bitIndex >>> 16));
+            if (i < 0)
+                return false;
+            int x = bitIndex & 0xFFFF, off = offset(i);
+            switch (type(i)) {
+                case ARRAY: {
+                    int k = arrayLowerBound(off, cardinality(i), x);
+                    return k < cardinality(i) && buf.getChar(off + 2 * k) == x;
+                }
+                case BITMAP:
+                    return (buf.getLong(off + 8 * (x >>> 6)) & (1L << x)) != 0L;
+                default: {
+                    int r = runFor(off, x);
+                    return r >= 0 && x - buf.getChar(off + 2 + 4 * r) <=
+                        buf.getChar(off + 4 + 4 * r);
+                }
+            }
+        }
+
+        /**
+         * Returns the number of bits set to {@code true}.
+         *
+         * @return the number of bits set to {@code true}
+         */
+        public int cardinality() {
+            return cardinality;
+        }
+
+        /**
+         * Returns true if no bits are set to {@code true}.
+         *
+         * @return boolean indicating whether the set is empty
+         */
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Returns the number of bits set to {@code true} at indices less
+         * than or equal to the given index.
+         *
+         * @param bitIndex a bit index
+         * @return the number of set bits at or below {@code bitIndex}
+         * @throws IndexOutOfBoundsException if the specified index is negative
+         * @see CompressedBitSet#rank(int)
+         */
+        public int rank(int bitIndex) {
+            checkIndex(bitIndex);
+            char key = (char) (bitIndex >>> 16);
+            int sum = 0, i = 0;
+            for (; i < size && key(i) < key; ++i)
+                sum += cardinality(i);
+            if (i == size || key(i) != key)
+                return sum;
+            int x = bitIndex & 0xFFFF, off = offset(i);
+            switch (type(i)) {
+                case ARRAY: {
+                    int card = cardinality(i), k = arrayLowerBound(off, card, x);
+                    return sum + k + ((k < card && buf.getChar(off + 2 * k) == x) ? 1 : 0);
+                }
+                case BITMAP: {
+                    int wi = x >>> 6;
+                    for (int w = 0; w < wi; ++w)
+                        sum += Long.bitCount(buf.getLong(off + 8 * w));
+                    return sum + Long.bitCount(buf.getLong(off + 8 * wi) &
+                                               (-1L >>> (63 - (x & 63))));
+                }
+                default: {
+                    for (int r = 0, nruns = buf.getChar(off); r < nruns; ++r) {
+                        int start = buf.getChar(off + 2 + 4 * r);
+                        if (x < start)
+                            break;
+                        sum += Math.min(buf.getChar(off + 4 + 4 * r) + 1, x - start + 1);
+                    }
+                    return sum;
+                }
+            }
+        }
+
+        /**
+         * Returns the index of the first bit that is set to {@code true}
+         * that occurs on or after the specified starting index, or
+         * {@code -1} if there is none.
+         *
+         * @param fromIndex the index to start checking from (inclusive)
+         * @return the index of the next set bit, or {@code -1}
+         * @throws IndexOutOfBoundsException if the specified index is negative
+         */
+        public int nextSetBit(int fromIndex) {
+            checkIndex(fromIndex);
+            int i = indexOf((char) (fromIndex >>> 16)), low = fromIndex & 0xFFFF;
+            if (i < 0) {
+                i = -i - 1;
+                low = 0;
+            }
+            int[] one = new int[1];
+            for (; i < size; ++i, low = 0) {
+                if (container(i).fill(low, one, 0, key(i) << 16) > 0)
+                    return one[0];
+            }
+            return -1;
+        }
+
+        /**
+         * Returns a stream of the indices of the set bits, in ascending
+         * order.
+         *
+         * @return a stream of integers representing set indices
+         */
+        public IntStream stream() {
+            return CompressedBitSet.stream(new BlockIterator() {
+                int count() { return size; }
+                char key(int i) { return MappedView.this.key(i); }
+                Container container(int i) { return MappedView.this.container(i); }
+            }, cardinality);
+        }
+
+        /**
+         * Returns a modifiable copy of the bit set held by the image.
+         *
+         * @return a new bit set with the same bits set
+         */
+        public CompressedBitSet toCompressedBitSet() {
+            return CompressedBitSet.valueOf(buf.duplicate());
+        }
+
+        private int arrayLowerBound(int off, int card, int x) {
+            int low = 0, high = card;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (buf.getChar(off + 2 * mid) < x)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return low;
+        }
+
+        private int runFor(int off, int x) {
+            int low = 0, high = buf.getChar(off) - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (buf.getChar(off + 2 + 4 * mid) <= x)
+                    low = mid + 1;
+                else
+                    high = mid - 1;
+            }
+            return high;
+        }
+    }
+
+    /* ---------------- Iteration -------------- */
+
+    /**
+     * Iterator over the set bits of a sequence of containers, fetching
+     * BLOCK_SIZE values at a time.
+     */
+    abstract static class BlockIterator implements PrimitiveIterator.OfInt {
+        final int[] block = new int[BLOCK_SIZE];
+        int pos, len;       // unread values are block[pos, len)
+        int index;          // container to fetch from next
+        int from;           // low bits to fetch from next
+
+        abstract int count();
+        abstract char key(int i);
+        abstract Container container(int i);
+
+        private boolean fetch() {
+            for (int n = count(); index < n; ++index, from = 0) {
+                int got = container(index).fill(from, block, 0, key(index) << 16);
+                if (got > 0) {
+                    pos = 0;
+                    len = got;
+                    if ((from = (block[got - 1] & 0xFFFF) + 1) == CHUNK_BITS) {
+                        ++index;
+                        from = 0;
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return pos < len || fetch();
+        }
+
+        @Override
+        public int nextInt() {
+            if (pos < len || fetch())
+                return block[pos++];
+            throw new NoSuchElementException();
+        }
+    }
+
+    static IntStream stream(BlockIterator it, int cardinality) {
+        return StreamSupport.intStream(
+                () -> Spliterators.spliterator(
+                        it, cardinality,
+                        Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SORTED),
+                Spliterator.SIZED | Spliterator.SUBSIZED |
+                        Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SORTED,
+                false);
+    }
+
+    /**
+     * Returns a stream of indices for which this bit set contains a bit
+     * in the set state, in order from lowest to highest.  The size of
+     * the stream is the number of bits in the set state.
+     *
+     * <p>The bit set must remain constant during the execution of the
+     * terminal stream operation.  Otherwise, the result of the terminal
+     * stream operation is undefined.
+     *
+     * @return a stream of integers representing set indices
+     */
+    public IntStream stream() {
+        return stream(new BlockIterator() {
+            int count() { return size; }
+            char key(int i) { return keys[i]; }
+            Container container(int i) { return containers[i]; }
+        }, cardinality());
+    }
+
+    /* ---------------- Object methods -------------- */
+
+    /**
+     * Returns the hash code value for this bit set, which depends only
+     * on which bits are set.
+     *
+     * @return the hash code value for this bit set
+     */
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (PrimitiveIterator.OfInt it = stream().iterator(); it.hasNext(); )
+            h = 31 * h + it.nextInt();
+        return h;
+    }
+
+    /**
+     * Compares this object against the specified object.  The result is
+     * {@code true} if and only if the argument is a
+     * {@code CompressedBitSet} with exactly the same bits set, whatever
+     * containers hold them.
+     *
+     * @param obj the object to compare with
+     * @return {@code true} if the objects are the same;
+     *         {@code false} otherwise
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof CompressedBitSet))
+            return false;
+        CompressedBitSet set = (CompressedBitSet) obj;
+        if (size != set.size)
+            return false;
+        for (int i = 0; i < size; ++i) {
+            if (keys[i] != set.keys[i] ||
+                !containers[i].sameValues(set.containers[i]))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Cloning this {@code CompressedBitSet} produces a new set that is
+     * equal to it.
+     *
+     * @return a clone of this bit set
+     */
+    @Override
+    public CompressedBitSet clone() {
+        try {
+            CompressedBitSet result = (CompressedBitSet) super.clone();
+            result.keys = keys.clone();
+            result.containers = containers.clone();
+            for (int i = 0; i < size; ++i)
+                result.containers[i] = containers[i].clone();
+            return result;
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+    }
+
+    /**
+     * Returns a string representation of this bit set: the indices of
+     * the set bits in increasing order, separated by ", " and
+     * surrounded by braces, as for {@link BitSet#toString()}.
+     *
+     * @return a string representation of this bit set
+     */
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder("{");
+        for (PrimitiveIterator.OfInt it = stream().iterator(); it.hasNext(); ) {
+            b.append(it.nextInt());
+            if (it.hasNext())
+                b.append(", ");
+        }
+        return b.append('}').toString();
+    }
+
+    /**
+     * Saves the state of the {@code CompressedBitSet} instance to a
+     * stream.
+     *
+     * @serialData The length of the image (int) followed by the image in
+     * the format written by {@link #serialize(ByteBuffer)}.
+     */
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        byte[] image = new byte[serializedSize()];
+        serialize(ByteBuffer.wrap(image));
+        s.writeInt(image.length);
+        s.write(image);
+    }
+
+    /**
+     * Reconstitutes the {@code CompressedBitSet} instance from a stream.
+     */
+    private void readObject(ObjectInputStream s)
+        throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        int len = s.readInt();
+        if (len < HEADER_BYTES)
+            throw new InvalidObjectException("Illegal image length: " + len);
+        byte[] image = new byte[len];
+        s.readFully(image);
+        CompressedBitSet r;
+        try {
+            r = valueOf(ByteBuffer.wrap(image));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new InvalidObjectException(e.getMessage());
+        }
+        keys = r.keys;
+        containers = r.containers;
+        size = r.size;
+    }
+}
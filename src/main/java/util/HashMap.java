@@ -31,6 +31,8 @@ import java.io.Serializable;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.Set;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
@@ -1407,6 +1409,127 @@ public class HashMap<K, V> extends AbstractMap<K, V> implements java.util.Map<K,
     }
   }
 
+  /* ------------------------------------------------------------ */
+  // Parallel bulk operations
+
+  /*
+   * These mirror the parallelismThreshold methods of
+   * ConcurrentHashMap, and are built the same way: a BulkTask
+   * covers a range of table indices and repeatedly forks off the
+   * upper half of its range until its batch count is exhausted,
+   * then traverses what is left.  Unlike ConcurrentHashMap there
+   * are no forwarding nodes to follow, since the map must not be
+   * structurally modified while an operation is in progress; a
+   * modification is detected (on a best-effort basis) after all
+   * tasks have completed.  Tree bins are traversed through their
+   * next links, as in forEach.
+   */
+
+  /**
+   * Computes initial batch value for bulk tasks, as in ConcurrentHashMap.batchFor.  The returned
+   * value is approximately exp2 of the number of times (minus one) to split task by two before
+   * executing leaf action.
+   */
+  final int batchFor(long b) {
+    long n;
+    if (b == Long.MAX_VALUE || (n = size) <= 1L || n < b) {
+      return 0;
+    }
+    int sp = ForkJoinPool.getCommonPoolParallelism() << 2; // slack of 4
+    return (b <= 0L || (n /= b) >= sp) ? sp : (int) n;
+  }
+
+  /**
+   * Performs the given action for each (key, value), splitting the traversal across the common
+   * {@link ForkJoinPool} once the map holds at least {@code parallelismThreshold} mappings.  The
+   * action may be invoked concurrently from several threads and in no particular order, so it must
+   * be safe for such use.  The map must not be structurally modified while the operation is in
+   * progress.
+   *
+   * @param parallelismThreshold the (estimated) number of elements needed for this operation to be
+   * executed in parallel
+   * @param action the action
+   * @throws NullPointerException if the action is null
+   * @throws ConcurrentModificationException if the map was structurally modified during the
+   * operation
+   * @see util.concurrent.ConcurrentHashMap#forEach(long, BiConsumer)
+   */
+  public void parallelForEach(long parallelismThreshold,
+      BiConsumer<? super K, ? super V> action) {
+    if (action == null) {
+      throw new NullPointerException();
+    }
+    int mc = modCount;
+    new ForEachMappingTask<K, V>
+        (null, batchFor(parallelismThreshold), 0, 0, table,
+            action).invoke();
+    if (modCount != mc) {
+      throw new ConcurrentModificationException();
+    }
+  }
+
+  /**
+   * Returns the result of accumulating the given transformation of all (key, value) pairs using the
+   * given reducer to combine values, or null if none.  The work is split across the common {@link
+   * ForkJoinPool} once the map holds at least {@code parallelismThreshold} mappings.  The map must
+   * not be structurally modified while the operation is in progress.
+   *
+   * @param parallelismThreshold the (estimated) number of elements needed for this operation to be
+   * executed in parallel
+   * @param transformer a function returning the transformation for an element, or null if there is
+   * no transformation (in which case it is not combined)
+   * @param reducer a commutative associative combining function
+   * @param <U> the return type of the transformer
+   * @return the result of accumulating the given transformation of all (key, value) pairs
+   * @throws NullPointerException if the transformer or reducer is null
+   * @throws ConcurrentModificationException if the map was structurally modified during the
+   * operation
+   * @see util.concurrent.ConcurrentHashMap#reduce(long, BiFunction, BiFunction)
+   */
+  public <U> U parallelReduce(long parallelismThreshold,
+      BiFunction<? super K, ? super V, ? extends U> transformer,
+      BiFunction<? super U, ? super U, ? extends U> reducer) {
+    if (transformer == null || reducer == null) {
+      throw new NullPointerException();
+    }
+    int mc = modCount;
+    U r = new MapReduceMappingsTask<K, V, U>
+        (null, batchFor(parallelismThreshold), 0, 0, table,
+            null, transformer, reducer).invoke();
+    if (modCount != mc) {
+      throw new ConcurrentModificationException();
+    }
+    return r;
+  }
+
+  /**
+   * Replaces each entry's value with the result of invoking the given function on that entry,
+   * splitting the work across the common {@link ForkJoinPool} once the map holds at least {@code
+   * parallelismThreshold} mappings.  The function may be invoked concurrently from several
+   * threads, and must not structurally modify the map.
+   *
+   * @param parallelismThreshold the (estimated) number of elements needed for this operation to be
+   * executed in parallel
+   * @param function the function to apply to each entry
+   * @throws NullPointerException if the function is null
+   * @throws ConcurrentModificationException if the map was structurally modified during the
+   * operation
+   * @see #replaceAll(BiFunction)
+   */
+  public void parallelReplaceAll(long parallelismThreshold,
+      BiFunction<? super K, ? super V, ? extends V> function) {
+    if (function == null) {
+      throw new NullPointerException();
+    }
+    int mc = modCount;
+    new ReplaceAllTask<K, V>
+        (null, batchFor(parallelismThreshold), 0, 0, table,
+            function).invoke();
+    if (modCount != mc) {
+      throw new ConcurrentModificationException();
+    }
+  }
+
   /* ------------------------------------------------------------ */
   // Cloning and serialization
 
@@ -1856,6 +1979,181 @@ public class HashMap<K, V> extends AbstractMap<K, V> implements java.util.Map<K,
     }
   }
 
+  /* ------------------------------------------------------------ */
+  // Bulk tasks
+
+  /**
+   * Base class for parallel bulk tasks.  A task covers table indices [baseIndex, baseLimit), and
+   * after splitting walks each bin of its range in turn.
+   */
+  @SuppressWarnings("serial")
+  abstract static class BulkTask<K, V, R> extends CountedCompleter<R> {
+
+    final Node<K, V>[] tab;
+    Node<K, V> next;
+    int baseIndex;
+    int baseLimit;
+    int batch;              // split control
+
+    BulkTask(BulkTask<K, V, ?> par, int b, int i, int f, Node<K, V>[] t) {
+      super(par);
+      this.batch = b;
+      this.baseIndex = i;
+      if ((this.tab = t) == null) {
+        this.baseLimit = 0;
+      } else if (par == null) {
+        this.baseLimit = t.length;
+      } else {
+        this.baseLimit = f;
+      }
+    }
+
+    /**
+     * Advances if possible, returning next node, or null if none.
+     */
+    final Node<K, V> advance() {
+      Node<K, V> e;
+      if ((e = next) != null) {
+        e = e.next;
+      }
+      while (e == null) {
+        Node<K, V>[] t;
+        int i;
+        if ((i = baseIndex) >= baseLimit || (t = tab) == null || i >= t.length) {
+          return next = null;
+        }
+        e = t[i];
+        baseIndex = i + 1;
+      }
+      return next = e;
+    }
+  }
+
+  @SuppressWarnings("serial")
+  static final class ForEachMappingTask<K, V>
+      extends BulkTask<K, V, Void> {
+
+    final BiConsumer<? super K, ? super V> action;
+
+    ForEachMappingTask
+        (BulkTask<K, V, ?> p, int b, int i, int f, Node<K, V>[] t,
+            BiConsumer<? super K, ? super V> action) {
+      super(p, b, i, f, t);
+      this.action = action;
+    }
+
+    public final void compute() {
+      final BiConsumer<? super K, ? super V> action;
+      if ((action = this.action) != null) {
+        for (int i = baseIndex, f, h; batch > 0 &&
+            (h = ((f = baseLimit) + i) >>> 1) > i; ) {
+          addToPendingCount(1);
+          new ForEachMappingTask<K, V>
+              (this, batch >>>= 1, baseLimit = h, f, tab,
+                  action).fork();
+        }
+        for (Node<K, V> p; (p = advance()) != null; ) {
+          action.accept(p.key, p.value);
+        }
+        propagateCompletion();
+      }
+    }
+  }
+
+  @SuppressWarnings("serial")
+  static final class ReplaceAllTask<K, V>
+      extends BulkTask<K, V, Void> {
+
+    final BiFunction<? super K, ? super V, ? extends V> function;
+
+    ReplaceAllTask
+        (BulkTask<K, V, ?> p, int b, int i, int f, Node<K, V>[] t,
+            BiFunction<? super K, ? super V, ? extends V> function) {
+      super(p, b, i, f, t);
+      this.function = function;
+    }
+
+    public final void compute() {
+      final BiFunction<? super K, ? super V, ? extends V> function;
+      if ((function = this.function) != null) {
+        for (int i = baseIndex, f, h; batch > 0 &&
+            (h = ((f = baseLimit) + i) >>> 1) > i; ) {
+          addToPendingCount(1);
+          new ReplaceAllTask<K, V>
+              (this, batch >>>= 1, baseLimit = h, f, tab,
+                  function).fork();
+        }
+        for (Node<K, V> p; (p = advance()) != null; ) {
+          p.value = function.apply(p.key, p.value);
+        }
+        propagateCompletion();
+      }
+    }
+  }
+
+  @SuppressWarnings("serial")
+  static final class MapReduceMappingsTask<K, V, U>
+      extends BulkTask<K, V, U> {
+
+    final BiFunction<? super K, ? super V, ? extends U> transformer;
+    final BiFunction<? super U, ? super U, ? extends U> reducer;
+    U result;
+    MapReduceMappingsTask<K, V, U> rights, nextRight;
+
+    MapReduceMappingsTask
+        (BulkTask<K, V, ?> p, int b, int i, int f, Node<K, V>[] t,
+            MapReduceMappingsTask<K, V, U> nextRight,
+            BiFunction<? super K, ? super V, ? extends U> transformer,
+            BiFunction<? super U, ? super U, ? extends U> reducer) {
+      super(p, b, i, f, t);
+      this.nextRight = nextRight;
+      this.transformer = transformer;
+      this.reducer = reducer;
+    }
+
+    public final U getRawResult() {
+      return result;
+    }
+
+    public final void compute() {
+      final BiFunction<? super K, ? super V, ? extends U> transformer;
+      final BiFunction<? super U, ? super U, ? extends U> reducer;
+      if ((transformer = this.transformer) != null &&
+          (reducer = this.reducer) != null) {
+        for (int i = baseIndex, f, h; batch > 0 &&
+            (h = ((f = baseLimit) + i) >>> 1) > i; ) {
+          addToPendingCount(1);
+          (rights = new MapReduceMappingsTask<K, V, U>
+              (this, batch >>>= 1, baseLimit = h, f, tab,
+                  rights, transformer, reducer)).fork();
+        }
+        U r = null;
+        for (Node<K, V> p; (p = advance()) != null; ) {
+          U u;
+          if ((u = transformer.apply(p.key, p.value)) != null) {
+            r = (r == null) ? u : reducer.apply(r, u);
+          }
+        }
+        result = r;
+        CountedCompleter<?> c;
+        for (c = firstComplete(); c != null; c = c.nextComplete()) {
+          @SuppressWarnings("unchecked")
+          MapReduceMappingsTask<K, V, U>
+              t = (MapReduceMappingsTask<K, V, U>) c,
+              s = t.rights;
+          while (s != null) {
+            U tr, sr;
+            if ((sr = s.result) != null) {
+              t.result = (((tr = t.result) == null) ? sr :
+                  reducer.apply(tr, sr));
+            }
+            s = t.rights = s.nextRight;
+          }
+        }
+      }
+    }
+  }
+
   /* ------------------------------------------------------------ */
   // LinkedHashMap support
 
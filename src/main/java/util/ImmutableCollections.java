@@ -0,0 +1,882 @@
+package util;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Factory methods for compact, truly immutable lists, sets and maps.
+ *
+ * <p>Unlike the views returned by {@link Collections#unmodifiableList} and
+ * friends, the collections created here do not wrap a mutable backing
+ * collection.  Their state is fixed at creation and stored as densely as
+ * possible:
+ *
+ * <ul>
+ * <li>Lists, sets and maps with one or two elements (one mapping, for
+ * maps) keep them in plain fields, with no backing array at all.
+ * <li>Larger lists keep their elements in a single exactly-sized
+ * {@code Object[]}.
+ * <li>Larger sets and maps keep a single flat {@code Object[]} hash table
+ * with linear probing: sets store one element per slot, and maps store
+ * each key immediately followed by its value.  The table is twice as long
+ * as needed, and there are no per-entry node objects, so a mapping costs
+ * four references instead of a {@code HashMap.Node} (32 bytes or more) plus
+ * its share of the bucket array.
+ * </ul>
+ *
+ * <p>All returned collections reject {@code null} elements, keys and
+ * values; throw {@link UnsupportedOperationException} from every mutator,
+ * even when the call would not change the collection; and are
+ * serializable.  Iteration order of sets and maps is unspecified.
+ *
+ * @see Collections#unmodifiableList
+ * @see Collections#unmodifiableMap
+ */
+public final class ImmutableCollections {
+
+    private ImmutableCollections() { }
+
+    /**
+     * The expansion factor for hash tables: each table has twice as many
+     * slots as elements, keeping linear probe sequences short.
+     */
+    static final int EXPAND_FACTOR = 2;
+
+    static UnsupportedOperationException uoe() {
+        return new UnsupportedOperationException();
+    }
+
+    /* ---------------- Factories -------------- */
+
+    /**
+     * Returns an immutable list containing the given elements, in order.
+     *
+     * @param <E> the element type
+     * @param elements the elements
+     * @return an immutable list of the elements
+     * @throws NullPointerException if the array or any element is null
+     */
+    @SafeVarargs
+    public static <E> List<E> listOf(E... elements) {
+        switch (elements.length) {
+            case 0:
+                @SuppressWarnings("unchecked")
+                List<E> empty = (List<E>) ListN.EMPTY_LIST;
+                return empty;
+            case 1:
+                return new List12<E>(elements[0]);
+            case 2:
+                return new List12<E>(elements[0], elements[1]);
+            default:
+                Object[] copy = new Object[elements.length];
+                for (int i = 0; i < copy.length; ++i)
+                    copy[i] = elements[i];
+                return new ListN<E>(copy);
+        }
+    }
+
+    /**
+     * Returns an immutable list containing the elements of the given
+     * collection, in its iteration order.  If the collection is already
+     * such a list, it is returned as is.
+     *
+     * @param <E> the element type
+     * @param coll the collection whose elements are to be copied
+     * @return an immutable list of the elements
+     * @throws NullPointerException if the collection or any element is null
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> List<E> listCopyOf(Collection<? extends E> coll) {
+        if (coll instanceof AbstractImmutableList)
+            return (List<E>) coll;
+        return (List<E>) listOf(coll.toArray());
+    }
+
+    /**
+     * Returns an immutable set containing the given elements.
+     *
+     * @param <E> the element type
+     * @param elements the elements
+     * @return an immutable set of the elements
+     * @throws IllegalArgumentException if there are duplicate elements
+     * @throws NullPointerException if the array or any element is null
+     */
+    @SafeVarargs
+    public static <E> Set<E> setOf(E... elements) {
+        switch (elements.length) {
+            case 0:
+                @SuppressWarnings("unchecked")
+                Set<E> empty = (Set<E>) SetN.EMPTY_SET;
+                return empty;
+            case 1:
+                return new Set12<E>(elements[0]);
+            case 2:
+                return new Set12<E>(elements[0], elements[1]);
+            default:
+                return new SetN<E>(elements);
+        }
+    }
+
+    /**
+     * Returns an immutable set containing the distinct elements of the
+     * given collection.  Unlike {@link #setOf}, duplicates are silently
+     * dropped.  If the collection is already such a set, it is returned as
+     * is.
+     *
+     * @param <E> the element type
+     * @param coll the collection whose elements are to be copied
+     * @return an immutable set of the elements
+     * @throws NullPointerException if the collection or any element is null
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> Set<E> setCopyOf(Collection<? extends E> coll) {
+        if (coll instanceof AbstractImmutableSet)
+            return (Set<E>) coll;
+        if (!(coll instanceof Set))
+            coll = new java.util.HashSet<E>(coll);
+        return (Set<E>) setOf(coll.toArray());
+    }
+
+    /**
+     * Returns an immutable map containing no mappings.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @return an empty immutable map
+     */
+    @SuppressWarnings("unchecked")
+    public static <K,V> Map<K,V> mapOf() {
+        return (Map<K,V>) MapN.EMPTY_MAP;
+    }
+
+    /**
+     * Returns an immutable map containing a single mapping.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param k1 the key
+     * @param v1 the value
+     * @return an immutable map containing the mapping
+     * @throws NullPointerException if the key or value is null
+     */
+    public static <K,V> Map<K,V> mapOf(K k1, V v1) {
+        return new Map1<K,V>(k1, v1);
+    }
+
+    /**
+     * Returns an immutable map containing two mappings.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param k1 the first key
+     * @param v1 the first value
+     * @param k2 the second key
+     * @param v2 the second value
+     * @return an immutable map containing the mappings
+     * @throws IllegalArgumentException if the keys are duplicates
+     * @throws NullPointerException if any key or value is null
+     */
+    public static <K,V> Map<K,V> mapOf(K k1, V v1, K k2, V v2) {
+        return new MapN<K,V>(k1, v1, k2, v2);
+    }
+
+    /**
+     * Returns an immutable map containing three mappings.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param k1 the first key
+     * @param v1 the first value
+     * @param k2 the second key
+     * @param v2 the second value
+     * @param k3 the third key
+     * @param v3 the third value
+     * @return an immutable map containing the mappings
+     * @throws IllegalArgumentException if there are duplicate keys
+     * @throws NullPointerException if any key or value is null
+     */
+    public static <K,V> Map<K,V> mapOf(K k1, V v1, K k2, V v2, K k3, V v3) {
+        return new MapN<K,V>(k1, v1, k2, v2, k3, v3);
+    }
+
+    /**
+     * Returns an immutable map containing the keys and values of the
+     * given entries.  The entries themselves are not retained.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param entries the entries
+     * @return an immutable map containing the mappings
+     * @throws IllegalArgumentException if there are duplicate keys
+     * @throws NullPointerException if any entry, key or value is null
+     */
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public static <K,V> Map<K,V> mapOfEntries(Map.Entry<? extends K, ? extends V>... entries) {
+        int n = entries.length;
+        if (n == 0)
+            return mapOf();
+        if (n == 1)
+            return new Map1<K,V>(entries[0].getKey(), entries[0].getValue());
+        Object[] kvs = new Object[n << 1];
+        for (int i = 0; i < n; ++i) {
+            kvs[i << 1] = entries[i].getKey();
+            kvs[(i << 1) + 1] = entries[i].getValue();
+        }
+        return new MapN<K,V>(kvs);
+    }
+
+    /**
+     * Returns an immutable map containing the mappings of the given map.
+     * If the map is already such a map, it is returned as is.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param map the map whose mappings are to be copied
+     * @return an immutable map containing the mappings
+     * @throws NullPointerException if the map or any key or value is null
+     */
+    @SuppressWarnings("unchecked")
+    public static <K,V> Map<K,V> mapCopyOf(Map<? extends K, ? extends V> map) {
+        if (map instanceof AbstractImmutableMap)
+            return (Map<K,V>) map;
+        int n = map.size();
+        if (n == 0)
+            return mapOf();
+        Object[] kvs = new Object[n << 1];
+        int i = 0;
+        for (Map.Entry<? extends K, ? extends V> e : map.entrySet()) {
+            if (i == kvs.length)    // concurrently growing map
+                kvs = java.util.Arrays.copyOf(kvs, i << 1);
+            kvs[i++] = e.getKey();
+            kvs[i++] = e.getValue();
+        }
+        if (i == 2)
+            return new Map1<K,V>((K) kvs[0], (V) kvs[1]);
+        return new MapN<K,V>(i == kvs.length ? kvs : java.util.Arrays.copyOf(kvs, i));
+    }
+
+    /* ---------------- Lists -------------- */
+
+    @SuppressWarnings("serial") // no state; subclasses serialize via CollSer
+    abstract static class AbstractImmutableList<E> extends AbstractList<E>
+        implements RandomAccess, Serializable {
+        @Override public boolean add(E e) { throw uoe(); }
+        @Override public void add(int index, E e) { throw uoe(); }
+        @Override public boolean addAll(Collection<? extends E> c) { throw uoe(); }
+        @Override public boolean addAll(int index, Collection<? extends E> c) { throw uoe(); }
+        @Override public void clear() { throw uoe(); }
+        @Override public E remove(int index) { throw uoe(); }
+        @Override public boolean remove(Object o) { throw uoe(); }
+        @Override public boolean removeAll(Collection<?> c) { throw uoe(); }
+        @Override public boolean removeIf(Predicate<? super E> filter) { throw uoe(); }
+        @Override public boolean retainAll(Collection<?> c) { throw uoe(); }
+        @Override public void replaceAll(UnaryOperator<E> operator) { throw uoe(); }
+        @Override public E set(int index, E element) { throw uoe(); }
+        @Override public void sort(Comparator<? super E> c) { throw uoe(); }
+
+        @Override public boolean contains(Object o) {
+            return indexOf(o) >= 0;
+        }
+    }
+
+    /**
+     * A list of one or two elements, held in fields.  A second element of
+     * {@code null} marks a singleton.
+     */
+    static final class List12<E> extends AbstractImmutableList<E> {
+        private static final long serialVersionUID = -4391718373474063153L;
+
+        private final E e0;
+        private final E e1;
+
+        List12(E e0) {
+            this.e0 = Objects.requireNonNull(e0);
+            this.e1 = null;
+        }
+
+        List12(E e0, E e1) {
+            this.e0 = Objects.requireNonNull(e0);
+            this.e1 = Objects.requireNonNull(e1);
+        }
+
+        @Override public int size() {
+            return (e1 != null) ? 2 : 1;
+        }
+
+        @Override public E get(int index) {
+            if (index == 0)
+                return e0;
+            else if (index == 1 && e1 != null)
+                return e1;
+            throw new IndexOutOfBoundsException("Index: " + index +
+                                                " Size: " + size());
+        }
+
+        @Override public int indexOf(Object o) {
+            Objects.requireNonNull(o);
+            if (o.equals(e0))
+                return 0;
+            return (e1 != null && o.equals(e1)) ? 1 : -1;
+        }
+
+        @Override public int lastIndexOf(Object o) {
+            Objects.requireNonNull(o);
+            if (e1 != null && o.equals(e1))
+                return 1;
+            return o.equals(e0) ? 0 : -1;
+        }
+
+        private Object writeReplace() {
+            return (e1 == null) ? new CollSer(CollSer.IMM_LIST, e0)
+                                : new CollSer(CollSer.IMM_LIST, e0, e1);
+        }
+
+        private void readObject(ObjectInputStream in) throws InvalidObjectException {
+            throw new InvalidObjectException("not serial proxy");
+        }
+    }
+
+    /**
+     * A list held in an exactly-sized array.
+     */
+    static final class ListN<E> extends AbstractImmutableList<E> {
+        private static final long serialVersionUID = 2741398112354632051L;
+
+        static final ListN<?> EMPTY_LIST = new ListN<Object>(new Object[0]);
+
+        private final E[] elements;
+
+        /** Takes ownership of the array, which must not be shared. */
+        @SuppressWarnings("unchecked")
+        ListN(Object[] elements) {
+            for (Object e : elements)
+                Objects.requireNonNull(e);
+            this.elements = (E[]) elements;
+        }
+
+        @Override public int size() {
+            return elements.length;
+        }
+
+        @Override public boolean isEmpty() {
+            return elements.length == 0;
+        }
+
+        @Override public E get(int index) {
+            return elements[index];
+        }
+
+        @Override public int indexOf(Object o) {
+            Objects.requireNonNull(o);
+            E[] es = elements;
+            for (int i = 0; i < es.length; ++i) {
+                if (o.equals(es[i]))
+                    return i;
+            }
+            return -1;
+        }
+
+        @Override public int lastIndexOf(Object o) {
+            Objects.requireNonNull(o);
+            E[] es = elements;
+            for (int i = es.length - 1; i >= 0; --i) {
+                if (o.equals(es[i]))
+                    return i;
+            }
+            return -1;
+        }
+
+        @Override public Object[] toArray() {
+            return java.util.Arrays.copyOf(elements, elements.length, Object[].class);
+        }
+
+        @Override public Spliterator<E> spliterator() {
+            return Spliterators.spliterator(elements, Spliterator.ORDERED |
+                                            Spliterator.IMMUTABLE |
+                                            Spliterator.NONNULL);
+        }
+
+        private Object writeReplace() {
+            return new CollSer(CollSer.IMM_LIST, elements);
+        }
+
+        private void readObject(ObjectInputStream in) throws InvalidObjectException {
+            throw new InvalidObjectException("not serial proxy");
+        }
+    }
+
+    /* ---------------- Sets -------------- */
+
+    @SuppressWarnings("serial") // no state; subclasses serialize via CollSer
+    abstract static class AbstractImmutableSet<E> extends AbstractSet<E>
+        implements Serializable {
+        @Override public boolean add(E e) { throw uoe(); }
+        @Override public boolean addAll(Collection<? extends E> c) { throw uoe(); }
+        @Override public void clear() { throw uoe(); }
+        @Override public boolean remove(Object o) { throw uoe(); }
+        @Override public boolean removeAll(Collection<?> c) { throw uoe(); }
+        @Override public boolean removeIf(Predicate<? super E> filter) { throw uoe(); }
+        @Override public boolean retainAll(Collection<?> c) { throw uoe(); }
+    }
+
+    /**
+     * A set of one or two elements, held in fields.  A second element of
+     * {@code null} marks a singleton.
+     */
+    static final class Set12<E> extends AbstractImmutableSet<E> {
+        private static final long serialVersionUID = 6830164982740365148L;
+
+        final E e0;
+        final E e1;
+
+        Set12(E e0) {
+            this.e0 = Objects.requireNonNull(e0);
+            this.e1 = null;
+        }
+
+        Set12(E e0, E e1) {
+            if (e0.equals(Objects.requireNonNull(e1)))
+                throw new IllegalArgumentException("duplicate element: " + e0);
+            this.e0 = e0;
+            this.e1 = e1;
+        }
+
+        @Override public int size() {
+            return (e1 == null) ? 1 : 2;
+        }
+
+        @Override public boolean contains(Object o) {
+            return o.equals(e0) || o.equals(e1); // implicit null check of o
+        }
+
+        @Override public int hashCode() {
+            return e0.hashCode() + (e1 == null ? 0 : e1.hashCode());
+        }
+
+        @Override public Iterator<E> iterator() {
+            return new Iterator<E>() {
+                private int idx = size();
+
+                public boolean hasNext() {
+                    return idx > 0;
+                }
+
+                public E next() {
+                    if (idx == 1) {
+                        idx = 0;
+                        return e0;
+                    } else if (idx == 2) {
+                        idx = 1;
+                        return e1;
+                    }
+                    throw new NoSuchElementException();
+                }
+            };
+        }
+
+        private Object writeReplace() {
+            return (e1 == null) ? new CollSer(CollSer.IMM_SET, e0)
+                                : new CollSer(CollSer.IMM_SET, e0, e1);
+        }
+
+        private void readObject(ObjectInputStream in) throws InvalidObjectException {
+            throw new InvalidObjectException("not serial proxy");
+        }
+    }
+
+    /**
+     * A set held in a flat open-addressing table with linear probing.
+     * Empty slots are {@code null}.
+     */
+    static final class SetN<E> extends AbstractImmutableSet<E> {
+        private static final long serialVersionUID = -3052812405926837143L;
+
+        static final SetN<?> EMPTY_SET = new SetN<Object>();
+
+        final E[] elements;
+        final int size;
+
+        @SuppressWarnings("unchecked")
+        SetN(Object... input) {
+            size = input.length;
+            elements = (E[]) new Object[EXPAND_FACTOR * input.length];
+            for (int i = 0; i < input.length; ++i) {
+                E e = (E) input[i];
+                int idx = probe(e); // implicit null check of e
+                if (idx >= 0)
+                    throw new IllegalArgumentException("duplicate element: " + e);
+                elements[-(idx + 1)] = e;
+            }
+        }
+
+        @Override public int size() {
+            return size;
+        }
+
+        @Override public boolean contains(Object o) {
+            Objects.requireNonNull(o);
+            return size > 0 && probe(o) >= 0;
+        }
+
+        @Override public Iterator<E> iterator() {
+            return new Iterator<E>() {
+                private int idx = 0;
+                private int remaining = size;
+
+                public boolean hasNext() {
+                    return remaining > 0;
+                }
+
+                public E next() {
+                    if (remaining == 0)
+                        throw new NoSuchElementException();
+                    E e;
+                    while ((e = elements[idx++]) == null) { }
+                    --remaining;
+                    return e;
+                }
+            };
+        }
+
+        @Override public int hashCode() {
+            int h = 0;
+            for (E e : elements) {
+                if (e != null)
+                    h += e.hashCode();
+            }
+            return h;
+        }
+
+        /**
+         * Returns the index at which o is present, or, if absent,
+         * (-i - 1) where i is the index of the free slot ending its probe.
+         */
+        private int probe(Object pe) {
+            int idx = Math.floorMod(pe.hashCode(), elements.length);
+            for (;;) {
+                E ee = elements[idx];
+                if (ee == null)
+                    return -idx - 1;
+                else if (pe.equals(ee))
+                    return idx;
+                else if (++idx == elements.length)
+                    idx = 0;
+            }
+        }
+
+        private Object writeReplace() {
+            Object[] array = new Object[size];
+            int dest = 0;
+            for (Object o : elements) {
+                if (o != null)
+                    array[dest++] = o;
+            }
+            return new CollSer(CollSer.IMM_SET, array);
+        }
+
+        private void readObject(ObjectInputStream in) throws InvalidObjectException {
+            throw new InvalidObjectException("not serial proxy");
+        }
+    }
+
+    /* ---------------- Maps -------------- */
+
+    @SuppressWarnings("serial") // no state; subclasses serialize via CollSer
+    abstract static class AbstractImmutableMap<K,V> extends AbstractMap<K,V>
+        implements Serializable {
+        @Override public void clear() { throw uoe(); }
+        @Override public V compute(K key, BiFunction<? super K,? super V,? extends V> rf) { throw uoe(); }
+        @Override public V computeIfAbsent(K key, Function<? super K,? extends V> mf) { throw uoe(); }
+        @Override public V computeIfPresent(K key, BiFunction<? super K,? super V,? extends V> rf) { throw uoe(); }
+        @Override public V merge(K key, V value, BiFunction<? super V,? super V,? extends V> rf) { throw uoe(); }
+        @Override public V put(K key, V value) { throw uoe(); }
+        @Override public void putAll(Map<? extends K,? extends V> m) { throw uoe(); }
+        @Override public V putIfAbsent(K key, V value) { throw uoe(); }
+        @Override public V remove(Object key) { throw uoe(); }
+        @Override public boolean remove(Object key, Object value) { throw uoe(); }
+        @Override public V replace(K key, V value) { throw uoe(); }
+        @Override public boolean replace(K key, V oldValue, V newValue) { throw uoe(); }
+        @Override public void replaceAll(BiFunction<? super K,? super V,? extends V> f) { throw uoe(); }
+
+        @Override public V getOrDefault(Object key, V defaultValue) {
+            V v;
+            return ((v = get(key)) != null) ? v : defaultValue;
+        }
+    }
+
+    /**
+     * An immutable snapshot entry handed out by map iterators.
+     */
+    static <K,V> Map.Entry<K,V> entry(K k, V v) {
+        return new AbstractMap.SimpleImmutableEntry<K,V>(k, v);
+    }
+
+    /**
+     * A map of one mapping, held in fields.
+     */
+    static final class Map1<K,V> extends AbstractImmutableMap<K,V> {
+        private static final long serialVersionUID = 8516532086410213697L;
+
+        private final K k0;
+        private final V v0;
+
+        Map1(K k0, V v0) {
+            this.k0 = Objects.requireNonNull(k0);
+            this.v0 = Objects.requireNonNull(v0);
+        }
+
+        @Override public Set<Map.Entry<K,V>> entrySet() {
+            return new Set12<Map.Entry<K,V>>(entry(k0, v0));
+        }
+
+        @Override public V get(Object o) {
+            return o.equals(k0) ? v0 : null; // implicit null check of o
+        }
+
+        @Override public boolean containsKey(Object o) {
+            return o.equals(k0); // implicit null check of o
+        }
+
+        @Override public boolean containsValue(Object o) {
+            return o.equals(v0); // implicit null check of o
+        }
+
+        @Override public int size() {
+            return 1;
+        }
+
+        @Override public int hashCode() {
+            return k0.hashCode() ^ v0.hashCode();
+        }
+
+        private Object writeReplace() {
+            return new CollSer(CollSer.IMM_MAP, k0, v0);
+        }
+
+        private void readObject(ObjectInputStream in) throws InvalidObjectException {
+            throw new InvalidObjectException("not serial proxy");
+        }
+    }
+
+    /**
+     * A map held in a single flat open-addressing table: each key is
+     * immediately followed by its value, and empty slots hold {@code null}
+     * keys.  Keys are probed linearly, two slots at a time.
+     */
+    static final class MapN<K,V> extends AbstractImmutableMap<K,V> {
+        private static final long serialVersionUID = -6089461937734810236L;
+
+        static final MapN<?,?> EMPTY_MAP = new MapN<Object,Object>();
+
+        final Object[] table; // pairs of key, value
+        final int size;       // number of pairs
+
+        /** Builds from alternating keys and values. */
+        MapN(Object... input) {
+            if ((input.length & 1) != 0) // implicit null check of input
+                throw new InternalError("length is odd");
+            size = input.length >> 1;
+
+            int len = EXPAND_FACTOR * input.length;
+            table = new Object[len];
+
+            for (int i = 0; i < input.length; i += 2) {
+                @SuppressWarnings("unchecked")
+                K k = Objects.requireNonNull((K) input[i]);
+                @SuppressWarnings("unchecked")
+                V v = Objects.requireNonNull((V) input[i + 1]);
+                int idx = probe(k);
+                if (idx >= 0)
+                    throw new IllegalArgumentException("duplicate key: " + k);
+                int dest = -(idx + 1);
+                table[dest] = k;
+                table[dest + 1] = v;
+            }
+        }
+
+        @Override public boolean containsKey(Object o) {
+            Objects.requireNonNull(o);
+            return size > 0 && probe(o) >= 0;
+        }
+
+        @Override public boolean containsValue(Object o) {
+            Objects.requireNonNull(o);
+            for (int i = 1; i < table.length; i += 2) {
+                Object v = table[i];
+                if (v != null && o.equals(v))
+                    return true;
+            }
+            return false;
+        }
+
+        @Override public int hashCode() {
+            int hash = 0;
+            for (int i = 0; i < table.length; i += 2) {
+                Object k = table[i];
+                if (k != null)
+                    hash += k.hashCode() ^ table[i + 1].hashCode();
+            }
+            return hash;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V get(Object o) {
+            if (size == 0) {
+                Objects.requireNonNull(o);
+                return null;
+            }
+            int i = probe(o);
+            return (i >= 0) ? (V) table[i + 1] : null;
+        }
+
+        @Override public int size() {
+            return size;
+        }
+
+        @Override public Set<Map.Entry<K,V>> entrySet() {
+            return new AbstractSet<Map.Entry<K,V>>() {
+                @Override public int size() {
+                    return MapN.this.size;
+                }
+
+                @Override public Iterator<Map.Entry<K,V>> iterator() {
+                    return new Iterator<Map.Entry<K,V>>() {
+                        int remaining = MapN.this.size;
+                        int idx = 0;
+
+                        public boolean hasNext() {
+                            return remaining > 0;
+                        }
+
+                        @SuppressWarnings("unchecked")
+                        public Map.Entry<K,V> next() {
+                            if (remaining == 0)
+                                throw new NoSuchElementException();
+                            while (table[idx] == null)
+                                idx += 2;
+                            Map.Entry<K,V> e =
+                                entry((K) table[idx], (V) table[idx + 1]);
+                            idx += 2;
+                            --remaining;
+                            return e;
+                        }
+                    };
+                }
+            };
+        }
+
+        /**
+         * Returns the index of the key if present, or, if absent,
+         * (-i - 1) where i is the index of the free key slot ending its
+         * probe.
+         */
+        private int probe(Object pk) {
+            int idx = Math.floorMod(pk.hashCode(), table.length >> 1) << 1;
+            for (;;) {
+                Object ek = table[idx];
+                if (ek == null)
+                    return -idx - 1;
+                else if (pk.equals(ek))
+                    return idx;
+                else if ((idx += 2) == table.length)
+                    idx = 0;
+            }
+        }
+
+        private Object writeReplace() {
+            Object[] array = new Object[2 * size];
+            int dest = 0;
+            for (int i = 0; i < table.length; i += 2) {
+                if (table[i] != null) {
+                    array[dest++] = table[i];
+                    array[dest++] = table[i + 1];
+                }
+            }
+            return new CollSer(CollSer.IMM_MAP, array);
+        }
+
+        private void readObject(ObjectInputStream in) throws InvalidObjectException {
+            throw new InvalidObjectException("not serial proxy");
+        }
+    }
+
+    /* ---------------- Serialization -------------- */
+
+    /**
+     * Serial proxy for all immutable collections created here.  Only the
+     * kind of collection and its elements (alternating keys and values,
+     * for maps) are written, so the compact in-memory layout can change
+     * without affecting the serial form.
+     */
+    static final class CollSer implements Serializable {
+        private static final long serialVersionUID = 6309168927139932177L;
+
+        static final int IMM_LIST = 1;
+        static final int IMM_SET = 2;
+        static final int IMM_MAP = 3;
+
+        /**
+         * @serial the kind of collection
+         */
+        private final int tag;
+
+        /**
+         * @serial the elements, or alternating keys and values
+         */
+        private final Object[] array;
+
+        CollSer(int t, Object... a) {
+            tag = t;
+            array = a;
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            if (array == null)
+                throw new InvalidObjectException("null array");
+            try {
+                switch (tag) {
+                    case IMM_LIST:
+                        return listOf(array);
+                    case IMM_SET:
+                        return setOf(array);
+                    case IMM_MAP:
+                        if (array.length == 0)
+                            return mapOf();
+                        if (array.length == 2)
+                            return new Map1<Object,Object>(array[0], array[1]);
+                        return new MapN<Object,Object>(array);
+                    default:
+                        throw new InvalidObjectException(
+                            String.format("invalid flags 0x%x", tag));
+                }
+            } catch (NullPointerException | IllegalArgumentException |
+                     InternalError ex) {
+                InvalidObjectException ioe = new InvalidObjectException("invalid object");
+                ioe.initCause(ex);
+                throw ioe;
+            }
+        }
+    }
+}
@@ -0,0 +1,803 @@
+package util;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.IntFunction;
+import util.function.IntObjConsumer;
+
+/**
+ * Open-addressing hash table mapping primitive {@code int} keys to object
+ * values.  Keys and values are held in two parallel arrays, so a mapping
+ * costs one array slot of each kind rather than a {@code HashMap.Node} plus a
+ * boxed {@code Integer} key.
+ *
+ * <p>The primitive-keyed methods ({@link #get(int)},
+ * {@link #put(int, Object)}, {@link #remove(int)},
+ * {@link #computeIfAbsent(int, IntFunction)} and
+ * {@link #forEachEntry(IntObjConsumer)}) never box.  This map permits
+ * {@code null} values; as with {@link HashMap}, a {@code null} return from
+ * {@link #get(int)} may also indicate that the key is mapped to
+ * {@code null}.  The class also implements the full {@code Map<Integer, V>}
+ * interface; the collection views are created lazily on first request and
+ * box keys on every access.
+ * The {@code Map} methods taking boxed keys delegate to the primitive
+ * ones, so a call such as {@code put(k, v)} has the same effect whichever
+ * overload it resolves to.
+ *
+ * <p>Collisions are resolved by linear probing, and removal uses backward
+ * shift deletion, so the table never contains tombstones.  The key
+ * {@code 0} is used to mark free slots and is therefore stored outside the
+ * table.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * The iterators returned by the collection views are <i>fail-fast</i> in the
+ * same sense as those of {@link HashMap}.
+ *
+ * @param <V> the type of mapped values
+ *
+ * @see HashMap
+ * @see LongHashMap
+ * @see LongLongHashMap
+ */
+public class IntHashMap<V> extends AbstractMap<Integer, V>
+        implements Cloneable, Serializable {
+
+    private static final long serialVersionUID = 5521730284157103387L;
+
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * The maximum capacity, used if a higher value is implicitly specified by
+     * either of the constructors with arguments.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.5f;
+
+    /**
+     * The key slots; {@code 0} marks a free slot.  Length is always a power
+     * of two.
+     */
+    transient int[] keys;
+
+    /**
+     * The value slots, parallel to {@link #keys}.
+     */
+    transient Object[] values;
+
+    /**
+     * Whether the key {@code 0}, which cannot live in the table, is mapped.
+     */
+    transient boolean containsZeroKey;
+
+    /**
+     * The value mapped to {@code 0} when {@link #containsZeroKey} is set.
+     */
+    transient V zeroValue;
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    transient int size;
+
+    /**
+     * The number of times this map has been structurally modified.
+     */
+    transient int modCount;
+
+    /**
+     * The next size value at which to resize (capacity * load factor).
+     */
+    transient int threshold;
+
+    /**
+     * The load factor for the hash table.
+     */
+    final float loadFactor;
+
+    /**
+     * Lazily created entry set view.
+     */
+    transient Set<Map.Entry<Integer, V>> entrySet;
+
+    /**
+     * Constructs an empty map with the specified initial capacity and load
+     * factor.
+     *
+     * @param initialCapacity the initial capacity
+     * @param loadFactor the load factor, in the range (0, 1)
+     * @throws IllegalArgumentException if the initial capacity is negative or
+     *         the load factor is not in range
+     */
+    public IntHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (!(loadFactor > 0.0f && loadFactor < 1.0f))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        this.loadFactor = loadFactor;
+        allocate(LongLongHashMap.capacityFor(initialCapacity, loadFactor));
+    }
+
+    /**
+     * Constructs an empty map with the specified initial capacity and the
+     * default load factor (0.5).
+     *
+     * @param initialCapacity the initial capacity
+     * @throws IllegalArgumentException if the initial capacity is negative
+     */
+    public IntHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructs an empty map with the default initial capacity (16) and the
+     * default load factor (0.5).
+     */
+    public IntHashMap() {
+        this.loadFactor = DEFAULT_LOAD_FACTOR;
+        allocate(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs a new map with the same mappings as the specified map.
+     *
+     * @param m the map whose mappings are to be placed in this map
+     * @throws NullPointerException if the specified map or any of its keys
+     *         is null
+     */
+    public IntHashMap(Map<? extends Integer, ? extends V> m) {
+        this(m.size(), DEFAULT_LOAD_FACTOR);
+        putAll(m);
+    }
+
+    /* ---------------- Static utilities -------------- */
+
+    /**
+     * Spreads the bits of a key so that the low bits used for indexing
+     * depend on all 32 bits of the key (Fibonacci hashing).
+     */
+    static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /* ---------------- Table management -------------- */
+
+    private void allocate(int cap) {
+        keys = new int[cap];
+        values = new Object[cap];
+        // always keep at least one free slot so that probing terminates
+        threshold = Math.min(cap - 1, (int) (cap * loadFactor));
+    }
+
+    /**
+     * Rehashes every table entry into a table of the given length.
+     */
+    final void resize(int newCap) {
+        int[] oldKeys = keys;
+        Object[] oldVals = values;
+        allocate(newCap);
+        int[] ks = keys;
+        Object[] vs = values;
+        int mask = newCap - 1;
+        for (int j = oldKeys.length - 1; j >= 0; --j) {
+            int k;
+            if ((k = oldKeys[j]) != 0) {
+                int i = hash(k) & mask;
+                while (ks[i] != 0)
+                    i = (i + 1) & mask;
+                ks[i] = k;
+                vs[i] = oldVals[j];
+            }
+        }
+    }
+
+    /**
+     * Returns the table slot of the given non-zero key, or -1 if absent.
+     */
+    final int indexOf(int key) {
+        int[] ks = keys;
+        int mask = ks.length - 1;
+        int i = hash(key) & mask;
+        int k;
+        while ((k = ks[i]) != 0) {
+            if (k == key)
+                return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Stores a new non-zero key known to be absent, growing if needed.
+     */
+    private void insert(int i, int key, V value) {
+        if (size >= threshold && keys.length == MAXIMUM_CAPACITY)
+            throw new IllegalStateException("Map is full");
+        keys[i] = key;
+        values[i] = value;
+        ++modCount;
+        if (++size > threshold)
+            resize(keys.length << 1);
+    }
+
+    /**
+     * Removes the entry at the given slot by shifting back the entries of
+     * the same cluster that may no longer be reachable from their home slot.
+     */
+    final void removeAt(int pos) {
+        int[] ks = keys;
+        Object[] vs = values;
+        int mask = ks.length - 1;
+        for (;;) {
+            int last = pos, slot;
+            int k;
+            pos = (pos + 1) & mask;
+            for (;;) {
+                if ((k = ks[pos]) == 0) {
+                    ks[last] = 0;
+                    vs[last] = null;
+                    --size;
+                    ++modCount;
+                    return;
+                }
+                slot = hash(k) & mask;
+                if (last <= pos ? (last >= slot || slot > pos)
+                                : (last >= slot && slot > pos))
+                    break;
+                pos = (pos + 1) & mask;
+            }
+            ks[last] = k;
+            vs[last] = vs[pos];
+        }
+    }
+
+    /* ---------------- Primitive-keyed operations -------------- */
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains no key-value mappings.
+     *
+     * @return <tt>true</tt> if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains a mapping for the specified
+     * key.
+     *
+     * @param key the key whose presence in this map is to be tested
+     * @return <tt>true</tt> if this map contains a mapping for the key
+     */
+    public boolean containsKey(int key) {
+        return key == 0 ? containsZeroKey : indexOf(key) >= 0;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or
+     * {@code null} if this map contains no mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the mapped value, or {@code null} if none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (key == 0)
+            return zeroValue;
+        int i = indexOf(key);
+        return (i < 0) ? null : (V) values[i];
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or
+     * {@code defaultValue} if this map contains no mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @param defaultValue the value to return if the key is absent
+     * @return the mapped value, or {@code defaultValue} if none
+     */
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(int key, V defaultValue) {
+        if (key == 0)
+            return containsZeroKey ? zeroValue : defaultValue;
+        int i = indexOf(key);
+        return (i < 0) ? defaultValue : (V) values[i];
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>null</tt> if there was no mapping for <tt>key</tt>
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (key == 0) {
+            V old = zeroValue;
+            zeroValue = value;
+            if (!containsZeroKey) {
+                containsZeroKey = true;
+                ++size;
+                ++modCount;
+            }
+            return old;
+        }
+        int[] ks = keys;
+        int mask = ks.length - 1;
+        int i = hash(key) & mask;
+        int k;
+        while ((k = ks[i]) != 0) {
+            if (k == key) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        insert(i, key, value);
+        return null;
+    }
+
+    /**
+     * If the specified key is not already associated with a value (or is
+     * mapped to {@code null}), computes its value using the given mapping
+     * function and enters it into this map unless {@code null}.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param mappingFunction the function to compute a value
+     * @return the current (existing or computed) value associated with
+     *         the specified key, or null if the computed value is null
+     * @throws NullPointerException if the mapping function is null
+     * @throws ConcurrentModificationException if the mapping function
+     *         modified this map
+     */
+    @SuppressWarnings("unchecked")
+    public V computeIfAbsent(int key,
+                             IntFunction<? extends V> mappingFunction) {
+        if (mappingFunction == null)
+            throw new NullPointerException();
+        V v;
+        if (key == 0) {
+            if ((v = zeroValue) == null) {
+                int mc = modCount;
+                v = mappingFunction.apply(key);
+                if (mc != modCount)
+                    throw new ConcurrentModificationException();
+                if (v != null)
+                    put(0, v);
+            }
+            return v;
+        }
+        int[] ks = keys;
+        int mask = ks.length - 1;
+        int i = hash(key) & mask;
+        int k;
+        while ((k = ks[i]) != 0) {
+            if (k == key) {
+                if ((v = (V) values[i]) == null) {
+                    int mc = modCount;
+                    v = mappingFunction.apply(key);
+                    if (mc != modCount)
+                        throw new ConcurrentModificationException();
+                    values[i] = v;
+                }
+                return v;
+            }
+            i = (i + 1) & mask;
+        }
+        int mc = modCount;
+        v = mappingFunction.apply(key);
+        if (mc != modCount)
+            throw new ConcurrentModificationException();
+        if (v != null)
+            insert(i, key, v);
+        return v;
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>null</tt> if there was no mapping for <tt>key</tt>
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        if (key == 0) {
+            if (!containsZeroKey)
+                return null;
+            V old = zeroValue;
+            containsZeroKey = false;
+            zeroValue = null;
+            --size;
+            ++modCount;
+            return old;
+        }
+        int i = indexOf(key);
+        if (i < 0)
+            return null;
+        V old = (V) values[i];
+        removeAt(i);
+        return old;
+    }
+
+    /**
+     * Performs the given action for each mapping in this map, without boxing
+     * keys.  Mappings are visited in table order.
+     *
+     * <p>This is the primitive counterpart of {@link Map#forEach}.
+     *
+     * @param action the action to be performed for each mapping
+     * @throws NullPointerException if the specified action is null
+     * @throws ConcurrentModificationException if the map is structurally
+     *         modified by the action
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachEntry(IntObjConsumer<? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        if (containsZeroKey)
+            action.accept(0, zeroValue);
+        int[] ks = keys;
+        Object[] vs = values;
+        for (int i = 0; i < ks.length && mc == modCount; ++i) {
+            int k;
+            if ((k = ks[i]) != 0)
+                action.accept(k, (V) vs[i]);
+        }
+        if (mc != modCount)
+            throw new ConcurrentModificationException();
+    }
+
+    /**
+     * Returns a new array holding the keys of this map, in table order.
+     *
+     * @return an array of the keys of this map
+     */
+    public int[] keysToArray() {
+        int[] a = new int[size];
+        int n = 0;
+        if (containsZeroKey)
+            a[n++] = 0;
+        int[] ks = keys;
+        for (int i = 0; i < ks.length; ++i) {
+            if (ks[i] != 0)
+                a[n++] = ks[i];
+        }
+        return a;
+    }
+
+    /**
+     * Removes all of the mappings from this map.  The table keeps its
+     * current capacity.
+     */
+    public void clear() {
+        if (size > 0) {
+            ++modCount;
+            size = 0;
+            containsZeroKey = false;
+            zeroValue = null;
+            java.util.Arrays.fill(keys, 0);
+            java.util.Arrays.fill(values, null);
+        }
+    }
+
+    /**
+     * Shrinks the table to the smallest capacity that holds the current
+     * mappings within the load factor.
+     */
+    public void trimToSize() {
+        int cap = LongLongHashMap.capacityFor(size, loadFactor);
+        if (cap < keys.length) {
+            ++modCount;
+            resize(cap);
+        }
+    }
+
+    /* ---------------- Map<Integer, V> methods -------------- */
+
+    public boolean containsKey(Object key) {
+        return (key instanceof Integer) && containsKey(((Integer) key).intValue());
+    }
+
+    public boolean containsValue(Object value) {
+        if (containsZeroKey && Objects.equals(zeroValue, value))
+            return true;
+        int[] ks = keys;
+        Object[] vs = values;
+        for (int i = ks.length - 1; i >= 0; --i) {
+            if (ks[i] != 0 && Objects.equals(vs[i], value))
+                return true;
+        }
+        return false;
+    }
+
+    public V get(Object key) {
+        return (key instanceof Integer) ? get(((Integer) key).intValue()) : null;
+    }
+
+    public V put(Integer key, V value) {
+        return put(key.intValue(), value);
+    }
+
+    public V remove(Object key) {
+        return (key instanceof Integer) ? remove(((Integer) key).intValue()) : null;
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this map.  The
+     * view is created on first use; its entries read through to the backing
+     * arrays, and <tt>Entry.setValue</tt> writes through.
+     *
+     * @return a set view of the mappings contained in this map
+     */
+    public Set<Map.Entry<Integer, V>> entrySet() {
+        Set<Map.Entry<Integer, V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    /**
+     * Returns a shallow copy of this map: the values themselves are not
+     * cloned.
+     *
+     * @return a shallow copy of this map
+     */
+    @SuppressWarnings("unchecked")
+    public IntHashMap<V> clone() {
+        IntHashMap<V> result;
+        try {
+            result = (IntHashMap<V>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+        result.keys = keys.clone();
+        result.values = values.clone();
+        result.entrySet = null;
+        result.modCount = 0;
+        return result;
+    }
+
+    /* ---------------- Views -------------- */
+
+    final class EntrySet extends AbstractSet<Map.Entry<Integer, V>> {
+        public int size() { return size; }
+        public void clear() { IntHashMap.this.clear(); }
+        public Iterator<Map.Entry<Integer, V>> iterator() {
+            return new EntryIterator();
+        }
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object k = e.getKey();
+            if (!(k instanceof Integer))
+                return false;
+            int key = (Integer) k;
+            return containsKey(key) && Objects.equals(get(key), e.getValue());
+        }
+        public boolean remove(Object o) {
+            if (!contains(o))
+                return false;
+            IntHashMap.this.remove(((Integer) ((Map.Entry<?,?>) o).getKey())
+                                   .intValue());
+            return true;
+        }
+    }
+
+    /**
+     * Entry reading through to a table slot; {@code index == keys.length}
+     * denotes the zero key.
+     */
+    final class MapEntry implements Map.Entry<Integer, V> {
+        final int index;
+        MapEntry(int index) { this.index = index; }
+        public Integer getKey() {
+            return (index == keys.length) ? 0 : keys[index];
+        }
+        @SuppressWarnings("unchecked")
+        public V getValue() {
+            return (index == keys.length) ? zeroValue : (V) values[index];
+        }
+        @SuppressWarnings("unchecked")
+        public V setValue(V value) {
+            V old;
+            if (index == keys.length) {
+                old = zeroValue;
+                zeroValue = value;
+            } else {
+                old = (V) values[index];
+                values[index] = value;
+            }
+            return old;
+        }
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            return getKey().equals(e.getKey()) &&
+                Objects.equals(getValue(), e.getValue());
+        }
+        public int hashCode() {
+            return getKey().hashCode() ^ Objects.hashCode(getValue());
+        }
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+
+    /**
+     * Iterates the table from the highest slot downwards, remembering keys
+     * that a removal shifts across the wrap-around into visited slots.  See
+     * {@link LongLongHashMap} for the details.
+     */
+    final class EntryIterator implements Iterator<Map.Entry<Integer, V>> {
+        int pos = keys.length;          // current slot, counting down
+        int last = -1;                  // slot of last returned entry
+        int remaining = size;           // entries left to return
+        boolean mustReturnZeroKey = containsZeroKey;
+        int[] wrapped;                 // keys moved into visited slots
+        int wrappedCount;
+        int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            return remaining != 0;
+        }
+
+        public Map.Entry<Integer, V> next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (remaining == 0)
+                throw new NoSuchElementException();
+            --remaining;
+            if (mustReturnZeroKey) {
+                mustReturnZeroKey = false;
+                return new MapEntry(last = keys.length);
+            }
+            int[] ks = keys;
+            for (;;) {
+                if (--pos < 0) {
+                    last = Integer.MIN_VALUE;
+                    int k = wrapped[-pos - 1];
+                    int mask = ks.length - 1;
+                    int p = hash(k) & mask;
+                    while (ks[p] != k)
+                        p = (p + 1) & mask;
+                    return new MapEntry(p);
+                }
+                if (ks[pos] != 0)
+                    return new MapEntry(last = pos);
+            }
+        }
+
+        public void remove() {
+            if (last == -1)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (last == keys.length) {
+                containsZeroKey = false;
+                zeroValue = null;
+                --size;
+                ++modCount;
+            } else if (pos >= 0) {
+                shiftKeys(last);
+            } else {
+                IntHashMap.this.remove(wrapped[-pos - 1]);
+            }
+            last = -1;
+            expectedModCount = modCount;
+        }
+
+        private void shiftKeys(int pos) {
+            int[] ks = keys;
+            Object[] vs = values;
+            int mask = ks.length - 1;
+            for (;;) {
+                int last = pos, slot;
+                int k;
+                pos = (pos + 1) & mask;
+                for (;;) {
+                    if ((k = ks[pos]) == 0) {
+                        ks[last] = 0;
+                        vs[last] = null;
+                        --size;
+                        ++modCount;
+                        return;
+                    }
+                    slot = hash(k) & mask;
+                    if (last <= pos ? (last >= slot || slot > pos)
+                                    : (last >= slot && slot > pos))
+                        break;
+                    pos = (pos + 1) & mask;
+                }
+                if (pos < last) {
+                    if (wrapped == null)
+                        wrapped = new int[2];
+                    else if (wrappedCount == wrapped.length)
+                        wrapped = java.util.Arrays.copyOf(wrapped,
+                                                          wrappedCount << 1);
+                    wrapped[wrappedCount++] = k;
+                }
+                ks[last] = k;
+                vs[last] = vs[pos];
+            }
+        }
+    }
+
+    /* ---------------- Serialization -------------- */
+
+    /**
+     * Saves this map to a stream.
+     *
+     * @serialData The load factor (float), the number of mappings
+     *             (int), followed by the key (int) and value (Object)
+     *             of each mapping.
+     */
+    private void writeObject(java.io.ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(size);
+        if (containsZeroKey) {
+            s.writeInt(0);
+            s.writeObject(zeroValue);
+        }
+        int[] ks = keys;
+        Object[] vs = values;
+        for (int i = 0; i < ks.length; ++i) {
+            if (ks[i] != 0) {
+                s.writeInt(ks[i]);
+                s.writeObject(vs[i]);
+            }
+        }
+    }
+
+    /**
+     * Reconstitutes this map from a stream.
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(java.io.ObjectInputStream s)
+        throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        if (!(loadFactor > 0.0f && loadFactor < 1.0f))
+            throw new java.io.InvalidObjectException("Illegal load factor: " +
+                                                     loadFactor);
+        int mappings = s.readInt();
+        if (mappings < 0)
+            throw new java.io.InvalidObjectException("Illegal mappings count: " +
+                                                     mappings);
+        allocate(LongLongHashMap.capacityFor(mappings, loadFactor));
+        for (int i = 0; i < mappings; ++i) {
+            int k = s.readInt();
+            put(k, (V) s.readObject());
+        }
+    }
+}
@@ -0,0 +1,796 @@
+package util;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import util.function.LongLongConsumer;
+
+/**
+ * Open-addressing hash table mapping primitive {@code long} keys to
+ * primitive {@code long} values.  Keys and values are held in two parallel
+ * arrays, so a mapping costs sixteen bytes of table space rather than a
+ * {@code HashMap.Node} plus two boxed {@code Long} instances.
+ *
+ * <p>The primitive methods ({@link #get(long)}, {@link #put(long, long)},
+ * {@link #remove(long)}, {@link #addTo(long, long)} and
+ * {@link #forEachEntry(LongLongConsumer)}) never box.  Because a primitive result
+ * cannot be {@code null}, they return {@code 0L} when no mapping exists; use
+ * {@link #containsKey(long)} or {@link #getOrDefault(long, long)} to tell an
+ * absent key from a key mapped to zero.  The class also implements the full
+ * {@code Map<Long, Long>} interface for interoperability; the collection views
+ * are created lazily on first request and box on every access.
+ * The {@code Map} methods taking boxed keys delegate to the primitive
+ * ones, so a call such as {@code put(k, v)} has the same effect whichever
+ * overload it resolves to.
+ *
+ * <p>Collisions are resolved by linear probing, and removal uses backward
+ * shift deletion, so the table never contains tombstones and lookups stay
+ * short after heavy churn.  The key {@code 0L} is used to mark free slots and
+ * is therefore stored outside the table.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * The iterators returned by the collection views are <i>fail-fast</i> in the
+ * same sense as those of {@link HashMap}.
+ *
+ * @see HashMap
+ * @see LongHashMap
+ * @see IntHashMap
+ */
+public class LongLongHashMap extends AbstractMap<Long, Long>
+        implements Cloneable, Serializable {
+
+    private static final long serialVersionUID = 3490126411372598265L;
+
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * The maximum capacity, used if a higher value is implicitly specified by
+     * either of the constructors with arguments.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The load factor used when none specified in constructor.  Linear
+     * probing degrades quickly above one half, so this is lower than the
+     * default of {@link HashMap}.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.5f;
+
+    /**
+     * The key slots; {@code 0L} marks a free slot.  Length is always a power
+     * of two.
+     */
+    transient long[] keys;
+
+    /**
+     * The value slots, parallel to {@link #keys}.
+     */
+    transient long[] values;
+
+    /**
+     * Whether the key {@code 0L}, which cannot live in the table, is mapped.
+     */
+    transient boolean containsZeroKey;
+
+    /**
+     * The value mapped to {@code 0L} when {@link #containsZeroKey} is set.
+     */
+    transient long zeroValue;
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    transient int size;
+
+    /**
+     * The number of times this map has been structurally modified.
+     */
+    transient int modCount;
+
+    /**
+     * The next size value at which to resize (capacity * load factor).
+     */
+    transient int threshold;
+
+    /**
+     * The load factor for the hash table.
+     */
+    final float loadFactor;
+
+    /**
+     * Lazily created entry set view.
+     */
+    transient Set<Map.Entry<Long, Long>> entrySet;
+
+    /**
+     * Constructs an empty map with the specified initial capacity and load
+     * factor.
+     *
+     * @param initialCapacity the initial capacity
+     * @param loadFactor the load factor, in the range (0, 1)
+     * @throws IllegalArgumentException if the initial capacity is negative or
+     *         the load factor is not in range
+     */
+    public LongLongHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (!(loadFactor > 0.0f && loadFactor < 1.0f))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        this.loadFactor = loadFactor;
+        allocate(capacityFor(initialCapacity, loadFactor));
+    }
+
+    /**
+     * Constructs an empty map with the specified initial capacity and the
+     * default load factor (0.5).
+     *
+     * @param initialCapacity the initial capacity
+     * @throws IllegalArgumentException if the initial capacity is negative
+     */
+    public LongLongHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructs an empty map with the default initial capacity (16) and the
+     * default load factor (0.5).
+     */
+    public LongLongHashMap() {
+        this.loadFactor = DEFAULT_LOAD_FACTOR;
+        allocate(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs a new map with the same mappings as the specified map.
+     *
+     * @param m the map whose mappings are to be placed in this map
+     * @throws NullPointerException if the specified map, or any of its keys
+     *         or values, is null
+     */
+    public LongLongHashMap(Map<? extends Long, ? extends Long> m) {
+        this(m.size(), DEFAULT_LOAD_FACTOR);
+        putAll(m);
+    }
+
+    /* ---------------- Static utilities -------------- */
+
+    /**
+     * Spreads the bits of a key so that the low bits used for indexing
+     * depend on all 64 bits of the key (Fibonacci hashing folded to 32 bits).
+     */
+    static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Returns the power of two table length needed to hold the given number
+     * of mappings without exceeding the load factor.
+     */
+    static int capacityFor(int expected, float loadFactor) {
+        long n = (long) Math.ceil(expected / (double) loadFactor);
+        if (n >= MAXIMUM_CAPACITY)
+            return MAXIMUM_CAPACITY;
+        int cap = DEFAULT_INITIAL_CAPACITY >>> 2;
+        while (cap < n)
+            cap <<= 1;
+        return cap;
+    }
+
+    /* ---------------- Table management -------------- */
+
+    private void allocate(int cap) {
+        keys = new long[cap];
+        values = new long[cap];
+        // always keep at least one free slot so that probing terminates
+        threshold = Math.min(cap - 1, (int) (cap * loadFactor));
+    }
+
+    /**
+     * Rehashes every table entry into a table of the given length.
+     */
+    final void resize(int newCap) {
+        long[] oldKeys = keys, oldVals = values;
+        allocate(newCap);
+        long[] ks = keys, vs = values;
+        int mask = newCap - 1;
+        for (int j = oldKeys.length - 1; j >= 0; --j) {
+            long k;
+            if ((k = oldKeys[j]) != 0L) {
+                int i = hash(k) & mask;
+                while (ks[i] != 0L)
+                    i = (i + 1) & mask;
+                ks[i] = k;
+                vs[i] = oldVals[j];
+            }
+        }
+    }
+
+    /**
+     * Returns the table slot of the given non-zero key, or -1 if absent.
+     */
+    final int indexOf(long key) {
+        long[] ks = keys;
+        int mask = ks.length - 1;
+        int i = hash(key) & mask;
+        long k;
+        while ((k = ks[i]) != 0L) {
+            if (k == key)
+                return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Stores a new non-zero key known to be absent, growing if needed.
+     */
+    private void insert(int i, long key, long value) {
+        if (size >= threshold && keys.length == MAXIMUM_CAPACITY)
+            throw new IllegalStateException("Map is full");
+        keys[i] = key;
+        values[i] = value;
+        ++modCount;
+        if (++size > threshold)
+            resize(keys.length << 1);
+    }
+
+    /**
+     * Removes the entry at the given slot by shifting back the entries of
+     * the same cluster that may no longer be reachable from their home slot.
+     */
+    final void removeAt(int pos) {
+        long[] ks = keys, vs = values;
+        int mask = ks.length - 1;
+        for (;;) {
+            int last = pos, slot;
+            long k;
+            pos = (pos + 1) & mask;
+            for (;;) {
+                if ((k = ks[pos]) == 0L) {
+                    ks[last] = 0L;
+                    --size;
+                    ++modCount;
+                    return;
+                }
+                slot = hash(k) & mask;
+                if (last <= pos ? (last >= slot || slot > pos)
+                                : (last >= slot && slot > pos))
+                    break;
+                pos = (pos + 1) & mask;
+            }
+            ks[last] = k;
+            vs[last] = vs[pos];
+        }
+    }
+
+    /* ---------------- Primitive operations -------------- */
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains no key-value mappings.
+     *
+     * @return <tt>true</tt> if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains a mapping for the specified
+     * key.
+     *
+     * @param key the key whose presence in this map is to be tested
+     * @return <tt>true</tt> if this map contains a mapping for the key
+     */
+    public boolean containsKey(long key) {
+        return key == 0L ? containsZeroKey : indexOf(key) >= 0;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or {@code 0L}
+     * if this map contains no mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the mapped value, or {@code 0L} if none
+     */
+    public long get(long key) {
+        return getOrDefault(key, 0L);
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or
+     * {@code defaultValue} if this map contains no mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @param defaultValue the value to return if the key is absent
+     * @return the mapped value, or {@code defaultValue} if none
+     */
+    public long getOrDefault(long key, long defaultValue) {
+        if (key == 0L)
+            return containsZeroKey ? zeroValue : defaultValue;
+        int i = indexOf(key);
+        return (i < 0) ? defaultValue : values[i];
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with <tt>key</tt>, or {@code 0L}
+     *         if there was no mapping for <tt>key</tt>
+     */
+    public long put(long key, long value) {
+        if (key == 0L) {
+            long old = zeroValue;
+            zeroValue = value;
+            if (containsZeroKey)
+                return old;
+            containsZeroKey = true;
+            ++size;
+            ++modCount;
+            return 0L;
+        }
+        long[] ks = keys;
+        int mask = ks.length - 1;
+        int i = hash(key) & mask;
+        long k;
+        while ((k = ks[i]) != 0L) {
+            if (k == key) {
+                long old = values[i];
+                values[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        insert(i, key, value);
+        return 0L;
+    }
+
+    /**
+     * Adds the given delta to the value mapped to the specified key, treating
+     * an absent key as mapped to {@code 0L}.  This is the usual way to
+     * maintain counters without a read-modify-write round trip.
+     *
+     * @param key the key whose value is to be incremented
+     * @param delta the amount to add
+     * @return the new value associated with <tt>key</tt>
+     */
+    public long addTo(long key, long delta) {
+        if (key == 0L) {
+            if (!containsZeroKey) {
+                containsZeroKey = true;
+                zeroValue = 0L;
+                ++size;
+                ++modCount;
+            }
+            return zeroValue += delta;
+        }
+        long[] ks = keys;
+        int mask = ks.length - 1;
+        int i = hash(key) & mask;
+        long k;
+        while ((k = ks[i]) != 0L) {
+            if (k == key)
+                return values[i] += delta;
+            i = (i + 1) & mask;
+        }
+        insert(i, key, delta);
+        return delta;
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with <tt>key</tt>, or {@code 0L}
+     *         if there was no mapping for <tt>key</tt>
+     */
+    public long remove(long key) {
+        if (key == 0L) {
+            if (!containsZeroKey)
+                return 0L;
+            containsZeroKey = false;
+            --size;
+            ++modCount;
+            return zeroValue;
+        }
+        int i = indexOf(key);
+        if (i < 0)
+            return 0L;
+        long old = values[i];
+        removeAt(i);
+        return old;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map maps one or more keys to the
+     * specified value.  This operation scans the whole table.
+     *
+     * @param value value whose presence in this map is to be tested
+     * @return <tt>true</tt> if this map maps one or more keys to the value
+     */
+    public boolean containsValue(long value) {
+        if (containsZeroKey && zeroValue == value)
+            return true;
+        long[] ks = keys, vs = values;
+        for (int i = ks.length - 1; i >= 0; --i) {
+            if (ks[i] != 0L && vs[i] == value)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Performs the given action for each mapping in this map, without boxing
+     * keys or values.  Mappings are visited in table order.
+     *
+     * <p>This is the primitive counterpart of {@link Map#forEach}.
+     *
+     * @param action the action to be performed for each mapping
+     * @throws NullPointerException if the specified action is null
+     * @throws ConcurrentModificationException if the map is structurally
+     *         modified by the action
+     */
+    public void forEachEntry(LongLongConsumer action) {
+        if (action == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        if (containsZeroKey)
+            action.accept(0L, zeroValue);
+        long[] ks = keys, vs = values;
+        for (int i = 0; i < ks.length && mc == modCount; ++i) {
+            long k;
+            if ((k = ks[i]) != 0L)
+                action.accept(k, vs[i]);
+        }
+        if (mc != modCount)
+            throw new ConcurrentModificationException();
+    }
+
+    /**
+     * Returns a new array holding the keys of this map, in table order.
+     *
+     * @return an array of the keys of this map
+     */
+    public long[] keysToArray() {
+        long[] a = new long[size];
+        int n = 0;
+        if (containsZeroKey)
+            a[n++] = 0L;
+        long[] ks = keys;
+        for (int i = 0; i < ks.length; ++i) {
+            if (ks[i] != 0L)
+                a[n++] = ks[i];
+        }
+        return a;
+    }
+
+    /**
+     * Removes all of the mappings from this map.  The table keeps its
+     * current capacity.
+     */
+    public void clear() {
+        if (size > 0) {
+            ++modCount;
+            size = 0;
+            containsZeroKey = false;
+            java.util.Arrays.fill(keys, 0L);
+        }
+    }
+
+    /**
+     * Shrinks the table to the smallest capacity that holds the current
+     * mappings within the load factor.
+     */
+    public void trimToSize() {
+        int cap = capacityFor(size, loadFactor);
+        if (cap < keys.length) {
+            ++modCount;
+            resize(cap);
+        }
+    }
+
+    /* ---------------- Map<Long, Long> methods -------------- */
+
+    public boolean containsKey(Object key) {
+        return (key instanceof Long) && containsKey(((Long) key).longValue());
+    }
+
+    public boolean containsValue(Object value) {
+        return (value instanceof Long) &&
+            containsValue(((Long) value).longValue());
+    }
+
+    public Long get(Object key) {
+        if (!(key instanceof Long))
+            return null;
+        long k = (Long) key;
+        if (k == 0L)
+            return containsZeroKey ? zeroValue : null;
+        int i = indexOf(k);
+        return (i < 0) ? null : values[i];
+    }
+
+    public Long put(Long key, Long value) {
+        long k = key, v = value;
+        boolean present = containsKey(k);
+        long old = put(k, v);
+        return present ? old : null;
+    }
+
+    public Long remove(Object key) {
+        if (!(key instanceof Long))
+            return null;
+        long k = (Long) key;
+        if (!containsKey(k))
+            return null;
+        return remove(k);
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this map.  The
+     * view is created on first use; its entries read through to the backing
+     * arrays, and <tt>Entry.setValue</tt> writes through.
+     *
+     * @return a set view of the mappings contained in this map
+     */
+    public Set<Map.Entry<Long, Long>> entrySet() {
+        Set<Map.Entry<Long, Long>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    /**
+     * Returns a shallow copy of this map.
+     *
+     * @return a shallow copy of this map
+     */
+    public LongLongHashMap clone() {
+        LongLongHashMap result;
+        try {
+            result = (LongLongHashMap) super.clone();
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+        result.keys = keys.clone();
+        result.values = values.clone();
+        result.entrySet = null;
+        result.modCount = 0;
+        return result;
+    }
+
+    /* ---------------- Views -------------- */
+
+    final class EntrySet extends AbstractSet<Map.Entry<Long, Long>> {
+        public int size() { return size; }
+        public void clear() { LongLongHashMap.this.clear(); }
+        public Iterator<Map.Entry<Long, Long>> iterator() {
+            return new EntryIterator();
+        }
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object k = e.getKey(), v = e.getValue();
+            if (!(k instanceof Long) || !(v instanceof Long))
+                return false;
+            long key = (Long) k;
+            return containsKey(key) && get(key) == (Long) v;
+        }
+        public boolean remove(Object o) {
+            if (!contains(o))
+                return false;
+            LongLongHashMap.this.remove(((Long) ((Map.Entry<?,?>) o).getKey())
+                                        .longValue());
+            return true;
+        }
+    }
+
+    /**
+     * Entry reading through to a table slot; {@code index == keys.length}
+     * denotes the zero key.
+     */
+    final class MapEntry implements Map.Entry<Long, Long> {
+        final int index;
+        MapEntry(int index) { this.index = index; }
+        public Long getKey() {
+            return (index == keys.length) ? 0L : keys[index];
+        }
+        public Long getValue() {
+            return (index == keys.length) ? zeroValue : values[index];
+        }
+        public Long setValue(Long value) {
+            long v = value, old;
+            if (index == keys.length) {
+                old = zeroValue;
+                zeroValue = v;
+            } else {
+                old = values[index];
+                values[index] = v;
+            }
+            return old;
+        }
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            return getKey().equals(e.getKey()) &&
+                getValue().equals(e.getValue());
+        }
+        public int hashCode() {
+            return getKey().hashCode() ^ getValue().hashCode();
+        }
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+
+    /**
+     * Iterates the table from the highest slot downwards.  Removing an entry
+     * through the iterator shifts later entries of its cluster back; if a
+     * shift carries an entry that wrapped around the end of the table into
+     * the already visited region, its key is remembered and reported once
+     * the table has been exhausted.
+     */
+    final class EntryIterator implements Iterator<Map.Entry<Long, Long>> {
+        int pos = keys.length;          // current slot, counting down
+        int last = -1;                  // slot of last returned entry
+        int remaining = size;           // entries left to return
+        boolean mustReturnZeroKey = containsZeroKey;
+        long[] wrapped;                 // keys moved into visited slots
+        int wrappedCount;
+        int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            return remaining != 0;
+        }
+
+        public Map.Entry<Long, Long> next() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (remaining == 0)
+                throw new NoSuchElementException();
+            --remaining;
+            if (mustReturnZeroKey) {
+                mustReturnZeroKey = false;
+                return new MapEntry(last = keys.length);
+            }
+            long[] ks = keys;
+            for (;;) {
+                if (--pos < 0) {
+                    // enumerate entries carried across the wrap-around
+                    last = Integer.MIN_VALUE;
+                    long k = wrapped[-pos - 1];
+                    int mask = ks.length - 1;
+                    int p = hash(k) & mask;
+                    while (ks[p] != k)
+                        p = (p + 1) & mask;
+                    return new MapEntry(p);
+                }
+                if (ks[pos] != 0L)
+                    return new MapEntry(last = pos);
+            }
+        }
+
+        public void remove() {
+            if (last == -1)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (last == keys.length) {
+                containsZeroKey = false;
+                --size;
+                ++modCount;
+            } else if (pos >= 0) {
+                shiftKeys(last);
+            } else {
+                LongLongHashMap.this.remove(wrapped[-pos - 1]);
+            }
+            last = -1;
+            expectedModCount = modCount;
+        }
+
+        /**
+         * Variant of {@link LongLongHashMap#removeAt} that records entries
+         * moved from unvisited into visited slots.
+         */
+        private void shiftKeys(int pos) {
+            long[] ks = keys, vs = values;
+            int mask = ks.length - 1;
+            for (;;) {
+                int last = pos, slot;
+                long k;
+                pos = (pos + 1) & mask;
+                for (;;) {
+                    if ((k = ks[pos]) == 0L) {
+                        ks[last] = 0L;
+                        --size;
+                        ++modCount;
+                        return;
+                    }
+                    slot = hash(k) & mask;
+                    if (last <= pos ? (last >= slot || slot > pos)
+                                    : (last >= slot && slot > pos))
+                        break;
+                    pos = (pos + 1) & mask;
+                }
+                if (pos < last) {
+                    if (wrapped == null)
+                        wrapped = new long[2];
+                    else if (wrappedCount == wrapped.length)
+                        wrapped = java.util.Arrays.copyOf(wrapped,
+                                                          wrappedCount << 1);
+                    wrapped[wrappedCount++] = k;
+                }
+                ks[last] = k;
+                vs[last] = vs[pos];
+            }
+        }
+    }
+
+    /* ---------------- Serialization -------------- */
+
+    /**
+     * Saves this map to a stream.
+     *
+     * @serialData The load factor (float), the number of mappings
+     *             (int), followed by the key (long) and value (long)
+     *             of each mapping.
+     */
+    private void writeObject(java.io.ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(size);
+        if (containsZeroKey) {
+            s.writeLong(0L);
+            s.writeLong(zeroValue);
+        }
+        long[] ks = keys, vs = values;
+        for (int i = 0; i < ks.length; ++i) {
+            if (ks[i] != 0L) {
+                s.writeLong(ks[i]);
+                s.writeLong(vs[i]);
+            }
+        }
+    }
+
+    /**
+     * Reconstitutes this map from a stream.
+     */
+    private void readObject(java.io.ObjectInputStream s)
+        throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        if (!(loadFactor > 0.0f && loadFactor < 1.0f))
+            throw new java.io.InvalidObjectException("Illegal load factor: " +
+                                                     loadFactor);
+        int mappings = s.readInt();
+        if (mappings < 0)
+            throw new java.io.InvalidObjectException("Illegal mappings count: " +
+                                                     mappings);
+        allocate(capacityFor(mappings, loadFactor));
+        for (int i = 0; i < mappings; ++i) {
+            long k = s.readLong();
+            put(k, s.readLong());
+        }
+    }
+}
@@ -0,0 +1,926 @@
+package util;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * An immutable, persistent hash map based on a hash array mapped trie
+ * (HAMT).  "Updating" methods such as {@link #with} and {@link #without}
+ * leave this map unchanged and return a new map that shares all untouched
+ * structure with it, so a snapshot costs nothing and each update copies
+ * only the O(log<sub>32</sub> n) nodes on the path to the changed entry.
+ *
+ * <p>Each trie node consumes five bits of a key's (spread) hash code and
+ * keeps two bitmaps: one for keys stored inline in the node and one for
+ * child nodes.  Inline keys and values are stored alternately at the front
+ * of a single {@code Object[]} and children at its end, so a node of
+ * <i>k</i> entries costs one array of exactly 2<i>k</i> slots.  Keys whose
+ * 32-bit hash codes are fully equal share a collision node.  Removals keep
+ * the trie in canonical form by pulling lone entries back up into their
+ * parents, so iteration never visits empty or single-entry subtrees.
+ *
+ * <p>When many updates are applied in a row, {@link #asTransient} returns a
+ * {@link Transient} builder that updates nodes it created itself in place,
+ * avoiding a path copy per update; {@link Transient#persistent} then
+ * freezes its result into a new persistent map in O(1).
+ *
+ * <p>This class implements the read operations of {@link Map}; its
+ * mutators, and those of its views, throw
+ * {@link UnsupportedOperationException}.  The spliterators of the views
+ * split along subtree boundaries, so parallel streams over a map divide
+ * its trie between workers without copying.  Null keys and values are not
+ * permitted.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @see PersistentVector
+ * @see HashMap
+ */
+public final class PersistentHashMap<K,V> extends AbstractMap<K,V> {
+
+    /* ---------------- Trie nodes -------------- */
+
+    static final int BITS = 5;
+    static final int WIDTH = 1 << BITS;
+    static final int MASK = WIDTH - 1;
+
+    /**
+     * Node size classes, used to decide when a child can be inlined into
+     * its parent after a removal.
+     */
+    static final int SIZE_EMPTY = 0, SIZE_ONE = 1, SIZE_MORE = 2;
+
+    static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    static int mask(int hash, int shift) {
+        return (hash >>> shift) & MASK;
+    }
+
+    static int bitpos(int mask) {
+        return 1 << mask;
+    }
+
+    /**
+     * Records the effect of an update on the way back up the trie.
+     */
+    static final class Change {
+        boolean modified;     // whether any node changed
+        boolean sizeChanged;  // whether an entry was added or removed
+        Object oldValue;      // the replaced or removed value, if any
+    }
+
+    abstract static class Node {
+        /**
+         * The transient that created this node and may therefore update
+         * it in place, or null if the node is shared.
+         */
+        final Object owner;
+
+        Node(Object owner) {
+            this.owner = owner;
+        }
+
+        abstract Object find(Object key, int hash, int shift);
+
+        abstract Node put(Object owner, Object key, Object value,
+                          int hash, int shift, Change c);
+
+        abstract Node remove(Object owner, Object key,
+                             int hash, int shift, Change c);
+
+        abstract int payloadArity();
+
+        abstract Object keyAt(int i);
+
+        abstract Object valueAt(int i);
+
+        abstract int nodeArity();
+
+        abstract Node nodeAt(int i);
+
+        abstract int sizePredicate();
+
+        final boolean isEditable(Object owner) {
+            return owner != null && this.owner == owner;
+        }
+    }
+
+    /**
+     * An inner trie node: {@code array} holds the inline keys and values
+     * in bitmap order at its front, then the children in reverse bitmap
+     * order at its end.
+     */
+    static final class BitmapNode extends Node {
+        int dataMap;
+        int nodeMap;
+        Object[] array;
+
+        BitmapNode(Object owner, int dataMap, int nodeMap, Object[] array) {
+            super(owner);
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.array = array;
+        }
+
+        int dataIndex(int bit) {
+            return Integer.bitCount(dataMap & (bit - 1));
+        }
+
+        int nodeIndex(int bit) {
+            return Integer.bitCount(nodeMap & (bit - 1));
+        }
+
+        Node nodeForBit(int bit) {
+            return (Node) array[array.length - 1 - nodeIndex(bit)];
+        }
+
+        int payloadArity() { return Integer.bitCount(dataMap); }
+        Object keyAt(int i) { return array[i << 1]; }
+        Object valueAt(int i) { return array[(i << 1) + 1]; }
+        int nodeArity() { return Integer.bitCount(nodeMap); }
+        Node nodeAt(int i) { return (Node) array[array.length - 1 - i]; }
+
+        int sizePredicate() {
+            if (nodeMap != 0)
+                return SIZE_MORE;
+            int n = Integer.bitCount(dataMap);
+            return (n == 0) ? SIZE_EMPTY : (n == 1) ? SIZE_ONE : SIZE_MORE;
+        }
+
+        Object find(Object key, int hash, int shift) {
+            int bit = bitpos(mask(hash, shift));
+            if ((dataMap & bit) != 0) {
+                int i = dataIndex(bit) << 1;
+                return key.equals(array[i]) ? array[i + 1] : null;
+            }
+            if ((nodeMap & bit) != 0)
+                return nodeForBit(bit).find(key, hash, shift + BITS);
+            return null;
+        }
+
+        Node put(Object owner, Object key, Object value,
+                 int hash, int shift, Change c) {
+            int bit = bitpos(mask(hash, shift));
+            if ((dataMap & bit) != 0) {
+                int i = dataIndex(bit) << 1;
+                Object k0 = array[i];
+                if (key.equals(k0)) {
+                    Object v0 = array[i + 1];
+                    c.oldValue = v0;
+                    if (v0 == value)
+                        return this;
+                    c.modified = true;
+                    return copyAndSetSlot(owner, i + 1, value);
+                }
+                Node sub = mergeTwo(owner, k0, array[i + 1],
+                                    spread(k0.hashCode()),
+                                    key, value, hash, shift + BITS);
+                c.modified = c.sizeChanged = true;
+                return copyAndMigrateToNode(owner, bit, sub);
+            }
+            if ((nodeMap & bit) != 0) {
+                Node sub = nodeForBit(bit);
+                Node nsub = sub.put(owner, key, value, hash, shift + BITS, c);
+                if (!c.modified || nsub == sub)
+                    return this;
+                return copyAndSetSlot(owner, array.length - 1 - nodeIndex(bit), nsub);
+            }
+            c.modified = c.sizeChanged = true;
+            return copyAndInsertValue(owner, bit, key, value);
+        }
+
+        Node remove(Object owner, Object key, int hash, int shift, Change c) {
+            int bit = bitpos(mask(hash, shift));
+            if ((dataMap & bit) != 0) {
+                int di = dataIndex(bit);
+                int i = di << 1;
+                if (!key.equals(array[i]))
+                    return this;
+                c.oldValue = array[i + 1];
+                c.modified = c.sizeChanged = true;
+                if (nodeMap == 0 && Integer.bitCount(dataMap) == 2) {
+                    // The remaining entry either becomes the root, or is
+                    // inlined into the parent, which uses its own bit for
+                    // it; so position it for the root level.
+                    int j = (di == 0) ? 2 : 0;
+                    Object k = array[j], v = array[j + 1];
+                    int newDataMap = (shift == 0) ? (dataMap ^ bit)
+                        : bitpos(mask(spread(k.hashCode()), 0));
+                    return new BitmapNode(owner, newDataMap, 0,
+                                          new Object[] { k, v });
+                }
+                return copyAndRemoveValue(owner, bit);
+            }
+            if ((nodeMap & bit) != 0) {
+                Node sub = nodeForBit(bit);
+                Node nsub = sub.remove(owner, key, hash, shift + BITS, c);
+                if (!c.modified)
+                    return this;
+                switch (nsub.sizePredicate()) {
+                    case SIZE_ONE:
+                        if (dataMap == 0 && Integer.bitCount(nodeMap) == 1)
+                            return nsub;    // escalate the lone entry
+                        return copyAndMigrateToInline(owner, bit, nsub);
+                    case SIZE_EMPTY:
+                        throw new IllegalStateException(
+                            "Sub-node must have at least one element.");
+                    default:
+                        if (nsub == sub)
+                            return this;
+                        return copyAndSetSlot(owner,
+                                              array.length - 1 - nodeIndex(bit),
+                                              nsub);
+                }
+            }
+            return this;
+        }
+
+        /* ----- copy helpers: update in place when owned by the caller ----- */
+
+        private Node copyAndSetSlot(Object owner, int idx, Object x) {
+            if (isEditable(owner)) {
+                array[idx] = x;
+                return this;
+            }
+            Object[] a = array.clone();
+            a[idx] = x;
+            return new BitmapNode(owner, dataMap, nodeMap, a);
+        }
+
+        private Node update(Object owner, int dm, int nm, Object[] a) {
+            if (isEditable(owner)) {
+                dataMap = dm;
+                nodeMap = nm;
+                array = a;
+                return this;
+            }
+            return new BitmapNode(owner, dm, nm, a);
+        }
+
+        private Node copyAndInsertValue(Object owner, int bit,
+                                        Object key, Object value) {
+            int i = dataIndex(bit) << 1;
+            Object[] src = array;
+            Object[] a = new Object[src.length + 2];
+            System.arraycopy(src, 0, a, 0, i);
+            a[i] = key;
+            a[i + 1] = value;
+            System.arraycopy(src, i, a, i + 2, src.length - i);
+            return update(owner, dataMap | bit, nodeMap, a);
+        }
+
+        private Node copyAndRemoveValue(Object owner, int bit) {
+            int i = dataIndex(bit) << 1;
+            Object[] src = array;
+            Object[] a = new Object[src.length - 2];
+            System.arraycopy(src, 0, a, 0, i);
+            System.arraycopy(src, i + 2, a, i, src.length - i - 2);
+            return update(owner, dataMap ^ bit, nodeMap, a);
+        }
+
+        private Node copyAndMigrateToNode(Object owner, int bit, Node sub) {
+            int oldIdx = dataIndex(bit) << 1;
+            int newIdx = array.length - 2 - nodeIndex(bit);
+            Object[] src = array;
+            Object[] a = new Object[src.length - 1];
+            // copy data before the migrated entry, then data and nodes
+            // between it and the new node slot, then the remaining nodes
+            System.arraycopy(src, 0, a, 0, oldIdx);
+            System.arraycopy(src, oldIdx + 2, a, oldIdx, newIdx - oldIdx);
+            a[newIdx] = sub;
+            System.arraycopy(src, newIdx + 2, a, newIdx + 1,
+                             src.length - newIdx - 2);
+            return update(owner, dataMap ^ bit, nodeMap | bit, a);
+        }
+
+        private Node copyAndMigrateToInline(Object owner, int bit, Node sub) {
+            int oldIdx = array.length - 1 - nodeIndex(bit);
+            int newIdx = dataIndex(bit) << 1;
+            Object[] src = array;
+            Object[] a = new Object[src.length + 1];
+            System.arraycopy(src, 0, a, 0, newIdx);
+            a[newIdx] = sub.keyAt(0);
+            a[newIdx + 1] = sub.valueAt(0);
+            System.arraycopy(src, newIdx, a, newIdx + 2, oldIdx - newIdx);
+            System.arraycopy(src, oldIdx + 1, a, oldIdx + 2,
+                             src.length - oldIdx - 1);
+            return update(owner, dataMap | bit, nodeMap ^ bit, a);
+        }
+    }
+
+    /**
+     * A node holding entries whose spread hash codes are all equal.
+     */
+    static final class CollisionNode extends Node {
+        final int hash;
+        Object[] array; // alternating keys and values
+
+        CollisionNode(Object owner, int hash, Object[] array) {
+            super(owner);
+            this.hash = hash;
+            this.array = array;
+        }
+
+        int payloadArity() { return array.length >> 1; }
+        Object keyAt(int i) { return array[i << 1]; }
+        Object valueAt(int i) { return array[(i << 1) + 1]; }
+        int nodeArity() { return 0; }
+        Node nodeAt(int i) { throw new IndexOutOfBoundsException(); }
+        int sizePredicate() { return SIZE_MORE; }
+
+        int indexOf(Object key) {
+            Object[] a = array;
+            for (int i = 0; i < a.length; i += 2) {
+                if (key.equals(a[i]))
+                    return i;
+            }
+            return -1;
+        }
+
+        Object find(Object key, int hash, int shift) {
+            int i;
+            return (hash == this.hash && (i = indexOf(key)) >= 0)
+                ? array[i + 1] : null;
+        }
+
+        Node put(Object owner, Object key, Object value,
+                 int hash, int shift, Change c) {
+            int i = indexOf(key);
+            if (i >= 0) {
+                Object v0 = array[i + 1];
+                c.oldValue = v0;
+                if (v0 == value)
+                    return this;
+                c.modified = true;
+                if (isEditable(owner)) {
+                    array[i + 1] = value;
+                    return this;
+                }
+                Object[] a = array.clone();
+                a[i + 1] = value;
+                return new CollisionNode(owner, this.hash, a);
+            }
+            c.modified = c.sizeChanged = true;
+            Object[] a = java.util.Arrays.copyOf(array, array.length + 2);
+            a[array.length] = key;
+            a[array.length + 1] = value;
+            if (isEditable(owner)) {
+                array = a;
+                return this;
+            }
+            return new CollisionNode(owner, this.hash, a);
+        }
+
+        Node remove(Object owner, Object key, int hash, int shift, Change c) {
+            int i = indexOf(key);
+            if (i < 0)
+                return this;
+            c.oldValue = array[i + 1];
+            c.modified = c.sizeChanged = true;
+            if (array.length == 4) {
+                // positioned for the root level; see BitmapNode.remove
+                int j = (i == 0) ? 2 : 0;
+                return new BitmapNode(owner, bitpos(mask(this.hash, 0)), 0,
+                                      new Object[] { array[j], array[j + 1] });
+            }
+            Object[] a = new Object[array.length - 2];
+            System.arraycopy(array, 0, a, 0, i);
+            System.arraycopy(array, i + 2, a, i, array.length - i - 2);
+            if (isEditable(owner)) {
+                array = a;
+                return this;
+            }
+            return new CollisionNode(owner, this.hash, a);
+        }
+    }
+
+    /**
+     * Builds the smallest subtree holding two entries with different keys.
+     */
+    static Node mergeTwo(Object owner, Object k0, Object v0, int h0,
+                         Object k1, Object v1, int h1, int shift) {
+        if (shift >= 32)
+            return new CollisionNode(owner, h0, new Object[] { k0, v0, k1, v1 });
+        int m0 = mask(h0, shift), m1 = mask(h1, shift);
+        if (m0 != m1) {
+            int dataMap = bitpos(m0) | bitpos(m1);
+            return (m0 < m1)
+                ? new BitmapNode(owner, dataMap, 0, new Object[] { k0, v0, k1, v1 })
+                : new BitmapNode(owner, dataMap, 0, new Object[] { k1, v1, k0, v0 });
+        }
+        Node sub = mergeTwo(owner, k0, v0, h0, k1, v1, h1, shift + BITS);
+        return new BitmapNode(owner, 0, bitpos(m0), new Object[] { sub });
+    }
+
+    static final BitmapNode EMPTY_NODE = new BitmapNode(null, 0, 0, new Object[0]);
+
+    @SuppressWarnings("rawtypes")
+    static final PersistentHashMap EMPTY = new PersistentHashMap(EMPTY_NODE, 0);
+
+    /* ---------------- Map state -------------- */
+
+    final Node root;
+    final int size;
+
+    transient Set<Map.Entry<K,V>> entrySet;
+    transient Set<K> keySet;
+    transient Collection<V> values;
+
+    PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the empty persistent map.
+     *
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    public static <K,V> PersistentHashMap<K,V> empty() {
+        return (PersistentHashMap<K,V>) EMPTY;
+    }
+
+    /**
+     * Returns a persistent map with the mappings of the given map, built
+     * through a transient.
+     *
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     * @param m the map whose mappings are to be copied
+     * @return a persistent map with the same mappings
+     * @throws NullPointerException if the map or any of its keys or values
+     *         is null
+     */
+    @SuppressWarnings("unchecked")
+    public static <K,V> PersistentHashMap<K,V> copyOf(Map<? extends K, ? extends V> m) {
+        if (m instanceof PersistentHashMap)
+            return (PersistentHashMap<K,V>) m;
+        Transient<K,V> t = PersistentHashMap.<K,V>empty().asTransient();
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+            t.put(e.getKey(), e.getValue());
+        return t.persistent();
+    }
+
+    /* ---------------- Persistent updates -------------- */
+
+    /**
+     * Returns a map with the given key mapped to the given value, sharing
+     * all other structure with this map.  Returns this map if the key is
+     * already mapped to that very value.
+     *
+     * @param key the key
+     * @param value the value
+     * @return the updated map
+     * @throws NullPointerException if the key or value is null
+     */
+    public PersistentHashMap<K,V> with(K key, V value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        Change c = new Change();
+        Node r = root.put(null, key, value, spread(key.hashCode()), 0, c);
+        if (!c.modified)
+            return this;
+        return new PersistentHashMap<K,V>(r, c.sizeChanged ? size + 1 : size);
+    }
+
+    /**
+     * Returns a map without a mapping for the given key, sharing all other
+     * structure with this map.  Returns this map if the key is absent.
+     *
+     * @param key the key
+     * @return the updated map
+     * @throws NullPointerException if the key is null
+     */
+    public PersistentHashMap<K,V> without(Object key) {
+        if (key == null)
+            throw new NullPointerException();
+        Change c = new Change();
+        Node r = root.remove(null, key, spread(key.hashCode()), 0, c);
+        if (!c.modified)
+            return this;
+        return (size == 1) ? PersistentHashMap.<K,V>empty()
+            : new PersistentHashMap<K,V>(r, size - 1);
+    }
+
+    /**
+     * Returns a transient copy of this map, for efficient batches of
+     * updates.  This map is not affected by updates to the transient.
+     *
+     * @return a transient with the mappings of this map
+     */
+    public Transient<K,V> asTransient() {
+        return new Transient<K,V>(root, size);
+    }
+
+    /* ---------------- Map read operations -------------- */
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        return (V) root.find(key, spread(key.hashCode()), 0); // implicit null check
+    }
+
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    public V getOrDefault(Object key, V defaultValue) {
+        V v;
+        return ((v = get(key)) != null) ? v : defaultValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(java.util.function.BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        forEach(root, action);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K,V> void forEach(Node n, java.util.function.BiConsumer<? super K, ? super V> action) {
+        for (int i = 0, p = n.payloadArity(); i < p; ++i)
+            action.accept((K) n.keyAt(i), (V) n.valueAt(i));
+        for (int i = 0, q = n.nodeArity(); i < q; ++i)
+            forEach(n.nodeAt(i), action);
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) != null ? es : (entrySet = new EntrySet());
+    }
+
+    public Set<K> keySet() {
+        Set<K> ks;
+        return (ks = keySet) != null ? ks : (keySet = new KeySet());
+    }
+
+    public Collection<V> values() {
+        Collection<V> vs;
+        return (vs = values) != null ? vs : (values = new Values());
+    }
+
+    /* ---------------- Immutability -------------- */
+
+    static UnsupportedOperationException uoe() {
+        return new UnsupportedOperationException();
+    }
+
+    public V put(K key, V value) { throw uoe(); }
+    public void putAll(Map<? extends K, ? extends V> m) { throw uoe(); }
+    public V remove(Object key) { throw uoe(); }
+    public void clear() { throw uoe(); }
+    public V putIfAbsent(K key, V value) { throw uoe(); }
+    public boolean remove(Object key, Object value) { throw uoe(); }
+    public boolean replace(K key, V oldValue, V newValue) { throw uoe(); }
+    public V replace(K key, V value) { throw uoe(); }
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> f) { throw uoe(); }
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> f) { throw uoe(); }
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> f) { throw uoe(); }
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> f) { throw uoe(); }
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> f) { throw uoe(); }
+
+    /* ---------------- Views -------------- */
+
+    static final int KEYS = 0, VALUES = 1, ENTRIES = 2;
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public int size() { return size; }
+        public Iterator<Map.Entry<K,V>> iterator() {
+            return Spliterators.iterator(spliterator());
+        }
+        public Spliterator<Map.Entry<K,V>> spliterator() {
+            return new TrieSpliterator<Map.Entry<K,V>>(root, size, ENTRIES);
+        }
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object k = e.getKey(), v;
+            return k != null && (v = get(k)) != null && v.equals(e.getValue());
+        }
+        public boolean add(Map.Entry<K,V> e) { throw uoe(); }
+        public boolean remove(Object o) { throw uoe(); }
+        public void clear() { throw uoe(); }
+        public boolean removeAll(Collection<?> c) { throw uoe(); }
+        public boolean retainAll(Collection<?> c) { throw uoe(); }
+        public boolean removeIf(java.util.function.Predicate<? super Map.Entry<K,V>> p) { throw uoe(); }
+    }
+
+    final class KeySet extends AbstractSet<K> {
+        public int size() { return size; }
+        public Iterator<K> iterator() {
+            return Spliterators.iterator(spliterator());
+        }
+        public Spliterator<K> spliterator() {
+            return new TrieSpliterator<K>(root, size, KEYS);
+        }
+        public boolean contains(Object o) { return containsKey(o); }
+        public boolean add(K k) { throw uoe(); }
+        public boolean remove(Object o) { throw uoe(); }
+        public void clear() { throw uoe(); }
+        public boolean removeAll(Collection<?> c) { throw uoe(); }
+        public boolean retainAll(Collection<?> c) { throw uoe(); }
+        public boolean removeIf(java.util.function.Predicate<? super K> p) { throw uoe(); }
+    }
+
+    final class Values extends AbstractCollection<V> {
+        public int size() { return size; }
+        public Iterator<V> iterator() {
+            return Spliterators.iterator(spliterator());
+        }
+        public Spliterator<V> spliterator() {
+            return new TrieSpliterator<V>(root, size, VALUES);
+        }
+        public boolean add(V v) { throw uoe(); }
+        public boolean remove(Object o) { throw uoe(); }
+        public void clear() { throw uoe(); }
+        public boolean removeAll(Collection<?> c) { throw uoe(); }
+        public boolean retainAll(Collection<?> c) { throw uoe(); }
+        public boolean removeIf(java.util.function.Predicate<? super V> p) { throw uoe(); }
+    }
+
+    /**
+     * Spliterator over a list of traversal units, each either a whole
+     * subtree or just the inline entries of one node.  Splitting hands off
+     * half of the units not yet started; a single remaining subtree is
+     * first expanded into its inline entries plus one unit per child, so
+     * splits always fall on subtree boundaries.
+     */
+    static final class TrieSpliterator<T> implements Spliterator<T> {
+        final int kind;
+        Node[] units;
+        boolean[] full;     // whether units[i] covers its whole subtree
+        int lo, hi;         // unstarted units are [lo, hi)
+        long est;
+        boolean sized;
+
+        // traversal state for the unit in progress
+        Node[] stack = new Node[8];
+        int[] pos = new int[8];  // per level: next payload, then next child
+        int depth = -1;          // -1 if no unit in progress
+        boolean curFull;
+
+        TrieSpliterator(Node root, int size, int kind) {
+            this(new Node[] { root }, new boolean[] { true }, 0, 1, size, kind);
+            this.sized = true;
+        }
+
+        TrieSpliterator(Node[] units, boolean[] full, int lo, int hi,
+                        long est, int kind) {
+            this.units = units;
+            this.full = full;
+            this.lo = lo;
+            this.hi = hi;
+            this.est = est;
+            this.kind = kind;
+        }
+
+        @SuppressWarnings("unchecked")
+        T element(Node n, int i) {
+            switch (kind) {
+                case KEYS:   return (T) n.keyAt(i);
+                case VALUES: return (T) n.valueAt(i);
+                default:
+                    return (T) new AbstractMap.SimpleImmutableEntry<Object,Object>(
+                        n.keyAt(i), n.valueAt(i));
+            }
+        }
+
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (action == null)
+                throw new NullPointerException();
+            for (;;) {
+                if (depth < 0) {
+                    if (lo >= hi)
+                        return false;
+                    stack[0] = units[lo];
+                    pos[0] = 0;
+                    curFull = full[lo++];
+                    depth = 0;
+                }
+                Node n = stack[depth];
+                int p = pos[depth]++;
+                int pa = n.payloadArity();
+                if (p < pa) {
+                    action.accept(element(n, p));
+                    return true;
+                }
+                int ci = p - pa;
+                if (curFull && ci < n.nodeArity()) {
+                    if (++depth == stack.length) {
+                        stack = java.util.Arrays.copyOf(stack, depth << 1);
+                        pos = java.util.Arrays.copyOf(pos, depth << 1);
+                    }
+                    stack[depth] = n.nodeAt(ci);
+                    pos[depth] = 0;
+                } else {
+                    stack[depth--] = null;
+                }
+            }
+        }
+
+        public void forEachRemaining(Consumer<? super T> action) {
+            if (action == null)
+                throw new NullPointerException();
+            while (depth >= 0)
+                if (!tryAdvance(action))
+                    return;
+            for (; lo < hi; ++lo)
+                forEachIn(units[lo], full[lo], action);
+        }
+
+        private void forEachIn(Node n, boolean whole, Consumer<? super T> action) {
+            for (int i = 0, pa = n.payloadArity(); i < pa; ++i)
+                action.accept(element(n, i));
+            if (whole) {
+                for (int i = 0, na = n.nodeArity(); i < na; ++i)
+                    forEachIn(n.nodeAt(i), true, action);
+            }
+        }
+
+        public Spliterator<T> trySplit() {
+            if (hi - lo == 1 && full[lo]) {
+                // expand the last unstarted subtree
+                Node n = units[lo];
+                int na = n.nodeArity();
+                int pu = (n.payloadArity() > 0) ? 1 : 0;
+                if (na == 0 || na + pu < 2)
+                    return null;
+                Node[] us = new Node[na + pu];
+                boolean[] fs = new boolean[na + pu];
+                if (pu != 0)
+                    us[0] = n;   // fs[0] = false: inline entries only
+                for (int i = 0; i < na; ++i) {
+                    us[pu + i] = n.nodeAt(i);
+                    fs[pu + i] = true;
+                }
+                units = us;
+                full = fs;
+                lo = 0;
+                hi = us.length;
+            }
+            int n = hi - lo;
+            if (n < 2)
+                return null;
+            int mid = lo + (n >>> 1);
+            sized = false;
+            long half = est >>> 1;
+            TrieSpliterator<T> prefix =
+                new TrieSpliterator<T>(units, full, lo, mid, half, kind);
+            est -= half;
+            lo = mid;
+            return prefix;
+        }
+
+        public long estimateSize() {
+            return est;
+        }
+
+        public int characteristics() {
+            int c = Spliterator.DISTINCT | Spliterator.IMMUTABLE |
+                Spliterator.NONNULL;
+            return sized ? c | Spliterator.SIZED : c;
+        }
+
+        public Comparator<? super T> getComparator() {
+            throw new IllegalStateException();
+        }
+    }
+
+    /* ---------------- Transient -------------- */
+
+    /**
+     * A mutable, single-threaded builder derived from a persistent map.
+     * Nodes created by a transient are updated in place by later calls on
+     * the same transient; nodes shared with persistent maps are copied on
+     * first write, exactly as in the persistent operations.
+     * {@link #persistent} ends the transient's life: it returns the result
+     * as a persistent map, after which the transient may no longer be used.
+     *
+     * <p>Transients are not thread-safe.
+     *
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     */
+    public static final class Transient<K,V> {
+        private Object owner = new Object();
+        private Node root;
+        private int size;
+
+        Transient(Node root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+
+        private void ensureEditable() {
+            if (owner == null)
+                throw new IllegalStateException("Transient used after persistent() call");
+        }
+
+        /**
+         * Maps the given key to the given value.
+         *
+         * @param key the key
+         * @param value the value
+         * @return the previous value for the key, or {@code null}
+         * @throws NullPointerException if the key or value is null
+         * @throws IllegalStateException if {@link #persistent} was called
+         */
+        @SuppressWarnings("unchecked")
+        public V put(K key, V value) {
+            if (key == null || value == null)
+                throw new NullPointerException();
+            ensureEditable();
+            Change c = new Change();
+            root = root.put(owner, key, value, spread(key.hashCode()), 0, c);
+            if (c.sizeChanged) {
+                ++size;
+                return null;
+            }
+            return (V) c.oldValue;
+        }
+
+        /**
+         * Removes the mapping for the given key, if present.
+         *
+         * @param key the key
+         * @return the removed value, or {@code null}
+         * @throws NullPointerException if the key is null
+         * @throws IllegalStateException if {@link #persistent} was called
+         */
+        @SuppressWarnings("unchecked")
+        public V remove(Object key) {
+            if (key == null)
+                throw new NullPointerException();
+            ensureEditable();
+            Change c = new Change();
+            root = root.remove(owner, key, spread(key.hashCode()), 0, c);
+            if (!c.modified)
+                return null;
+            if (--size == 0)
+                root = EMPTY_NODE;
+            return (V) c.oldValue;
+        }
+
+        /**
+         * Returns the value for the given key, or {@code null}.
+         *
+         * @param key the key
+         * @return the value, or {@code null}
+         * @throws IllegalStateException if {@link #persistent} was called
+         */
+        @SuppressWarnings("unchecked")
+        public V get(Object key) {
+            ensureEditable();
+            return (V) root.find(key, spread(key.hashCode()), 0);
+        }
+
+        /**
+         * Returns the number of mappings.
+         *
+         * @return the number of mappings
+         * @throws IllegalStateException if {@link #persistent} was called
+         */
+        public int size() {
+            ensureEditable();
+            return size;
+        }
+
+        /**
+         * Returns the mappings built so far as a persistent map, and ends
+         * the life of this transient.
+         *
+         * @return the persistent map
+         * @throws IllegalStateException if called more than once
+         */
+        public PersistentHashMap<K,V> persistent() {
+            ensureEditable();
+            owner = null;
+            return (size == 0) ? PersistentHashMap.<K,V>empty()
+                : new PersistentHashMap<K,V>(root, size);
+        }
+    }
+}
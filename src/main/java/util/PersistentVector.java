@@ -0,0 +1,614 @@
+package util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * An immutable, persistent list based on a 32-way trie with a tail buffer.
+ * "Updating" methods such as {@link #with(Object)}, {@link #with(int,
+ * Object)} and {@link #withoutLast} leave this vector unchanged and return
+ * a new vector sharing all untouched structure with it.
+ *
+ * <p>Elements live in leaf arrays of 32; every inner node holds up to 32
+ * children, so {@link #get}, {@code with(int, E)} and structural updates
+ * touch O(log<sub>32</sub> n) nodes, which is at most seven for any
+ * {@code int} size.  The last, possibly partial, leaf is kept out of the
+ * trie as the <i>tail</i>, so appending and removing at the end usually
+ * copy a single array of at most 32 elements.
+ *
+ * <p>When many updates are applied in a row, {@link #asTransient} returns a
+ * {@link Transient} builder that updates nodes it created itself in place;
+ * {@link Transient#persistent} then freezes its result in O(1).
+ *
+ * <p>This class implements the read operations of {@link java.util.List};
+ * its mutators throw {@link UnsupportedOperationException}.  Its
+ * spliterator splits on leaf boundaries, so parallel streams give each
+ * worker whole leaf arrays to scan.  Null elements are permitted.
+ *
+ * @param <E> the type of elements in this vector
+ * @see PersistentHashMap
+ */
+public final class PersistentVector<E> extends AbstractList<E>
+    implements RandomAccess {
+
+    static final int BITS = 5;
+    static final int WIDTH = 1 << BITS;
+    static final int MASK = WIDTH - 1;
+
+    /**
+     * A trie node.  {@code owner} identifies the transient allowed to
+     * update the node in place, or is null if the node is shared.
+     */
+    static final class Node {
+        final Object owner;
+        final Object[] array;
+
+        Node(Object owner, Object[] array) {
+            this.owner = owner;
+            this.array = array;
+        }
+
+        Node(Object owner) {
+            this(owner, new Object[WIDTH]);
+        }
+    }
+
+    static final Node EMPTY_NODE = new Node(null);
+
+    @SuppressWarnings("rawtypes")
+    static final PersistentVector EMPTY =
+        new PersistentVector(0, BITS, EMPTY_NODE, new Object[0]);
+
+    final int size;
+    final int shift;   // BITS times the height of the trie
+    final Node root;
+    final Object[] tail;
+
+    PersistentVector(int size, int shift, Node root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    /**
+     * Returns the empty persistent vector.
+     *
+     * @param <E> the type of elements
+     * @return the empty vector
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> empty() {
+        return (PersistentVector<E>) EMPTY;
+    }
+
+    /**
+     * Returns a persistent vector with the elements of the given
+     * collection, in iteration order, built through a transient.
+     *
+     * @param <E> the type of elements
+     * @param c the collection whose elements are to be copied
+     * @return a persistent vector with the same elements
+     * @throws NullPointerException if the collection is null
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> copyOf(Collection<? extends E> c) {
+        if (c instanceof PersistentVector)
+            return (PersistentVector<E>) c;
+        Transient<E> t = PersistentVector.<E>empty().asTransient();
+        for (E e : c)
+            t.add(e);
+        return t.persistent();
+    }
+
+    /* ---------------- Trie navigation -------------- */
+
+    static int tailOffset(int size) {
+        return (size < WIDTH) ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    /**
+     * Returns the leaf array holding the element at the given index.
+     */
+    Object[] leafFor(int i) {
+        if (i >= tailOffset(size))
+            return tail;
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS)
+            node = (Node) node.array[(i >>> level) & MASK];
+        return node.array;
+    }
+
+    static Node newPath(Object owner, int level, Node node) {
+        if (level == 0)
+            return node;
+        Node ret = new Node(owner);
+        ret.array[0] = newPath(owner, level - BITS, node);
+        return ret;
+    }
+
+    /**
+     * Returns a copy of {@code parent} with the full leaf {@code tailNode}
+     * inserted at index {@code size - 1}'s position, copying only nodes not
+     * owned by {@code owner}.
+     */
+    static Node pushTail(Object owner, int size, int level,
+                         Node parent, Node tailNode) {
+        Node ret = editable(owner, parent);
+        int sub = ((size - 1) >>> level) & MASK;
+        Node insert;
+        if (level == BITS) {
+            insert = tailNode;
+        } else {
+            Node child = (Node) parent.array[sub];
+            insert = (child != null)
+                ? pushTail(owner, size, level - BITS, child, tailNode)
+                : newPath(owner, level - BITS, tailNode);
+        }
+        ret.array[sub] = insert;
+        return ret;
+    }
+
+    /**
+     * Returns a copy of {@code node} without its rightmost leaf, the one
+     * holding index {@code size - 2}, or null if nothing would remain.
+     */
+    static Node popTail(Object owner, int size, int level, Node node) {
+        int sub = ((size - 2) >>> level) & MASK;
+        if (level > BITS) {
+            Node child = popTail(owner, size, level - BITS, (Node) node.array[sub]);
+            if (child == null && sub == 0)
+                return null;
+            Node ret = editable(owner, node);
+            ret.array[sub] = child;
+            return ret;
+        } else if (sub == 0) {
+            return null;
+        } else {
+            Node ret = editable(owner, node);
+            ret.array[sub] = null;
+            return ret;
+        }
+    }
+
+    static Node assoc(Object owner, int level, Node node, int i, Object val) {
+        Node ret = editable(owner, node);
+        if (level == 0) {
+            ret.array[i & MASK] = val;
+        } else {
+            int sub = (i >>> level) & MASK;
+            ret.array[sub] = assoc(owner, level - BITS,
+                                   (Node) node.array[sub], i, val);
+        }
+        return ret;
+    }
+
+    static Node editable(Object owner, Node node) {
+        if (owner != null && node.owner == owner)
+            return node;
+        return new Node(owner, node.array.clone());
+    }
+
+    /* ---------------- Persistent updates -------------- */
+
+    /**
+     * Returns a vector with the given element appended.
+     *
+     * @param e the element to append
+     * @return the updated vector
+     * @throws IllegalStateException if this vector has
+     *         {@code Integer.MAX_VALUE} elements
+     */
+    public PersistentVector<E> with(E e) {
+        if (size == Integer.MAX_VALUE)
+            throw new IllegalStateException("Vector is full");
+        if (size - tailOffset(size) < WIDTH) {
+            Object[] t = Arrays.copyOf(tail, tail.length + 1);
+            t[tail.length] = e;
+            return new PersistentVector<E>(size + 1, shift, root, t);
+        }
+        Node tailNode = new Node(null, tail);
+        Node newRoot;
+        int newShift = shift;
+        if ((size >>> BITS) > (1 << shift)) {
+            // root overflow: grow the trie by one level
+            newRoot = new Node(null);
+            newRoot.array[0] = root;
+            newRoot.array[1] = newPath(null, shift, tailNode);
+            newShift += BITS;
+        } else {
+            newRoot = pushTail(null, size, shift, root, tailNode);
+        }
+        return new PersistentVector<E>(size + 1, newShift, newRoot,
+                                       new Object[] { e });
+    }
+
+    /**
+     * Returns a vector with the element at the given index replaced.
+     *
+     * @param index the index of the element to replace
+     * @param e the new element
+     * @return the updated vector
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public PersistentVector<E> with(int index, E e) {
+        checkIndex(index);
+        if (index >= tailOffset(size)) {
+            Object[] t = tail.clone();
+            t[index & MASK] = e;
+            return new PersistentVector<E>(size, shift, root, t);
+        }
+        return new PersistentVector<E>(size, shift,
+                                       assoc(null, shift, root, index, e), tail);
+    }
+
+    /**
+     * Returns a vector without its last element.
+     *
+     * @return the updated vector
+     * @throws IllegalStateException if this vector is empty
+     */
+    public PersistentVector<E> withoutLast() {
+        if (size == 0)
+            throw new IllegalStateException("Can't pop empty vector");
+        if (size == 1)
+            return empty();
+        if (size - tailOffset(size) > 1) {
+            Object[] t = Arrays.copyOf(tail, tail.length - 1);
+            return new PersistentVector<E>(size - 1, shift, root, t);
+        }
+        Object[] newTail = leafFor(size - 2);
+        Node newRoot = popTail(null, size, shift, root);
+        int newShift = shift;
+        if (newRoot == null)
+            newRoot = EMPTY_NODE;
+        if (shift > BITS && newRoot.array[1] == null) {
+            newRoot = (Node) newRoot.array[0];
+            newShift -= BITS;
+        }
+        return new PersistentVector<E>(size - 1, newShift, newRoot, newTail);
+    }
+
+    /**
+     * Returns a transient copy of this vector, for efficient batches of
+     * updates.  This vector is not affected by updates to the transient.
+     *
+     * @return a transient with the elements of this vector
+     */
+    public Transient<E> asTransient() {
+        return new Transient<E>(this);
+    }
+
+    /* ---------------- List read operations -------------- */
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        checkIndex(index);
+        return (E) leafFor(index)[index & MASK];
+    }
+
+    public Iterator<E> iterator() {
+        return new Itr();
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super E> action) {
+        Objects.requireNonNull(action);
+        for (int i = 0; i < size; i += WIDTH) {
+            Object[] leaf = leafFor(i);
+            for (int j = 0, n = Math.min(WIDTH, size - i); j < n; ++j)
+                action.accept((E) leaf[j]);
+        }
+    }
+
+    public Spliterator<E> spliterator() {
+        return new VectorSpliterator<E>(this, 0, size);
+    }
+
+    /* ---------------- Immutability -------------- */
+
+    static UnsupportedOperationException uoe() {
+        return new UnsupportedOperationException();
+    }
+
+    public boolean add(E e) { throw uoe(); }
+    public void add(int index, E e) { throw uoe(); }
+    public boolean addAll(Collection<? extends E> c) { throw uoe(); }
+    public boolean addAll(int index, Collection<? extends E> c) { throw uoe(); }
+    public E set(int index, E e) { throw uoe(); }
+    public E remove(int index) { throw uoe(); }
+    public boolean remove(Object o) { throw uoe(); }
+    public boolean removeAll(Collection<?> c) { throw uoe(); }
+    public boolean retainAll(Collection<?> c) { throw uoe(); }
+    public boolean removeIf(Predicate<? super E> filter) { throw uoe(); }
+    public void replaceAll(UnaryOperator<E> operator) { throw uoe(); }
+    public void sort(Comparator<? super E> c) { throw uoe(); }
+    public void clear() { throw uoe(); }
+
+    /* ---------------- Iteration -------------- */
+
+    /**
+     * Iterator that fetches one leaf array per 32 elements.
+     */
+    final class Itr implements Iterator<E> {
+        int cursor;
+        int base = -WIDTH;
+        Object[] leaf;
+
+        public boolean hasNext() {
+            return cursor < size;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E next() {
+            int i = cursor;
+            if (i >= size)
+                throw new NoSuchElementException();
+            if (i - base >= WIDTH) {
+                base = i & ~MASK;
+                leaf = leafFor(i);
+            }
+            cursor = i + 1;
+            return (E) leaf[i & MASK];
+        }
+    }
+
+    /**
+     * Index-range spliterator.  Splits are rounded to multiples of the
+     * leaf width, so no leaf array is shared between two halves.
+     */
+    static final class VectorSpliterator<E> implements Spliterator<E> {
+        final PersistentVector<E> vector;
+        int index;
+        final int fence;
+        Object[] leaf;
+        int base = -WIDTH;
+
+        VectorSpliterator(PersistentVector<E> vector, int origin, int fence) {
+            this.vector = vector;
+            this.index = origin;
+            this.fence = fence;
+        }
+
+        public Spliterator<E> trySplit() {
+            int lo = index, mid = ((lo + fence) >>> 1) & ~MASK;
+            if (mid <= lo)
+                return null;
+            index = mid;
+            return new VectorSpliterator<E>(vector, lo, mid);
+        }
+
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int i = index;
+            if (i >= fence)
+                return false;
+            if (i - base >= WIDTH || i < base) {
+                base = i & ~MASK;
+                leaf = vector.leafFor(i);
+            }
+            index = i + 1;
+            action.accept((E) leaf[i & MASK]);
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super E> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int i = index, hi = fence;
+            index = hi;
+            while (i < hi) {
+                Object[] a = vector.leafFor(i);
+                int end = Math.min(hi, (i & ~MASK) + WIDTH);
+                for (int j = i & MASK, n = j + (end - i); j < n; ++j)
+                    action.accept((E) a[j]);
+                i = end;
+            }
+        }
+
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED |
+                Spliterator.SUBSIZED | Spliterator.IMMUTABLE;
+        }
+    }
+
+    /* ---------------- Transient -------------- */
+
+    /**
+     * A mutable, single-threaded builder derived from a persistent vector.
+     * Nodes and tails created by a transient are updated in place by later
+     * calls on the same transient; shared nodes are copied on first write.
+     * {@link #persistent} ends the transient's life: it returns the result
+     * as a persistent vector, after which the transient may no longer be
+     * used.
+     *
+     * <p>Transients are not thread-safe.
+     *
+     * @param <E> the type of elements
+     */
+    public static final class Transient<E> {
+        private Object owner = new Object();
+        private int size;
+        private int shift;
+        private Node root;
+        private Object[] tail;  // always a private, full-width array
+
+        Transient(PersistentVector<E> v) {
+            this.size = v.size;
+            this.shift = v.shift;
+            this.root = editable(owner, v.root);
+            this.tail = Arrays.copyOf(v.tail, WIDTH);
+        }
+
+        private void ensureEditable() {
+            if (owner == null)
+                throw new IllegalStateException("Transient used after persistent() call");
+        }
+
+        private void checkIndex(int index) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+
+        private Object[] leafFor(int i) {
+            if (i >= tailOffset(size))
+                return tail;
+            Node node = root;
+            for (int level = shift; level > 0; level -= BITS)
+                node = (Node) node.array[(i >>> level) & MASK];
+            return node.array;
+        }
+
+        /**
+         * Appends the given element.
+         *
+         * @param e the element
+         * @return this transient
+         * @throws IllegalStateException if {@link #persistent} was called,
+         *         or the vector is full
+         */
+        public Transient<E> add(E e) {
+            ensureEditable();
+            int n = size;
+            if (n == Integer.MAX_VALUE)
+                throw new IllegalStateException("Vector is full");
+            if (n - tailOffset(n) < WIDTH) {
+                tail[n & MASK] = e;
+                size = n + 1;
+                return this;
+            }
+            Node tailNode = new Node(owner, tail);
+            tail = new Object[WIDTH];
+            tail[0] = e;
+            if ((n >>> BITS) > (1 << shift)) {
+                Node r = new Node(owner);
+                r.array[0] = root;
+                r.array[1] = newPath(owner, shift, tailNode);
+                root = r;
+                shift += BITS;
+            } else {
+                root = pushTail(owner, n, shift, root, tailNode);
+            }
+            size = n + 1;
+            return this;
+        }
+
+        /**
+         * Replaces the element at the given index.
+         *
+         * @param index the index
+         * @param e the new element
+         * @return this transient
+         * @throws IndexOutOfBoundsException if the index is out of range
+         * @throws IllegalStateException if {@link #persistent} was called
+         */
+        public Transient<E> set(int index, E e) {
+            ensureEditable();
+            checkIndex(index);
+            if (index >= tailOffset(size))
+                tail[index & MASK] = e;
+            else
+                root = assoc(owner, shift, root, index, e);
+            return this;
+        }
+
+        /**
+         * Removes the last element.
+         *
+         * @return this transient
+         * @throws IllegalStateException if {@link #persistent} was called,
+         *         or the vector is empty
+         */
+        public Transient<E> removeLast() {
+            ensureEditable();
+            int n = size;
+            if (n == 0)
+                throw new IllegalStateException("Can't pop empty vector");
+            if (n == 1 || n - tailOffset(n) > 1) {
+                tail[(n - 1) & MASK] = null;
+                size = n - 1;
+                return this;
+            }
+            Object[] newTail = leafFor(n - 2);
+            Node newRoot = popTail(owner, n, shift, root);
+            if (newRoot == null)
+                newRoot = new Node(owner);
+            if (shift > BITS && newRoot.array[1] == null) {
+                newRoot = editable(owner, (Node) newRoot.array[0]);
+                shift -= BITS;
+            }
+            root = newRoot;
+            tail = newTail.clone();
+            size = n - 1;
+            return this;
+        }
+
+        /**
+         * Returns the element at the given index.
+         *
+         * @param index the index
+         * @return the element
+         * @throws IndexOutOfBoundsException if the index is out of range
+         * @throws IllegalStateException if {@link #persistent} was called
+         */
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            ensureEditable();
+            checkIndex(index);
+            return (E) leafFor(index)[index & MASK];
+        }
+
+        /**
+         * Returns the number of elements.
+         *
+         * @return the number of elements
+         * @throws IllegalStateException if {@link #persistent} was called
+         */
+        public int size() {
+            ensureEditable();
+            return size;
+        }
+
+        /**
+         * Returns the elements added so far as a persistent vector, and
+         * ends the life of this transient.
+         *
+         * @return the persistent vector
+         * @throws IllegalStateException if called more than once
+         */
+        public PersistentVector<E> persistent() {
+            ensureEditable();
+            owner = null;
+            if (size == 0)
+                return empty();
+            Object[] t = Arrays.copyOf(tail, size - tailOffset(size));
+            return new PersistentVector<E>(size, shift, root, t);
+        }
+    }
+}
@@ -0,0 +1,440 @@
+package util;
+
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * This class implements least-significant-digit (LSD) radix sorts for
+ * {@code int}, {@code long}, {@code float} and {@code double} arrays,
+ * and for object arrays ordered by an extracted {@code int} or
+ * {@code long} key.  Keys are consumed eight bits at a time.  The
+ * histograms for all digits are gathered in a single read pass, and a
+ * pass is skipped when every element has the same digit in it, so
+ * keys drawn from a narrow range take fewer passes than the width of
+ * the type.  Every pass is stable, which makes the key-extracting
+ * sorts stable as well.
+ *
+ * Floating-point values are sorted through their bit patterns,
+ * remapped so that signed integer order agrees with the total order
+ * used by {@link Double#compareTo}: {@code -0.0} precedes {@code 0.0},
+ * and NaNs are moved to the end beforehand, as in DualPivotQuicksort.
+ *
+ * All exposed methods are package-private, designed to be invoked
+ * from public methods (in class Arrays, or the radix sorters of
+ * ArraysParallelSortHelpers) after performing any necessary array
+ * bounds checks and expanding parameters into the required forms.
+ *
+ * @see DualPivotQuicksort
+ */
+final class RadixSort {
+
+    /**
+     * Prevents instantiation.
+     */
+    private RadixSort() {}
+
+    /*
+     * Tuning parameters.
+     */
+
+    /**
+     * The number of key bits consumed by each pass.
+     */
+    static final int RADIX_BITS = 8;
+
+    /**
+     * The number of distinct digits, and so of buckets per pass.
+     */
+    static final int RADIX = 1 << RADIX_BITS;
+
+    /**
+     * Mask extracting one digit.
+     */
+    static final int DIGIT_MASK = RADIX - 1;
+
+    /**
+     * If the length of a primitive array to be sorted is less than
+     * this constant, Dual-Pivot Quicksort is used in preference to
+     * radix sort, whose per-pass histogram costs then dominate.
+     */
+    static final int RADIX_SORT_THRESHOLD = 1 << 10;
+
+    /**
+     * If the length of an object array to be sorted by key is less
+     * than this constant, (stable) insertion sort on the extracted
+     * keys is used in preference to radix sort.
+     */
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    /*
+     * Sorting methods for primitive arrays.  The bounds follow the
+     * conventions of DualPivotQuicksort: left and right are both
+     * inclusive.
+     */
+
+    /**
+     * Sorts the specified range of the array.
+     *
+     * @param a the array to be sorted
+     * @param left the index of the first element, inclusive, to be sorted
+     * @param right the index of the last element, inclusive, to be sorted
+     */
+    static void sort(int[] a, int left, int right) {
+        int n = right - left + 1;
+        if (n < RADIX_SORT_THRESHOLD) {
+            DualPivotQuicksort.sort(a, left, right, null, 0, 0);
+            return;
+        }
+        int[] w = new int[n];
+        if (lsd(a, left, w, 0, n, Integer.SIZE / RADIX_BITS) != a)
+            System.arraycopy(w, 0, a, left, n);
+    }
+
+    /**
+     * Sorts the specified range of the array.
+     *
+     * @param a the array to be sorted
+     * @param left the index of the first element, inclusive, to be sorted
+     * @param right the index of the last element, inclusive, to be sorted
+     */
+    static void sort(long[] a, int left, int right) {
+        int n = right - left + 1;
+        if (n < RADIX_SORT_THRESHOLD) {
+            DualPivotQuicksort.sort(a, left, right, null, 0, 0);
+            return;
+        }
+        long[] w = new long[n];
+        if (lsd(a, left, w, 0, n, Long.SIZE / RADIX_BITS) != a)
+            System.arraycopy(w, 0, a, left, n);
+    }
+
+    /**
+     * Sorts the specified range of the array.
+     *
+     * @param a the array to be sorted
+     * @param left the index of the first element, inclusive, to be sorted
+     * @param right the index of the last element, inclusive, to be sorted
+     */
+    static void sort(float[] a, int left, int right) {
+        /*
+         * Phase 1: Move NaNs to the end of the array.
+         */
+        while (left <= right && Float.isNaN(a[right])) {
+            --right;
+        }
+        for (int k = right; --k >= left; ) {
+            float ak = a[k];
+            if (ak != ak) { // a[k] is NaN
+                a[k] = a[right];
+                a[right] = ak;
+                --right;
+            }
+        }
+
+        /*
+         * Phase 2: Sort everything except NaNs through their
+         * order-preserving bit patterns.
+         */
+        int n = right - left + 1;
+        if (n < RADIX_SORT_THRESHOLD) {
+            DualPivotQuicksort.sort(a, left, right, null, 0, 0);
+            return;
+        }
+        int[] k = new int[n], w = new int[n];
+        for (int i = 0; i < n; ++i)
+            k[i] = sortableBits(Float.floatToRawIntBits(a[left + i]));
+        int[] r = lsd(k, 0, w, 0, n, Integer.SIZE / RADIX_BITS);
+        for (int i = 0; i < n; ++i)
+            a[left + i] = Float.intBitsToFloat(sortableBits(r[i]));
+    }
+
+    /**
+     * Sorts the specified range of the array.
+     *
+     * @param a the array to be sorted
+     * @param left the index of the first element, inclusive, to be sorted
+     * @param right the index of the last element, inclusive, to be sorted
+     */
+    static void sort(double[] a, int left, int right) {
+        /*
+         * Phase 1: Move NaNs to the end of the array.
+         */
+        while (left <= right && Double.isNaN(a[right])) {
+            --right;
+        }
+        for (int k = right; --k >= left; ) {
+            double ak = a[k];
+            if (ak != ak) { // a[k] is NaN
+                a[k] = a[right];
+                a[right] = ak;
+                --right;
+            }
+        }
+
+        /*
+         * Phase 2: Sort everything except NaNs through their
+         * order-preserving bit patterns.
+         */
+        int n = right - left + 1;
+        if (n < RADIX_SORT_THRESHOLD) {
+            DualPivotQuicksort.sort(a, left, right, null, 0, 0);
+            return;
+        }
+        long[] k = new long[n], w = new long[n];
+        for (int i = 0; i < n; ++i)
+            k[i] = sortableBits(Double.doubleToRawLongBits(a[left + i]));
+        long[] r = lsd(k, 0, w, 0, n, Long.SIZE / RADIX_BITS);
+        for (int i = 0; i < n; ++i)
+            a[left + i] = Double.longBitsToDouble(sortableBits(r[i]));
+    }
+
+    /**
+     * Maps the raw bits of a non-NaN float to an int whose signed
+     * order is the order of the floats, or maps such an int back to
+     * the raw bits; the mapping is its own inverse.  Negative values
+     * have all bits but the sign flipped, so that larger magnitudes
+     * compare lower.
+     */
+    static int sortableBits(int bits) {
+        return bits ^ ((bits >> 31) & Integer.MAX_VALUE);
+    }
+
+    /**
+     * Maps the raw bits of a non-NaN double to a long whose signed
+     * order is the order of the doubles, or back; see
+     * {@link #sortableBits(int)}.
+     */
+    static long sortableBits(long bits) {
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    /*
+     * Sorting methods for object arrays by extracted keys.
+     */
+
+    /**
+     * Stably sorts the specified range of the array by the keys
+     * extracted by the given function, which is applied exactly once
+     * to each element.
+     *
+     * @param a the array to be sorted
+     * @param left the index of the first element, inclusive, to be sorted
+     * @param right the index of the last element, inclusive, to be sorted
+     * @param keyExtractor the function extracting the sort key
+     */
+    static <T> void sortByIntKey(T[] a, int left, int right,
+                                 ToIntFunction<? super T> keyExtractor) {
+        int n = right - left + 1;
+        if (n < 2)
+            return;
+        int[] k = new int[n];
+        Object[] o = new Object[n];
+        for (int i = 0; i < n; ++i) {
+            T e = a[left + i];
+            k[i] = keyExtractor.applyAsInt(e);
+            o[i] = e;
+        }
+        if (n < INSERTION_SORT_THRESHOLD) {
+            for (int i = 1; i < n; ++i) {
+                int ki = k[i];
+                Object oi = o[i];
+                int j = i - 1;
+                for (; j >= 0 && k[j] > ki; --j) {
+                    k[j + 1] = k[j];
+                    o[j + 1] = o[j];
+                }
+                k[j + 1] = ki;
+                o[j + 1] = oi;
+            }
+        } else {
+            o = lsd(k, o, new int[n], new Object[n], n,
+                    Integer.SIZE / RADIX_BITS);
+        }
+        System.arraycopy(o, 0, a, left, n);
+    }
+
+    /**
+     * Stably sorts the specified range of the array by the keys
+     * extracted by the given function, which is applied exactly once
+     * to each element.
+     *
+     * @param a the array to be sorted
+     * @param left the index of the first element, inclusive, to be sorted
+     * @param right the index of the last element, inclusive, to be sorted
+     * @param keyExtractor the function extracting the sort key
+     */
+    static <T> void sortByLongKey(T[] a, int left, int right,
+                                  ToLongFunction<? super T> keyExtractor) {
+        int n = right - left + 1;
+        if (n < 2)
+            return;
+        long[] k = new long[n];
+        Object[] o = new Object[n];
+        for (int i = 0; i < n; ++i) {
+            T e = a[left + i];
+            k[i] = keyExtractor.applyAsLong(e);
+            o[i] = e;
+        }
+        if (n < INSERTION_SORT_THRESHOLD) {
+            for (int i = 1; i < n; ++i) {
+                long ki = k[i];
+                Object oi = o[i];
+                int j = i - 1;
+                for (; j >= 0 && k[j] > ki; --j) {
+                    k[j + 1] = k[j];
+                    o[j + 1] = o[j];
+                }
+                k[j + 1] = ki;
+                o[j + 1] = oi;
+            }
+        } else {
+            o = lsd(k, o, new long[n], new Object[n], n,
+                    Long.SIZE / RADIX_BITS);
+        }
+        System.arraycopy(o, 0, a, left, n);
+    }
+
+    /*
+     * LSD kernels.  Each takes the elements to sort at a[aBase, aBase
+     * + n) and a workspace slice w[wBase, wBase + n), and returns
+     * whichever of the two arrays holds the sorted elements (at its
+     * own base) once the given number of digit passes, starting from
+     * the least significant digit, is done.  Digits are taken from
+     * the values with their sign bit flipped, so that unsigned digit
+     * order is signed value order.
+     */
+
+    /**
+     * LSD kernel for ints.
+     */
+    static int[] lsd(int[] a, int aBase, int[] w, int wBase,
+                     int n, int passes) {
+        int[] count = new int[passes << RADIX_BITS];
+        for (int i = aBase, end = aBase + n; i < end; ++i) {
+            int v = a[i] ^ Integer.MIN_VALUE;
+            for (int off = 0, p = 0; p < passes;
+                 ++p, off += RADIX, v >>>= RADIX_BITS)
+                ++count[off + (v & DIGIT_MASK)];
+        }
+        int[] src = a, dst = w;
+        int sb = aBase, db = wBase;
+        for (int p = 0, shift = 0; p < passes; ++p, shift += RADIX_BITS) {
+            int off = p << RADIX_BITS;
+            if (!offsets(count, off, n, db))
+                continue;
+            for (int i = sb, end = sb + n; i < end; ++i) {
+                int v = src[i];
+                dst[count[off + (((v ^ Integer.MIN_VALUE) >>> shift) & DIGIT_MASK)]++] = v;
+            }
+            int[] t = src; src = dst; dst = t;
+            int tb = sb; sb = db; db = tb;
+        }
+        return src;
+    }
+
+    /**
+     * LSD kernel for longs.
+     */
+    static long[] lsd(long[] a, int aBase, long[] w, int wBase,
+                      int n, int passes) {
+        int[] count = new int[passes << RADIX_BITS];
+        for (int i = aBase, end = aBase + n; i < end; ++i) {
+            long v = a[i] ^ Long.MIN_VALUE;
+            for (int off = 0, p = 0; p < passes;
+                 ++p, off += RADIX, v >>>= RADIX_BITS)
+                ++count[off + ((int) v & DIGIT_MASK)];
+        }
+        long[] src = a, dst = w;
+        int sb = aBase, db = wBase;
+        for (int p = 0, shift = 0; p < passes; ++p, shift += RADIX_BITS) {
+            int off = p << RADIX_BITS;
+            if (!offsets(count, off, n, db))
+                continue;
+            for (int i = sb, end = sb + n; i < end; ++i) {
+                long v = src[i];
+                dst[count[off + ((int) ((v ^ Long.MIN_VALUE) >>> shift) & DIGIT_MASK)]++] = v;
+            }
+            long[] t = src; src = dst; dst = t;
+            int tb = sb; sb = db; db = tb;
+        }
+        return src;
+    }
+
+    /**
+     * LSD kernel for int keys carrying objects.  Both the key and
+     * object arrays are based at zero; returns the object array
+     * holding the sorted elements.
+     */
+    private static Object[] lsd(int[] k, Object[] o, int[] wk, Object[] wo,
+                                int n, int passes) {
+        int[] count = new int[passes << RADIX_BITS];
+        for (int i = 0; i < n; ++i) {
+            int v = k[i] ^ Integer.MIN_VALUE;
+            for (int off = 0, p = 0; p < passes;
+                 ++p, off += RADIX, v >>>= RADIX_BITS)
+                ++count[off + (v & DIGIT_MASK)];
+        }
+        for (int p = 0, shift = 0; p < passes; ++p, shift += RADIX_BITS) {
+            int off = p << RADIX_BITS;
+            if (!offsets(count, off, n, 0))
+                continue;
+            for (int i = 0; i < n; ++i) {
+                int v = k[i];
+                int j = count[off + (((v ^ Integer.MIN_VALUE) >>> shift) & DIGIT_MASK)]++;
+                wk[j] = v;
+                wo[j] = o[i];
+            }
+            int[] tk = k; k = wk; wk = tk;
+            Object[] to = o; o = wo; wo = to;
+        }
+        return o;
+    }
+
+    /**
+     * LSD kernel for long keys carrying objects.  Both the key and
+     * object arrays are based at zero; returns the object array
+     * holding the sorted elements.
+     */
+    private static Object[] lsd(long[] k, Object[] o, long[] wk, Object[] wo,
+                                int n, int passes) {
+        int[] count = new int[passes << RADIX_BITS];
+        for (int i = 0; i < n; ++i) {
+            long v = k[i] ^ Long.MIN_VALUE;
+            for (int off = 0, p = 0; p < passes;
+                 ++p, off += RADIX, v >>>= RADIX_BITS)
+                ++count[off + ((int) v & DIGIT_MASK)];
+        }
+        for (int p = 0, shift = 0; p < passes; ++p, shift += RADIX_BITS) {
+            int off = p << RADIX_BITS;
+            if (!offsets(count, off, n, 0))
+                continue;
+            for (int i = 0; i < n; ++i) {
+                long v = k[i];
+                int j = count[off + ((int) ((v ^ Long.MIN_VALUE) >>> shift) & DIGIT_MASK)]++;
+                wk[j] = v;
+                wo[j] = o[i];
+            }
+            long[] tk = k; k = wk; wk = tk;
+            Object[] to = o; o = wo; wo = to;
+        }
+        return o;
+    }
+
+    /**
+     * Turns the digit counts count[off, off + RADIX) into the
+     * starting positions of their buckets from base.  Returns false,
+     * leaving the counts unusable, if a single digit accounts for
+     * all n elements, in which case the pass would not move anything
+     * and can be skipped.
+     */
+    private static boolean offsets(int[] count, int off, int n, int base) {
+        for (int d = off, end = off + RADIX; d < end; ++d) {
+            int c = count[d];
+            if (c == n)
+                return false;
+            count[d] = base;
+            base += c;
+        }
+        return true;
+    }
+}
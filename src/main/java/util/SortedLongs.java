@@ -0,0 +1,765 @@
+package util;
+
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Operations on sorted {@code long} arrays: galloping search, k-way
+ * merge, and the union, intersection and difference of sorted sets.
+ * Every operation reads its inputs in place and writes its result into
+ * a caller-provided buffer, returning the number of elements written, so
+ * no boxed collections or intermediate arrays are created.  (The
+ * parallel variants allocate only their task objects.)
+ *
+ * <p>Ranges of input arrays are given as {@code fromIndex}, inclusive,
+ * and {@code toIndex}, exclusive, as in {@link Arrays}.  For the merge
+ * operations inputs need only be sorted in ascending order; for the set
+ * operations they must be sorted in <i>strictly</i> ascending order,
+ * that is, they must not contain duplicates.  The results are
+ * unspecified if an input is not sorted as required.  The destination
+ * range must not overlap any input.  A destination that is too small
+ * results in an {@code ArrayIndexOutOfBoundsException}, possibly after
+ * part of the result has been written; the capacity each operation
+ * needs is given in its description.
+ *
+ * <p>Intersection and difference switch from a linear merge to
+ * galloping through the larger input when the sizes of the inputs
+ * differ widely, so intersecting a short list with a long one costs
+ * time roughly proportional to the short list times the logarithm of
+ * the gap between its matches.
+ *
+ * <p>The parallel variants split their inputs on values, so that each
+ * {@link ForkJoinPool#commonPool() ForkJoin common pool} task handles
+ * disjoint value ranges of every input, and compact the partial results
+ * as tasks complete.  Inputs smaller than a minimum granularity are
+ * processed sequentially.
+ *
+ * @see Arrays#binarySearch(long[], int, int, long)
+ * @see SortedInts
+ */
+public final class SortedLongs {
+
+    /**
+     * The minimum number of input elements below which the parallel
+     * operations will not further split their work, as for
+     * Arrays.parallelSort.
+     */
+    private static final int MIN_PARALLEL_GRAN = 1 << 13;
+
+    /**
+     * When one input of an intersection or difference is at least
+     * this many times larger than the other, the larger one is
+     * searched by galloping rather than merged linearly.
+     */
+    private static final int GALLOP_RATIO = 16;
+
+    // Suppresses default constructor, ensuring non-instantiability.
+    private SortedLongs() {}
+
+    /**
+     * Checks that {@code fromIndex} and {@code toIndex} are in
+     * the range and throws an exception if they aren't.
+     */
+    private static void rangeCheck(int arrayLength, int fromIndex, int toIndex) {
+        if (fromIndex > toIndex) {
+            throw new IllegalArgumentException(
+                    "fromIndex(" + fromIndex + ") > toIndex(" + toIndex + ")");
+        }
+        if (fromIndex < 0) {
+            throw new ArrayIndexOutOfBoundsException(fromIndex);
+        }
+        if (toIndex > arrayLength) {
+            throw new ArrayIndexOutOfBoundsException(toIndex);
+        }
+    }
+
+    // Searching
+
+    /**
+     * Searches a range of the specified sorted array for the specified
+     * value by galloping (exponential search) forward from {@code
+     * fromIndex}: elements at offsets 1, 2, 4, ... are probed until one
+     * is not less than the key, and the last gap is then binary searched.
+     * The cost is logarithmic in the distance from {@code fromIndex} to
+     * the key rather than in the length of the range, which makes
+     * repeated searches for ascending keys, each starting where the
+     * previous one ended, cheap.
+     *
+     * @param a the array to be searched
+     * @param fromIndex the index of the first element (inclusive) to be
+     *          searched
+     * @param toIndex the index of the last element (exclusive) to be searched
+     * @param key the value to be searched for
+     * @return index of the search key, if it is contained in the range;
+     *         otherwise, <tt>(-(<i>insertion point</i>) - 1)</tt>, with the
+     *         insertion point defined as for
+     *         {@link Arrays#binarySearch(long[], int, int, long)}
+     * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+     * @throws ArrayIndexOutOfBoundsException
+     *         if {@code fromIndex < 0 or toIndex > a.length}
+     */
+    public static int gallop(long[] a, int fromIndex, int toIndex, long key) {
+        rangeCheck(a.length, fromIndex, toIndex);
+        int i = seek(a, fromIndex, toIndex, key);
+        return (i < toIndex && a[i] == key) ? i : -(i + 1);
+    }
+
+    /**
+     * Returns the least index in [from, to) whose element is not less
+     * than key, or {@code to} if there is none, by galloping from
+     * {@code from}.
+     */
+    static int seek(long[] a, int from, int to, long key) {
+        if (from >= to || a[from] >= key)
+            return from;
+        int lo = from, step = 1, hi;  // invariant: a[lo] < key
+        for (;;) {
+            hi = lo + step;
+            if (hi >= to || hi < 0) {  // hi < 0 on overflow
+                hi = to;
+                break;
+            }
+            if (a[hi] >= key)
+                break;
+            lo = hi;
+            step <<= 1;
+        }
+        return lowerBound(a, lo + 1, hi, key);
+    }
+
+    /**
+     * Returns the least index in [from, to) whose element is not less
+     * than key, or {@code to} if there is none, by binary search.
+     */
+    static int lowerBound(long[] a, int from, int to, long key) {
+        int low = from, high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (a[mid] < key)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    // Merging
+
+    /**
+     * Merges the given sorted arrays into one sorted sequence written to
+     * {@code dst}, keeping duplicates.  The destination must have room for
+     * the total length of the inputs.  Two inputs are merged directly;
+     * more are merged through a binary heap of the inputs' current heads.
+     *
+     * @param lists the arrays to merge, each sorted in ascending order
+     * @param dst the destination array
+     * @param dstFrom the index in {@code dst} at which to write the result
+     * @return the number of elements written
+     * @throws NullPointerException if {@code lists} or any of its elements
+     *         is null, or {@code dst} is null
+     */
+    public static int merge(long[][] lists, long[] dst, int dstFrom) {
+        int k = lists.length;
+        int[] from = new int[k], to = new int[k];
+        for (int i = 0; i < k; ++i)
+            to[i] = lists[i].length;
+        return merge(lists, from, to, dst, dstFrom);
+    }
+
+    /**
+     * Merges the ranges [from[i], to[i]) of lists[i] into dst at dstFrom,
+     * returning the count written.  Advances from[] as it consumes
+     * input.
+     */
+    static int merge(long[][] lists, int[] from, int[] to,
+                     long[] dst, int dstFrom) {
+        int k = lists.length, d = dstFrom;
+        // heap of the indices of non-empty inputs, ordered by their heads
+        int[] heap = new int[k];
+        int n = 0;
+        for (int i = 0; i < k; ++i) {
+            if (from[i] < to[i])
+                heap[n++] = i;
+        }
+        if (n == 0)
+            return 0;
+        if (n == 1) {
+            int i = heap[0], len = to[i] - from[i];
+            System.arraycopy(lists[i], from[i], dst, d, len);
+            from[i] = to[i];
+            return len;
+        }
+        if (n == 2) {
+            int x = heap[0], y = heap[1];
+            return merge(lists[x], from[x], to[x], lists[y], from[y], to[y],
+                         dst, d);
+        }
+        for (int j = (n >>> 1) - 1; j >= 0; --j)
+            siftDown(lists, from, heap, j, n);
+        while (n > 2) {
+            int i = heap[0];
+            long[] a = lists[i];
+            dst[d++] = a[from[i]++];
+            if (from[i] == to[i])
+                heap[0] = heap[--n];
+            siftDown(lists, from, heap, 0, n);
+        }
+        int x = heap[0], y = heap[1];
+        d += merge(lists[x], from[x], to[x], lists[y], from[y], to[y], dst, d);
+        return d - dstFrom;
+    }
+
+    /**
+     * Restores the heap property below index j of a heap of n inputs.
+     */
+    private static void siftDown(long[][] lists, int[] from, int[] heap,
+                                 int j, int n) {
+        int i = heap[j];
+        long v = lists[i][from[i]];
+        for (int c; (c = (j << 1) + 1) < n; j = c) {
+            int ci = heap[c];
+            long cv = lists[ci][from[ci]];
+            int r = c + 1;
+            if (r < n) {
+                int ri = heap[r];
+                long rv = lists[ri][from[ri]];
+                if (rv < cv) {
+                    c = r; ci = ri; cv = rv;
+                }
+            }
+            if (v <= cv)
+                break;
+            heap[j] = ci;
+        }
+        heap[j] = i;
+    }
+
+    /**
+     * Merges two sorted ranges into dst at dstFrom, keeping duplicates,
+     * and returns the count written.
+     */
+    private static int merge(long[] a, int aFrom, int aTo,
+                             long[] b, int bFrom, int bTo,
+                             long[] dst, int dstFrom) {
+        int i = aFrom, j = bFrom, d = dstFrom;
+        while (i < aTo && j < bTo) {
+            long x = a[i], y = b[j];
+            if (y < x) {
+                dst[d++] = y; ++j;
+            } else {
+                dst[d++] = x; ++i;
+            }
+        }
+        System.arraycopy(a, i, dst, d, aTo - i);
+        d += aTo - i;
+        System.arraycopy(b, j, dst, d, bTo - j);
+        d += bTo - j;
+        return d - dstFrom;
+    }
+
+    // Set operations
+
+    /**
+     * Writes the union of two sorted sets to {@code dst}: every value
+     * present in either input, once, in ascending order.  The destination
+     * must have room for {@code (aTo - aFrom) + (bTo - bFrom)} elements.
+     *
+     * @param a the first set
+     * @param aFrom the index of the first element (inclusive) of the first set
+     * @param aTo the index of the last element (exclusive) of the first set
+     * @param b the second set
+     * @param bFrom the index of the first element (inclusive) of the second set
+     * @param bTo the index of the last element (exclusive) of the second set
+     * @param dst the destination array
+     * @param dstFrom the index in {@code dst} at which to write the result
+     * @return the number of elements written
+     * @throws IllegalArgumentException if a from index is greater than its
+     *         to index
+     * @throws ArrayIndexOutOfBoundsException if an input range is out of
+     *         bounds, or the result does not fit in {@code dst}
+     */
+    public static int union(long[] a, int aFrom, int aTo,
+                            long[] b, int bFrom, int bTo,
+                            long[] dst, int dstFrom) {
+        rangeCheck(a.length, aFrom, aTo);
+        rangeCheck(b.length, bFrom, bTo);
+        return union0(a, aFrom, aTo, b, bFrom, bTo, dst, dstFrom);
+    }
+
+    /**
+     * Writes the intersection of two sorted sets to {@code dst}: every
+     * value present in both inputs, in ascending order.  The destination
+     * must have room for the length of the smaller input range.
+     *
+     * @param a the first set
+     * @param aFrom the index of the first element (inclusive) of the first set
+     * @param aTo the index of the last element (exclusive) of the first set
+     * @param b the second set
+     * @param bFrom the index of the first element (inclusive) of the second set
+     * @param bTo the index of the last element (exclusive) of the second set
+     * @param dst the destination array
+     * @param dstFrom the index in {@code dst} at which to write the result
+     * @return the number of elements written
+     * @throws IllegalArgumentException if a from index is greater than its
+     *         to index
+     * @throws ArrayIndexOutOfBoundsException if an input range is out of
+     *         bounds, or the result does not fit in {@code dst}
+     */
+    public static int intersection(long[] a, int aFrom, int aTo,
+                                   long[] b, int bFrom, int bTo,
+                                   long[] dst, int dstFrom) {
+        rangeCheck(a.length, aFrom, aTo);
+        rangeCheck(b.length, bFrom, bTo);
+        return intersection0(a, aFrom, aTo, b, bFrom, bTo, dst, dstFrom);
+    }
+
+    /**
+     * Writes the difference of two sorted sets to {@code dst}: every value
+     * of the first input that is not present in the second, in ascending
+     * order.  The destination must have room for {@code aTo - aFrom}
+     * elements.
+     *
+     * @param a the set to subtract from
+     * @param aFrom the index of the first element (inclusive) of the first set
+     * @param aTo the index of the last element (exclusive) of the first set
+     * @param b the set to subtract
+     * @param bFrom the index of the first element (inclusive) of the second set
+     * @param bTo the index of the last element (exclusive) of the second set
+     * @param dst the destination array
+     * @param dstFrom the index in {@code dst} at which to write the result
+     * @return the number of elements written
+     * @throws IllegalArgumentException if a from index is greater than its
+     *         to index
+     * @throws ArrayIndexOutOfBoundsException if an input range is out of
+     *         bounds, or the result does not fit in {@code dst}
+     */
+    public static int difference(long[] a, int aFrom, int aTo,
+                                 long[] b, int bFrom, int bTo,
+                                 long[] dst, int dstFrom) {
+        rangeCheck(a.length, aFrom, aTo);
+        rangeCheck(b.length, bFrom, bTo);
+        return difference0(a, aFrom, aTo, b, bFrom, bTo, dst, dstFrom);
+    }
+
+    /**
+     * Writes the intersection of all the given sorted sets to {@code dst}.
+     * The inputs are visited from the shortest up: each value of the
+     * shortest set is looked for in the others by galloping from where
+     * the previous search in that set ended, so the cost is driven by the
+     * shortest input.  The destination must have room for the length of
+     * the shortest input.
+     *
+     * @param sets the sets to intersect; if empty, nothing is written
+     * @param dst the destination array
+     * @param dstFrom the index in {@code dst} at which to write the result
+     * @return the number of elements written
+     * @throws NullPointerException if {@code sets} or any of its elements
+     *         is null, or {@code dst} is null
+     */
+    public static int intersection(long[][] sets, long[] dst, int dstFrom) {
+        int k = sets.length;
+        if (k == 0)
+            return 0;
+        // order the inputs by length; k is small, so insertion sort
+        long[][] s = sets.clone();
+        for (int i = 1; i < k; ++i) {
+            long[] x = s[i];
+            int j = i - 1;
+            for (; j >= 0 && s[j].length > x.length; --j)
+                s[j + 1] = s[j];
+            s[j + 1] = x;
+        }
+        if (k == 1) {
+            System.arraycopy(s[0], 0, dst, dstFrom, s[0].length);
+            return s[0].length;
+        }
+        if (k == 2)
+            return intersection0(s[0], 0, s[0].length, s[1], 0, s[1].length,
+                                 dst, dstFrom);
+        long[] first = s[0];
+        int[] pos = new int[k];
+        int d = dstFrom;
+        outer:
+        for (int i = 0; i < first.length; ++i) {
+            long v = first[i];
+            for (int j = 1; j < k; ++j) {
+                long[] x = s[j];
+                int p = pos[j] = seek(x, pos[j], x.length, v);
+                if (p == x.length)
+                    break outer;  // v and all later values are absent
+                if (x[p] != v)
+                    continue outer;
+            }
+            dst[d++] = v;
+        }
+        return d - dstFrom;
+    }
+
+    /*
+     * Unchecked versions of the set operations, shared by the
+     * sequential methods and the leaves of the parallel tasks.
+     */
+
+    static int union0(long[] a, int aFrom, int aTo,
+                      long[] b, int bFrom, int bTo,
+                      long[] dst, int dstFrom) {
+        int i = aFrom, j = bFrom, d = dstFrom;
+        while (i < aTo && j < bTo) {
+            long x = a[i], y = b[j];
+            if (x < y) {
+                dst[d++] = x; ++i;
+            } else if (y < x) {
+                dst[d++] = y; ++j;
+            } else {
+                dst[d++] = x; ++i; ++j;
+            }
+        }
+        System.arraycopy(a, i, dst, d, aTo - i);
+        d += aTo - i;
+        System.arraycopy(b, j, dst, d, bTo - j);
+        d += bTo - j;
+        return d - dstFrom;
+    }
+
+    static int intersection0(long[] a, int aFrom, int aTo,
+                             long[] b, int bFrom, int bTo,
+                             long[] dst, int dstFrom) {
+        int na = aTo - aFrom, nb = bTo - bFrom;
+        if (na > nb) {  // make a the smaller input
+            long[] t = a; a = b; b = t;
+            int f = aFrom; aFrom = bFrom; bFrom = f;
+            f = aTo; aTo = bTo; bTo = f;
+            f = na; na = nb; nb = f;
+        }
+        int i = aFrom, j = bFrom, d = dstFrom;
+        if (nb / GALLOP_RATIO > na) {
+            for (; i < aTo && j < bTo; ++i) {
+                long x = a[i];
+                if ((j = seek(b, j, bTo, x)) < bTo && b[j] == x)
+                    dst[d++] = x;
+            }
+        } else {
+            while (i < aTo && j < bTo) {
+                long x = a[i], y = b[j];
+                if (x < y)
+                    ++i;
+                else if (y < x)
+                    ++j;
+                else {
+                    dst[d++] = x; ++i; ++j;
+                }
+            }
+        }
+        return d - dstFrom;
+    }
+
+    static int difference0(long[] a, int aFrom, int aTo,
+                           long[] b, int bFrom, int bTo,
+                           long[] dst, int dstFrom) {
+        int i = aFrom, j = bFrom, d = dstFrom;
+        if ((bTo - bFrom) / GALLOP_RATIO > aTo - aFrom) {
+            for (; i < aTo && j < bTo; ++i) {
+                long x = a[i];
+                if ((j = seek(b, j, bTo, x)) == bTo || b[j] != x)
+                    dst[d++] = x;
+            }
+        } else {
+            while (i < aTo && j < bTo) {
+                long x = a[i], y = b[j];
+                if (x < y) {
+                    dst[d++] = x; ++i;
+                } else if (y < x)
+                    ++j;
+                else {
+                    ++i; ++j;
+                }
+            }
+        }
+        System.arraycopy(a, i, dst, d, aTo - i);
+        d += aTo - i;
+        return d - dstFrom;
+    }
+
+    // Parallel operations
+
+    /**
+     * Merges the given sorted arrays as {@link #merge(long[][], long[], int)}
+     * does, splitting the work across the common {@link ForkJoinPool}.
+     * Each task takes the same value range of every input, so the position
+     * of its output is known in advance and no compaction is needed.
+     *
+     * @param lists the arrays to merge, each sorted in ascending order
+     * @param dst the destination array
+     * @param dstFrom the index in {@code dst} at which to write the result
+     * @return the number of elements written
+     * @throws NullPointerException if {@code lists} or any of its elements
+     *         is null, or {@code dst} is null
+     */
+    public static int parallelMerge(long[][] lists, long[] dst, int dstFrom) {
+        int k = lists.length, p;
+        int[] from = new int[k], to = new int[k];
+        long total = 0L;
+        for (int i = 0; i < k; ++i)
+            total += (to[i] = lists[i].length);
+        if (total <= MIN_PARALLEL_GRAN ||
+            (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            return merge(lists, from, to, dst, dstFrom);
+        new Merger(null, lists, from, to, dst, dstFrom,
+                   granularity(total, p)).invoke();
+        return (int) total;
+    }
+
+    /**
+     * Computes the same result as
+     * {@link #union(long[], int, int, long[], int, int, long[], int) union},
+     * splitting the work across the common {@link ForkJoinPool}.  The
+     * destination must have room for {@code (aTo - aFrom) + (bTo - bFrom)}
+     * elements.
+     *
+     * @param a the first set
+     * @param aFrom the index of the first element (inclusive) of the first set
+     * @param aTo the index of the last element (exclusive) of the first set
+     * @param b the second set
+     * @param bFrom the index of the first element (inclusive) of the second set
+     * @param bTo the index of the last element (exclusive) of the second set
+     * @param dst the destination array
+     * @param dstFrom the index in {@code dst} at which to write the result
+     * @return the number of elements written
+     * @throws IllegalArgumentException if a from index is greater than its
+     *         to index
+     * @throws ArrayIndexOutOfBoundsException if an input range is out of
+     *         bounds, or the result does not fit in {@code dst}
+     */
+    public static int parallelUnion(long[] a, int aFrom, int aTo,
+                                    long[] b, int bFrom, int bTo,
+                                    long[] dst, int dstFrom) {
+        rangeCheck(a.length, aFrom, aTo);
+        rangeCheck(b.length, bFrom, bTo);
+        return setOp(SetOp.UNION, a, aFrom, aTo, b, bFrom, bTo, dst, dstFrom);
+    }
+
+    /**
+     * Computes the same result as
+     * {@link #intersection(long[], int, int, long[], int, int, long[], int)
+     * intersection}, splitting the work across the common {@link
+     * ForkJoinPool}.  The destination must have room for the length of the
+     * smaller input range.
+     *
+     * @param a the first set
+     * @param aFrom the index of the first element (inclusive) of the first set
+     * @param aTo the index of the last element (exclusive) of the first set
+     * @param b the second set
+     * @param bFrom the index of the first element (inclusive) of the second set
+     * @param bTo the index of the last element (exclusive) of the second set
+     * @param dst the destination array
+     * @param dstFrom the index in {@code dst} at which to write the result
+     * @return the number of elements written
+     * @throws IllegalArgumentException if a from index is greater than its
+     *         to index
+     * @throws ArrayIndexOutOfBoundsException if an input range is out of
+     *         bounds, or the result does not fit in {@code dst}
+     */
+    public static int parallelIntersection(long[] a, int aFrom, int aTo,
+                                           long[] b, int bFrom, int bTo,
+                                           long[] dst, int dstFrom) {
+        rangeCheck(a.length, aFrom, aTo);
+        rangeCheck(b.length, bFrom, bTo);
+        if (aTo - aFrom > bTo - bFrom)  // bound output by the smaller input
+            return setOp(SetOp.INTERSECTION, b, bFrom, bTo, a, aFrom, aTo,
+                         dst, dstFrom);
+        return setOp(SetOp.INTERSECTION, a, aFrom, aTo, b, bFrom, bTo,
+                     dst, dstFrom);
+    }
+
+    /**
+     * Computes the same result as
+     * {@link #difference(long[], int, int, long[], int, int, long[], int)
+     * difference}, splitting the work across the common {@link
+     * ForkJoinPool}.  The destination must have room for {@code aTo -
+     * aFrom} elements.
+     *
+     * @param a the set to subtract from
+     * @param aFrom the index of the first element (inclusive) of the first set
+     * @param aTo the index of the last element (exclusive) of the first set
+     * @param b the set to subtract
+     * @param bFrom the index of the first element (inclusive) of the second set
+     * @param bTo the index of the last element (exclusive) of the second set
+     * @param dst the destination array
+     * @param dstFrom the index in {@code dst} at which to write the result
+     * @return the number of elements written
+     * @throws IllegalArgumentException if a from index is greater than its
+     *         to index
+     * @throws ArrayIndexOutOfBoundsException if an input range is out of
+     *         bounds, or the result does not fit in {@code dst}
+     */
+    public static int parallelDifference(long[] a, int aFrom, int aTo,
+                                         long[] b, int bFrom, int bTo,
+                                         long[] dst, int dstFrom) {
+        rangeCheck(a.length, aFrom, aTo);
+        rangeCheck(b.length, bFrom, bTo);
+        return setOp(SetOp.DIFFERENCE, a, aFrom, aTo, b, bFrom, bTo,
+                     dst, dstFrom);
+    }
+
+    /**
+     * Runs a two-input set operation in parallel if the inputs are large
+     * enough, else sequentially.
+     */
+    private static int setOp(int op, long[] a, int aFrom, int aTo,
+                             long[] b, int bFrom, int bTo,
+                             long[] dst, int dstFrom) {
+        long total = (long) (aTo - aFrom) + (bTo - bFrom);
+        int p;
+        if (total <= MIN_PARALLEL_GRAN ||
+            (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            return SetOp.apply(op, a, aFrom, aTo, b, bFrom, bTo, dst, dstFrom);
+        SetOp t = new SetOp(null, op, a, aFrom, aTo, b, bFrom, bTo,
+                            dst, dstFrom, granularity(total, p));
+        t.invoke();
+        return t.count;
+    }
+
+    /**
+     * Returns the number of input elements below which a task is not
+     * split further, aiming at four leaves per worker.
+     */
+    private static int granularity(long total, int parallelism) {
+        long g = total / (parallelism << 2);
+        return (g <= MIN_PARALLEL_GRAN) ? MIN_PARALLEL_GRAN :
+            (int) Math.min(g, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Task for the parallel set operations.  A task splits the larger
+     * of its two input ranges at its middle value, and the other range
+     * at the first element not less than that value, so both children
+     * see disjoint value ranges.  Each child writes its output at the
+     * position its inputs could at most fill, which keeps children
+     * from overlapping: for a union the left child needs room for both
+     * of its ranges, for an intersection or difference only for its
+     * range of the first input.  On completion the right child's output
+     * is moved down to follow the left child's.
+     */
+    @SuppressWarnings("serial")
+    static final class SetOp extends CountedCompleter<Void> {
+        static final int UNION = 0, INTERSECTION = 1, DIFFERENCE = 2;
+        final int op;
+        final long[] a, b, dst;
+        final int aFrom, aTo, bFrom, bTo, dstFrom, gran;
+        int count;          // number of elements written at dstFrom
+        SetOp left, right;
+
+        SetOp(CountedCompleter<?> par, int op,
+              long[] a, int aFrom, int aTo, long[] b, int bFrom, int bTo,
+              long[] dst, int dstFrom, int gran) {
+            super(par);
+            this.op = op;
+            this.a = a; this.aFrom = aFrom; this.aTo = aTo;
+            this.b = b; this.bFrom = bFrom; this.bTo = bTo;
+            this.dst = dst; this.dstFrom = dstFrom; this.gran = gran;
+        }
+
+        static int apply(int op, long[] a, int aFrom, int aTo,
+                         long[] b, int bFrom, int bTo,
+                         long[] dst, int dstFrom) {
+            switch (op) {
+                case UNION:
+                    return union0(a, aFrom, aTo, b, bFrom, bTo, dst, dstFrom);
+                case INTERSECTION:
+                    return intersection0(a, aFrom, aTo, b, bFrom, bTo, dst, dstFrom);
+                default:
+                    return difference0(a, aFrom, aTo, b, bFrom, bTo, dst, dstFrom);
+            }
+        }
+
+        public final void compute() {
+            int op = this.op, af = aFrom, at = aTo, bf = bFrom, bt = bTo;
+            long[] a = this.a, b = this.b;
+            int na = at - af, nb = bt - bf;
+            if (na + nb <= gran || Math.max(na, nb) < 2) {
+                count = apply(op, a, af, at, b, bf, bt, dst, dstFrom);
+                tryComplete();
+                return;
+            }
+            int am, bm;
+            if (na >= nb) {
+                am = (af + at) >>> 1;
+                bm = lowerBound(b, bf, bt, a[am]);
+            } else {
+                bm = (bf + bt) >>> 1;
+                am = lowerBound(a, af, at, b[bm]);
+            }
+            int rd = dstFrom + (am - af) + (op == UNION ? bm - bf : 0);
+            setPendingCount(1);
+            (right = new SetOp(this, op, a, am, at, b, bm, bt, dst, rd, gran)).fork();
+            (left = new SetOp(this, op, a, af, am, b, bf, bm, dst, dstFrom, gran)).compute();
+        }
+
+        public final void onCompletion(CountedCompleter<?> caller) {
+            SetOp l = left, r = right;
+            if (l != null && r != null) {
+                int d = dstFrom + l.count;
+                if (r.count > 0 && d != r.dstFrom)
+                    System.arraycopy(dst, r.dstFrom, dst, d, r.count);
+                count = l.count + r.count;
+                left = right = null;
+            }
+        }
+    }
+
+    /**
+     * Task for parallel k-way merges.  A task splits the largest of its
+     * input ranges at its middle value v, and every other range at its
+     * first element not less than v; the left child then holds only
+     * values not greater than v and the right child only values not
+     * less than v, and the left child's output length is the sum of its
+     * range lengths.
+     */
+    @SuppressWarnings("serial")
+    static final class Merger extends CountedCompleter<Void> {
+        final long[][] lists;
+        final int[] from, to;
+        final long[] dst;
+        final int dstFrom, gran;
+
+        Merger(CountedCompleter<?> par, long[][] lists, int[] from, int[] to,
+               long[] dst, int dstFrom, int gran) {
+            super(par);
+            this.lists = lists; this.from = from; this.to = to;
+            this.dst = dst; this.dstFrom = dstFrom; this.gran = gran;
+        }
+
+        public final void compute() {
+            long[][] lists = this.lists;
+            int[] from = this.from, to = this.to;
+            int k = lists.length, g = gran, d = dstFrom;
+            for (;;) {
+                long total = 0L;
+                int big = -1, bigLen = 0;
+                for (int i = 0; i < k; ++i) {
+                    int len = to[i] - from[i];
+                    total += len;
+                    if (len > bigLen) {
+                        big = i; bigLen = len;
+                    }
+                }
+                if (total <= g || bigLen < 2)
+                    break;
+                long[] x = lists[big];
+                int[] mid = new int[k];
+                int m = mid[big] = (from[big] + to[big]) >>> 1;
+                long v = x[m];
+                int leftLen = m - from[big];
+                for (int i = 0; i < k; ++i) {
+                    if (i != big)
+                        leftLen += (mid[i] = lowerBound(lists[i], from[i], to[i], v)) - from[i];
+                }
+                addToPendingCount(1);
+                new Merger(this, lists, mid, to.clone(), dst, d + leftLen, g).fork();
+                System.arraycopy(mid, 0, to, 0, k);
+            }
+            merge(lists, from, to, dst, d);
+            propagateCompletion();
+        }
+    }
+}
@@ -31,6 +31,8 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
@@ -1029,6 +1031,110 @@ public class TreeMap<K,V>
         }
     }
 
+    // Parallel bulk operations
+
+    /**
+     * Computes the initial batch value for bulk tasks, as in
+     * {@code ConcurrentHashMap.batchFor}: approximately exp2 of the
+     * number of times (minus one) to split a task by two before
+     * executing its leaf action.
+     */
+    final int batchFor(long b) {
+        long n;
+        if (b == Long.MAX_VALUE || (n = size) <= 1L || n < b)
+            return 0;
+        int sp = ForkJoinPool.getCommonPoolParallelism() << 2; // slack of 4
+        return (b <= 0L || (n /= b) >= sp) ? sp : (int) n;
+    }
+
+    /**
+     * Performs the given action for each (key, value), splitting the
+     * traversal across the common {@link ForkJoinPool} once the map
+     * holds at least {@code parallelismThreshold} mappings.  The
+     * tree is split into disjoint subtrees, so the action may be
+     * invoked concurrently from several threads and in no particular
+     * key order.  The map must not be structurally modified while
+     * the operation is in progress.
+     *
+     * @param parallelismThreshold the (estimated) number of elements
+     *        needed for this operation to be executed in parallel
+     * @param action the action
+     * @throws NullPointerException if the action is null
+     * @throws ConcurrentModificationException if the map was
+     *         structurally modified during the operation
+     * @see util.HashMap#parallelForEach(long, BiConsumer)
+     */
+    public void parallelForEach(long parallelismThreshold,
+                                BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = modCount;
+        new ForEachMappingTask<K,V>(null, batchFor(parallelismThreshold),
+                                    root, action).invoke();
+        if (expectedModCount != modCount)
+            throw new ConcurrentModificationException();
+    }
+
+    /**
+     * Returns the result of accumulating the given transformation of
+     * all (key, value) pairs using the given reducer to combine
+     * values, or null if none.  The work is split across the common
+     * {@link ForkJoinPool} once the map holds at least {@code
+     * parallelismThreshold} mappings, so the reducer must be
+     * commutative as well as associative.
+     *
+     * @param parallelismThreshold the (estimated) number of elements
+     *        needed for this operation to be executed in parallel
+     * @param transformer a function returning the transformation
+     *        for an element, or null if there is no transformation (in
+     *        which case it is not combined)
+     * @param reducer a commutative associative combining function
+     * @param <U> the return type of the transformer
+     * @return the result of accumulating the given transformation
+     *         of all (key, value) pairs
+     * @throws NullPointerException if the transformer or reducer is null
+     * @throws ConcurrentModificationException if the map was
+     *         structurally modified during the operation
+     * @see util.HashMap#parallelReduce(long, BiFunction, BiFunction)
+     */
+    public <U> U parallelReduce(long parallelismThreshold,
+                                BiFunction<? super K, ? super V, ? extends U> transformer,
+                                BiFunction<? super U, ? super U, ? extends U> reducer) {
+        Objects.requireNonNull(transformer);
+        Objects.requireNonNull(reducer);
+        int expectedModCount = modCount;
+        U r = new MapReduceMappingsTask<K,V,U>(null, batchFor(parallelismThreshold),
+                                               root, null, transformer, reducer).invoke();
+        if (expectedModCount != modCount)
+            throw new ConcurrentModificationException();
+        return r;
+    }
+
+    /**
+     * Replaces each entry's value with the result of invoking the
+     * given function on that entry, splitting the work across the
+     * common {@link ForkJoinPool} once the map holds at least {@code
+     * parallelismThreshold} mappings.  The function may be invoked
+     * concurrently from several threads, and must not structurally
+     * modify the map.
+     *
+     * @param parallelismThreshold the (estimated) number of elements
+     *        needed for this operation to be executed in parallel
+     * @param function the function to apply to each entry
+     * @throws NullPointerException if the function is null
+     * @throws ConcurrentModificationException if the map was
+     *         structurally modified during the operation
+     * @see #replaceAll(BiFunction)
+     */
+    public void parallelReplaceAll(long parallelismThreshold,
+                                   BiFunction<? super K, ? super V, ? extends V> function) {
+        Objects.requireNonNull(function);
+        int expectedModCount = modCount;
+        new ReplaceAllTask<K,V>(null, batchFor(parallelismThreshold),
+                                root, function).invoke();
+        if (expectedModCount != modCount)
+            throw new ConcurrentModificationException();
+    }
+
     // View class support
 
     class Values extends AbstractCollection<V> {
@@ -2610,6 +2716,172 @@ public class TreeMap<K,V>
         return level;
     }
 
+    /*
+     * Parallel bulk tasks.  These follow the design of the
+     * ConcurrentHashMap BulkTask classes, but split on subtrees
+     * rather than on table index ranges: while its batch count
+     * lasts, a task forks off the right subtree of its current root,
+     * handles the root itself and moves on to the left subtree.
+     * Whatever subtree remains is then traversed in order.
+     */
+
+    /**
+     * Base class for parallel bulk tasks over a subtree.
+     */
+    @SuppressWarnings("serial")
+    abstract static class BulkTask<K,V,R> extends CountedCompleter<R> {
+        Entry<K,V> root;    // subtree still to be covered; null when done
+        Entry<K,V> next;    // last entry returned by advance
+        int batch;          // split control
+
+        BulkTask(BulkTask<K,V,?> par, int b, Entry<K,V> r) {
+            super(par);
+            this.batch = b;
+            this.root = r;
+        }
+
+        /**
+         * Returns the next entry of the subtree in key order, or null
+         * if none.
+         */
+        final Entry<K,V> advance() {
+            Entry<K,V> p, r;
+            if ((r = root) == null)
+                return next = null;
+            if ((p = next) == null)
+                p = r;
+            else if (p.right != null)
+                p = p.right;
+            else {
+                Entry<K,V> ch = p;
+                while (ch != r && ch == (p = ch.parent).right)
+                    ch = p;
+                if (ch == r) {
+                    root = null;
+                    return next = null;
+                }
+                return next = p;
+            }
+            while (p.left != null)
+                p = p.left;
+            return next = p;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    static final class ForEachMappingTask<K,V> extends BulkTask<K,V,Void> {
+        final BiConsumer<? super K, ? super V> action;
+
+        ForEachMappingTask(BulkTask<K,V,?> p, int b, Entry<K,V> r,
+                           BiConsumer<? super K, ? super V> action) {
+            super(p, b, r);
+            this.action = action;
+        }
+
+        public final void compute() {
+            final BiConsumer<? super K, ? super V> action;
+            if ((action = this.action) != null) {
+                for (Entry<K,V> r, s; batch > 0 && (r = root) != null; root = r.left) {
+                    if ((s = r.right) != null) {
+                        addToPendingCount(1);
+                        new ForEachMappingTask<K,V>(this, batch >>>= 1, s,
+                                                    action).fork();
+                    }
+                    action.accept(r.key, r.value);
+                }
+                for (Entry<K,V> p; (p = advance()) != null; )
+                    action.accept(p.key, p.value);
+                propagateCompletion();
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    static final class ReplaceAllTask<K,V> extends BulkTask<K,V,Void> {
+        final BiFunction<? super K, ? super V, ? extends V> function;
+
+        ReplaceAllTask(BulkTask<K,V,?> p, int b, Entry<K,V> r,
+                       BiFunction<? super K, ? super V, ? extends V> function) {
+            super(p, b, r);
+            this.function = function;
+        }
+
+        public final void compute() {
+            final BiFunction<? super K, ? super V, ? extends V> function;
+            if ((function = this.function) != null) {
+                for (Entry<K,V> r, s; batch > 0 && (r = root) != null; root = r.left) {
+                    if ((s = r.right) != null) {
+                        addToPendingCount(1);
+                        new ReplaceAllTask<K,V>(this, batch >>>= 1, s,
+                                                function).fork();
+                    }
+                    r.value = function.apply(r.key, r.value);
+                }
+                for (Entry<K,V> p; (p = advance()) != null; )
+                    p.value = function.apply(p.key, p.value);
+                propagateCompletion();
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    static final class MapReduceMappingsTask<K,V,U> extends BulkTask<K,V,U> {
+        final BiFunction<? super K, ? super V, ? extends U> transformer;
+        final BiFunction<? super U, ? super U, ? extends U> reducer;
+        U result;
+        MapReduceMappingsTask<K,V,U> rights, nextRight;
+
+        MapReduceMappingsTask(BulkTask<K,V,?> p, int b, Entry<K,V> r,
+                              MapReduceMappingsTask<K,V,U> nextRight,
+                              BiFunction<? super K, ? super V, ? extends U> transformer,
+                              BiFunction<? super U, ? super U, ? extends U> reducer) {
+            super(p, b, r);
+            this.nextRight = nextRight;
+            this.transformer = transformer;
+            this.reducer = reducer;
+        }
+
+        public final U getRawResult() { return result; }
+
+        public final void compute() {
+            final BiFunction<? super K, ? super V, ? extends U> transformer;
+            final BiFunction<? super U, ? super U, ? extends U> reducer;
+            if ((transformer = this.transformer) != null &&
+                (reducer = this.reducer) != null) {
+                U acc = null, u;
+                for (Entry<K,V> r, s; batch > 0 && (r = root) != null; root = r.left) {
+                    if ((s = r.right) != null) {
+                        addToPendingCount(1);
+                        (rights = new MapReduceMappingsTask<K,V,U>
+                         (this, batch >>>= 1, s, rights,
+                          transformer, reducer)).fork();
+                    }
+                    if ((u = transformer.apply(r.key, r.value)) != null)
+                        acc = (acc == null) ? u : reducer.apply(acc, u);
+                }
+                for (Entry<K,V> p; (p = advance()) != null; ) {
+                    if ((u = transformer.apply(p.key, p.value)) != null)
+                        acc = (acc == null) ? u : reducer.apply(acc, u);
+                }
+                result = acc;
+                CountedCompleter<?> c;
+                for (c = firstComplete(); c != null; c = c.nextComplete()) {
+                    @SuppressWarnings("unchecked")
+                    MapReduceMappingsTask<K,V,U>
+                        t = (MapReduceMappingsTask<K,V,U>)c,
+                        s = t.rights;
+                    while (s != null) {
+                        U tr, sr;
+                        if ((sr = s.result) != null)
+                            t.result = (((tr = t.result) == null) ? sr :
+                                        reducer.apply(tr, sr));
+                        s = t.rights = s.nextRight;
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Currently, we support Spliterator-based versions only for the
      * full map, in either plain of descending form, otherwise relying
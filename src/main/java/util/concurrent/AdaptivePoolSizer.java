@@ -0,0 +1,334 @@
+package util.concurrent;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * A controller that sizes a {@link ThreadPoolExecutor} from its
+ * measured load, enabled by the executor's {@link
+ * ThreadPoolExecutor#enableAdaptiveSizing enableAdaptiveSizing} method.
+ *
+ * <p>A {@code ThreadPoolExecutor} only starts threads beyond its core
+ * pool size when its queue rejects a task, so with an unbounded queue
+ * its size is fixed by hand.  A sizer instead sets the core pool size
+ * itself, between given bounds, at regular sampling intervals.  It
+ * relies on the executor's {@linkplain ExecutorMetrics metrics}, which
+ * it enables, and on each sample estimates over the interval since the
+ * previous one:
+ *
+ * <ul>
+ * <li>the rate at which tasks arrive, as the number of tasks completed
+ * plus the growth of the backlog of queued and running tasks;
+ * <li>the mean execution time, and the mean time tasks waited in the
+ * queue.
+ * </ul>
+ *
+ * Both are smoothed by averaging each new estimate with the previous
+ * one.  By Little's law, keeping up with arrivals takes as many threads
+ * as the arrival rate times the mean execution time; the sizer adds a
+ * quarter to that as headroom.  While tasks wait longer than the target
+ * queue wait, it adds enough threads to run the queued tasks within the
+ * target, and if no task completed during an interval although some
+ * are queued, it grows the pool by half.  Growth takes effect at once,
+ * with {@link ThreadPoolExecutor#setCorePoolSize} starting threads for
+ * queued tasks.  The pool shrinks only while tasks wait less than the
+ * target, and the estimate falls at least two threads short of the
+ * current size or to the lower bound, so that an estimate hovering near
+ * the boundary of two sizes does not toggle between them.  It shrinks
+ * by at most a quarter per sample; threads above the new core size exit
+ * when they have been idle for the executor's keep-alive time.  If
+ * the executor does not record queue waits, because its queue is not
+ * one of the FIFO queues listed in {@link
+ * ThreadPoolExecutor#enableMetrics}, the sizer goes by the arrival
+ * rate, execution time and stalls alone.
+ *
+ * <p>The sizer sets the executor's maximum pool size to its upper
+ * bound, so that an executor with a bounded queue also grows up to that
+ * bound on rejection as usual.  Core pool sizes set by other callers
+ * are overridden on the next sample.  Sampling stops when the executor
+ * is shut down, or adaptive sizing is disabled.
+ *
+ * <p>{@link #registerMXBean} registers the sizer with the platform
+ * {@code MBeanServer}, through which the state of the controller,
+ * listed in {@link AdaptivePoolSizerMXBean}, is available.
+ *
+ * @see ThreadPoolExecutor#enableAdaptiveSizing
+ */
+public final class AdaptivePoolSizer implements AdaptivePoolSizerMXBean {
+
+    /** The fraction of threads added to the Little's law estimate */
+    static final double HEADROOM = 0.25;
+
+    /** The divisor of the pool size giving the most to shrink by */
+    static final int SHRINK_DIVISOR = 4;
+
+    /**
+     * Holder of the executor running the samples of all sizers.
+     */
+    static final class DefaultSampler {
+        static final ScheduledThreadPoolExecutor executor;
+        static {
+            executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "AdaptivePoolSizer-sampler");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            executor.setRemoveOnCancelPolicy(true);
+        }
+    }
+
+    /**
+     * Periodic sampling task.  It refers to its sizer weakly, so that
+     * an executor that is dropped without being shut down can still be
+     * collected; the task then cancels itself.
+     */
+    static final class Sampler implements Runnable {
+        final WeakReference<AdaptivePoolSizer> ref;
+        volatile ScheduledFuture<?> future;
+        Sampler(AdaptivePoolSizer sizer) {
+            ref = new WeakReference<AdaptivePoolSizer>(sizer);
+        }
+        public void run() {
+            AdaptivePoolSizer s = ref.get();
+            if (s != null && s.sample())
+                return;
+            ScheduledFuture<?> f;
+            if ((f = future) != null)
+                f.cancel(false);
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final int minThreads;
+    private final int maxThreads;
+    private final long targetQueueWaitNanos;
+    private final long samplingIntervalNanos;
+    private final Sampler sampler;
+    private volatile boolean stopped;
+
+    // Totals at the previous sample, accessed only by sample()
+    private ExecutorMetrics metrics;
+    private long lastTime, lastExecutions, lastExecutionNanos;
+    private long lastQueueWaits, lastQueueWaitNanos;
+    private int lastBacklog;
+
+    // Controller state, written only by sample()
+    private volatile double arrivalRate;
+    private volatile double meanExecutionNanos;
+    private volatile double meanQueueWaitNanos;
+    private volatile double estimatedConcurrency;
+    private volatile int targetPoolSize;
+    private volatile long samples;
+    private volatile long adjustments;
+
+    AdaptivePoolSizer(ThreadPoolExecutor executor,
+                      int minThreads, int maxThreads,
+                      long targetQueueWaitNanos, long samplingIntervalNanos) {
+        this.executor = executor;
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.targetQueueWaitNanos = targetQueueWaitNanos;
+        this.samplingIntervalNanos = samplingIntervalNanos;
+        this.sampler = new Sampler(this);
+    }
+
+    /**
+     * Brings the executor's pool sizes within bounds and starts
+     * sampling.  Called by the executor.
+     */
+    void start() {
+        ThreadPoolExecutor e = executor;
+        int core = Math.max(minThreads,
+                            Math.min(maxThreads, e.getCorePoolSize()));
+        if (core < e.getCorePoolSize()) {
+            e.setCorePoolSize(core);
+            e.setMaximumPoolSize(maxThreads);
+        }
+        else {                          // keep core <= maximum throughout
+            e.setMaximumPoolSize(maxThreads);
+            e.setCorePoolSize(core);
+        }
+        targetPoolSize = core;
+        e.enableMetrics();
+        sampler.future = DefaultSampler.executor.scheduleAtFixedRate
+            (sampler, samplingIntervalNanos, samplingIntervalNanos,
+             TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops sampling, leaving the executor's pool sizes as last set.
+     * Called by the executor.
+     */
+    void stop() {
+        stopped = true;
+        ScheduledFuture<?> f;
+        if ((f = sampler.future) != null)
+            f.cancel(false);
+    }
+
+    /**
+     * Takes a sample and adjusts the core pool size.
+     *
+     * @return false if sampling should stop
+     */
+    final boolean sample() {
+        ThreadPoolExecutor e = executor;
+        if (stopped || e.isShutdown())
+            return false;
+        ExecutorMetrics m = e.enableMetrics(); // in case disabled since
+        long now = System.nanoTime();
+        long execs = m.getExecutionCount();
+        long execNanos = m.totalExecutionNanos();
+        long waits = m.getQueueWaitCount();
+        long waitNanos = m.totalQueueWaitNanos();
+        int queued = e.getQueue().size();
+        int backlog = queued + e.getActiveCount();
+        long dt = now - lastTime;
+        if (m == metrics && dt > 0L) {
+            long dExecs = execs - lastExecutions;
+            long dWaits = waits - lastQueueWaits;
+            long arrivals = Math.max(0L, dExecs + backlog - lastBacklog);
+            arrivalRate = smooth(arrivalRate, arrivals * 1e9 / dt);
+            if (dExecs > 0L)
+                meanExecutionNanos = smooth
+                    (meanExecutionNanos,
+                     (double) (execNanos - lastExecutionNanos) / dExecs);
+            if (dWaits > 0L)
+                meanQueueWaitNanos = smooth
+                    (meanQueueWaitNanos,
+                     (double) (waitNanos - lastQueueWaitNanos) / dWaits);
+            else if (queued == 0)
+                meanQueueWaitNanos = smooth(meanQueueWaitNanos, 0.0);
+            adjust(e, queued, dExecs);
+            samples = samples + 1L;
+        }
+        metrics = m;
+        lastTime = now;
+        lastExecutions = execs;
+        lastExecutionNanos = execNanos;
+        lastQueueWaits = waits;
+        lastQueueWaitNanos = waitNanos;
+        lastBacklog = backlog;
+        return true;
+    }
+
+    private static double smooth(double previous, double estimate) {
+        return (previous + estimate) * 0.5;
+    }
+
+    /**
+     * Chooses and sets the core pool size, as described in the class
+     * documentation.
+     */
+    private void adjust(ThreadPoolExecutor e, int queued, long dExecs) {
+        int current = e.getCorePoolSize();
+        double w = meanExecutionNanos;
+        double lambdaW = arrivalRate * w / 1e9;
+        double need = lambdaW * (1.0 + HEADROOM);
+        boolean behind = meanQueueWaitNanos > targetQueueWaitNanos;
+        estimatedConcurrency = lambdaW;
+        if (behind && w > 0.0)              // run queued tasks in time
+            need += queued * w / targetQueueWaitNanos;
+        if (dExecs == 0L && queued > 0)     // stalled
+            need = Math.max(need, current + (current >>> 1) + 1);
+        int size = (int) Math.min(maxThreads, Math.ceil(need));
+        if (size < current) {
+            if (behind || need > Math.max(current - 2, minThreads))
+                size = current;
+            else
+                size = Math.max(size, current -
+                                Math.max(1, current / SHRINK_DIVISOR));
+        }
+        size = Math.max(minThreads, Math.min(maxThreads, size));
+        targetPoolSize = size;
+        if (size != current && !stopped) {
+            e.setCorePoolSize(size);
+            adjustments = adjustments + 1L;
+        }
+    }
+
+    public int getMinimumPoolSize() {
+        return minThreads;
+    }
+
+    public int getMaximumPoolSize() {
+        return maxThreads;
+    }
+
+    public long getTargetQueueWaitNanos() {
+        return targetQueueWaitNanos;
+    }
+
+    public long getSamplingIntervalNanos() {
+        return samplingIntervalNanos;
+    }
+
+    public int getTargetPoolSize() {
+        return targetPoolSize;
+    }
+
+    public int getPoolSize() {
+        return executor.getPoolSize();
+    }
+
+    public double getArrivalRate() {
+        return arrivalRate;
+    }
+
+    public double getMeanExecutionNanos() {
+        return meanExecutionNanos;
+    }
+
+    public double getMeanQueueWaitNanos() {
+        return meanQueueWaitNanos;
+    }
+
+    public double getEstimatedConcurrency() {
+        return estimatedConcurrency;
+    }
+
+    public long getSampleCount() {
+        return samples;
+    }
+
+    public long getAdjustmentCount() {
+        return adjustments;
+    }
+
+    /**
+     * Registers this sizer with the platform {@code MBeanServer},
+     * under the name {@code util.concurrent:type=AdaptivePoolSizer,name=}
+     * followed by the given name, quoted.
+     *
+     * @param name the name of the executor
+     * @return the name under which the sizer was registered
+     * @throws JMException if the sizer cannot be registered, for
+     *         example because the name is already in use
+     * @throws NullPointerException if {@code name} is null
+     */
+    public ObjectName registerMXBean(String name) throws JMException {
+        ObjectName on = new ObjectName
+            ("util.concurrent:type=AdaptivePoolSizer,name=" +
+             ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+        return on;
+    }
+
+    public String toString() {
+        return super.toString() +
+            "[bounds = " + minThreads + ".." + maxThreads +
+            ", target size = " + targetPoolSize +
+            ", arrival rate = " + (long) arrivalRate + "/s" +
+            ", mean execution = " + (long) meanExecutionNanos + "ns" +
+            ", mean queue wait = " + (long) meanQueueWaitNanos + "ns" +
+            ", adjustments = " + adjustments + "]";
+    }
+}
@@ -0,0 +1,103 @@
+package util.concurrent;
+
+/**
+ * The management interface of an {@link AdaptivePoolSizer}, registered
+ * with the platform {@code MBeanServer} as an MXBean (see {@link
+ * java.lang.management.ManagementFactory}) by
+ * {@link AdaptivePoolSizer#registerMXBean}.
+ *
+ * <p>Times are in nanoseconds.  Rates and means are those of the most
+ * recent samples, smoothed as described in {@link AdaptivePoolSizer}.
+ *
+ * @see AdaptivePoolSizer
+ */
+public interface AdaptivePoolSizerMXBean {
+
+    /**
+     * Returns the least core pool size the sizer sets.
+     *
+     * @return the lower bound on the core pool size
+     */
+    int getMinimumPoolSize();
+
+    /**
+     * Returns the greatest core pool size the sizer sets, which is
+     * also the maximum pool size of the executor.
+     *
+     * @return the upper bound on the core pool size
+     */
+    int getMaximumPoolSize();
+
+    /**
+     * Returns the queue wait the sizer aims to keep tasks below.
+     *
+     * @return the target queue wait
+     */
+    long getTargetQueueWaitNanos();
+
+    /**
+     * Returns the interval between samples.
+     *
+     * @return the sampling interval
+     */
+    long getSamplingIntervalNanos();
+
+    /**
+     * Returns the core pool size chosen on the latest sample.
+     *
+     * @return the chosen core pool size
+     */
+    int getTargetPoolSize();
+
+    /**
+     * Returns the current number of threads in the executor.
+     *
+     * @return the number of threads
+     */
+    int getPoolSize();
+
+    /**
+     * Returns the estimated rate at which tasks arrive, per second.
+     *
+     * @return the arrival rate
+     */
+    double getArrivalRate();
+
+    /**
+     * Returns the estimated mean execution time of recent tasks.
+     *
+     * @return the mean execution time
+     */
+    double getMeanExecutionNanos();
+
+    /**
+     * Returns the estimated mean time recent tasks waited in the
+     * queue.
+     *
+     * @return the mean queue wait
+     */
+    double getMeanQueueWaitNanos();
+
+    /**
+     * Returns the number of threads needed to keep up with arrivals,
+     * by Little's law the product of the arrival rate and the mean
+     * execution time, before headroom and backlog are allowed for.
+     *
+     * @return the estimated concurrency
+     */
+    double getEstimatedConcurrency();
+
+    /**
+     * Returns the number of samples taken.
+     *
+     * @return the number of samples
+     */
+    long getSampleCount();
+
+    /**
+     * Returns the number of times the sizer changed the core pool size.
+     *
+     * @return the number of adjustments
+     */
+    long getAdjustmentCount();
+}
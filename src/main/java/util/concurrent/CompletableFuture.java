@@ -51,7 +51,12 @@ import java.util.concurrent.TimeoutException;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.locks.LockSupport;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collector;
 
 /**
  * A {@link Future} that may be explicitly completed (setting its
@@ -2245,6 +2250,485 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
         return orTree(cfs, 0, cfs.length - 1);
     }
 
+    /* ------------- Fan-in combinators -------------- */
+
+    /*
+     * The fan-in combinators below complete a single future from any
+     * number of sources.  Unlike andTree and orTree, which build a tree
+     * of intermediate futures and BiRelays, they push one Gather
+     * completion, holding the source's index, onto each source that is
+     * not yet done, and count completions down in a single int field
+     * of a FanIn.  Sources that are already done when a combinator
+     * is called are accepted directly without allocation, and no more
+     * sources are visited once the FanIn is complete.  Gathers become
+     * dead (see isLive) once their future completes, at which point
+     * any sources still pending are cleaned, so that a fan-in that
+     * fails fast or times out does not leave its completions behind.
+     *
+     * Timeouts are scheduled on a single shared FanInTimer, whose
+     * timing wheel makes both scheduling and the cancellation that
+     * follows normal completion constant-time, rather than on one
+     * Delayer task per future.
+     */
+
+    /** The state of a fan-in combinator. */
+    abstract static class FanIn<T,R> {
+        final CompletableFuture<R> dep = new CompletableFuture<R>();
+        volatile int pending;     // completions still awaited
+        Future<?> timeout;        // timer task, or null if none
+        CompletableFuture<?>[] sources;
+
+        /**
+         * Accepts the (non-null) raw result r of the source at the
+         * given index.  Called exactly once per source, until done.
+         */
+        abstract void accept(int index, Object r);
+
+        /** Decrements pending, returning true if it reached zero. */
+        final boolean countDown() {
+            return UNSAFE.getAndAddInt(this, PENDING, -1) == 1;
+        }
+
+        /** Completes with raw result r, cancelling any timeout. */
+        final boolean fanInComplete(Object r) {
+            if (!dep.internalComplete(r))
+                return false;
+            Future<?> f = timeout;
+            if (f != null)
+                f.cancel(false);
+            clean();
+            return true;
+        }
+
+        /** Unlinks dead Gathers from sources still pending. */
+        final void clean() {
+            CompletableFuture<?>[] cfs = sources;
+            if (cfs != null) {
+                sources = null;
+                for (CompletableFuture<?> a : cfs) {
+                    if (a.result == null && a.stack != null)
+                        a.cleanStack();
+                }
+            }
+        }
+
+        /** Subscribes to the given sources, returning dep. */
+        final CompletableFuture<R> subscribe(CompletableFuture<?>[] cfs,
+                                             long timeout, TimeUnit unit) {
+            CompletableFuture<R> d = dep;
+            sources = cfs;
+            if (unit != null && d.result == null)
+                this.timeout = FanInTimer.schedule(this, timeout, unit);
+            for (int i = 0; i < cfs.length && d.result == null; ++i) {
+                CompletableFuture<?> a = cfs[i]; Object r;
+                if ((r = a.result) != null)
+                    accept(i, r);
+                else {
+                    Gather c = new Gather(this, a, i);
+                    while (a.result == null && !a.tryPushStack(c))
+                        lazySetNext(c, null); // clear on failure
+                    c.tryFire(SYNC);
+                }
+            }
+            return d;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    static final class Gather extends Completion {
+        FanIn<?,?> fanIn;         // the FanIn to accept the result
+        CompletableFuture<?> src; // the source
+        final int index;          // the source's index
+        Gather(FanIn<?,?> fanIn, CompletableFuture<?> src, int index) {
+            this.fanIn = fanIn; this.src = src; this.index = index;
+        }
+        final CompletableFuture<?> tryFire(int mode) {
+            FanIn<?,?> f; CompletableFuture<?> a;
+            if ((f = fanIn) == null || (a = src) == null || a.result == null ||
+                !compareAndSetForkJoinTaskTag((short)0, (short)1))
+                return null;
+            fanIn = null; src = null;
+            if (f.dep.result == null)
+                f.accept(index, a.result);
+            return f.dep.postFire(a, mode);
+        }
+        final boolean isLive() {
+            FanIn<?,?> f = fanIn;
+            return f != null && f.dep.result == null;
+        }
+    }
+
+    /** Returns the exception of raw result r, or null if normal. */
+    static Throwable exceptionOf(Object r) {
+        return (r instanceof AltResult) ? ((AltResult)r).ex : null;
+    }
+
+    /** Returns the value of non-exceptional raw result r. */
+    @SuppressWarnings("unchecked")
+    static <T> T valueOf(Object r) {
+        return (r instanceof AltResult) ? null : (T) r;
+    }
+
+    /**
+     * Collects all results, in source order, into a list or with a
+     * Collector, failing as soon as any source fails.
+     */
+    static final class AllFanIn<T,A,R> extends FanIn<T,R> {
+        final Object[] values;
+        final Collector<? super T,A,R> collector; // null for a list
+        AllFanIn(int n, Collector<? super T,A,R> collector) {
+            this.values = new Object[n];
+            this.collector = collector;
+            this.pending = n;
+            if (n == 0)
+                finish();
+        }
+        void accept(int index, Object r) {
+            if (exceptionOf(r) != null)
+                fanInComplete(encodeRelay(r));
+            else {
+                values[index] = r;
+                if (countDown())
+                    finish();
+            }
+        }
+        @SuppressWarnings("unchecked")
+        void finish() {
+            Object[] vs = values;
+            Collector<? super T,A,R> c = collector;
+            Object v;
+            try {
+                if (c == null) {
+                    for (int i = 0; i < vs.length; ++i)
+                        vs[i] = valueOf(vs[i]);
+                    v = Arrays.asList(vs);
+                }
+                else {
+                    A container = c.supplier().get();
+                    java.util.function.BiConsumer<A, ? super T> acc =
+                        c.accumulator();
+                    for (Object x : vs)
+                        acc.accept(container, CompletableFuture.<T>valueOf(x));
+                    v = c.finisher().apply(container);
+                }
+            } catch (Throwable ex) {
+                fanInComplete(encodeThrowable(ex));
+                return;
+            }
+            fanInComplete((v == null) ? NIL : v);
+        }
+    }
+
+    /**
+     * Completes with the first successful result, or with the
+     * exception of the last source to fail if all fail.
+     */
+    static final class AnyFanIn<T> extends FanIn<T,T> {
+        AnyFanIn(int n) {
+            this.pending = n;
+            if (n == 0)
+                fanInComplete(encodeThrowable(
+                    new NoSuchElementException("no sources")));
+        }
+        void accept(int index, Object r) {
+            if (exceptionOf(r) == null)
+                fanInComplete(r);
+            else if (countDown())
+                fanInComplete(encodeRelay(r));
+        }
+    }
+
+    /**
+     * Collects the first n successful results in completion order,
+     * failing once more sources fail than can be spared.
+     */
+    static final class FirstNFanIn<T> extends FanIn<T,List<T>> {
+        final Object[] values;
+        volatile int claimed;     // slots of values claimed
+        volatile int failures;    // failures still tolerable
+        FirstNFanIn(int sources, int n) {
+            this.values = new Object[n];
+            this.pending = n;
+            this.failures = sources - n;
+            if (n == 0)
+                fanInComplete(Arrays.asList(values));
+        }
+        void accept(int index, Object r) {
+            if (exceptionOf(r) != null) {
+                if (UNSAFE.getAndAddInt(this, FAILURES, -1) == 0)
+                    fanInComplete(encodeRelay(r));
+            }
+            else {
+                int k = UNSAFE.getAndAddInt(this, CLAIMED, 1);
+                if (k < values.length) {
+                    values[k] = valueOf(r);
+                    if (countDown())
+                        fanInComplete(Arrays.asList(values));
+                }
+            }
+        }
+    }
+
+    /** Holder of the timer shared by the fan-in combinators. */
+    static final class FanInTimer {
+        static final TimingWheelScheduledExecutor timer =
+            new TimingWheelScheduledExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "CompletableFutureFanInTimer");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+        static Future<?> schedule(final FanIn<?,?> f, long timeout,
+                                  TimeUnit unit) {
+            return timer.schedule(new Runnable() {
+                    public void run() {
+                        if (f.dep.completeExceptionally(new TimeoutException()))
+                            f.clean();
+                    }
+                }, timeout, unit);
+        }
+    }
+
+    /** Returns the sources as an array, checking for nulls. */
+    static CompletableFuture<?>[] sources(
+        List<? extends CompletableFuture<?>> cfs) {
+        CompletableFuture<?>[] as = cfs.toArray(new CompletableFuture<?>[0]);
+        for (CompletableFuture<?> a : as) {
+            if (a == null)
+                throw new NullPointerException();
+        }
+        return as;
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed with the
+     * results of all of the given CompletableFutures, in list order,
+     * when all of them complete normally.  If any of the given
+     * CompletableFutures completes exceptionally, then the returned
+     * CompletableFuture does so as soon as it does, with a
+     * CompletionException holding this exception as its cause,
+     * without waiting for the others.  If the list is empty, returns
+     * a CompletableFuture completed with an empty list.
+     *
+     * <p>Unlike {@link #allOf}, this method subscribes to each future
+     * that is not yet complete with a single completion and counts
+     * completions down in one place, allocating no intermediate
+     * futures, which makes it suitable for fanning in to very many
+     * futures.
+     *
+     * @param cfs the CompletableFutures
+     * @param <T> the type of the results
+     * @return a new CompletableFuture that is completed with the
+     * results of the given CompletableFutures
+     * @throws NullPointerException if the list or any of its elements
+     * are {@code null}
+     */
+    public static <T> CompletableFuture<List<T>> allOfList(
+        List<? extends CompletableFuture<? extends T>> cfs) {
+        CompletableFuture<?>[] as = sources(cfs);
+        return new AllFanIn<T,Object,List<T>>(as.length, null)
+            .subscribe(as, 0L, null);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed as by {@link
+     * #allOfList(List)}, or exceptionally with a TimeoutException if
+     * not otherwise completed before the given timeout.
+     *
+     * @param cfs the CompletableFutures
+     * @param timeout how long to wait before completing exceptionally
+     *        with a TimeoutException, in units of {@code unit}
+     * @param unit a {@code TimeUnit} determining how to interpret the
+     *        {@code timeout} parameter
+     * @param <T> the type of the results
+     * @return a new CompletableFuture that is completed with the
+     * results of the given CompletableFutures
+     * @throws NullPointerException if the list or any of its elements,
+     * or the unit, are {@code null}
+     */
+    public static <T> CompletableFuture<List<T>> allOfList(
+        List<? extends CompletableFuture<? extends T>> cfs,
+        long timeout, TimeUnit unit) {
+        if (unit == null)
+            throw new NullPointerException();
+        CompletableFuture<?>[] as = sources(cfs);
+        return new AllFanIn<T,Object,List<T>>(as.length, null)
+            .subscribe(as, timeout, unit);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed with the
+     * result of the first of the given CompletableFutures to complete
+     * normally.  If all of them complete exceptionally, then the
+     * returned CompletableFuture does so, with a CompletionException
+     * holding the exception of the last to complete as its cause.  If
+     * the list is empty, returns a CompletableFuture completed
+     * exceptionally with a CompletionException holding a
+     * NoSuchElementException.
+     *
+     * <p>Unlike {@link #anyOf}, which completes with the outcome of
+     * whichever future completes first, this method ignores failures
+     * while any future may still succeed.
+     *
+     * @param cfs the CompletableFutures
+     * @param <T> the type of the results
+     * @return a new CompletableFuture that is completed with the
+     * result of the first of the given CompletableFutures to succeed
+     * @throws NullPointerException if the list or any of its elements
+     * are {@code null}
+     */
+    public static <T> CompletableFuture<T> anyOfSuccessful(
+        List<? extends CompletableFuture<? extends T>> cfs) {
+        CompletableFuture<?>[] as = sources(cfs);
+        return new AnyFanIn<T>(as.length).subscribe(as, 0L, null);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed as by {@link
+     * #anyOfSuccessful(List)}, or exceptionally with a
+     * TimeoutException if not otherwise completed before the given
+     * timeout.
+     *
+     * @param cfs the CompletableFutures
+     * @param timeout how long to wait before completing exceptionally
+     *        with a TimeoutException, in units of {@code unit}
+     * @param unit a {@code TimeUnit} determining how to interpret the
+     *        {@code timeout} parameter
+     * @param <T> the type of the results
+     * @return a new CompletableFuture that is completed with the
+     * result of the first of the given CompletableFutures to succeed
+     * @throws NullPointerException if the list or any of its elements,
+     * or the unit, are {@code null}
+     */
+    public static <T> CompletableFuture<T> anyOfSuccessful(
+        List<? extends CompletableFuture<? extends T>> cfs,
+        long timeout, TimeUnit unit) {
+        if (unit == null)
+            throw new NullPointerException();
+        CompletableFuture<?>[] as = sources(cfs);
+        return new AnyFanIn<T>(as.length).subscribe(as, timeout, unit);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed with the
+     * results of the first {@code n} of the given CompletableFutures
+     * to complete normally, in the order in which they completed.  If
+     * so many of them complete exceptionally that fewer than {@code
+     * n} can succeed, then the returned CompletableFuture completes
+     * exceptionally, with a CompletionException holding the exception
+     * that made success impossible as its cause.
+     *
+     * @param cfs the CompletableFutures
+     * @param n the number of results to wait for
+     * @param <T> the type of the results
+     * @return a new CompletableFuture that is completed with the
+     * first {@code n} results of the given CompletableFutures
+     * @throws NullPointerException if the list or any of its elements
+     * are {@code null}
+     * @throws IllegalArgumentException if {@code n} is negative or
+     * greater than the number of CompletableFutures
+     */
+    public static <T> CompletableFuture<List<T>> firstN(
+        List<? extends CompletableFuture<? extends T>> cfs, int n) {
+        CompletableFuture<?>[] as = sources(cfs);
+        if (n < 0 || n > as.length)
+            throw new IllegalArgumentException();
+        return new FirstNFanIn<T>(as.length, n).subscribe(as, 0L, null);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed as by {@link
+     * #firstN(List, int)}, or exceptionally with a TimeoutException
+     * if not otherwise completed before the given timeout.
+     *
+     * @param cfs the CompletableFutures
+     * @param n the number of results to wait for
+     * @param timeout how long to wait before completing exceptionally
+     *        with a TimeoutException, in units of {@code unit}
+     * @param unit a {@code TimeUnit} determining how to interpret the
+     *        {@code timeout} parameter
+     * @param <T> the type of the results
+     * @return a new CompletableFuture that is completed with the
+     * first {@code n} results of the given CompletableFutures
+     * @throws NullPointerException if the list or any of its elements,
+     * or the unit, are {@code null}
+     * @throws IllegalArgumentException if {@code n} is negative or
+     * greater than the number of CompletableFutures
+     */
+    public static <T> CompletableFuture<List<T>> firstN(
+        List<? extends CompletableFuture<? extends T>> cfs, int n,
+        long timeout, TimeUnit unit) {
+        if (unit == null)
+            throw new NullPointerException();
+        CompletableFuture<?>[] as = sources(cfs);
+        if (n < 0 || n > as.length)
+            throw new IllegalArgumentException();
+        return new FirstNFanIn<T>(as.length, n).subscribe(as, timeout, unit);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed with the
+     * result of applying the given Collector to the results of all of
+     * the given CompletableFutures, in list order, when all of them
+     * complete normally.  The collector runs in the thread that
+     * completes the last of them.  If any of the given
+     * CompletableFutures, or the collector, completes exceptionally,
+     * then the returned CompletableFuture does so, as for {@link
+     * #allOfList(List)}.
+     *
+     * @param cfs the CompletableFutures
+     * @param collector the Collector describing the reduction
+     * @param <T> the type of the results
+     * @param <A> the intermediate accumulation type of the Collector
+     * @param <R> the type of the result of the reduction
+     * @return a new CompletableFuture that is completed with the
+     * reduced results of the given CompletableFutures
+     * @throws NullPointerException if the list or any of its
+     * elements, or the collector, are {@code null}
+     */
+    public static <T,A,R> CompletableFuture<R> collect(
+        List<? extends CompletableFuture<? extends T>> cfs,
+        Collector<? super T,A,R> collector) {
+        if (collector == null)
+            throw new NullPointerException();
+        CompletableFuture<?>[] as = sources(cfs);
+        return new AllFanIn<T,A,R>(as.length, collector)
+            .subscribe(as, 0L, null);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed as by {@link
+     * #collect(List, Collector)}, or exceptionally with a
+     * TimeoutException if not otherwise completed before the given
+     * timeout.
+     *
+     * @param cfs the CompletableFutures
+     * @param collector the Collector describing the reduction
+     * @param timeout how long to wait before completing exceptionally
+     *        with a TimeoutException, in units of {@code unit}
+     * @param unit a {@code TimeUnit} determining how to interpret the
+     *        {@code timeout} parameter
+     * @param <T> the type of the results
+     * @param <A> the intermediate accumulation type of the Collector
+     * @param <R> the type of the result of the reduction
+     * @return a new CompletableFuture that is completed with the
+     * reduced results of the given CompletableFutures
+     * @throws NullPointerException if the list or any of its
+     * elements, the collector or the unit are {@code null}
+     */
+    public static <T,A,R> CompletableFuture<R> collect(
+        List<? extends CompletableFuture<? extends T>> cfs,
+        Collector<? super T,A,R> collector,
+        long timeout, TimeUnit unit) {
+        if (collector == null || unit == null)
+            throw new NullPointerException();
+        CompletableFuture<?>[] as = sources(cfs);
+        return new AllFanIn<T,A,R>(as.length, collector)
+            .subscribe(as, timeout, unit);
+    }
+
     /* ------------- Control and status methods -------------- */
 
     /**
@@ -2370,6 +2854,9 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
     private static final long RESULT;
     private static final long STACK;
     private static final long NEXT;
+    private static final long PENDING;
+    private static final long CLAIMED;
+    private static final long FAILURES;
     static {
         try {
             final sun.misc.Unsafe u;
@@ -2379,6 +2866,12 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
             STACK = u.objectFieldOffset(k.getDeclaredField("stack"));
             NEXT = u.objectFieldOffset
                 (Completion.class.getDeclaredField("next"));
+            PENDING = u.objectFieldOffset
+                (FanIn.class.getDeclaredField("pending"));
+            CLAIMED = u.objectFieldOffset
+                (FirstNFanIn.class.getDeclaredField("claimed"));
+            FAILURES = u.objectFieldOffset
+                (FirstNFanIn.class.getDeclaredField("failures"));
         } catch (Exception x) {
             throw new Error(x);
         }
@@ -0,0 +1,794 @@
+package util.concurrent;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * A concurrent map from keys to {@code long} counts, or equivalently a
+ * concurrent multiset, designed for counting occurrences from many
+ * threads at once.
+ *
+ * <p>The usual way to do this, a {@code ConcurrentHashMap<K,LongAdder>}
+ * updated with {@code computeIfAbsent(k, x -> new LongAdder())
+ * .increment()}, costs a map node and a {@link LongAdder} per key, and a
+ * second indirection on every update.  Here the nodes of the hash table
+ * are themselves the counters: each node holds a base count and, once
+ * updates of that key have been seen to contend, a table of padded cells
+ * over which they are spread, following the same scheme as {@code
+ * LongAdder} (see {@code Striped64}).  An update of a key that is
+ * already present is a lock-free lookup followed by a CAS on the base
+ * or on the cell of the updating thread.
+ *
+ * <p>The table is split into lock-striped segments, each guarding the
+ * insertion and removal of its keys and the growth of its part of the
+ * table, so that only the first update of a key takes a lock, and only
+ * that of its segment.  Counters are never copied, so an update that
+ * found its counter is never lost to a concurrent resize.
+ *
+ * <p>Counts are sums over cells taken without locking, and like those
+ * of {@code LongAdder} are not atomic snapshots: a count read while the
+ * key is being updated reflects some but not necessarily all of the
+ * concurrent updates.  {@link #sumThenReset()} atomically exchanges each
+ * cell for zero, so that every update is reported exactly once across
+ * successive calls; this suits metrics pipelines that periodically
+ * drain the counts.  A key stays in the map at count zero until it is
+ * {@linkplain #remove removed}.  An update that races with the removal
+ * of its key may be applied to the removed counter and so be lost.
+ *
+ * <p>{@link #topK} returns the keys with the largest counts, selected
+ * with a bounded heap in a single pass over the map.
+ *
+ * <p>This class does <em>not</em> allow {@code null} keys.
+ *
+ * @param <K> the type of counted keys
+ */
+public class ConcurrentCountingMap<K> {
+
+    /*
+     * Each segment has its own table of singly-linked bins.  Lookups
+     * traverse bins without locking; insertions and removals lock the
+     * segment and publish bin heads with volatile array writes.  A
+     * resize relinks the existing nodes into a new table under the lock,
+     * which may make a concurrent lookup in the old table miss a key
+     * that is present.  A segment therefore raises its resizing flag
+     * before relinking, and a lookup that misses while the flag is set
+     * or the table has been replaced retries under the lock.
+     */
+
+    /**
+     * The default initial capacity.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * The default number of segments.
+     */
+    static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /**
+     * The maximum number of segments.
+     */
+    static final int MAX_SEGMENTS = 1 << 16;
+
+    /**
+     * The least and greatest sizes of a segment table.
+     */
+    static final int MIN_SEGMENT_TABLE_CAPACITY = 2;
+    static final int MAX_SEGMENT_TABLE_CAPACITY = 1 << 30;
+
+    /** Number of CPUS, to place bound on cell table size */
+    static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * A cell of a striped counter, padded against false sharing with
+     * the cells of other threads.
+     */
+    static final class Cell {
+        long p0, p1, p2, p3, p4, p5, p6;
+        volatile long value;
+        long q0, q1, q2, q3, q4, q5, q6;
+        Cell(long x) { value = x; }
+
+        private static final AtomicLongFieldUpdater<Cell> VALUE =
+            AtomicLongFieldUpdater.newUpdater(Cell.class, "value");
+
+        final boolean cas(long cmp, long val) {
+            return VALUE.compareAndSet(this, cmp, val);
+        }
+
+        final long getAndReset() {
+            return VALUE.getAndSet(this, 0L);
+        }
+    }
+
+    /**
+     * A hash table node that is also the striped counter of its key.
+     * The counting fields have the same roles as those of Striped64.
+     */
+    static final class Counter<K> {
+        final int hash;
+        final K key;
+        volatile Counter<K> next;
+        volatile long base;
+        volatile Cell[] cells;
+        volatile int cellsBusy;
+
+        Counter(int hash, K key, long base, Counter<K> next) {
+            this.hash = hash;
+            this.key = key;
+            this.base = base;
+            this.next = next;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static final AtomicLongFieldUpdater<Counter<?>> BASE =
+            AtomicLongFieldUpdater.newUpdater(
+                (Class<Counter<?>>) (Class<?>) Counter.class, "base");
+        @SuppressWarnings("unchecked")
+        private static final AtomicIntegerFieldUpdater<Counter<?>> CELLSBUSY =
+            AtomicIntegerFieldUpdater.newUpdater(
+                (Class<Counter<?>>) (Class<?>) Counter.class, "cellsBusy");
+
+        final boolean casBase(long cmp, long val) {
+            return BASE.compareAndSet(this, cmp, val);
+        }
+
+        final boolean casCellsBusy() {
+            return CELLSBUSY.compareAndSet(this, 0, 1);
+        }
+
+        final void add(long x) {
+            Cell[] as; long b, v; int m; Cell a;
+            if ((as = cells) != null ||
+                !casBase(b = base, b + x)) {
+                boolean uncontended = true;
+                if (as == null || (m = as.length - 1) < 0 ||
+                    (a = as[threadHash() & m]) == null ||
+                    !(uncontended = a.cas(v = a.value, v + x)))
+                    longAdd(x, uncontended);
+            }
+        }
+
+        final long sum() {
+            Cell[] as = cells; Cell a;
+            long sum = base;
+            if (as != null) {
+                for (int i = 0; i < as.length; ++i) {
+                    if ((a = as[i]) != null)
+                        sum += a.value;
+                }
+            }
+            return sum;
+        }
+
+        /**
+         * Like sum, but atomically exchanges the base and each cell
+         * for zero, so that every update is counted either in this
+         * sum or in a later one.
+         */
+        final long sumThenReset() {
+            Cell[] as = cells; Cell a;
+            long sum = BASE.getAndSet(this, 0L);
+            if (as != null) {
+                for (int i = 0; i < as.length; ++i) {
+                    if ((a = as[i]) != null)
+                        sum += a.getAndReset();
+                }
+            }
+            return sum;
+        }
+
+        // See Striped64.longAccumulate for explanation.  The thread
+        // hash stands in for the probe, and a rehash lasts only for
+        // this call.
+        private void longAdd(long x, boolean wasUncontended) {
+            int h = threadHash();
+            boolean collide = false;                // True if last slot nonempty
+            for (;;) {
+                Cell[] as; Cell a; int n; long v;
+                if ((as = cells) != null && (n = as.length) > 0) {
+                    if ((a = as[(n - 1) & h]) == null) {
+                        if (cellsBusy == 0) {       // Try to attach new Cell
+                            Cell r = new Cell(x);   // Optimistically create
+                            if (cellsBusy == 0 &&
+                                casCellsBusy()) {
+                                boolean created = false;
+                                try {               // Recheck under lock
+                                    Cell[] rs; int m, j;
+                                    if ((rs = cells) != null &&
+                                        (m = rs.length) > 0 &&
+                                        rs[j = (m - 1) & h] == null) {
+                                        rs[j] = r;
+                                        created = true;
+                                    }
+                                } finally {
+                                    cellsBusy = 0;
+                                }
+                                if (created)
+                                    break;
+                                continue;           // Slot is now non-empty
+                            }
+                        }
+                        collide = false;
+                    }
+                    else if (!wasUncontended)       // CAS already known to fail
+                        wasUncontended = true;      // Continue after rehash
+                    else if (a.cas(v = a.value, v + x))
+                        break;
+                    else if (n >= NCPU || cells != as)
+                        collide = false;            // At max size or stale
+                    else if (!collide)
+                        collide = true;
+                    else if (cellsBusy == 0 &&
+                             casCellsBusy()) {
+                        try {
+                            if (cells == as) {      // Expand table unless stale
+                                Cell[] rs = new Cell[n << 1];
+                                for (int i = 0; i < n; ++i)
+                                    rs[i] = as[i];
+                                cells = rs;
+                            }
+                        } finally {
+                            cellsBusy = 0;
+                        }
+                        collide = false;
+                        continue;                   // Retry with expanded table
+                    }
+                    h = advanceHash(h);
+                }
+                else if (cellsBusy == 0 && cells == as &&
+                         casCellsBusy()) {
+                    boolean init = false;
+                    try {                           // Initialize table
+                        if (cells == as) {
+                            Cell[] rs = new Cell[2];
+                            rs[h & 1] = new Cell(x);
+                            cells = rs;
+                            init = true;
+                        }
+                    } finally {
+                        cellsBusy = 0;
+                    }
+                    if (init)
+                        break;
+                }
+                else if (casBase(v = base, v + x))
+                    break;                          // Fall back on using base
+            }
+        }
+    }
+
+    /**
+     * A lock-guarded part of the map.
+     */
+    static final class Segment<K> extends ReentrantLock {
+        private static final long serialVersionUID = 6184398563921850276L;
+
+        volatile AtomicReferenceArray<Counter<K>> table;
+        volatile boolean resizing;
+        volatile int count;             // written only under lock
+        int threshold;                  // accessed only under lock
+
+        Segment(int capacity) {
+            table = new AtomicReferenceArray<Counter<K>>(capacity);
+            threshold = capacity - (capacity >>> 2);
+        }
+
+        /**
+         * Returns the counter of the key, or null if absent.
+         */
+        final Counter<K> find(int h, Object key) {
+            AtomicReferenceArray<Counter<K>> tab = table;
+            for (Counter<K> e = tab.get(h & (tab.length() - 1));
+                 e != null; e = e.next) {
+                K k;
+                if (e.hash == h && ((k = e.key) == key || key.equals(k)))
+                    return e;
+            }
+            if (resizing || tab != table) {
+                lock();
+                try {
+                    return findLocked(h, key);
+                } finally {
+                    unlock();
+                }
+            }
+            return null;
+        }
+
+        private Counter<K> findLocked(int h, Object key) {
+            AtomicReferenceArray<Counter<K>> tab = table;
+            for (Counter<K> e = tab.get(h & (tab.length() - 1));
+                 e != null; e = e.next) {
+                K k;
+                if (e.hash == h && ((k = e.key) == key || key.equals(k)))
+                    return e;
+            }
+            return null;
+        }
+
+        /**
+         * Adds x to the count of the key, inserting a counter holding x
+         * if absent.
+         */
+        final void insertOrAdd(int h, K key, long x) {
+            Counter<K> e;
+            lock();
+            try {
+                if ((e = findLocked(h, key)) == null) {
+                    AtomicReferenceArray<Counter<K>> tab = table;
+                    int i = h & (tab.length() - 1);
+                    tab.set(i, new Counter<K>(h, key, x, tab.get(i)));
+                    if (++count > threshold)
+                        resize();
+                    return;
+                }
+            } finally {
+                unlock();
+            }
+            e.add(x);
+        }
+
+        /**
+         * Removes the counter of the key, returning it, or null if
+         * absent.
+         */
+        final Counter<K> remove(int h, Object key) {
+            lock();
+            try {
+                AtomicReferenceArray<Counter<K>> tab = table;
+                int i = h & (tab.length() - 1);
+                for (Counter<K> e = tab.get(i), pred = null; e != null;
+                     pred = e, e = e.next) {
+                    K k;
+                    if (e.hash == h && ((k = e.key) == key || key.equals(k))) {
+                        if (pred == null)
+                            tab.set(i, e.next);
+                        else
+                            pred.next = e.next;
+                        --count;
+                        return e;
+                    }
+                }
+                return null;
+            } finally {
+                unlock();
+            }
+        }
+
+        final void clear() {
+            lock();
+            try {
+                AtomicReferenceArray<Counter<K>> tab = table;
+                for (int i = 0; i < tab.length(); ++i)
+                    tab.set(i, null);
+                count = 0;
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * Doubles the table, relinking the existing counters.  Called
+         * with the lock held.
+         */
+        private void resize() {
+            AtomicReferenceArray<Counter<K>> oldTab = table;
+            int n = oldTab.length();
+            if (n >= MAX_SEGMENT_TABLE_CAPACITY) {
+                threshold = Integer.MAX_VALUE;
+                return;
+            }
+            AtomicReferenceArray<Counter<K>> newTab =
+                new AtomicReferenceArray<Counter<K>>(n << 1);
+            int mask = newTab.length() - 1;
+            resizing = true;
+            for (int i = 0; i < n; ++i) {
+                Counter<K> e = oldTab.get(i), next;
+                for (; e != null; e = next) {
+                    next = e.next;
+                    int j = e.hash & mask;
+                    e.next = newTab.get(j);
+                    newTab.lazySet(j, e);
+                }
+            }
+            table = newTab;
+            resizing = false;
+            threshold = (n << 1) - (n >>> 1);
+        }
+    }
+
+    /**
+     * The segments, indexed by the high bits of the key hash.
+     */
+    final Segment<K>[] segments;
+
+    /**
+     * Shift and mask for indexing the segments.
+     */
+    final int segmentShift;
+    final int segmentMask;
+
+    /**
+     * Creates an empty map with the default initial capacity (16) and
+     * concurrency level (16).
+     */
+    public ConcurrentCountingMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Creates an empty map sized for the given number of keys, with
+     * the default concurrency level (16).
+     *
+     * @param initialCapacity the expected number of keys
+     * @throws IllegalArgumentException if the initial capacity is
+     *         negative
+     */
+    public ConcurrentCountingMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Creates an empty map sized for the given number of keys, with
+     * the given number of segments.
+     *
+     * @param initialCapacity the expected number of keys
+     * @param concurrencyLevel the estimated number of threads adding
+     *        new keys concurrently, rounded up to a power of two to give
+     *        the number of segments
+     * @throws IllegalArgumentException if the initial capacity is
+     *         negative or the concurrency level is nonpositive
+     */
+    public ConcurrentCountingMap(int initialCapacity, int concurrencyLevel) {
+        if (initialCapacity < 0 || concurrencyLevel <= 0)
+            throw new IllegalArgumentException();
+        if (concurrencyLevel > MAX_SEGMENTS)
+            concurrencyLevel = MAX_SEGMENTS;
+        int sshift = 0, ssize = 1;
+        while (ssize < concurrencyLevel) {
+            ++sshift;
+            ssize <<= 1;
+        }
+        this.segmentShift = 32 - sshift;
+        this.segmentMask = ssize - 1;
+        long perSegment = ((long) initialCapacity + ssize - 1) / ssize;
+        int cap = MIN_SEGMENT_TABLE_CAPACITY;
+        while (cap < MAX_SEGMENT_TABLE_CAPACITY &&
+               cap - (cap >>> 2) < perSegment)
+            cap <<= 1;
+        @SuppressWarnings("unchecked")
+        Segment<K>[] ss = (Segment<K>[]) new Segment<?>[ssize];
+        for (int i = 0; i < ssize; ++i)
+            ss[i] = new Segment<K>(cap);
+        this.segments = ss;
+    }
+
+    /* ---------------- Internal utilities -------------- */
+
+    /**
+     * Spreads the higher bits of the key hash into the lower bits used
+     * to index bins.
+     */
+    static final int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    final Segment<K> segmentFor(int h) {
+        return segments[((h * 0x9E3779B9) >>> segmentShift) & segmentMask];
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * Adds one to the count of the given key.
+     *
+     * @param key the key
+     * @throws NullPointerException if the key is null
+     */
+    public void increment(K key) {
+        add(key, 1L);
+    }
+
+    /**
+     * Subtracts one from the count of the given key.
+     *
+     * @param key the key
+     * @throws NullPointerException if the key is null
+     */
+    public void decrement(K key) {
+        add(key, -1L);
+    }
+
+    /**
+     * Adds the given value to the count of the given key, adding the
+     * key with a count of zero first if absent.
+     *
+     * @param key the key
+     * @param x the value to add
+     * @throws NullPointerException if the key is null
+     */
+    public void add(K key, long x) {
+        int h = spread(key.hashCode());
+        Segment<K> s = segmentFor(h);
+        Counter<K> e;
+        if ((e = s.find(h, key)) != null)
+            e.add(x);
+        else
+            s.insertOrAdd(h, key, x);
+    }
+
+    /**
+     * Returns the count of the given key, or zero if it is absent.
+     * The count is not an atomic snapshot; see the class
+     * documentation.
+     *
+     * @param key the key
+     * @return the count of the key
+     * @throws NullPointerException if the key is null
+     */
+    public long sum(Object key) {
+        int h = spread(key.hashCode());
+        Counter<K> e = segmentFor(h).find(h, key);
+        return (e == null) ? 0L : e.sum();
+    }
+
+    /**
+     * Returns the count of the given key and resets it to zero, leaving
+     * the key in the map.  Every update of the key is counted by
+     * exactly one call.
+     *
+     * @param key the key
+     * @return the count of the key before the reset, or zero if absent
+     * @throws NullPointerException if the key is null
+     */
+    public long sumThenReset(Object key) {
+        int h = spread(key.hashCode());
+        Counter<K> e = segmentFor(h).find(h, key);
+        return (e == null) ? 0L : e.sumThenReset();
+    }
+
+    /**
+     * Returns {@code true} if the map holds a count for the given key,
+     * even if that count is zero.
+     *
+     * @param key the key
+     * @return {@code true} if the key is present
+     * @throws NullPointerException if the key is null
+     */
+    public boolean containsKey(Object key) {
+        int h = spread(key.hashCode());
+        return segmentFor(h).find(h, key) != null;
+    }
+
+    /**
+     * Removes the given key and returns its count.  Updates racing with
+     * the removal may be lost.
+     *
+     * @param key the key
+     * @return the count of the key, or zero if absent
+     * @throws NullPointerException if the key is null
+     */
+    public long remove(Object key) {
+        int h = spread(key.hashCode());
+        Counter<K> e = segmentFor(h).remove(h, key);
+        return (e == null) ? 0L : e.sum();
+    }
+
+    /**
+     * Removes all keys.
+     */
+    public void clear() {
+        for (Segment<K> s : segments)
+            s.clear();
+    }
+
+    /**
+     * Returns the number of keys, including those with a count of
+     * zero.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        long n = 0L;
+        for (Segment<K> s : segments)
+            n += s.count;
+        return (n > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) n;
+    }
+
+    /**
+     * Returns {@code true} if the map holds no keys.
+     *
+     * @return {@code true} if the map holds no keys
+     */
+    public boolean isEmpty() {
+        for (Segment<K> s : segments) {
+            if (s.count != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the sum of the counts of all keys, that is, the size of
+     * the multiset.
+     *
+     * @return the sum of all counts
+     */
+    public long total() {
+        long sum = 0L;
+        for (Segment<K> s : segments) {
+            AtomicReferenceArray<Counter<K>> tab = s.table;
+            for (int i = 0; i < tab.length(); ++i) {
+                for (Counter<K> e = tab.get(i); e != null; e = e.next)
+                    sum += e.sum();
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Performs the given action for each key and its count.  Keys added
+     * or removed during the traversal may or may not be reported, and
+     * while a segment is being resized its keys may be reported twice
+     * or not at all.
+     *
+     * @param action the action
+     * @throws NullPointerException if the action is null
+     */
+    public void forEach(ObjLongConsumer<? super K> action) {
+        if (action == null)
+            throw new NullPointerException();
+        for (Segment<K> s : segments) {
+            AtomicReferenceArray<Counter<K>> tab = s.table;
+            for (int i = 0; i < tab.length(); ++i) {
+                for (Counter<K> e = tab.get(i); e != null; e = e.next)
+                    action.accept(e.key, e.sum());
+            }
+        }
+    }
+
+    /**
+     * Returns a map of every key to its count.  Each segment is read
+     * under its lock, so every key present throughout the call is
+     * included exactly once; the counts are not an atomic snapshot.
+     *
+     * @return a new map of the keys to their counts
+     */
+    public Map<K,Long> snapshot() {
+        return collect(false);
+    }
+
+    /**
+     * Returns a map of every key with a nonzero count to that count,
+     * resetting the counts to zero.  Every update is reported by exactly
+     * one call.  The keys stay in this map.
+     *
+     * @return a new map of the keys to their counts since the previous
+     *         reset
+     */
+    public Map<K,Long> sumThenReset() {
+        return collect(true);
+    }
+
+    private Map<K,Long> collect(boolean reset) {
+        HashMap<K,Long> m = new HashMap<K,Long>();
+        for (Segment<K> s : segments) {
+            s.lock();
+            try {
+                AtomicReferenceArray<Counter<K>> tab = s.table;
+                for (int i = 0; i < tab.length(); ++i) {
+                    for (Counter<K> e = tab.get(i); e != null; e = e.next) {
+                        if (!reset)
+                            m.put(e.key, e.sum());
+                        else {
+                            long c = e.sumThenReset();
+                            if (c != 0L)
+                                m.put(e.key, c);
+                        }
+                    }
+                }
+            } finally {
+                s.unlock();
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Returns the {@code k} keys with the largest counts, with their
+     * counts, in decreasing order of count.  Ties are broken
+     * arbitrarily.  The keys are selected in one pass with a heap of at
+     * most {@code k} entries.
+     *
+     * @param k the number of keys to return
+     * @return a list of at most {@code k} entries
+     * @throws IllegalArgumentException if {@code k} is negative
+     */
+    public List<Map.Entry<K,Long>> topK(int k) {
+        if (k < 0)
+            throw new IllegalArgumentException();
+        if (k == 0)
+            return new ArrayList<Map.Entry<K,Long>>();
+        PriorityQueue<Map.Entry<K,Long>> heap =
+            new PriorityQueue<Map.Entry<K,Long>>
+            (Math.min(k, 1 << 10), (a, b) -> Long.compare(a.getValue(),
+                                                           b.getValue()));
+        for (Segment<K> s : segments) {
+            s.lock();
+            try {
+                AtomicReferenceArray<Counter<K>> tab = s.table;
+                for (int i = 0; i < tab.length(); ++i) {
+                    for (Counter<K> e = tab.get(i); e != null; e = e.next) {
+                        long c = e.sum();
+                        if (heap.size() < k)
+                            heap.offer(entry(e.key, c));
+                        else if (c > heap.peek().getValue()) {
+                            heap.poll();
+                            heap.offer(entry(e.key, c));
+                        }
+                    }
+                }
+            } finally {
+                s.unlock();
+            }
+        }
+        ArrayList<Map.Entry<K,Long>> top =
+            new ArrayList<Map.Entry<K,Long>>(heap.size());
+        Map.Entry<K,Long> e;
+        while ((e = heap.poll()) != null)
+            top.add(e);
+        Collections.reverse(top);
+        return top;
+    }
+
+    static <K> Map.Entry<K,Long> entry(K key, long count) {
+        return new AbstractMap.SimpleImmutableEntry<K,Long>(key, count);
+    }
+
+    /**
+     * Returns a string representation of the counts, in the form
+     * {@code {key=count, ...}}.
+     *
+     * @return a string representation of this map
+     */
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /* ---------------- Thread hashing -------------- */
+
+    /**
+     * Returns a non-zero hash of the current thread's id, which picks
+     * the cell a thread updates in place of the ThreadLocalRandom
+     * probe, since that is reachable only through sun.misc.Unsafe.
+     */
+    static final int threadHash() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9e3779b9;
+        h ^= h >>> 16;
+        return (h == 0) ? 1 : h;
+    }
+
+    /**
+     * Pseudo-randomly advances the given non-zero hash, to move an
+     * update off a contended cell.
+     */
+    static final int advanceHash(int h) {
+        h ^= h << 13;   // xorshift
+        h ^= h >>> 17;
+        h ^= h << 5;
+        return h;
+    }
+}
@@ -0,0 +1,1056 @@
+package util.concurrent;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.BiFunction;
+import java.util.function.LongFunction;
+
+/**
+ * A scalable concurrent sorted map from primitive {@code long} keys to
+ * values, with the same lock-free insertion and removal protocol as
+ * {@link ConcurrentSkipListMap} but a much smaller footprint.  Keys are
+ * never boxed and are compared as {@code long}s, and each mapping is
+ * held in a single node whose index levels (its "tower") are stored in
+ * an array, rather than in a chain of separate index objects.  Nodes
+ * without index levels, three in four on average, have no array at all.
+ *
+ * <p>Insertion, removal, update, and access operations safely execute
+ * concurrently by multiple threads, in expected average log(n) time.
+ * Ordered and range traversal is boxing-free, through {@link Cursor}s
+ * obtained from {@link #cursor}, {@link #ceiling}, {@link #floor},
+ * {@link #subMap} and related methods.  Cursors are <i>weakly
+ * consistent</i>, returning mappings reflecting the state of the map at
+ * some point at or since the creation of the cursor.  They do
+ * <em>not</em> throw {@link java.util.ConcurrentModificationException},
+ * and may proceed concurrently with other operations.  Ascending
+ * cursors are faster than descending ones, each step of which takes a
+ * new search.
+ *
+ * <p>Beware that, as with {@code ConcurrentSkipListMap}, the {@code
+ * size} method is <em>not</em> a constant-time operation.
+ *
+ * <p>This class does <em>not</em> permit the use of {@code null} values,
+ * because some null return values cannot be reliably distinguished from
+ * the absence of elements.
+ *
+ * @param <V> the type of mapped values
+ * @see ConcurrentSkipListMap
+ */
+public class ConcurrentLongSkipListMap<V> {
+    /*
+     * This is a variant of the algorithm of ConcurrentSkipListMap (see
+     * the explanation there), differing only in how index levels are
+     * represented.  The base level is the same singly-linked list of
+     * Nodes, with deletion performed by nulling a node's value,
+     * appending a marker node, and unlinking from the predecessor.
+     *
+     * Instead of Index nodes, each node with an index height of h > 0
+     * holds an array "up" of length h, up[i-1] being its successor at
+     * level i; the head node holds an array of MAX_LEVEL.  The array
+     * is an AtomicReferenceArray, whose elements are CASed as
+     * Index.right is.  An
+     * index level is traversed and unlinked exactly as in
+     * ConcurrentSkipListMap: an element pointing to a deleted node is
+     * CASed to that node's own successor at the same level.  As there,
+     * a concurrent link and unlink at the same level can lose the
+     * index entry of the node being linked, which only costs search
+     * time.  Towers are linked top-down after the node is inserted at
+     * the base level, rechecking for deletion of the new node after
+     * each link.
+     *
+     * Because the head's tower has a fixed height, there are no
+     * HeadIndex nodes to add or remove.  The "level" field holds the
+     * highest level that any node has been linked at, and is where
+     * searches start.  It never decreases: levels emptied by removals
+     * are passed over by searches in a step each, which is cheaper
+     * than ConcurrentSkipListMap's hysteresis for the at most
+     * MAX_LEVEL levels there can be.
+     */
+
+    /**
+     * The maximum number of index levels.  Levels are chosen as in
+     * ConcurrentSkipListMap, from the bits of a random int, which
+     * gives at most 31.
+     */
+    static final int MAX_LEVEL = 31;
+
+    /**
+     * Special value used to identify the head node.
+     */
+    private static final Object BASE_HEADER = new Object();
+
+    /**
+     * The head of the base list, with a tower of MAX_LEVEL levels.
+     */
+    private final Node<V> head;
+
+    /**
+     * The highest level at which nodes may be linked.
+     */
+    private volatile int level;
+
+    /**
+     * Constructs a new, empty map.
+     */
+    public ConcurrentLongSkipListMap() {
+        head = new Node<V>(Long.MIN_VALUE, BASE_HEADER, null,
+                           new AtomicReferenceArray<Node<V>>(MAX_LEVEL));
+    }
+
+    /* ---------------- Nodes -------------- */
+
+    /**
+     * Nodes hold keys and values, and are singly linked in sorted
+     * order at the base level, possibly with a tower of index levels.
+     * Marker nodes have their value field pointing to themselves, as
+     * in ConcurrentSkipListMap.
+     */
+    static final class Node<V> {
+        final long key;
+        volatile Object value;
+        volatile Node<V> next;
+        final AtomicReferenceArray<Node<V>> up; // successors at levels 1..length
+
+        /**
+         * Creates a new regular node.
+         */
+        Node(long key, Object value, Node<V> next,
+             AtomicReferenceArray<Node<V>> up) {
+            this.key = key;
+            this.value = value;
+            this.next = next;
+            this.up = up;
+        }
+
+        /**
+         * Creates a new marker node.
+         */
+        Node(Node<V> next) {
+            this.key = 0L;
+            this.value = this;
+            this.next = next;
+            this.up = null;
+        }
+
+        boolean casValue(Object cmp, Object val) {
+            return VALUE.compareAndSet(this, cmp, val);
+        }
+
+        boolean casNext(Node<V> cmp, Node<V> val) {
+            return NEXT.compareAndSet(this, cmp, val);
+        }
+
+        /**
+         * Helps out a deletion by appending marker or unlinking from
+         * predecessor, as in ConcurrentSkipListMap.Node.
+         * @param b predecessor
+         * @param f successor
+         */
+        void helpDelete(Node<V> b, Node<V> f) {
+            if (f == next && this == b.next) {
+                if (f == null || f.value != f) // not already marked
+                    casNext(f, new Node<V>(f));
+                else
+                    b.casNext(this, f.next);
+            }
+        }
+
+        /**
+         * Returns value if this node contains a valid key-value pair,
+         * else null.
+         */
+        V getValidValue() {
+            Object v = value;
+            if (v == this || v == BASE_HEADER)
+                return null;
+            @SuppressWarnings("unchecked") V vv = (V)v;
+            return vv;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static final AtomicReferenceFieldUpdater<Node<?>, Object> VALUE =
+            AtomicReferenceFieldUpdater.newUpdater(
+                (Class<Node<?>>) (Class<?>) Node.class, Object.class, "value");
+        @SuppressWarnings("unchecked")
+        private static final AtomicReferenceFieldUpdater<Node<?>, Node<?>> NEXT =
+            AtomicReferenceFieldUpdater.newUpdater(
+                (Class<Node<?>>) (Class<?>) Node.class,
+                (Class<Node<?>>) (Class<?>) Node.class, "next");
+    }
+
+    /* ---------------- Index levels -------------- */
+
+    /**
+     * Returns the successor of q at level i, for i in 1..height of q.
+     */
+    static <V> Node<V> right(Node<V> q, int i) {
+        return q.up.get(i - 1);
+    }
+
+    static <V> boolean casRight(Node<V> q, int i, Node<V> cmp, Node<V> val) {
+        return q.up.compareAndSet(i - 1, cmp, val);
+    }
+
+    /**
+     * Tries to CAS the successor of q at level i from r to newSucc,
+     * after setting the successor of newSucc at that level to r.
+     * Fails (forcing a retraversal by caller) if q is deleted.
+     */
+    static <V> boolean link(Node<V> q, int i, Node<V> r, Node<V> newSucc) {
+        newSucc.up.lazySet(i - 1, r);
+        return q.value != null && casRight(q, i, r, newSucc);
+    }
+
+    /**
+     * Tries to CAS the successor of q at level i from deleted node r
+     * to the successor of r at that level.  Fails (forcing a
+     * retraversal by caller) if q is deleted.
+     */
+    static <V> boolean unlink(Node<V> q, int i, Node<V> r) {
+        return q.value != null && casRight(q, i, r, right(r, i));
+    }
+
+    /**
+     * Returns a random index height, zero in three cases out of four.
+     */
+    private static int randomLevel() {
+        int rnd = ThreadLocalRandom.current().nextInt(), h = 0;
+        if ((rnd & 0x80000001) == 0) { // test highest and lowest bits
+            h = 1;
+            while (((rnd >>>= 1) & 1) != 0)
+                ++h;
+        }
+        return h;
+    }
+
+    /* ---------------- Traversal -------------- */
+
+    /**
+     * Returns a base-level node with key strictly less than given key,
+     * or the head if there is no such node.  Also unlinks index
+     * entries for deleted nodes found along the way.
+     */
+    private Node<V> findPredecessor(long key) {
+        outer: for (;;) {
+            Node<V> q = head;
+            for (int i = level; i > 0; --i) {
+                for (Node<V> r; (r = right(q, i)) != null;) {
+                    if (r.value == null) {
+                        if (!unlink(q, i, r))
+                            continue outer;  // restart
+                    }
+                    else if (key > r.key)
+                        q = r;
+                    else
+                        break;
+                }
+            }
+            return q;
+        }
+    }
+
+    /**
+     * Returns node holding key or null if no such, clearing out any
+     * deleted nodes seen along the way.  See
+     * ConcurrentSkipListMap.findNode for the checks made at each step.
+     */
+    private Node<V> findNode(long key) {
+        outer: for (;;) {
+            for (Node<V> b = findPredecessor(key), n = b.next;;) {
+                Object v;
+                if (n == null)
+                    break outer;
+                Node<V> f = n.next;
+                if (n != b.next)                // inconsistent read
+                    break;
+                if ((v = n.value) == null) {    // n is deleted
+                    n.helpDelete(b, f);
+                    break;
+                }
+                if (b.value == null || v == n)  // b is deleted
+                    break;
+                if (key == n.key)
+                    return n;
+                if (key < n.key)
+                    break outer;
+                b = n;
+                n = f;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets value for key, as findNode but returning the value read.
+     */
+    private V doGet(long key) {
+        outer: for (;;) {
+            for (Node<V> b = findPredecessor(key), n = b.next;;) {
+                Object v;
+                if (n == null)
+                    break outer;
+                Node<V> f = n.next;
+                if (n != b.next)                // inconsistent read
+                    break;
+                if ((v = n.value) == null) {    // n is deleted
+                    n.helpDelete(b, f);
+                    break;
+                }
+                if (b.value == null || v == n)  // b is deleted
+                    break;
+                if (key == n.key) {
+                    @SuppressWarnings("unchecked") V vv = (V)v;
+                    return vv;
+                }
+                if (key < n.key)
+                    break outer;
+                b = n;
+                n = f;
+            }
+        }
+        return null;
+    }
+
+    /* ---------------- Insertion -------------- */
+
+    /**
+     * Main insertion method.  Adds element if not present, or
+     * replaces value if present and onlyIfAbsent is false.
+     * @return the old value, or null if newly inserted
+     */
+    private V doPut(long key, V value, boolean onlyIfAbsent) {
+        Node<V> z;             // added node
+        if (value == null)
+            throw new NullPointerException();
+        outer: for (;;) {
+            for (Node<V> b = findPredecessor(key), n = b.next;;) {
+                if (n != null) {
+                    Object v;
+                    Node<V> f = n.next;
+                    if (n != b.next)               // inconsistent read
+                        break;
+                    if ((v = n.value) == null) {   // n is deleted
+                        n.helpDelete(b, f);
+                        break;
+                    }
+                    if (b.value == null || v == n) // b is deleted
+                        break;
+                    if (key > n.key) {
+                        b = n;
+                        n = f;
+                        continue;
+                    }
+                    if (key == n.key) {
+                        if (onlyIfAbsent || n.casValue(v, value)) {
+                            @SuppressWarnings("unchecked") V vv = (V)v;
+                            return vv;
+                        }
+                        break; // restart if lost race to replace value
+                    }
+                    // else key < n.key; fall through
+                }
+
+                int h = randomLevel();
+                AtomicReferenceArray<Node<V>> up = (h == 0) ? null :
+                    new AtomicReferenceArray<Node<V>>(h);
+                z = new Node<V>(key, value, n, up);
+                if (!b.casNext(n, z))
+                    break;         // restart if lost race to append to b
+                break outer;
+            }
+        }
+
+        AtomicReferenceArray<Node<V>> up;
+        if ((up = z.up) != null) {
+            int h = up.length(), lv;
+            while ((lv = level) < h && !LEVEL.compareAndSet(this, lv, h))
+                ;
+            // find insertion points from the top and splice in
+            splice: for (int ins = h;;) {
+                Node<V> q = head;
+                for (int i = level;;) {
+                    Node<V> r = right(q, i);
+                    if (r != null) {
+                        if (r.value == null) {
+                            if (!unlink(q, i, r))
+                                continue splice;
+                            continue;
+                        }
+                        if (key > r.key) {
+                            q = r;
+                            continue;
+                        }
+                    }
+                    if (i == ins) {
+                        if (!link(q, i, r, z))
+                            continue splice; // restart
+                        if (z.value == null) {
+                            findNode(key);
+                            break splice;
+                        }
+                        if (--ins == 0)
+                            break splice;
+                    }
+                    --i;
+                }
+            }
+        }
+        return null;
+    }
+
+    /* ---------------- Deletion -------------- */
+
+    /**
+     * Main deletion method. Locates node, nulls value, appends a
+     * deletion marker, unlinks predecessor, and clears index entries
+     * for the node by calling findPredecessor.
+     *
+     * @param value if non-null, the value that must be
+     * associated with key
+     * @return the old value, or null if not found
+     */
+    final V doRemove(long key, Object value) {
+        outer: for (;;) {
+            for (Node<V> b = findPredecessor(key), n = b.next;;) {
+                Object v;
+                if (n == null)
+                    break outer;
+                Node<V> f = n.next;
+                if (n != b.next)                    // inconsistent read
+                    break;
+                if ((v = n.value) == null) {        // n is deleted
+                    n.helpDelete(b, f);
+                    break;
+                }
+                if (b.value == null || v == n)      // b is deleted
+                    break;
+                if (key < n.key)
+                    break outer;
+                if (key > n.key) {
+                    b = n;
+                    n = f;
+                    continue;
+                }
+                if (value != null && !value.equals(v))
+                    break outer;
+                if (!n.casValue(v, null))
+                    break;
+                if (!n.casNext(f, new Node<V>(f)) || !b.casNext(n, f))
+                    findNode(key);                  // retry via findNode
+                else
+                    findPredecessor(key);           // clean index
+                @SuppressWarnings("unchecked") V vv = (V)v;
+                return vv;
+            }
+        }
+        return null;
+    }
+
+    /* ---------------- Relational operations -------------- */
+
+    // Control values OR'ed as arguments to findNear
+
+    private static final int EQ = 1;
+    private static final int LT = 2;
+    private static final int GT = 0; // Actually checked as !LT
+
+    /**
+     * Returns the first valid node, or null if empty.
+     */
+    final Node<V> findFirst() {
+        for (Node<V> b = head, n;;) {
+            if ((n = b.next) == null)
+                return null;
+            if (n.value != null)
+                return n;
+            n.helpDelete(b, n.next);
+        }
+    }
+
+    /**
+     * Returns the last valid node, or null if empty.  Traversals of
+     * index and base levels are folded together, as in
+     * ConcurrentSkipListMap.findLast.
+     */
+    final Node<V> findLast() {
+        outer: for (;;) {
+            Node<V> q = head;
+            for (int i = level; i > 0; --i) {
+                for (Node<V> r; (r = right(q, i)) != null;) {
+                    if (r.value == null) {
+                        if (!unlink(q, i, r))
+                            continue outer;  // restart
+                    }
+                    else
+                        q = r;
+                }
+            }
+            for (Node<V> b = q, n = b.next;;) {
+                if (n == null) {
+                    if (b == head)
+                        return null;
+                    if (b.value != null)
+                        return b;
+                    break;
+                }
+                Node<V> f = n.next;
+                if (n != b.next)                    // inconsistent read
+                    break;
+                Object v = n.value;
+                if (v == null) {                    // n is deleted
+                    n.helpDelete(b, f);
+                    break;
+                }
+                if (b.value == null || v == n)      // b is deleted
+                    break;
+                b = n;
+                n = f;
+            }
+        }
+    }
+
+    /**
+     * Utility for cursors.
+     * @param rel the relation -- OR'ed combination of EQ, LT, GT
+     * @return nearest node fitting relation, or null if no such
+     */
+    final Node<V> findNear(long key, int rel) {
+        for (;;) {
+            for (Node<V> b = findPredecessor(key), n = b.next;;) {
+                Object v;
+                if (n == null)
+                    return ((rel & LT) == 0 || b == head) ? null : b;
+                Node<V> f = n.next;
+                if (n != b.next)                  // inconsistent read
+                    break;
+                if ((v = n.value) == null) {      // n is deleted
+                    n.helpDelete(b, f);
+                    break;
+                }
+                if (b.value == null || v == n)    // b is deleted
+                    break;
+                long k = n.key;
+                if ((key == k && (rel & EQ) != 0) ||
+                    (key <  k && (rel & LT) == 0))
+                    return n;
+                if (key <= k && (rel & LT) != 0)
+                    return (b == head) ? null : b;
+                b = n;
+                n = f;
+            }
+        }
+    }
+
+    /* ---------------- Map operations -------------- */
+
+    /**
+     * Returns {@code true} if this map contains a mapping for the
+     * specified key.
+     *
+     * @param key key whose presence in this map is to be tested
+     * @return {@code true} if this map contains a mapping for the key
+     */
+    public boolean containsKey(long key) {
+        return doGet(key) != null;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or {@code null} if this map contains no mapping for the key.
+     *
+     * @param key the key
+     * @return the value, or {@code null} if none
+     */
+    public V get(long key) {
+        return doGet(key);
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or the given defaultValue if this map contains no mapping for the key.
+     *
+     * @param key the key
+     * @param defaultValue the value to return if this map contains
+     * no mapping for the given key
+     * @return the mapping for the key, if present; else the defaultValue
+     */
+    public V getOrDefault(long key, V defaultValue) {
+        V v;
+        return (v = doGet(key)) == null ? defaultValue : v;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with the specified key, or
+     *         {@code null} if there was no mapping for the key
+     * @throws NullPointerException if the specified value is null
+     */
+    public V put(long key, V value) {
+        return doPut(key, value, false);
+    }
+
+    /**
+     * If the specified key is not already associated with a value,
+     * associates it with the given value.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with the specified key,
+     *         or {@code null} if there was no mapping for the key
+     * @throws NullPointerException if the specified value is null
+     */
+    public V putIfAbsent(long key, V value) {
+        return doPut(key, value, true);
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @param key key for which mapping should be removed
+     * @return the previous value associated with the specified key, or
+     *         {@code null} if there was no mapping for the key
+     */
+    public V remove(long key) {
+        return doRemove(key, null);
+    }
+
+    /**
+     * Removes the entry for a key only if currently mapped to a given value.
+     *
+     * @param key key with which the specified value is associated
+     * @param value value expected to be associated with the specified key
+     * @return {@code true} if the value was removed
+     */
+    public boolean remove(long key, Object value) {
+        return value != null && doRemove(key, value) != null;
+    }
+
+    /**
+     * Replaces the entry for a key only if currently mapped to a given value.
+     *
+     * @param key key with which the specified value is associated
+     * @param oldValue value expected to be associated with the specified key
+     * @param newValue value to be associated with the specified key
+     * @return {@code true} if the value was replaced
+     * @throws NullPointerException if any of the values are null
+     */
+    public boolean replace(long key, V oldValue, V newValue) {
+        if (oldValue == null || newValue == null)
+            throw new NullPointerException();
+        for (;;) {
+            Node<V> n; Object v;
+            if ((n = findNode(key)) == null)
+                return false;
+            if ((v = n.value) != null) {
+                if (!oldValue.equals(v))
+                    return false;
+                if (n.casValue(v, newValue))
+                    return true;
+            }
+        }
+    }
+
+    /**
+     * Replaces the entry for a key only if currently mapped to some value.
+     *
+     * @param key key with which the specified value is associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with the specified key,
+     *         or {@code null} if there was no mapping for the key
+     * @throws NullPointerException if the specified value is null
+     */
+    public V replace(long key, V value) {
+        if (value == null)
+            throw new NullPointerException();
+        for (;;) {
+            Node<V> n; Object v;
+            if ((n = findNode(key)) == null)
+                return null;
+            if ((v = n.value) != null && n.casValue(v, value)) {
+                @SuppressWarnings("unchecked") V vv = (V)v;
+                return vv;
+            }
+        }
+    }
+
+    /**
+     * If the specified key is not already associated with a value,
+     * attempts to compute its value using the given mapping function
+     * and enters it into this map unless {@code null}.  The function
+     * is <em>NOT</em> guaranteed to be applied once atomically only
+     * if the value is not present.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param mappingFunction the function to compute a value
+     * @return the current (existing or computed) value associated with
+     *         the specified key, or null if the computed value is null
+     * @throws NullPointerException if the mappingFunction is null
+     */
+    public V computeIfAbsent(long key,
+                             LongFunction<? extends V> mappingFunction) {
+        if (mappingFunction == null)
+            throw new NullPointerException();
+        V v, p, r;
+        if ((v = doGet(key)) == null &&
+            (r = mappingFunction.apply(key)) != null)
+            v = (p = doPut(key, r, true)) == null ? r : p;
+        return v;
+    }
+
+    /**
+     * If the specified key is not already associated with a value,
+     * associates it with the given value.  Otherwise, replaces the
+     * value with the results of the given remapping function, or
+     * removes if {@code null}. The function is <em>NOT</em>
+     * guaranteed to be applied once atomically.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value the value to use if absent
+     * @param remappingFunction the function to recompute a value if present
+     * @return the new value associated with the specified key, or null if none
+     * @throws NullPointerException if the specified value or the
+     *         remappingFunction is null
+     */
+    public V merge(long key, V value,
+                   BiFunction<? super V, ? super V, ? extends V>
+                   remappingFunction) {
+        if (value == null || remappingFunction == null)
+            throw new NullPointerException();
+        for (;;) {
+            Node<V> n; Object v; V r;
+            if ((n = findNode(key)) == null) {
+                if (doPut(key, value, true) == null)
+                    return value;
+            }
+            else if ((v = n.value) != null) {
+                @SuppressWarnings("unchecked") V vv = (V) v;
+                if ((r = remappingFunction.apply(vv, value)) != null) {
+                    if (n.casValue(vv, r))
+                        return r;
+                }
+                else if (doRemove(key, vv) != null)
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.  If this map
+     * contains more than {@code Integer.MAX_VALUE} elements, it
+     * returns {@code Integer.MAX_VALUE}.
+     *
+     * <p>Beware that, unlike in most collections, this method is
+     * <em>NOT</em> a constant-time operation. Because of the
+     * asynchronous nature of these maps, determining the current
+     * number of elements requires traversing them all to count them.
+     *
+     * @return the number of elements in this map
+     */
+    public int size() {
+        long count = 0;
+        for (Node<V> n = findFirst(); n != null; n = n.next) {
+            if (n.getValidValue() != null)
+                ++count;
+        }
+        return (count >= Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) count;
+    }
+
+    /**
+     * Returns {@code true} if this map contains no key-value mappings.
+     * @return {@code true} if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return findFirst() == null;
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     */
+    public void clear() {
+        for (Node<V> n; (n = findFirst()) != null;)
+            doRemove(n.key, null);
+    }
+
+    /**
+     * Returns the first (lowest) key currently in this map.
+     *
+     * @return the first key
+     * @throws NoSuchElementException if this map is empty
+     */
+    public long firstKey() {
+        Node<V> n = findFirst();
+        if (n == null)
+            throw new NoSuchElementException();
+        return n.key;
+    }
+
+    /**
+     * Returns the last (highest) key currently in this map.
+     *
+     * @return the last key
+     * @throws NoSuchElementException if this map is empty
+     */
+    public long lastKey() {
+        Node<V> n = findLast();
+        if (n == null)
+            throw new NoSuchElementException();
+        return n.key;
+    }
+
+    /* ---------------- Cursors -------------- */
+
+    /**
+     * Returns an ascending cursor over all mappings.
+     *
+     * @return the cursor
+     */
+    public Cursor<V> cursor() {
+        return new Cursor<V>(this, Long.MIN_VALUE, true,
+                             Long.MAX_VALUE, true, false);
+    }
+
+    /**
+     * Returns a descending cursor over all mappings.
+     *
+     * @return the cursor
+     */
+    public Cursor<V> descendingCursor() {
+        return new Cursor<V>(this, Long.MIN_VALUE, true,
+                             Long.MAX_VALUE, true, true);
+    }
+
+    /**
+     * Returns an ascending cursor over the mappings with keys greater
+     * than or equal to the given key.  Its first mapping, if any, is
+     * the ceiling of the key, so that
+     * <pre> {@code
+     * Cursor<V> c = map.ceiling(key);
+     * if (c.advance())
+     *   use(c.key(), c.value());}</pre>
+     * finds the least key greater than or equal to {@code key}.
+     *
+     * @param key the key
+     * @return the cursor
+     */
+    public Cursor<V> ceiling(long key) {
+        return new Cursor<V>(this, key, true, Long.MAX_VALUE, true, false);
+    }
+
+    /**
+     * Returns an ascending cursor over the mappings with keys strictly
+     * greater than the given key.
+     *
+     * @param key the key
+     * @return the cursor
+     */
+    public Cursor<V> higher(long key) {
+        return new Cursor<V>(this, key, false, Long.MAX_VALUE, true, false);
+    }
+
+    /**
+     * Returns a descending cursor over the mappings with keys less than
+     * or equal to the given key.  Its first mapping, if any, is the
+     * floor of the key.
+     *
+     * @param key the key
+     * @return the cursor
+     */
+    public Cursor<V> floor(long key) {
+        return new Cursor<V>(this, Long.MIN_VALUE, true, key, true, true);
+    }
+
+    /**
+     * Returns a descending cursor over the mappings with keys strictly
+     * less than the given key.
+     *
+     * @param key the key
+     * @return the cursor
+     */
+    public Cursor<V> lower(long key) {
+        return new Cursor<V>(this, Long.MIN_VALUE, true, key, false, true);
+    }
+
+    /**
+     * Returns an ascending cursor over the mappings with keys ranging
+     * from {@code fromKey} to {@code toKey}.
+     *
+     * @param fromKey low endpoint of the keys
+     * @param fromInclusive {@code true} if the low endpoint
+     *        is to be included
+     * @param toKey high endpoint of the keys
+     * @param toInclusive {@code true} if the high endpoint
+     *        is to be included
+     * @return the cursor
+     * @throws IllegalArgumentException if {@code fromKey} is greater
+     *         than {@code toKey}
+     */
+    public Cursor<V> subMap(long fromKey, boolean fromInclusive,
+                            long toKey, boolean toInclusive) {
+        if (fromKey > toKey)
+            throw new IllegalArgumentException("inconsistent range");
+        return new Cursor<V>(this, fromKey, fromInclusive,
+                             toKey, toInclusive, false);
+    }
+
+    /**
+     * Returns a descending cursor over the mappings with keys ranging
+     * from {@code toKey} down to {@code fromKey}.
+     *
+     * @param fromKey low endpoint of the keys
+     * @param fromInclusive {@code true} if the low endpoint
+     *        is to be included
+     * @param toKey high endpoint of the keys
+     * @param toInclusive {@code true} if the high endpoint
+     *        is to be included
+     * @return the cursor
+     * @throws IllegalArgumentException if {@code fromKey} is greater
+     *         than {@code toKey}
+     */
+    public Cursor<V> descendingSubMap(long fromKey, boolean fromInclusive,
+                                      long toKey, boolean toInclusive) {
+        if (fromKey > toKey)
+            throw new IllegalArgumentException("inconsistent range");
+        return new Cursor<V>(this, fromKey, fromInclusive,
+                             toKey, toInclusive, true);
+    }
+
+    /**
+     * A position in a traversal of the mappings of a {@link
+     * ConcurrentLongSkipListMap} within a key range, in ascending or
+     * descending order.  A cursor is initially positioned before its
+     * first mapping; each call to {@link #advance} moves it to the
+     * next one, whose key and value are then available without boxing
+     * from {@link #key} and {@link #value}:
+     * <pre> {@code
+     * for (Cursor<V> c = map.subMap(from, true, to, false); c.advance(); )
+     *   sum += c.key();}</pre>
+     *
+     * <p>The value returned by {@link #value} is the one the mapping
+     * held when the cursor moved to it.  Cursors are not thread-safe.
+     *
+     * @param <V> the type of mapped values
+     */
+    public static final class Cursor<V> {
+        final ConcurrentLongSkipListMap<V> map;
+        final long lo, hi;
+        final boolean loInclusive, hiInclusive, descending;
+        /** the current node, or null if not positioned */
+        Node<V> node;
+        /** the value of node when moved to */
+        V value;
+        /** 0: before first, 1: positioned or removed, -1: exhausted */
+        int state;
+
+        Cursor(ConcurrentLongSkipListMap<V> map,
+               long lo, boolean loInclusive,
+               long hi, boolean hiInclusive, boolean descending) {
+            this.map = map;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+        }
+
+        /**
+         * Moves to the next mapping in the range, if there is one.
+         *
+         * @return {@code true} if this cursor is now positioned at a
+         *         mapping, or {@code false} if there are no more
+         */
+        public boolean advance() {
+            Node<V> n = node; Object v = null;
+            if (state < 0)
+                return false;
+            if (!descending) {
+                if (state == 0)
+                    n = map.findNear(lo, loInclusive ? GT|EQ : GT);
+                else
+                    n = n.next;
+                for (; n != null; n = n.next) {  // skip deleted, markers
+                    if ((v = n.value) != null && v != n)
+                        break;
+                }
+                if (n != null && (n.key > hi || (n.key == hi && !hiInclusive)))
+                    n = null;
+            }
+            else {
+                for (long k = (state == 0) ? hi : n.key;;) {
+                    n = map.findNear(k, (state == 0 && hiInclusive) ?
+                                     LT|EQ : LT);
+                    if (n == null || (v = n.value) != null)
+                        break;
+                }
+                if (n != null && (n.key < lo || (n.key == lo && !loInclusive)))
+                    n = null;
+            }
+            node = n;
+            if (n == null) {
+                state = -1;
+                value = null;
+                return false;
+            }
+            state = 1;
+            @SuppressWarnings("unchecked") V vv = (V)v;
+            value = vv;
+            return true;
+        }
+
+        /**
+         * Returns the key of the current mapping.
+         *
+         * @return the key
+         * @throws IllegalStateException if this cursor is not
+         *         positioned at a mapping
+         */
+        public long key() {
+            Node<V> n = node;
+            if (n == null)
+                throw new IllegalStateException();
+            return n.key;
+        }
+
+        /**
+         * Returns the value of the current mapping.
+         *
+         * @return the value
+         * @throws IllegalStateException if this cursor is not
+         *         positioned at a mapping
+         */
+        public V value() {
+            if (node == null)
+                throw new IllegalStateException();
+            return value;
+        }
+
+        /**
+         * Removes the mapping for the current key from the map, if
+         * present.  The cursor remains positioned for the next call
+         * to {@link #advance}.
+         *
+         * @return {@code true} if a mapping was removed
+         * @throws IllegalStateException if this cursor is not
+         *         positioned at a mapping
+         */
+        public boolean remove() {
+            Node<V> n = node;
+            if (n == null)
+                throw new IllegalStateException();
+            return map.doRemove(n.key, null) != null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static final AtomicIntegerFieldUpdater<ConcurrentLongSkipListMap<?>> LEVEL =
+        AtomicIntegerFieldUpdater.newUpdater(
+            (Class<ConcurrentLongSkipListMap<?>>) (Class<?>) ConcurrentLongSkipListMap.class,
+            "level");
+}
@@ -0,0 +1,606 @@
+package util.concurrent;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * A concurrent cache bounded by total entry weight, evicting the
+ * least-recently-used entries first, with optional expiration of entries a
+ * fixed time after they were written or last read.
+ *
+ * <p>The cache is split into lock-striped segments, each an access-ordered
+ * {@link LinkedHashMap} guarded by its own {@link ReentrantLock}.  A key is
+ * always handled by the same segment, so eviction order is exact within a
+ * segment and approximate across the whole cache.  Every segment is
+ * allotted an equal share of the maximum weight.  Because reading an
+ * access-ordered map relinks the entry, retrievals lock their segment too;
+ * contention is spread by using more segments.
+ *
+ * <p>Each entry has a weight computed by the weigher supplied at
+ * construction (by default every entry weighs one, so the bound is a
+ * maximum size).  After an insertion pushes a segment over its share,
+ * entries are evicted from its least-recently-used end until it fits
+ * again.  An entry heavier than a whole segment share is evicted as soon
+ * as it is inserted.
+ *
+ * <p>Expired entries are never returned.  They are removed lazily when
+ * encountered, and by a periodic sweep of all segments scheduled on a
+ * {@link ScheduledExecutorService} (by default a shared
+ * {@link ScheduledThreadPoolExecutor} with one daemon thread).  The sweep
+ * runs at a fraction of the shortest expiration delay, so expired entries
+ * stop occupying weight soon after they expire.
+ *
+ * <p>Hit, miss, eviction and expiration counts are kept in
+ * {@link LongAdder}s, so recording them does not add contention between
+ * segments.
+ *
+ * <p>This class does <em>not</em> allow {@code null} keys or values.
+ *
+ * @param <K> the type of keys maintained by this cache
+ * @param <V> the type of cached values
+ * @see LinkedHashMap#removeEldestEntry
+ */
+public class ConcurrentLruCache<K,V> {
+
+    /**
+     * The default number of segments.
+     */
+    static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /**
+     * The maximum number of segments.
+     */
+    static final int MAX_SEGMENTS = 1 << 16;
+
+    /**
+     * The sweep period, as a fraction (1/n) of the shortest expiration
+     * delay.
+     */
+    static final int SWEEPS_PER_EXPIRY = 4;
+
+    /**
+     * The minimum sweep period, bounding the sweep cost for very short
+     * expiration delays.
+     */
+    static final long MIN_SWEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(10L);
+
+    /**
+     * Lazily created executor for expiration sweeps, shared by all caches
+     * that were not given one.
+     */
+    static final class DefaultSweeper {
+        static final ScheduledThreadPoolExecutor executor;
+        static {
+            executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ConcurrentLruCache-sweeper");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            executor.setRemoveOnCancelPolicy(true);
+        }
+    }
+
+    /**
+     * Periodic expiration task.  It refers to its cache weakly, so that a
+     * cache that is dropped without being closed can still be collected;
+     * the task then cancels itself.
+     */
+    static final class Sweeper implements Runnable {
+        final WeakReference<ConcurrentLruCache<?,?>> cache;
+        volatile ScheduledFuture<?> future;
+        Sweeper(ConcurrentLruCache<?,?> cache) {
+            this.cache = new WeakReference<ConcurrentLruCache<?,?>>(cache);
+        }
+        public void run() {
+            ConcurrentLruCache<?,?> c = cache.get();
+            ScheduledFuture<?> f;
+            if (c != null)
+                c.cleanUp();
+            else if ((f = future) != null)
+                f.cancel(false);
+        }
+    }
+
+    /**
+     * A cached value with its weight and timestamps.
+     */
+    static final class Node<V> {
+        final V value;
+        final int weight;
+        final long writeTime;
+        volatile long accessTime;
+        Node(V value, int weight, long now) {
+            this.value = value;
+            this.weight = weight;
+            this.writeTime = now;
+            this.accessTime = now;
+        }
+    }
+
+    /**
+     * A lock-guarded, access-ordered part of the cache.
+     */
+    final class Segment extends ReentrantLock {
+        private static final long serialVersionUID = -2047835128840349812L;
+
+        final LinkedHashMap<K,Node<V>> map =
+            new LinkedHashMap<K,Node<V>>(16, 0.75f, true);
+        final long maxWeight;
+        volatile long weight;           // written only under lock
+
+        Segment(long maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        /**
+         * Returns the live node for the key, removing it if expired.
+         * Caller holds the lock.
+         */
+        Node<V> getLive(Object key, long now) {
+            Node<V> n = map.get(key);
+            if (n != null && isExpired(n, now)) {
+                map.remove(key);
+                weight -= n.weight;
+                expirations.increment();
+                n = null;
+            }
+            return n;
+        }
+
+        /**
+         * Inserts or replaces a mapping, then evicts down to the bound.
+         * Caller holds the lock.
+         */
+        Node<V> insert(K key, V value, long now) {
+            int w = weigher.applyAsInt(key, value);
+            if (w < 0)
+                throw new IllegalArgumentException("Negative weight: " + w);
+            Node<V> n = new Node<V>(value, w, now);
+            Node<V> old = map.put(key, n);
+            if (old != null)
+                weight -= old.weight;
+            weight += w;
+            evict();
+            return old;
+        }
+
+        /**
+         * Removes least-recently-used entries until within the bound.
+         */
+        void evict() {
+            if (weight <= maxWeight)
+                return;
+            Iterator<Map.Entry<K,Node<V>>> it = map.entrySet().iterator();
+            while (weight > maxWeight && it.hasNext()) {
+                Node<V> n = it.next().getValue();
+                it.remove();
+                weight -= n.weight;
+                evictions.increment();
+            }
+        }
+
+        /**
+         * Removes all expired entries.  With access expiration only, the
+         * scan stops at the first live entry, since the access-ordered map
+         * is then also ordered by expiration time.
+         */
+        void sweep(long now) {
+            lock();
+            try {
+                Iterator<Map.Entry<K,Node<V>>> it = map.entrySet().iterator();
+                while (it.hasNext()) {
+                    Node<V> n = it.next().getValue();
+                    if (isExpired(n, now)) {
+                        it.remove();
+                        weight -= n.weight;
+                        expirations.increment();
+                    } else if (expireAfterWriteNanos == 0L) {
+                        break;
+                    }
+                }
+            } finally {
+                unlock();
+            }
+        }
+    }
+
+    final Segment[] segments;
+    final int segmentShift;
+    final int segmentMask;
+    final ToIntBiFunction<? super K, ? super V> weigher;
+    final long maximumWeight;
+    final long expireAfterWriteNanos;
+    final long expireAfterAccessNanos;
+    final ScheduledFuture<?> sweepTask;
+
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+    final LongAdder expirations = new LongAdder();
+
+    /**
+     * Creates a cache holding at most (approximately) the given number of
+     * entries, with the default number of segments and no expiration.
+     *
+     * @param maximumSize the maximum number of entries
+     * @throws IllegalArgumentException if {@code maximumSize} is negative
+     */
+    public ConcurrentLruCache(long maximumSize) {
+        this(maximumSize, null, DEFAULT_CONCURRENCY_LEVEL, 0L, 0L,
+             TimeUnit.NANOSECONDS, null);
+    }
+
+    /**
+     * Creates a cache bounded by total entry weight, with no expiration.
+     *
+     * @param maximumWeight the maximum total weight of all entries
+     * @param weigher computes the weight of an entry, or {@code null} to
+     *        give every entry weight one
+     * @param concurrencyLevel the estimated number of concurrently
+     *        accessing threads, used to size the segment array
+     * @throws IllegalArgumentException if {@code maximumWeight} is negative
+     *         or {@code concurrencyLevel} is not positive
+     */
+    public ConcurrentLruCache(long maximumWeight,
+                              ToIntBiFunction<? super K, ? super V> weigher,
+                              int concurrencyLevel) {
+        this(maximumWeight, weigher, concurrencyLevel, 0L, 0L,
+             TimeUnit.NANOSECONDS, null);
+    }
+
+    /**
+     * Creates a cache bounded by total entry weight, whose entries expire
+     * a fixed time after being written and/or last read.
+     *
+     * @param maximumWeight the maximum total weight of all entries
+     * @param weigher computes the weight of an entry, or {@code null} to
+     *        give every entry weight one
+     * @param concurrencyLevel the estimated number of concurrently
+     *        accessing threads, used to size the segment array
+     * @param expireAfterWrite the time after which an entry expires once
+     *        written, or zero for none
+     * @param expireAfterAccess the time after which an entry expires once
+     *        last written or read, or zero for none
+     * @param unit the time unit of both expiration arguments
+     * @param sweeper the executor on which to run periodic expiration
+     *        sweeps, or {@code null} to use a shared daemon
+     *        {@link ScheduledThreadPoolExecutor}; unused if neither
+     *        expiration is enabled
+     * @throws IllegalArgumentException if {@code maximumWeight} or either
+     *         expiration time is negative, or {@code concurrencyLevel} is
+     *         not positive
+     * @throws NullPointerException if {@code unit} is null
+     */
+    public ConcurrentLruCache(long maximumWeight,
+                              ToIntBiFunction<? super K, ? super V> weigher,
+                              int concurrencyLevel,
+                              long expireAfterWrite,
+                              long expireAfterAccess,
+                              TimeUnit unit,
+                              ScheduledExecutorService sweeper) {
+        if (maximumWeight < 0L || concurrencyLevel <= 0 ||
+            expireAfterWrite < 0L || expireAfterAccess < 0L)
+            throw new IllegalArgumentException();
+        if (unit == null)
+            throw new NullPointerException();
+        if (concurrencyLevel > MAX_SEGMENTS)
+            concurrencyLevel = MAX_SEGMENTS;
+        int sshift = 0, ssize = 1;
+        while (ssize < concurrencyLevel) {
+            ++sshift;
+            ssize <<= 1;
+        }
+        this.segmentShift = 32 - sshift;
+        this.segmentMask = ssize - 1;
+        this.maximumWeight = maximumWeight;
+        this.weigher = (weigher != null) ? weigher : (k, v) -> 1;
+        this.expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+        this.expireAfterAccessNanos = unit.toNanos(expireAfterAccess);
+        long share = (maximumWeight + ssize - 1) / ssize;
+        @SuppressWarnings("unchecked")
+        Segment[] ss = (Segment[]) new ConcurrentLruCache<?,?>.Segment[ssize];
+        for (int i = 0; i < ssize; ++i)
+            ss[i] = new Segment(share);
+        this.segments = ss;
+
+        long shortest = shortestExpiry();
+        if (shortest == 0L) {
+            this.sweepTask = null;
+        } else {
+            if (sweeper == null)
+                sweeper = DefaultSweeper.executor;
+            long period = Math.max(MIN_SWEEP_NANOS, shortest / SWEEPS_PER_EXPIRY);
+            Sweeper task = new Sweeper(this);
+            this.sweepTask = task.future = sweeper.scheduleWithFixedDelay(
+                task, period, period, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private long shortestExpiry() {
+        long w = expireAfterWriteNanos, a = expireAfterAccessNanos;
+        if (w == 0L) return a;
+        if (a == 0L) return w;
+        return Math.min(w, a);
+    }
+
+    /* ---------------- Internal utilities -------------- */
+
+    final Segment segmentFor(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return segments[(h >>> segmentShift) & segmentMask];
+    }
+
+    final boolean isExpired(Node<V> n, long now) {
+        return ((expireAfterWriteNanos != 0L &&
+                 now - n.writeTime >= expireAfterWriteNanos) ||
+                (expireAfterAccessNanos != 0L &&
+                 now - n.accessTime >= expireAfterAccessNanos));
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * Returns the value cached for the key, or {@code null} if there is no
+     * live entry for it.  A hit marks the entry as most recently used.
+     *
+     * @param key the key whose cached value is to be returned
+     * @return the cached value, or {@code null}
+     * @throws NullPointerException if the key is null
+     */
+    public V get(Object key) {
+        if (key == null)
+            throw new NullPointerException();
+        Segment s = segmentFor(key);
+        long now = System.nanoTime();
+        Node<V> n;
+        s.lock();
+        try {
+            if ((n = s.getLive(key, now)) != null)
+                n.accessTime = now;
+        } finally {
+            s.unlock();
+        }
+        if (n == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return n.value;
+    }
+
+    /**
+     * Returns the value cached for the key, computing and caching it with
+     * the given function if there is no live entry.  The function runs
+     * while holding the key's segment lock, so it should be short and must
+     * not access this cache.
+     *
+     * @param key the key whose cached value is to be returned
+     * @param mappingFunction the function computing a missing value
+     * @return the current (existing or computed) value, or {@code null}
+     *         if the computed value is {@code null}
+     * @throws NullPointerException if the key or function is null
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        if (key == null || mappingFunction == null)
+            throw new NullPointerException();
+        Segment s = segmentFor(key);
+        s.lock();
+        try {
+            long now = System.nanoTime();
+            Node<V> n = s.getLive(key, now);
+            if (n != null) {
+                n.accessTime = now;
+                hits.increment();
+                return n.value;
+            }
+            misses.increment();
+            V v = mappingFunction.apply(key);
+            if (v != null)
+                s.insert(key, v, System.nanoTime());
+            return v;
+        } finally {
+            s.unlock();
+        }
+    }
+
+    /**
+     * Caches the value for the key, replacing any existing entry, and
+     * evicts least-recently-used entries if the cache grows over its bound.
+     *
+     * @param key the key
+     * @param value the value
+     * @return the previously cached live value, or {@code null}
+     * @throws NullPointerException if the key or value is null
+     * @throws IllegalArgumentException if the weigher returns a negative
+     *         weight
+     */
+    public V put(K key, V value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        Segment s = segmentFor(key);
+        long now = System.nanoTime();
+        Node<V> old;
+        s.lock();
+        try {
+            old = s.insert(key, value, now);
+        } finally {
+            s.unlock();
+        }
+        return (old == null || isExpired(old, now)) ? null : old.value;
+    }
+
+    /**
+     * Caches the value for the key unless a live entry already exists.
+     *
+     * @param key the key
+     * @param value the value
+     * @return the existing live value, or {@code null} if the value was
+     *         inserted
+     * @throws NullPointerException if the key or value is null
+     */
+    public V putIfAbsent(K key, V value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        Segment s = segmentFor(key);
+        long now = System.nanoTime();
+        s.lock();
+        try {
+            Node<V> n = s.getLive(key, now);
+            if (n != null) {
+                n.accessTime = now;
+                return n.value;
+            }
+            s.insert(key, value, now);
+            return null;
+        } finally {
+            s.unlock();
+        }
+    }
+
+    /**
+     * Removes the entry for the key, if present.
+     *
+     * @param key the key
+     * @return the removed live value, or {@code null}
+     * @throws NullPointerException if the key is null
+     */
+    public V remove(Object key) {
+        if (key == null)
+            throw new NullPointerException();
+        Segment s = segmentFor(key);
+        Node<V> n;
+        s.lock();
+        try {
+            if ((n = s.map.remove(key)) != null)
+                s.weight -= n.weight;
+        } finally {
+            s.unlock();
+        }
+        return (n == null || isExpired(n, System.nanoTime())) ? null : n.value;
+    }
+
+    /**
+     * Removes all entries from the cache.  Statistics are not reset.
+     */
+    public void clear() {
+        for (Segment s : segments) {
+            s.lock();
+            try {
+                s.map.clear();
+                s.weight = 0L;
+            } finally {
+                s.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes all expired entries now, rather than waiting for the next
+     * periodic sweep.
+     */
+    public void cleanUp() {
+        if (expireAfterWriteNanos == 0L && expireAfterAccessNanos == 0L)
+            return;
+        for (Segment s : segments)
+            s.sweep(System.nanoTime());
+    }
+
+    /**
+     * Cancels the periodic expiration sweep.  The cache remains usable,
+     * and expired entries are still never returned, but they are then only
+     * removed when encountered or by {@link #cleanUp}.
+     */
+    public void close() {
+        ScheduledFuture<?> t;
+        if ((t = sweepTask) != null)
+            t.cancel(false);
+    }
+
+    /**
+     * Returns the number of entries, including expired entries not yet
+     * removed.  The segments are summed without locking, so the result is
+     * only an estimate while updates are in progress.
+     *
+     * @return the approximate number of entries
+     */
+    public int size() {
+        long n = 0L;
+        for (Segment s : segments)
+            n += s.map.size();
+        return (n > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) n;
+    }
+
+    /**
+     * Returns the total weight of all entries, an estimate in the same
+     * sense as {@link #size}.
+     *
+     * @return the approximate total weight
+     */
+    public long weightedSize() {
+        long w = 0L;
+        for (Segment s : segments)
+            w += s.weight;
+        return w;
+    }
+
+    /**
+     * Returns the maximum total weight of this cache.
+     *
+     * @return the maximum total weight
+     */
+    public long maximumWeight() {
+        return maximumWeight;
+    }
+
+    /** Returns the number of lookups that found a live entry. */
+    public long hitCount() { return hits.sum(); }
+
+    /** Returns the number of lookups that found no live entry. */
+    public long missCount() { return misses.sum(); }
+
+    /** Returns the number of entries evicted to respect the weight bound. */
+    public long evictionCount() { return evictions.sum(); }
+
+    /** Returns the number of entries removed because they expired. */
+    public long expirationCount() { return expirations.sum(); }
+
+    /**
+     * Returns the fraction of lookups that were hits, or {@code 1.0} if
+     * there have been no lookups.
+     *
+     * @return the hit rate
+     */
+    public double hitRate() {
+        long h = hits.sum(), total = h + misses.sum();
+        return (total == 0L) ? 1.0 : (double) h / total;
+    }
+
+    /**
+     * Returns a string identifying this cache, as well as its size and
+     * statistics.
+     *
+     * @return a string identifying this cache
+     */
+    public String toString() {
+        return super.toString() +
+            "[size = " + size() +
+            ", weight = " + weightedSize() + "/" + maximumWeight +
+            ", hits = " + hitCount() +
+            ", misses = " + missCount() +
+            ", evictions = " + evictionCount() +
+            ", expirations = " + expirationCount() + "]";
+    }
+}
@@ -0,0 +1,259 @@
+package util.concurrent;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Task timing and scheduling statistics of a {@link ThreadPoolExecutor}
+ * or {@link ForkJoinPool}, collected while enabled by the executor's
+ * {@code enableMetrics} method.
+ *
+ * <p>While metrics are enabled, the executor records the time each
+ * task spends executing and, for a {@code ThreadPoolExecutor}, the
+ * time it spent queued between {@code execute} and the start of
+ * execution, if its queue is FIFO, in histograms with a resolution of about three percent
+ * of the recorded value over the whole range of {@code long}.  It also
+ * counts rejected tasks.  Worker threads keep their own counts of
+ * parks, and those of a {@code ForkJoinPool} of steals, at all times,
+ * and this class reads them on demand.
+ * Recording is striped across threads in the manner of
+ * {@link java.util.concurrent.atomic.LongAdder}, so that workers
+ * rarely contend on the same counters; when metrics are not enabled,
+ * the executors record nothing and pay for one volatile read per task.
+ *
+ * <p>Tasks submitted to a {@code ForkJoinPool} are not timestamped, so
+ * a pool records no queue waits.  Execution times of a pool are those
+ * of the tasks workers take from queues, including the time spent in
+ * the subtasks those tasks fork and join.
+ *
+ * <p>{@link #registerMXBean} registers these metrics with the platform
+ * {@code MBeanServer}, through which all the statistics of {@link
+ * ExecutorMetricsMXBean} are available.  All methods are thread-safe;
+ * statistics read while tasks are running are estimates.
+ *
+ * @see ThreadPoolExecutor#enableMetrics
+ * @see ForkJoinPool#enableMetrics
+ */
+public final class ExecutorMetrics implements ExecutorMetricsMXBean {
+
+    /** The executor, a ThreadPoolExecutor or ForkJoinPool */
+    private final Object executor;
+
+    private final LongAdder rejected = new LongAdder();
+    private final Histogram execution = new Histogram();
+    private final Histogram queueWait = new Histogram();
+
+    ExecutorMetrics(ThreadPoolExecutor executor) {
+        this.executor = executor;
+    }
+
+    ExecutorMetrics(ForkJoinPool pool) {
+        this.executor = pool;
+    }
+
+    // Recording, called by the executors
+
+    void recordRejection() {
+        rejected.increment();
+    }
+
+    void recordExecution(long nanos) {
+        execution.record(nanos);
+    }
+
+    void recordQueueWait(long nanos) {
+        queueWait.record(nanos);
+    }
+
+    // Totals, read by AdaptivePoolSizer to compute windowed means
+
+    long totalExecutionNanos() {
+        return execution.sum.sum();
+    }
+
+    long totalQueueWaitNanos() {
+        return queueWait.sum.sum();
+    }
+
+    // ExecutorMetricsMXBean
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getExecutionCount() {
+        return execution.count.sum();
+    }
+
+    public double getMeanExecutionNanos() {
+        return execution.mean();
+    }
+
+    public long getMaxExecutionNanos() {
+        return execution.max.get();
+    }
+
+    public long getExecutionNanosAtPercentile(double percentile) {
+        return execution.valueAtPercentile(percentile);
+    }
+
+    public long getQueueWaitCount() {
+        return queueWait.count.sum();
+    }
+
+    public double getMeanQueueWaitNanos() {
+        return queueWait.mean();
+    }
+
+    public long getMaxQueueWaitNanos() {
+        return queueWait.max.get();
+    }
+
+    public long getQueueWaitNanosAtPercentile(double percentile) {
+        return queueWait.valueAtPercentile(percentile);
+    }
+
+    public long[] getWorkerStealCounts() {
+        Object e = executor;
+        return (e instanceof ForkJoinPool) ?
+            ((ForkJoinPool) e).workerStealCounts() :
+            new long[0];
+    }
+
+    public long[] getWorkerParkCounts() {
+        Object e = executor;
+        return (e instanceof ForkJoinPool) ?
+            ((ForkJoinPool) e).workerParkCounts() :
+            ((ThreadPoolExecutor) e).workerParkCounts();
+    }
+
+    public void reset() {
+        rejected.reset();
+        execution.reset();
+        queueWait.reset();
+    }
+
+    /**
+     * Registers these metrics with the platform {@code MBeanServer},
+     * under the name {@code util.concurrent:type=Executor,name=}
+     * followed by the given name, quoted.
+     *
+     * @param name the name of the executor
+     * @return the name under which the metrics were registered
+     * @throws JMException if the metrics cannot be registered, for
+     *         example because the name is already in use
+     * @throws NullPointerException if {@code name} is null
+     */
+    public ObjectName registerMXBean(String name) throws JMException {
+        ObjectName on = new ObjectName("util.concurrent:type=Executor,name=" +
+                                       ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+        return on;
+    }
+
+    public String toString() {
+        return super.toString() +
+            "[executions = " + getExecutionCount() +
+            ", mean execution = " + (long) getMeanExecutionNanos() + "ns" +
+            ", queue waits = " + getQueueWaitCount() +
+            ", mean queue wait = " + (long) getMeanQueueWaitNanos() + "ns" +
+            ", rejected = " + getRejectedCount() + "]";
+    }
+
+    /**
+     * A concurrent log-linear histogram of non-negative longs, in the
+     * style of HdrHistogram.  Values below 2^SUB_BITS have a bucket
+     * each; above that, each power of two is split into
+     * 2^(SUB_BITS-1) buckets of equal width, so a bucket's width is at
+     * most 1/32 of the values in it.  Counts are kept in one stripe of
+     * buckets per group of threads, chosen by thread id, and summed
+     * when read.
+     */
+    static final class Histogram {
+        static final int SUB_BITS = 6;
+        static final int HALF = 1 << (SUB_BITS - 1);
+        static final int BUCKETS = (64 - SUB_BITS) * HALF + 2 * HALF;
+
+        /** The number of stripes, a power of two */
+        static final int STRIPES;
+        static {
+            int ncpu = Runtime.getRuntime().availableProcessors();
+            int n = 1;
+            while (n < ncpu && n < 4)
+                n <<= 1;
+            STRIPES = n;
+        }
+
+        final AtomicLongArray counts =
+            new AtomicLongArray(STRIPES * BUCKETS);
+        final LongAdder count = new LongAdder();
+        final LongAdder sum = new LongAdder();
+        final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+        static int bucketFor(long v) {
+            int shift = (64 - SUB_BITS) - Long.numberOfLeadingZeros(v);
+            if (shift <= 0)
+                return (int) v;
+            return (shift << (SUB_BITS - 1)) + (int) (v >>> shift);
+        }
+
+        /** Returns the largest value in bucket i. */
+        static long highestValueIn(int i) {
+            if (i < 2 * HALF)
+                return i;
+            int shift = (i >>> (SUB_BITS - 1)) - 1;
+            long mantissa = (i & (HALF - 1)) | HALF;
+            return ((mantissa + 1) << shift) - 1;
+        }
+
+        void record(long v) {
+            if (v < 0L)
+                v = 0L;
+            int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+            counts.getAndIncrement(stripe * BUCKETS + bucketFor(v));
+            count.increment();
+            sum.add(v);
+            max.accumulate(v);
+        }
+
+        double mean() {
+            long n = count.sum();
+            return (n == 0L) ? 0.0 : (double) sum.sum() / n;
+        }
+
+        long valueAtPercentile(double percentile) {
+            if (!(percentile >= 0.0 && percentile <= 100.0))
+                throw new IllegalArgumentException();
+            long[] totals = new long[BUCKETS];
+            long total = 0L;
+            for (int s = 0; s < STRIPES; ++s) {
+                for (int i = 0, j = s * BUCKETS; i < BUCKETS; ++i, ++j) {
+                    long c = counts.get(j);
+                    totals[i] += c;
+                    total += c;
+                }
+            }
+            if (total == 0L)
+                return 0L;
+            long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * total));
+            long seen = 0L;
+            for (int i = 0; i < BUCKETS; ++i) {
+                if ((seen += totals[i]) >= rank)
+                    return Math.min(highestValueIn(i), max.get());
+            }
+            return max.get();
+        }
+
+        void reset() {
+            for (int i = 0, n = counts.length(); i < n; ++i)
+                counts.set(i, 0L);
+            count.reset();
+            sum.reset();
+            max.reset();
+        }
+    }
+}
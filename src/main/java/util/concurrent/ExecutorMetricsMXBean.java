@@ -0,0 +1,115 @@
+package util.concurrent;
+
+/**
+ * The management interface of the {@link ExecutorMetrics} of a
+ * {@link ThreadPoolExecutor} or {@link ForkJoinPool}, registered with
+ * the platform {@code MBeanServer} as an MXBean (see {@link
+ * java.lang.management.ManagementFactory}) by
+ * {@link ExecutorMetrics#registerMXBean}.
+ *
+ * <p>Times are in nanoseconds.  Percentiles are exact to within the
+ * resolution of the underlying histograms, about three percent of the
+ * value.
+ *
+ * @see ExecutorMetrics
+ */
+public interface ExecutorMetricsMXBean {
+
+    /**
+     * Returns the number of tasks rejected by the executor.
+     *
+     * @return the number of rejected tasks
+     */
+    long getRejectedCount();
+
+    /**
+     * Returns the number of task executions recorded.
+     *
+     * @return the number of task executions recorded
+     */
+    long getExecutionCount();
+
+    /**
+     * Returns the mean execution time of the tasks recorded.
+     *
+     * @return the mean execution time, or zero if none were recorded
+     */
+    double getMeanExecutionNanos();
+
+    /**
+     * Returns the longest execution time recorded.
+     *
+     * @return the longest execution time, or zero if none were recorded
+     */
+    long getMaxExecutionNanos();
+
+    /**
+     * Returns the execution time at or below which the given
+     * percentage of the recorded executions fall.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the execution time at the percentile, or zero if none
+     *         were recorded
+     * @throws IllegalArgumentException if {@code percentile} is not
+     *         between 0 and 100
+     */
+    long getExecutionNanosAtPercentile(double percentile);
+
+    /**
+     * Returns the number of queue waits recorded.
+     *
+     * @return the number of queue waits recorded
+     */
+    long getQueueWaitCount();
+
+    /**
+     * Returns the mean time recorded tasks spent queued before
+     * starting execution.
+     *
+     * @return the mean queue wait, or zero if none were recorded
+     */
+    double getMeanQueueWaitNanos();
+
+    /**
+     * Returns the longest queue wait recorded.
+     *
+     * @return the longest queue wait, or zero if none were recorded
+     */
+    long getMaxQueueWaitNanos();
+
+    /**
+     * Returns the queue wait at or below which the given percentage
+     * of the recorded waits fall.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the queue wait at the percentile, or zero if none were
+     *         recorded
+     * @throws IllegalArgumentException if {@code percentile} is not
+     *         between 0 and 100
+     */
+    long getQueueWaitNanosAtPercentile(double percentile);
+
+    /**
+     * Returns, for each current worker thread, the number of tasks it
+     * has stolen from other workers' queues.  Executors whose workers
+     * do not steal, such as a {@link ThreadPoolExecutor}, return an
+     * empty array.
+     *
+     * @return the steal count of each worker
+     */
+    long[] getWorkerStealCounts();
+
+    /**
+     * Returns, for each current worker thread, the number of times it
+     * has blocked waiting for a task.
+     *
+     * @return the park count of each worker
+     */
+    long[] getWorkerParkCounts();
+
+    /**
+     * Discards all recorded times and counts, other than the
+     * per-worker counts, which are kept by the workers themselves.
+     */
+    void reset();
+}
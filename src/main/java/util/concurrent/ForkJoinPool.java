@@ -46,6 +46,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.security.AccessControlContext;
 import java.security.ProtectionDomain;
 import java.security.Permissions;
@@ -641,6 +642,32 @@ public class ForkJoinPool extends AbstractExecutorService {
      * be JVM-dependent and must access particular Thread class fields
      * to achieve this effect.
      *
+     * Priority classes
+     * ================
+     *
+     * Tasks may be given a priority (ForkJoinTask.setPriority) or a
+     * deadline, which places them in the high class.  Submissions of
+     * high and low priority tasks do not go to the shared queues in
+     * workQueues but to separate queues (class PriorityQueues),
+     * created on the first such submission, so pools that never use
+     * priorities pay only for a null check in scan and runTask.
+     * Method scan first tries the high queues, taking the head with
+     * the earliest deadline, and then the queues of workers whose
+     * current top-level task is of high priority, so the subtasks of
+     * a latency-sensitive task are stolen ahead of bulk work.  (Tasks
+     * forked while running a top-level task inherit its priority.)
+     * Low queues are otherwise only polled when a worker finds
+     * nothing else, just before inactivating.  To bound starvation,
+     * every PRIORITY_AGING_MASK+1'th scan of each worker instead
+     * polls the low queues first and skips the high ones, so both
+     * normal and low tasks keep making progress under a steady load
+     * of high ones; the numbers of tasks run per class, of low tasks
+     * run on such aging turns, and of deadlines missed, are reported
+     * by getPriorityTaskCount etc.  The priority queues are not in
+     * workQueues, so methods traversing all queues (tryTerminate,
+     * findNonEmptyStealQueue, the monitoring methods) check them
+     * separately.
+     *
      * Style notes
      * ===========
      *
@@ -797,6 +824,8 @@ public class ForkJoinPool extends AbstractExecutorService {
         volatile int scanState;    // versioned, <0: inactive; odd:scanning
         int stackPred;             // pool stack (ctl) predecessor
         int nsteals;               // number of steals
+        int nparks;                // number of parks, for metrics
+        int nscans;                // top-level scans, for priority aging
         int hint;                  // randomization and stealer index hint
         int config;                // pool index and mode
         volatile int qlock;        // 1: locked, < 0: terminate; else 0
@@ -876,8 +905,12 @@ public class ForkJoinPool extends AbstractExecutorService {
         final ForkJoinTask<?>[] growArray() {
             ForkJoinTask<?>[] oldA = array;
             int size = oldA != null ? oldA.length << 1 : INITIAL_QUEUE_CAPACITY;
-            if (size > MAXIMUM_QUEUE_CAPACITY)
+            if (size > MAXIMUM_QUEUE_CAPACITY) {
+                ExecutorMetrics m;
+                if (pool != null && (m = pool.metrics) != null)
+                    m.recordRejection();
                 throw new RejectedExecutionException("Queue capacity exceeded");
+            }
             int oldMask, t, b;
             ForkJoinTask<?>[] a = array = new ForkJoinTask<?>[size];
             if (oldA != null && (oldMask = oldA.length - 1) >= 0 &&
@@ -1049,7 +1082,17 @@ public class ForkJoinPool extends AbstractExecutorService {
         final void runTask(ForkJoinTask<?> task) {
             if (task != null) {
                 scanState &= ~SCANNING; // mark as busy
-                (currentSteal = task).doExec();
+                PriorityQueues pq = (pool == null) ? null : pool.priorityQueues;
+                if (pq != null)
+                    pq.recordRun(task);
+                ExecutorMetrics m = (pool == null) ? null : pool.metrics;
+                if (m == null)
+                    (currentSteal = task).doExec();
+                else {
+                    long start = System.nanoTime();
+                    (currentSteal = task).doExec();
+                    m.recordExecution(System.nanoTime() - start);
+                }
                 U.putOrderedObject(this, QCURRENTSTEAL, null); // release for GC
                 execLocalTasks();
                 ForkJoinWorkerThread thread = owner;
@@ -1241,6 +1284,151 @@ public class ForkJoinPool extends AbstractExecutorService {
         }
     }
 
+    /**
+     * Submission queues for high and low priority tasks, with the
+     * counts reported by getPriorityTaskCount etc.  Each queue is a
+     * shared WorkQueue pushed under its qlock as in externalSubmit,
+     * and polled in FIFO order.
+     */
+    static final class PriorityQueues {
+        final WorkQueue[] high;          // length a power of two
+        final WorkQueue[] low;           // same length as high
+        final LongAdder highRun = new LongAdder();
+        final LongAdder normalRun = new LongAdder();
+        final LongAdder lowRun = new LongAdder();
+        final LongAdder promoted = new LongAdder();       // on aging turns
+        final LongAdder deadlinesMissed = new LongAdder();
+
+        PriorityQueues(ForkJoinPool pool, int n) {
+            high = new WorkQueue[n];
+            low = new WorkQueue[n];
+            for (int i = 0; i < n; ++i) {
+                (high[i] = new WorkQueue(pool, null)).config = SHARED_QUEUE;
+                (low[i] = new WorkQueue(pool, null)).config = SHARED_QUEUE;
+                high[i].scanState = low[i].scanState = INACTIVE;
+            }
+        }
+
+        /**
+         * Polls the high queues, taking the head with the earliest
+         * deadline, or if none have deadlines, the first found
+         * starting at r.
+         */
+        final ForkJoinTask<?> pollHigh(int r) {
+            WorkQueue[] qs = high; int m = qs.length - 1;
+            WorkQueue best = null; long bd = 0L;
+            for (int i = 0; i <= m; ++i) {
+                WorkQueue q = qs[(r + i) & m]; ForkJoinTask<?>[] a;
+                ForkJoinTask<?> t; int b;
+                if ((b = q.base) - q.top < 0 && (a = q.array) != null &&
+                    (t = (ForkJoinTask<?>)U.getObjectVolatile
+                     (a, (((a.length - 1) & b) << ASHIFT) + ABASE)) != null) {
+                    long d = t.deadline;
+                    if (best == null ||
+                        (d != 0L && (bd == 0L || d - bd < 0L))) {
+                        best = q;
+                        bd = d;
+                    }
+                }
+            }
+            return (best == null) ? null : best.poll();
+        }
+
+        /**
+         * Polls the low queues, starting at r.
+         */
+        final ForkJoinTask<?> pollLow(int r) {
+            WorkQueue[] qs = low; int m = qs.length - 1;
+            ForkJoinTask<?> t;
+            for (int i = 0; i <= m; ++i) {
+                if ((t = qs[(r + i) & m].poll()) != null)
+                    return t;
+            }
+            return null;
+        }
+
+        /**
+         * Returns a (probably) non-empty queue, high ones first, or
+         * null if none.
+         */
+        final WorkQueue nonEmptyQueue() {
+            WorkQueue q;
+            for (int i = 0; i < high.length; ++i) {
+                if ((q = high[i]).base - q.top < 0)
+                    return q;
+            }
+            for (int i = 0; i < low.length; ++i) {
+                if ((q = low[i]).base - q.top < 0)
+                    return q;
+            }
+            return null;
+        }
+
+        final int queueSize() {
+            int n = 0;
+            for (int i = 0; i < high.length; ++i)
+                n += high[i].queueSize() + low[i].queueSize();
+            return n;
+        }
+
+        /**
+         * For tryTerminate: disables submissions to all queues,
+         * returning a checksum of their bases if all are empty, else
+         * -1.
+         */
+        final long quiesce() {
+            long sum = 0L;
+            for (int i = 0; i < high.length; ++i) {
+                WorkQueue h = high[i], l = low[i]; int hb, lb;
+                if ((hb = h.base) != h.top || (lb = l.base) != l.top)
+                    return -1L;
+                sum += (hb & 0x7fffffffL) + (lb & 0x7fffffffL);
+                h.qlock = l.qlock = -1;
+            }
+            return sum;
+        }
+
+        /**
+         * For tryTerminate: disables and cancels all queued tasks.
+         */
+        final void cancelAll() {
+            for (int i = 0; i < high.length; ++i) {
+                high[i].qlock = low[i].qlock = -1;
+                high[i].cancelAll();
+                low[i].cancelAll();
+            }
+        }
+
+        final int drainTo(Collection<? super ForkJoinTask<?>> c) {
+            int count = 0; ForkJoinTask<?> t;
+            for (int i = 0; i < high.length; ++i) {
+                while ((t = high[i].poll()) != null) {
+                    c.add(t);
+                    ++count;
+                }
+                while ((t = low[i].poll()) != null) {
+                    c.add(t);
+                    ++count;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Counts a top-level task about to be run.
+         */
+        final void recordRun(ForkJoinTask<?> t) {
+            long d;
+            switch (t.priority) {
+            case ForkJoinTask.HIGH_PRIORITY: highRun.increment(); break;
+            case ForkJoinTask.LOW_PRIORITY:  lowRun.increment();  break;
+            default:                         normalRun.increment();
+            }
+            if ((d = t.deadline) != 0L && System.nanoTime() - d > 0L)
+                deadlinesMissed.increment();
+        }
+    }
+
     // static fields (initialized in static initializer below)
 
     /**
@@ -1330,6 +1518,13 @@ public class ForkJoinPool extends AbstractExecutorService {
      */
     private static final int SPINS  = 0;
 
+    /**
+     * Mask for the number of scans by a worker between aging turns,
+     * on which low priority tasks are polled ahead of all others. Must
+     * be a power of two minus one.
+     */
+    private static final int PRIORITY_AGING_MASK = 0x1f;
+
     /**
      * Increment for seed generators. See class ThreadLocal for
      * explanation.
@@ -1392,6 +1587,8 @@ public class ForkJoinPool extends AbstractExecutorService {
     final UncaughtExceptionHandler ueh;  // per-worker UEH
     final String workerNamePrefix;       // to create worker name string
     volatile AtomicLong stealCounter;    // also used as sync monitor
+    volatile ExecutorMetrics metrics;    // null unless enabled
+    volatile PriorityQueues priorityQueues; // null until first used
 
     /**
      * Acquires the runState lock; returns current (locked) runState.
@@ -1709,7 +1906,10 @@ public class ForkJoinPool extends AbstractExecutorService {
      * @return a task, or null if none found
      */
     private ForkJoinTask<?> scan(WorkQueue w, int r) {
-        WorkQueue[] ws; int m;
+        WorkQueue[] ws; int m; PriorityQueues pq; ForkJoinTask<?> pt;
+        if ((pq = priorityQueues) != null && w != null && w.scanState >= 0 &&
+            (pt = scanPrioritized(w, pq, r)) != null)
+            return pt;
         if ((ws = workQueues) != null && (m = ws.length - 1) > 0 && w != null) {
             int ss = w.scanState;                     // initially non-negative
             for (int origin = r & m, k = origin, oldSum = 0, checkSum = 0;;) {
@@ -1746,17 +1946,29 @@ public class ForkJoinPool extends AbstractExecutorService {
                 if ((k = (k + 1) & m) == origin) {    // continue until stable
                     if ((ss >= 0 || (ss == (ss = w.scanState))) &&
                         oldSum == (oldSum = checkSum)) {
-                        if (ss < 0 || w.qlock < 0)    // already inactive
+                        if ((pq = priorityQueues) != null &&
+                            pq.nonEmptyQueue() != null) { // prioritized
+                            if (ss >= 0) {
+                                if ((t = pq.pollHigh(r)) != null ||
+                                    (t = pq.pollLow(r)) != null)
+                                    return t;
+                            }
+                            else if (w.scanState < 0)
+                                tryRelease(c = ctl, ws[m & (int)c], AC_UNIT);
+                        }
+                        else if (ss < 0 || w.qlock < 0) // already inactive
                             break;
-                        int ns = ss | INACTIVE;       // try to inactivate
-                        long nc = ((SP_MASK & ns) |
-                                   (UC_MASK & ((c = ctl) - AC_UNIT)));
-                        w.stackPred = (int)c;         // hold prev stack top
-                        U.putInt(w, QSCANSTATE, ns);
-                        if (U.compareAndSwapLong(this, CTL, c, nc))
-                            ss = ns;
-                        else
-                            w.scanState = ss;         // back out
+                        else {
+                            int ns = ss | INACTIVE;   // try to inactivate
+                            long nc = ((SP_MASK & ns) |
+                                       (UC_MASK & ((c = ctl) - AC_UNIT)));
+                            w.stackPred = (int)c;     // hold prev stack top
+                            U.putInt(w, QSCANSTATE, ns);
+                            if (U.compareAndSwapLong(this, CTL, c, nc))
+                                ss = ns;
+                            else
+                                w.scanState = ss;     // back out
+                        }
                     }
                     checkSum = 0;
                 }
@@ -1765,6 +1977,40 @@ public class ForkJoinPool extends AbstractExecutorService {
         return null;
     }
 
+    /**
+     * Tries to take a task ahead of the normal scan: from the high
+     * priority queues, then from workers running high priority
+     * top-level tasks, except on aging turns, when only the low
+     * priority queues are tried.
+     *
+     * @param w the worker (via its WorkQueue)
+     * @param pq the priority queues
+     * @param r a random seed
+     * @return a task, or null if the normal scan should proceed
+     */
+    private ForkJoinTask<?> scanPrioritized(WorkQueue w, PriorityQueues pq,
+                                            int r) {
+        ForkJoinTask<?> t; WorkQueue[] ws; int m;
+        if ((++w.nscans & PRIORITY_AGING_MASK) == 0) {   // aging turn
+            if ((t = pq.pollLow(r)) != null)
+                pq.promoted.increment();
+            return t;
+        }
+        if ((t = pq.pollHigh(r)) != null)
+            return t;
+        if ((ws = workQueues) != null && (m = ws.length - 1) > 0) {
+            for (int k = (r & m) | 1, j = 0; j <= m; j += 2, k = (k + 2) & m) {
+                WorkQueue q; ForkJoinTask<?> c;
+                if ((q = ws[k]) != null && q.base - q.top < 0 &&
+                    (c = q.currentSteal) != null &&
+                    c.priority == ForkJoinTask.HIGH_PRIORITY &&
+                    (t = q.poll()) != null)
+                    return t;
+            }
+        }
+        return null;
+    }
+
     /**
      * Possibly blocks worker w waiting for a task to steal, or
      * returns false if the worker should terminate.  If inactivating
@@ -1816,8 +2062,10 @@ public class ForkJoinPool extends AbstractExecutorService {
                 Thread wt = Thread.currentThread();
                 U.putObject(wt, PARKBLOCKER, this);   // emulate LockSupport
                 w.parker = wt;
-                if (w.scanState < 0 && ctl == c)      // recheck before park
+                if (w.scanState < 0 && ctl == c) {    // recheck before park
+                    ++w.nparks;
                     U.park(false, parkTime);
+                }
                 U.putOrderedObject(w, QPARKER, null);
                 U.putObject(wt, PARKBLOCKER, null);
                 if (w.scanState >= 0)
@@ -2085,7 +2333,8 @@ public class ForkJoinPool extends AbstractExecutorService {
                 }
             }
         }
-        return null;
+        PriorityQueues pq = priorityQueues;
+        return (pq == null) ? null : pq.nonEmptyQueue();
     }
 
     /**
@@ -2242,6 +2491,14 @@ public class ForkJoinPool extends AbstractExecutorService {
                                 w.qlock = -1;     // try to disable external
                         }
                     }
+                    PriorityQueues pq; long ps;
+                    if ((pq = priorityQueues) != null) {
+                        if ((ps = pq.quiesce()) < 0L) {
+                            tryRelease(c = ctl, ws[m & (int)c], AC_UNIT);
+                            return false;
+                        }
+                        checkSum += ps;
+                    }
                     if (oldSum == (oldSum = checkSum))
                         break;
                 }
@@ -2284,6 +2541,9 @@ public class ForkJoinPool extends AbstractExecutorService {
                     }
                 }
             }
+            PriorityQueues pq;
+            if ((pq = priorityQueues) != null && pass > 0)
+                pq.cancelAll();
             if (checkSum != oldSum) {             // unstable
                 oldSum = checkSum;
                 pass = 0;
@@ -2301,6 +2561,95 @@ public class ForkJoinPool extends AbstractExecutorService {
 
     // External operations
 
+    /**
+     * Performs secondary initialization upon the first submission.
+     */
+    private void initWorkQueues() {
+        int ns = 0;
+        int rs = lockRunState();
+        try {
+            if ((rs & STARTED) == 0) {
+                U.compareAndSwapObject(this, STEALCOUNTER, null,
+                                       new AtomicLong());
+                // create workQueues array with size a power of two
+                int p = config & SMASK; // ensure at least 2 slots
+                int n = (p > 1) ? p - 1 : 1;
+                n |= n >>> 1; n |= n >>> 2;  n |= n >>> 4;
+                n |= n >>> 8; n |= n >>> 16; n = (n + 1) << 1;
+                workQueues = new WorkQueue[n];
+                ns = STARTED;
+            }
+        } finally {
+            unlockRunState(rs, (rs & ~RSLOCK) | ns);
+        }
+    }
+
+    /**
+     * Version of externalSubmit for high and low priority tasks,
+     * pushing to the priority queues, created here on first use.
+     *
+     * @param task the task. Caller must ensure non-null.
+     * @param priority the task's priority, HIGH or LOW
+     */
+    private void externalSubmitPrioritized(ForkJoinTask<?> task,
+                                           int priority) {
+        int r;                                    // initialize caller's probe
+        if ((r = ThreadLocalRandom.getProbe()) == 0) {
+            ThreadLocalRandom.localInit();
+            r = ThreadLocalRandom.getProbe();
+        }
+        for (;;) {
+            PriorityQueues pq; WorkQueue q; int rs;
+            if ((rs = runState) < 0) {
+                tryTerminate(false, false);     // help terminate
+                ExecutorMetrics em = metrics;
+                if (em != null)
+                    em.recordRejection();
+                throw new RejectedExecutionException();
+            }
+            else if ((rs & STARTED) == 0 || workQueues == null)
+                initWorkQueues();
+            else if ((pq = priorityQueues) == null) {
+                int p = config & SMASK, n = 1; // one per 4 workers, max 16
+                while ((n << 2) < p && n < 16)
+                    n <<= 1;
+                rs = lockRunState();
+                try {
+                    if (rs > 0 && priorityQueues == null)
+                        priorityQueues = new PriorityQueues(this, n);
+                } finally {
+                    unlockRunState(rs, rs & ~RSLOCK);
+                }
+            }
+            else {
+                WorkQueue[] qs = (priority == ForkJoinTask.HIGH_PRIORITY) ?
+                    pq.high : pq.low;
+                if ((q = qs[r & (qs.length - 1)]).qlock == 0 &&
+                    U.compareAndSwapInt(q, QLOCK, 0, 1)) {
+                    ForkJoinTask<?>[] a = q.array;
+                    int s = q.top;
+                    boolean submitted = false;
+                    try {                      // locked version of push
+                        if ((a != null && a.length > s + 1 - q.base) ||
+                            (a = q.growArray()) != null) {
+                            int j = (((a.length - 1) & s) << ASHIFT) + ABASE;
+                            U.putOrderedObject(a, j, task);
+                            U.putOrderedInt(q, QTOP, s + 1);
+                            submitted = true;
+                        }
+                    } finally {
+                        U.compareAndSwapInt(q, QLOCK, 1, 0);
+                    }
+                    if (submitted) {
+                        signalWork(workQueues, null);
+                        return;
+                    }
+                }
+                r = ThreadLocalRandom.advanceProbe(r);
+            }
+        }
+    }
+
     /**
      * Full version of externalPush, handling uncommon cases, as well
      * as performing secondary initialization upon the first
@@ -2321,28 +2670,14 @@ public class ForkJoinPool extends AbstractExecutorService {
             boolean move = false;
             if ((rs = runState) < 0) {
                 tryTerminate(false, false);     // help terminate
+                ExecutorMetrics em = metrics;
+                if (em != null)
+                    em.recordRejection();
                 throw new RejectedExecutionException();
             }
             else if ((rs & STARTED) == 0 ||     // initialize
-                     ((ws = workQueues) == null || (m = ws.length - 1) < 0)) {
-                int ns = 0;
-                rs = lockRunState();
-                try {
-                    if ((rs & STARTED) == 0) {
-                        U.compareAndSwapObject(this, STEALCOUNTER, null,
-                                               new AtomicLong());
-                        // create workQueues array with size a power of two
-                        int p = config & SMASK; // ensure at least 2 slots
-                        int n = (p > 1) ? p - 1 : 1;
-                        n |= n >>> 1; n |= n >>> 2;  n |= n >>> 4;
-                        n |= n >>> 8; n |= n >>> 16; n = (n + 1) << 1;
-                        workQueues = new WorkQueue[n];
-                        ns = STARTED;
-                    }
-                } finally {
-                    unlockRunState(rs, (rs & ~RSLOCK) | ns);
-                }
-            }
+                     ((ws = workQueues) == null || (m = ws.length - 1) < 0))
+                initWorkQueues();
             else if ((q = ws[k = r & m & SQMASK]) != null) {
                 if (q.qlock == 0 && U.compareAndSwapInt(q, QLOCK, 0, 1)) {
                     ForkJoinTask<?>[] a = q.array;
@@ -2393,7 +2728,11 @@ public class ForkJoinPool extends AbstractExecutorService {
      * @param task the task. Caller must ensure non-null.
      */
     final void externalPush(ForkJoinTask<?> task) {
-        WorkQueue[] ws; WorkQueue q; int m;
+        WorkQueue[] ws; WorkQueue q; int m, p;
+        if ((p = task.priority) != 0 && p != ForkJoinTask.NORMAL_PRIORITY) {
+            externalSubmitPrioritized(task, p);
+            return;
+        }
         int r = ThreadLocalRandom.getProbe();
         int rs = runState;
         if ((ws = workQueues) != null && (m = (ws.length - 1)) >= 0 &&
@@ -2860,6 +3199,130 @@ public class ForkJoinPool extends AbstractExecutorService {
         return count;
     }
 
+    /**
+     * Starts recording {@linkplain ExecutorMetrics metrics} for this
+     * pool, if not already doing so, and returns them.  Pools record
+     * the execution times of the tasks workers take from queues, and
+     * rejections; see {@link ExecutorMetrics}.
+     *
+     * @return the metrics being recorded
+     * @see #disableMetrics
+     */
+    public ExecutorMetrics enableMetrics() {
+        ExecutorMetrics m;
+        if ((m = metrics) == null) {
+            synchronized (this) {
+                if ((m = metrics) == null)
+                    metrics = m = new ExecutorMetrics(this);
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Stops recording metrics for this pool.  The metrics recorded so
+     * far remain available from the object returned by {@link
+     * #enableMetrics}; enabling metrics again starts a new one.
+     */
+    public void disableMetrics() {
+        metrics = null;
+    }
+
+    /**
+     * Returns the metrics being recorded for this pool.
+     *
+     * @return the metrics being recorded, or {@code null} if not enabled
+     * @see #enableMetrics
+     */
+    public ExecutorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns an estimate of the number of top-level tasks of the
+     * given {@linkplain ForkJoinTask#setPriority priority} run by
+     * this pool since a task of high or low priority was first
+     * submitted to it.  Tasks run before then are not counted.
+     *
+     * @param priority one of {@link ForkJoinTask#HIGH_PRIORITY},
+     *        {@link ForkJoinTask#NORMAL_PRIORITY} or {@link
+     *        ForkJoinTask#LOW_PRIORITY}
+     * @return the number of tasks run
+     * @throws IllegalArgumentException if priority is not one of the above
+     */
+    public long getPriorityTaskCount(int priority) {
+        PriorityQueues pq = priorityQueues;
+        switch (priority) {
+        case ForkJoinTask.HIGH_PRIORITY:
+            return (pq == null) ? 0L : pq.highRun.sum();
+        case ForkJoinTask.NORMAL_PRIORITY:
+            return (pq == null) ? 0L : pq.normalRun.sum();
+        case ForkJoinTask.LOW_PRIORITY:
+            return (pq == null) ? 0L : pq.lowRun.sum();
+        default:
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Returns an estimate of the number of low priority tasks run
+     * ahead of tasks of higher priority to keep them from starving.
+     * Each worker periodically polls low priority submissions first,
+     * and high priority ones last; this is the number of tasks found
+     * on those turns.  A count that stays well below {@code
+     * getPriorityTaskCount(LOW_PRIORITY)} indicates that low
+     * priority tasks mostly run when workers would otherwise be idle.
+     *
+     * @return the number of promoted tasks
+     */
+    public long getPromotedTaskCount() {
+        PriorityQueues pq = priorityQueues;
+        return (pq == null) ? 0L : pq.promoted.sum();
+    }
+
+    /**
+     * Returns an estimate of the number of top-level tasks with a
+     * {@linkplain ForkJoinTask#setDeadline deadline} that began
+     * executing after it passed.
+     *
+     * @return the number of missed deadlines
+     */
+    public long getMissedDeadlineCount() {
+        PriorityQueues pq = priorityQueues;
+        return (pq == null) ? 0L : pq.deadlinesMissed.sum();
+    }
+
+    /**
+     * Returns the steal count of each current worker, for
+     * ExecutorMetrics.  Counts transferred to the pool total on worker
+     * exit or overflow are not included.
+     */
+    final long[] workerStealCounts() {
+        return workerCounts(true);
+    }
+
+    /**
+     * Returns the park count of each current worker, for
+     * ExecutorMetrics.
+     */
+    final long[] workerParkCounts() {
+        return workerCounts(false);
+    }
+
+    private long[] workerCounts(boolean steals) {
+        WorkQueue[] ws; WorkQueue w;
+        long[] counts = new long[0];
+        int n = 0;
+        if ((ws = workQueues) != null) {
+            counts = new long[ws.length >>> 1];
+            for (int i = 1; i < ws.length; i += 2) {
+                if ((w = ws[i]) != null)
+                    counts[n++] = steals ? w.nsteals : w.nparks;
+            }
+        }
+        return Arrays.copyOf(counts, n);
+    }
+
     /**
      * Returns an estimate of the total number of tasks currently held
      * in queues by worker threads (but not including tasks submitted
@@ -2898,6 +3361,9 @@ public class ForkJoinPool extends AbstractExecutorService {
                     count += w.queueSize();
             }
         }
+        PriorityQueues pq;
+        if ((pq = priorityQueues) != null)
+            count += pq.queueSize();
         return count;
     }
 
@@ -2915,7 +3381,8 @@ public class ForkJoinPool extends AbstractExecutorService {
                     return true;
             }
         }
-        return false;
+        PriorityQueues pq;
+        return (pq = priorityQueues) != null && pq.nonEmptyQueue() != null;
     }
 
     /**
@@ -2927,13 +3394,16 @@ public class ForkJoinPool extends AbstractExecutorService {
      */
     protected ForkJoinTask<?> pollSubmission() {
         WorkQueue[] ws; WorkQueue w; ForkJoinTask<?> t;
+        PriorityQueues pq = priorityQueues;
+        if (pq != null && (t = pq.pollHigh(0)) != null)
+            return t;
         if ((ws = workQueues) != null) {
             for (int i = 0; i < ws.length; i += 2) {
                 if ((w = ws[i]) != null && (t = w.poll()) != null)
                     return t;
             }
         }
-        return null;
+        return (pq == null) ? null : pq.pollLow(0);
     }
 
     /**
@@ -2966,6 +3436,9 @@ public class ForkJoinPool extends AbstractExecutorService {
                 }
             }
         }
+        PriorityQueues pq;
+        if ((pq = priorityQueues) != null)
+            count += pq.drainTo(c);
         return count;
     }
 
@@ -2998,6 +3471,9 @@ public class ForkJoinPool extends AbstractExecutorService {
                 }
             }
         }
+        PriorityQueues pq;
+        if ((pq = priorityQueues) != null)
+            qs += pq.queueSize();
         int pc = (config & SMASK);
         int tc = pc + (short)(c >>> TC_SHIFT);
         int ac = pc + (int)(c >> AC_SHIFT);
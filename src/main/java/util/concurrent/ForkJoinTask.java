@@ -254,6 +254,28 @@ public abstract class ForkJoinTask<V> implements Future<V>, Serializable {
     static final int SIGNAL      = 0x00010000;  // must be >= 1 << 16
     static final int SMASK       = 0x0000ffff;  // short bits for tags
 
+    /** The scheduling priority, or zero if not set */
+    byte priority; // read by pool and workers
+    /** The deadline, in System.nanoTime units, or zero if none */
+    long deadline;
+
+    /**
+     * The priority of tasks that are run ahead of tasks of normal
+     * priority.
+     */
+    public static final int HIGH_PRIORITY   = 3;
+
+    /**
+     * The priority of tasks that have not been given another one.
+     */
+    public static final int NORMAL_PRIORITY = 2;
+
+    /**
+     * The priority of tasks that are run when workers have no other
+     * tasks, or periodically, so that they do not starve.
+     */
+    public static final int LOW_PRIORITY    = 1;
+
     /**
      * Marks completion and wakes up threads waiting to join this
      * task.
@@ -694,8 +716,13 @@ public abstract class ForkJoinTask<V> implements Future<V>, Serializable {
      */
     public final ForkJoinTask<V> fork() {
         Thread t;
-        if ((t = Thread.currentThread()) instanceof ForkJoinWorkerThread)
-            ((ForkJoinWorkerThread)t).workQueue.push(this);
+        if ((t = Thread.currentThread()) instanceof ForkJoinWorkerThread) {
+            ForkJoinWorkerThread wt = (ForkJoinWorkerThread)t;
+            ForkJoinTask<?> s;
+            if (priority == 0 && (s = wt.workQueue.currentSteal) != null)
+                priority = s.priority;   // inherit from top-level task
+            wt.workQueue.push(this);
+        }
         else
             java.util.concurrent.ForkJoinPool.common.externalPush(this);
         return this;
@@ -1202,6 +1229,78 @@ public abstract class ForkJoinTask<V> implements Future<V>, Serializable {
         return java.util.concurrent.ForkJoinPool.getSurplusQueuedTaskCount();
     }
 
+    /**
+     * Sets the scheduling priority of this task.  When submitted to a
+     * {@link ForkJoinPool}, tasks of {@link #HIGH_PRIORITY} are taken
+     * by workers ahead of those of normal priority, and tasks of
+     * {@link #LOW_PRIORITY} only when no others are available, except
+     * that each worker periodically takes a low priority task first,
+     * so that none starves.  Tasks forked by a worker while it runs a
+     * task inherit its priority unless set, so workers also prefer to
+     * steal the subtasks of high priority tasks.  Priorities only
+     * order the taking of queued tasks; they do not preempt running
+     * ones, or affect the order in which a worker runs its own
+     * subtasks.  This method has no effect on a task already queued.
+     *
+     * @param priority one of {@link #HIGH_PRIORITY}, {@link
+     *        #NORMAL_PRIORITY} or {@link #LOW_PRIORITY}
+     * @return {@code this}, to simplify usage
+     * @throws IllegalArgumentException if priority is not one of the above
+     */
+    public final ForkJoinTask<V> setPriority(int priority) {
+        if (priority < LOW_PRIORITY || priority > HIGH_PRIORITY)
+            throw new IllegalArgumentException();
+        this.priority = (byte)priority;
+        return this;
+    }
+
+    /**
+     * Returns the scheduling priority of this task.
+     *
+     * @return the priority, {@link #NORMAL_PRIORITY} if not set
+     */
+    public final int getPriority() {
+        int p = priority;
+        return (p == 0) ? NORMAL_PRIORITY : p;
+    }
+
+    /**
+     * Sets a deadline for this task to begin executing, the given
+     * time from now.  A task with a deadline whose priority has not
+     * been set is run at {@link #HIGH_PRIORITY}, and among queued
+     * high priority submissions, those with the earliest deadlines
+     * are taken first.  Tasks starting after their deadline still
+     * run, but are counted by {@link ForkJoinPool#getMissedDeadlineCount}.
+     * This method has no effect on a task already queued.
+     *
+     * @param timeout the time from now to the deadline
+     * @param unit the time unit of the timeout argument
+     * @return {@code this}, to simplify usage
+     * @throws NullPointerException if unit is null
+     */
+    public final ForkJoinTask<V> setDeadline(long timeout, TimeUnit unit) {
+        long d = System.nanoTime() + unit.toNanos(timeout);
+        deadline = (d == 0L) ? 1L : d;  // zero means none
+        if (priority == 0)
+            priority = (byte)HIGH_PRIORITY;
+        return this;
+    }
+
+    /**
+     * Returns the remaining time before this task's deadline, which
+     * is negative if it has passed.
+     *
+     * @param unit the time unit of the result
+     * @return the remaining time, or {@code Long.MAX_VALUE} if this
+     *         task has no deadline
+     * @throws NullPointerException if unit is null
+     */
+    public final long getDeadline(TimeUnit unit) {
+        long d = deadline;
+        return (d == 0L) ? Long.MAX_VALUE :
+            unit.convert(d - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
     // Extension methods
 
     /**
@@ -0,0 +1,1053 @@
+package util.concurrent;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A concurrent hash map whose keys and values live outside the Java heap.
+ * Every mapping is serialized by a caller-supplied {@link Codec} into a
+ * record inside a direct {@link ByteBuffer} "slab", so the garbage
+ * collector sees only a few slab objects and one {@code long[]} bin table
+ * per segment, no matter how many mappings the map holds.  Slabs are
+ * obtained from {@link ByteBuffer#allocateDirect}, and are therefore
+ * accounted against {@code -XX:MaxDirectMemorySize} by
+ * {@code java.nio.Bits.reserveMemory} exactly like any other direct buffer.
+ *
+ * <p>The map is split into independently locked segments, in the manner
+ * of the segmented {@code ConcurrentHashMap} that preceded the current
+ * bin-locking design.  An update locks only the segment holding its key,
+ * and a segment's table is resized by re-threading its bins into lo and hi
+ * halves as {@code ConcurrentHashMap.transfer} does, while other segments
+ * stay fully available.  Locking whole segments rather than single bins is
+ * deliberate: each segment owns a slab allocator, and compaction moves
+ * every record of its segment, so writers to one segment would serialize
+ * on that state even with finer locks.
+ *
+ * <p>Retrievals ({@code get} and {@code containsKey}) do not lock.  They
+ * read under a {@link StampedLock} optimistic stamp of the segment, and
+ * copy the value bytes to the heap before validating the stamp; only when
+ * a writer intervened do they retry under the segment's read lock.  A
+ * racing reader may see bytes of records being rewritten, but never
+ * released memory, since a slab's direct memory is freed by the collector
+ * only once no reader can reach it.  Bulk operations such as iteration
+ * and {@code containsValue} take the read lock of one segment at a time.
+ *
+ * <p>Keys are compared by their encoded form, so a codec must encode equal
+ * keys to equal bytes, and {@code hashCode} must be consistent with that
+ * encoding.  Values returned by retrieval operations are freshly decoded
+ * copies; modifying them has no effect on the map.  Like
+ * {@code ConcurrentHashMap}, this class does <em>not</em> allow {@code null}
+ * to be used as a key or value.
+ *
+ * <p>Storage freed by removals and replacements is reclaimed by compacting
+ * a part's live records into fresh slabs once more than half of its slab
+ * space is dead.  Iterators are <i>weakly consistent</i>: each reflects the
+ * state of one part at a time, and never throws
+ * {@link java.util.ConcurrentModificationException}.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @see ConcurrentHashMap
+ */
+public class OffHeapConcurrentHashMap<K,V> extends AbstractMap<K,V>
+    implements ConcurrentMap<K,V> {
+
+    /**
+     * Converts keys or values to and from their off-heap representation.
+     *
+     * @param <T> the type of the encoded objects
+     */
+    public interface Codec<T> {
+        /**
+         * Returns the number of bytes {@link #encode} will write for the
+         * given object.
+         *
+         * @param t the object to be encoded
+         * @return its encoded size in bytes
+         */
+        int encodedSize(T t);
+
+        /**
+         * Writes exactly {@code encodedSize(t)} bytes, starting at the
+         * position of the given buffer.
+         *
+         * @param t the object to be encoded
+         * @param dst the buffer to write to
+         */
+        void encode(T t, ByteBuffer dst);
+
+        /**
+         * Reconstructs an object from the remaining bytes of the given
+         * buffer, which is positioned at the start of an encoding produced
+         * by {@link #encode} and limited to its end.
+         *
+         * @param src the buffer to read from
+         * @return the decoded object
+         */
+        T decode(ByteBuffer src);
+    }
+
+    /** Codec for strings, stored as UTF-8. */
+    public static final Codec<String> STRING_CODEC = new Codec<String>() {
+        public int encodedSize(String s) {
+            return s.getBytes(StandardCharsets.UTF_8).length;
+        }
+        public void encode(String s, ByteBuffer dst) {
+            dst.put(s.getBytes(StandardCharsets.UTF_8));
+        }
+        public String decode(ByteBuffer src) {
+            byte[] b = new byte[src.remaining()];
+            src.get(b);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+    };
+
+    /** Codec for longs, stored as eight big-endian bytes. */
+    public static final Codec<Long> LONG_CODEC = new Codec<Long>() {
+        public int encodedSize(Long v) { return 8; }
+        public void encode(Long v, ByteBuffer dst) { dst.putLong(v); }
+        public Long decode(ByteBuffer src) { return src.getLong(); }
+    };
+
+    /** Codec for byte arrays, stored verbatim. */
+    public static final Codec<byte[]> BYTES_CODEC = new Codec<byte[]>() {
+        public int encodedSize(byte[] b) { return b.length; }
+        public void encode(byte[] b, ByteBuffer dst) { dst.put(b); }
+        public byte[] decode(ByteBuffer src) {
+            byte[] b = new byte[src.remaining()];
+            src.get(b);
+            return b;
+        }
+    };
+
+    /* ---------------- Constants -------------- */
+
+    /**
+     * The default slab size.  Records larger than a slab get a direct
+     * buffer of their own.
+     */
+    static final int DEFAULT_SLAB_SIZE = 1 << 20;
+
+    /**
+     * The default number of independently locked parts.
+     */
+    static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /**
+     * The maximum number of parts; used to bound constructor arguments.
+     */
+    static final int MAX_SEGMENTS = 1 << 16;
+
+    /**
+     * The initial bin count of each part's table.
+     */
+    static final int MIN_SEGMENT_TABLE_CAPACITY = 16;
+
+    /**
+     * The largest possible per-part table capacity.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    static final int HASH_BITS = 0x7fffffff; // usable bits of normal hash
+
+    /*
+     * Record layout, in native byte order, starting 8-byte aligned:
+     *
+     *   [0, 8)   address of the next record in the bin, 0 if none
+     *   [8, 12)  spread hash of the key
+     *   [12, 16) key length in bytes
+     *   [16, 20) value length in bytes
+     *   [20, ..) key bytes, then value bytes
+     *
+     * An address is ((slab index + 1) << 32) | offset, so 0 never denotes
+     * a record.
+     */
+    static final int NEXT = 0, HASH = 8, KLEN = 12, VLEN = 16, HEADER = 20;
+
+    /**
+     * Returned by optimistic lookups that must be retried under the read
+     * lock.  Addresses are never negative, so this is no record.
+     */
+    static final long RETRY = -1L;
+
+    /* ---------------- Fields -------------- */
+
+    final Segment[] segments;
+    final int segmentShift;
+    final int segmentMask;
+    final Codec<K> keyCodec;
+    final Codec<V> valueCodec;
+
+    transient Set<Map.Entry<K,V>> entrySet;
+
+    /**
+     * Creates a new, empty map with the given codecs, default slab size
+     * (1 MiB) and concurrency level (16).
+     *
+     * @param keyCodec the codec for keys
+     * @param valueCodec the codec for values
+     * @throws NullPointerException if either codec is null
+     */
+    public OffHeapConcurrentHashMap(Codec<K> keyCodec, Codec<V> valueCodec) {
+        this(keyCodec, valueCodec, DEFAULT_SLAB_SIZE, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Creates a new, empty map with the given codecs, slab size and
+     * estimated number of concurrently updating threads.
+     *
+     * @param keyCodec the codec for keys
+     * @param valueCodec the codec for values
+     * @param slabSize the size in bytes of each direct buffer slab
+     * @param concurrencyLevel the estimated number of concurrently
+     * updating threads
+     * @throws IllegalArgumentException if the slab size is smaller than
+     * 64 bytes or the concurrency level is not positive
+     * @throws NullPointerException if either codec is null
+     */
+    public OffHeapConcurrentHashMap(Codec<K> keyCodec, Codec<V> valueCodec,
+                                    int slabSize, int concurrencyLevel) {
+        if (keyCodec == null || valueCodec == null)
+            throw new NullPointerException();
+        if (slabSize < 64 || concurrencyLevel <= 0)
+            throw new IllegalArgumentException();
+        if (concurrencyLevel > MAX_SEGMENTS)
+            concurrencyLevel = MAX_SEGMENTS;
+        int sshift = 0, ssize = 1;
+        while (ssize < concurrencyLevel) {
+            ++sshift;
+            ssize <<= 1;
+        }
+        this.segmentShift = 32 - sshift;
+        this.segmentMask = ssize - 1;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        Segment[] ss = new Segment[ssize];
+        for (int i = 0; i < ssize; ++i)
+            ss[i] = new Segment(slabSize & ~7);
+        this.segments = ss;
+    }
+
+    /* ---------------- Static utilities -------------- */
+
+    /**
+     * Spreads (XORs) higher bits of hash to lower, as in
+     * {@link ConcurrentHashMap}.
+     */
+    static final int spread(int h) {
+        return (h ^ (h >>> 16)) & HASH_BITS;
+    }
+
+    static int align(int n) {
+        return (n + 7) & ~7;
+    }
+
+    final Segment segmentFor(int h) {
+        // high bits select the part, low bits the bin within its table
+        return segments[(h * 0x9E3779B9 >>> segmentShift) & segmentMask];
+    }
+
+    /**
+     * Encodes a key or value into a heap array, verifying the codec wrote
+     * the number of bytes it promised.
+     */
+    static <T> byte[] encode(Codec<T> codec, T t) {
+        int n = codec.encodedSize(t);
+        ByteBuffer b = ByteBuffer.allocate(n);
+        codec.encode(t, b);
+        if (b.position() != n)
+            throw new IllegalStateException("Codec wrote " + b.position() +
+                                            " bytes, expected " + n);
+        return b.array();
+    }
+
+    /* ---------------- Segments -------------- */
+
+    /**
+     * An independently locked part of the map: a bin table of record
+     * addresses, plus the slabs holding those records.
+     */
+    static final class Segment extends StampedLock {
+        private static final long serialVersionUID = 4207413745436209712L;
+
+        final int slabSize;
+
+        /** Bin heads; 0 marks an empty bin. */
+        long[] table = new long[MIN_SEGMENT_TABLE_CAPACITY];
+
+        /** Resize when count exceeds this (3/4 of capacity). */
+        int threshold = MIN_SEGMENT_TABLE_CAPACITY - (MIN_SEGMENT_TABLE_CAPACITY >>> 2);
+
+        /** Number of mappings; read without locking by size(). */
+        volatile int count;
+
+        ByteBuffer[] slabs = new ByteBuffer[4];
+        int[] slabLive = new int[4];    // live record bytes per slab
+        int current = -1;               // slab receiving new records
+        int top;                        // bump pointer into current slab
+        long liveBytes;                 // sum of slabLive
+        volatile long reservedBytes;    // total capacity of held slabs
+
+        Segment(int slabSize) {
+            this.slabSize = slabSize;
+        }
+
+        final ByteBuffer slab(long addr) {
+            return slabs[(int) (addr >>> 32) - 1];
+        }
+
+        /**
+         * Returns the address of the record with the given hash and key
+         * bytes, or 0 if none.  Caller holds either lock.
+         */
+        final long find(int h, byte[] kb) {
+            long[] tab = table;
+            long e = tab[h & (tab.length - 1)];
+            while (e != 0L) {
+                ByteBuffer s = slab(e);
+                int o = (int) e;
+                if (s.getInt(o + HASH) == h && keyEquals(s, o, kb))
+                    return e;
+                e = s.getLong(o + NEXT);
+            }
+            return 0L;
+        }
+
+        static boolean keyEquals(ByteBuffer s, int o, byte[] kb) {
+            int n = kb.length;
+            if (s.getInt(o + KLEN) != n)
+                return false;
+            int p = o + HEADER;
+            for (int i = 0; i < n; ++i) {
+                if (s.get(p + i) != kb[i])
+                    return false;
+            }
+            return true;
+        }
+
+        static boolean valueEquals(ByteBuffer s, int o, byte[] vb) {
+            int n = vb.length;
+            if (s.getInt(o + VLEN) != n)
+                return false;
+            int p = o + HEADER + s.getInt(o + KLEN);
+            for (int i = 0; i < n; ++i) {
+                if (s.get(p + i) != vb[i])
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Returns the address of the record with the given hash and key
+         * bytes, or 0 if none, copying its value bytes into {@code vbox[0]}
+         * when {@code vbox} is non-null.  Reads without locking under the
+         * given optimistic stamp, and returns {@link #RETRY} if a writer
+         * intervened; the result is meaningful only for a valid stamp.
+         */
+        final long findOptimistic(long stamp, int h, byte[] kb, byte[][] vbox) {
+            try {
+                long[] tab = table;
+                ByteBuffer[] ss = slabs;
+                long e = tab[h & (tab.length - 1)];
+                while (e != 0L) {
+                    ByteBuffer s = ss[(int) (e >>> 32) - 1];
+                    int o = (int) e;
+                    if (s.getInt(o + HASH) == h && keyEquals(s, o, kb)) {
+                        if (vbox != null) {
+                            // bounds checked by limit before allocating
+                            int p = o + HEADER + s.getInt(o + KLEN);
+                            ByteBuffer d = s.duplicate();
+                            d.limit(p + s.getInt(o + VLEN)).position(p);
+                            byte[] vb = new byte[d.remaining()];
+                            d.get(vb);
+                            vbox[0] = vb;
+                        }
+                        break;
+                    }
+                    e = s.getLong(o + NEXT);
+                    if (!validate(stamp)) // a rewritten chain may cycle
+                        return RETRY;
+                }
+                return validate(stamp) ? e : RETRY;
+            } catch (RuntimeException ex) {
+                // torn read of a record a writer was rewriting
+                return RETRY;
+            }
+        }
+
+        /**
+         * Returns a read-only view of the value bytes of a record.
+         */
+        final ByteBuffer valueBytes(long addr) {
+            ByteBuffer s = slab(addr);
+            int o = (int) addr;
+            int p = o + HEADER + s.getInt(o + KLEN);
+            ByteBuffer d = s.asReadOnlyBuffer();
+            d.limit(p + s.getInt(o + VLEN)).position(p);
+            return d.slice();
+        }
+
+        final ByteBuffer keyBytes(long addr) {
+            ByteBuffer s = slab(addr);
+            int o = (int) addr;
+            int p = o + HEADER;
+            ByteBuffer d = s.asReadOnlyBuffer();
+            d.limit(p + s.getInt(o + KLEN)).position(p);
+            return d.slice();
+        }
+
+        /**
+         * Reserves space for a record of the given total size, allocating
+         * a new slab if needed.  Caller holds the write lock.
+         */
+        final long allocate(int size) {
+            size = align(size);
+            if (size > slabSize) {
+                int i = newSlab(size);
+                slabLive[i] = size;
+                liveBytes += size;
+                return ((long) (i + 1) << 32);
+            }
+            if (current < 0 || top + size > slabSize) {
+                int old = current;
+                current = newSlab(slabSize);
+                top = 0;
+                if (old >= 0 && slabLive[old] == 0)
+                    releaseSlab(old);
+            }
+            int o = top;
+            top += size;
+            slabLive[current] += size;
+            liveBytes += size;
+            return ((long) (current + 1) << 32) | o;
+        }
+
+        private int newSlab(int capacity) {
+            int i = 0, n = slabs.length;
+            while (i < n && slabs[i] != null)
+                ++i;
+            if (i == n) {
+                slabs = java.util.Arrays.copyOf(slabs, n << 1);
+                slabLive = java.util.Arrays.copyOf(slabLive, n << 1);
+            }
+            ByteBuffer b = ByteBuffer.allocateDirect(capacity);
+            b.order(ByteOrder.nativeOrder());
+            slabs[i] = b;
+            slabLive[i] = 0;
+            reservedBytes += capacity;
+            return i;
+        }
+
+        private void releaseSlab(int i) {
+            ByteBuffer b = slabs[i];
+            slabs[i] = null;
+            reservedBytes -= b.capacity();
+            if (i == current)
+                current = -1;
+        }
+
+        /**
+         * Marks the record at the given address dead, releasing its slab
+         * when nothing in it is live any more.  Caller holds the write lock.
+         */
+        final void free(long addr) {
+            ByteBuffer s = slab(addr);
+            int o = (int) addr;
+            int size = align(HEADER + s.getInt(o + KLEN) + s.getInt(o + VLEN));
+            int i = (int) (addr >>> 32) - 1;
+            slabLive[i] -= size;
+            liveBytes -= size;
+            if (slabLive[i] == 0 && i != current)
+                releaseSlab(i);
+        }
+
+        /**
+         * Writes a new record and returns its address.
+         */
+        final long newRecord(int h, byte[] kb, byte[] vb, long next) {
+            long addr = allocate(HEADER + kb.length + vb.length);
+            ByteBuffer s = slab(addr);
+            int o = (int) addr;
+            s.putLong(o + NEXT, next);
+            s.putInt(o + HASH, h);
+            s.putInt(o + KLEN, kb.length);
+            s.putInt(o + VLEN, vb.length);
+            ByteBuffer d = s.duplicate();
+            d.position(o + HEADER);
+            d.put(kb).put(vb);
+            return addr;
+        }
+
+        /**
+         * Replaces the record at {@code e}, found after {@code pred} (0 if
+         * it heads its bin), by one carrying the given value.
+         */
+        final void replaceValue(long pred, long e, byte[] vb) {
+            ByteBuffer s = slab(e);
+            int o = (int) e;
+            if (s.getInt(o + VLEN) == vb.length) {
+                ByteBuffer d = s.duplicate();
+                d.position(o + HEADER + s.getInt(o + KLEN));
+                d.put(vb);
+                return;
+            }
+            int klen = s.getInt(o + KLEN);
+            byte[] kb = new byte[klen];
+            ByteBuffer d = s.duplicate();
+            d.position(o + HEADER);
+            d.get(kb);
+            int h = s.getInt(o + HASH);
+            long r = newRecord(h, kb, vb, s.getLong(o + NEXT));
+            link(pred, h, r);
+            free(e);
+            maybeCompact();
+        }
+
+        /** Points {@code pred}'s next (or the bin head) at {@code r}. */
+        final void link(long pred, int h, long r) {
+            if (pred == 0L) {
+                long[] tab = table;
+                tab[h & (tab.length - 1)] = r;
+            } else {
+                slab(pred).putLong((int) pred + NEXT, r);
+            }
+        }
+
+        /**
+         * Unlinks and frees the record at {@code e}.
+         */
+        final void unlink(long pred, long e) {
+            ByteBuffer s = slab(e);
+            int o = (int) e;
+            link(pred, s.getInt(o + HASH), s.getLong(o + NEXT));
+            free(e);
+            --count;
+            maybeCompact();
+        }
+
+        /**
+         * Returns the predecessor of record {@code e} in its bin, or 0 if
+         * it is the head.
+         */
+        final long predecessor(int h, long e) {
+            long[] tab = table;
+            long p = 0L, q = tab[h & (tab.length - 1)];
+            while (q != e) {
+                p = q;
+                q = slab(q).getLong((int) q + NEXT);
+            }
+            return p;
+        }
+
+        /**
+         * Doubles the bin table, re-threading each record through its
+         * off-heap next field.  Like ConcurrentHashMap.transfer, records
+         * whose hash has the new bit clear stay at index i, others move to
+         * i + n, and relative order within each half is preserved.
+         */
+        final void rehash() {
+            long[] tab = table;
+            int n = tab.length;
+            if (n >= MAXIMUM_CAPACITY)
+                return;
+            long[] nt = new long[n << 1];
+            for (int i = 0; i < n; ++i) {
+                long lo = 0L, loTail = 0L, hi = 0L, hiTail = 0L;
+                for (long e = tab[i]; e != 0L; ) {
+                    ByteBuffer s = slab(e);
+                    int o = (int) e;
+                    long next = s.getLong(o + NEXT);
+                    s.putLong(o + NEXT, 0L);
+                    if ((s.getInt(o + HASH) & n) == 0) {
+                        if (loTail == 0L) lo = e;
+                        else slab(loTail).putLong((int) loTail + NEXT, e);
+                        loTail = e;
+                    } else {
+                        if (hiTail == 0L) hi = e;
+                        else slab(hiTail).putLong((int) hiTail + NEXT, e);
+                        hiTail = e;
+                    }
+                    e = next;
+                }
+                nt[i] = lo;
+                nt[i + n] = hi;
+            }
+            table = nt;
+            threshold = (n << 1) - (n >>> 1);
+        }
+
+        /**
+         * Copies live records into fresh slabs once dead space (freed
+         * records, plus the unused tails of retired slabs) exceeds both the
+         * live space and one slab, so that fragmented slabs can be
+         * released.  Caller holds the write lock.
+         */
+        final void maybeCompact() {
+            long dead = reservedBytes - liveBytes -
+                ((current >= 0) ? slabSize - top : 0);
+            if (dead <= liveBytes || dead <= slabSize)
+                return;
+            ByteBuffer[] oldSlabs = slabs;
+            slabs = new ByteBuffer[4];
+            slabLive = new int[4];
+            current = -1;
+            liveBytes = 0L;
+            reservedBytes = 0L;
+            long[] tab = table;
+            for (int i = 0; i < tab.length; ++i) {
+                long head = 0L, tail = 0L;
+                for (long e = tab[i]; e != 0L; ) {
+                    ByteBuffer s = oldSlabs[(int) (e >>> 32) - 1];
+                    int o = (int) e;
+                    int len = HEADER + s.getInt(o + KLEN) + s.getInt(o + VLEN);
+                    long next = s.getLong(o + NEXT);
+                    long r = allocate(len);
+                    ByteBuffer src = s.duplicate();
+                    src.limit(o + len).position(o);
+                    ByteBuffer dst = slab(r).duplicate();
+                    dst.position((int) r);
+                    dst.put(src);
+                    slab(r).putLong((int) r + NEXT, 0L);
+                    if (tail == 0L) head = r;
+                    else slab(tail).putLong((int) tail + NEXT, r);
+                    tail = r;
+                    e = next;
+                }
+                tab[i] = head;
+            }
+        }
+
+        final void clear() {
+            table = new long[MIN_SEGMENT_TABLE_CAPACITY];
+            threshold = MIN_SEGMENT_TABLE_CAPACITY - (MIN_SEGMENT_TABLE_CAPACITY >>> 2);
+            slabs = new ByteBuffer[4];
+            slabLive = new int[4];
+            current = -1;
+            top = 0;
+            liveBytes = 0L;
+            reservedBytes = 0L;
+            count = 0;
+        }
+    }
+
+    /* ---------------- Internal access -------------- */
+
+    final V decodeValue(Segment seg, long addr) {
+        return valueCodec.decode(seg.valueBytes(addr));
+    }
+
+    /**
+     * Implements all insertion and replacement methods.
+     *
+     * @param onlyIfAbsent if true, leave an existing mapping alone
+     * @param onlyIfPresent if true, do nothing when the key is absent
+     * @param expect if non-null, replace only when currently mapped to an
+     *        equal (by encoding) value
+     * @return the previous value, or null if none
+     */
+    final V putVal(K key, V value, boolean onlyIfAbsent,
+                   boolean onlyIfPresent, byte[] expect) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        byte[] kb = encode(keyCodec, key);
+        byte[] vb = encode(valueCodec, value);
+        int h = spread(key.hashCode());
+        Segment seg = segmentFor(h);
+        long stamp = seg.writeLock();
+        try {
+            long e = seg.find(h, kb);
+            if (e != 0L) {
+                V old = decodeValue(seg, e);
+                if (onlyIfAbsent)
+                    return old;
+                if (expect != null &&
+                    !Segment.valueEquals(seg.slab(e), (int) e, expect))
+                    return null;
+                seg.replaceValue(seg.predecessor(h, e), e, vb);
+                return old;
+            }
+            if (onlyIfPresent)
+                return null;
+            long[] tab = seg.table;
+            int i = h & (tab.length - 1);
+            tab[i] = seg.newRecord(h, kb, vb, tab[i]);
+            if (++seg.count > seg.threshold)
+                seg.rehash();
+            return null;
+        } finally {
+            seg.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Implements Map.remove and ConcurrentMap.remove.
+     *
+     * @param expect if non-null, remove only when mapped to an equal (by
+     *        encoding) value
+     * @return the removed value, or null if none
+     */
+    final V removeVal(Object key, byte[] expect) {
+        byte[] kb = encodeKey(key);
+        if (kb == null)
+            return null;
+        int h = spread(key.hashCode());
+        Segment seg = segmentFor(h);
+        long stamp = seg.writeLock();
+        try {
+            long e = seg.find(h, kb);
+            if (e == 0L ||
+                (expect != null &&
+                 !Segment.valueEquals(seg.slab(e), (int) e, expect)))
+                return null;
+            V old = decodeValue(seg, e);
+            seg.unlink(seg.predecessor(h, e), e);
+            return old;
+        } finally {
+            seg.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Encodes a key of unknown type, returning null if it cannot be a key
+     * of this map.
+     */
+    @SuppressWarnings("unchecked")
+    final byte[] encodeKey(Object key) {
+        if (key == null)
+            throw new NullPointerException();
+        try {
+            return encode(keyCodec, (K) key);
+        } catch (ClassCastException ex) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    final byte[] encodeValue(Object value) {
+        if (value == null)
+            throw new NullPointerException();
+        try {
+            return encode(valueCodec, (V) value);
+        } catch (ClassCastException ex) {
+            return null;
+        }
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * Returns the number of key-value mappings in this map.  The result
+     * is a sum of per-part counts read without locking, so it is only an
+     * estimate while updates are in progress.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+        long n = 0L;
+        for (Segment seg : segments)
+            n += seg.count;
+        return (n > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) n;
+    }
+
+    public boolean isEmpty() {
+        for (Segment seg : segments) {
+            if (seg.count != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of bytes of direct memory currently held by this
+     * map's slabs, including space not yet reclaimed from removed records.
+     *
+     * @return the number of off-heap bytes reserved by this map
+     */
+    public long offHeapBytes() {
+        long n = 0L;
+        for (Segment seg : segments)
+            n += seg.reservedBytes;
+        return n;
+    }
+
+    /**
+     * Returns a freshly decoded copy of the value to which the specified
+     * key is mapped, or {@code null} if this map contains no mapping for
+     * the key.
+     *
+     * @throws NullPointerException if the specified key is null
+     */
+    public V get(Object key) {
+        byte[] kb = encodeKey(key);
+        if (kb == null)
+            return null;
+        int h = spread(key.hashCode());
+        Segment seg = segmentFor(h);
+        long stamp = seg.tryOptimisticRead();
+        if (stamp != 0L) {
+            byte[][] vbox = new byte[1][];
+            long e = seg.findOptimistic(stamp, h, kb, vbox);
+            if (e != RETRY)
+                return (e == 0L) ? null :
+                    valueCodec.decode(ByteBuffer.wrap(vbox[0]).asReadOnlyBuffer());
+        }
+        stamp = seg.readLock();
+        try {
+            long e = seg.find(h, kb);
+            return (e == 0L) ? null : decodeValue(seg, e);
+        } finally {
+            seg.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Tests if the specified object is a key in this map.
+     *
+     * @throws NullPointerException if the specified key is null
+     */
+    public boolean containsKey(Object key) {
+        byte[] kb = encodeKey(key);
+        if (kb == null)
+            return false;
+        int h = spread(key.hashCode());
+        Segment seg = segmentFor(h);
+        long stamp = seg.tryOptimisticRead();
+        if (stamp != 0L) {
+            long e = seg.findOptimistic(stamp, h, kb, null);
+            if (e != RETRY)
+                return e != 0L;
+        }
+        stamp = seg.readLock();
+        try {
+            return seg.find(h, kb) != 0L;
+        } finally {
+            seg.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns {@code true} if this map maps one or more keys to a value
+     * with the same encoding as the specified value.  This method scans
+     * every record without decoding.
+     *
+     * @throws NullPointerException if the specified value is null
+     */
+    public boolean containsValue(Object value) {
+        byte[] vb = encodeValue(value);
+        if (vb == null)
+            return false;
+        for (Segment seg : segments) {
+            long stamp = seg.readLock();
+            try {
+                for (long e : seg.table) {
+                    while (e != 0L) {
+                        ByteBuffer s = seg.slab(e);
+                        if (Segment.valueEquals(s, (int) e, vb))
+                            return true;
+                        e = s.getLong((int) e + NEXT);
+                    }
+                }
+            } finally {
+                seg.unlockRead(stamp);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Maps the specified key to the specified value in this map.
+     *
+     * @return the previous value associated with {@code key}, or
+     *         {@code null} if there was no mapping for {@code key}
+     * @throws NullPointerException if the specified key or value is null
+     */
+    public V put(K key, V value) {
+        return putVal(key, value, false, false, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the previous value associated with the specified key,
+     *         or {@code null} if there was no mapping for the key
+     * @throws NullPointerException if the specified key or value is null
+     */
+    public V putIfAbsent(K key, V value) {
+        return putVal(key, value, true, false, null);
+    }
+
+    /**
+     * Removes the key (and its corresponding value) from this map.
+     *
+     * @return the previous value associated with {@code key}, or
+     *         {@code null} if there was no mapping for {@code key}
+     * @throws NullPointerException if the specified key is null
+     */
+    public V remove(Object key) {
+        return removeVal(key, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the specified key is null
+     */
+    public boolean remove(Object key, Object value) {
+        if (key == null)
+            throw new NullPointerException();
+        byte[] vb;
+        return value != null && (vb = encodeValue(value)) != null &&
+            removeVal(key, vb) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if any of the arguments are null
+     */
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (key == null || oldValue == null || newValue == null)
+            throw new NullPointerException();
+        return putVal(key, newValue, false, true,
+                      encode(valueCodec, oldValue)) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the previous value associated with the specified key,
+     *         or {@code null} if there was no mapping for the key
+     * @throws NullPointerException if the specified key or value is null
+     */
+    public V replace(K key, V value) {
+        return putVal(key, value, false, true, null);
+    }
+
+    /**
+     * Removes all of the mappings from this map, dropping every slab.
+     * The direct memory is returned when the slabs are collected.
+     */
+    public void clear() {
+        for (Segment seg : segments) {
+            long stamp = seg.writeLock();
+            try {
+                seg.clear();
+            } finally {
+                seg.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this map.
+     * Its entries are decoded snapshots: {@code setValue} writes through to
+     * the map but does not change other snapshots of the same mapping.
+     *
+     * @return the set view
+     */
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) != null ? es : (entrySet = new EntrySet());
+    }
+
+    /* ---------------- Views -------------- */
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public int size() { return OffHeapConcurrentHashMap.this.size(); }
+        public boolean isEmpty() { return OffHeapConcurrentHashMap.this.isEmpty(); }
+        public void clear() { OffHeapConcurrentHashMap.this.clear(); }
+        public Iterator<Map.Entry<K,V>> iterator() { return new EntryIterator(); }
+        public boolean contains(Object o) {
+            Object k, v, r;
+            Map.Entry<?,?> e;
+            return ((o instanceof Map.Entry) &&
+                    (k = (e = (Map.Entry<?,?>) o).getKey()) != null &&
+                    (r = get(k)) != null &&
+                    (v = e.getValue()) != null &&
+                    (v == r || v.equals(r)));
+        }
+        public boolean remove(Object o) {
+            Object k, v;
+            Map.Entry<?,?> e;
+            return ((o instanceof Map.Entry) &&
+                    (k = (e = (Map.Entry<?,?>) o).getKey()) != null &&
+                    (v = e.getValue()) != null &&
+                    OffHeapConcurrentHashMap.this.remove(k, v));
+        }
+    }
+
+    /**
+     * Exported entry: a decoded snapshot that writes through on setValue.
+     */
+    final class MapEntry extends AbstractMap.SimpleEntry<K,V> {
+        private static final long serialVersionUID = -6437615393165932012L;
+        MapEntry(K key, V value) { super(key, value); }
+        public V setValue(V value) {
+            if (value == null) throw new NullPointerException();
+            V v = super.setValue(value);
+            put(getKey(), value);
+            return v;
+        }
+    }
+
+    /**
+     * Decodes one part at a time under its read lock, then hands out the
+     * decoded entries without holding any lock.
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K,V>> {
+        int nextSegment;
+        ArrayList<Map.Entry<K,V>> batch = new ArrayList<Map.Entry<K,V>>();
+        int index;
+        Map.Entry<K,V> lastReturned;
+
+        public boolean hasNext() {
+            while (index >= batch.size()) {
+                if (nextSegment >= segments.length)
+                    return false;
+                fill(segments[nextSegment++]);
+            }
+            return true;
+        }
+
+        private void fill(Segment seg) {
+            batch.clear();
+            index = 0;
+            long stamp = seg.readLock();
+            try {
+                for (long e : seg.table) {
+                    while (e != 0L) {
+                        K k = keyCodec.decode(seg.keyBytes(e));
+                        batch.add(new MapEntry(k, decodeValue(seg, e)));
+                        e = seg.slab(e).getLong((int) e + NEXT);
+                    }
+                }
+            } finally {
+                seg.unlockRead(stamp);
+            }
+        }
+
+        public Map.Entry<K,V> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return lastReturned = batch.get(index++);
+        }
+
+        public void remove() {
+            Map.Entry<K,V> p;
+            if ((p = lastReturned) == null)
+                throw new IllegalStateException();
+            lastReturned = null;
+            OffHeapConcurrentHashMap.this.remove(p.getKey());
+        }
+    }
+}
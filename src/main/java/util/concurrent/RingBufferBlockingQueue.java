@@ -0,0 +1,793 @@
+package util.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded lock-free {@linkplain BlockingQueue blocking queue} backed
+ * by a ring buffer of sequence-numbered slots, in the style of Dmitry
+ * Vyukov's bounded MPMC queue and the LMAX Disruptor.  This queue
+ * orders elements FIFO.
+ *
+ * <p>Each slot of the ring carries a sequence number that tells
+ * producers and consumers whether it is free to fill or ready to take
+ * for a given turn of the ring.  A producer claims a slot by advancing
+ * the tail index with a single compare-and-set, stores the element and
+ * publishes it by advancing the slot's sequence; a consumer does the
+ * same at the head.  Producers and consumers therefore never take a
+ * lock, never contend with each other except when the queue is nearly
+ * empty or full, and allocate nothing per element.  The head and tail
+ * indices are padded onto cache lines of their own so producers and
+ * consumers do not slow each other down by false sharing.
+ *
+ * <p>When it is known that only one thread will ever insert, or only
+ * one thread will ever remove, the {@link #mpsc} and {@link #spsc}
+ * factories return queues that advance that index with a plain ordered
+ * write instead of a compare-and-set.  Using such a queue from more
+ * threads than declared corrupts it.
+ *
+ * <p>Operations that must wait for space or for an element ({@code put},
+ * {@code take} and the timed {@code offer} and {@code poll}) follow the
+ * queue's {@link WaitStrategy}: spin, spin then yield, or spin, yield and
+ * then park with {@link LockSupport} until signalled.  Only
+ * {@link WaitStrategy#PARK} releases the processor while waiting; in
+ * exchange, each insertion or removal then also publishes with a
+ * volatile write and checks for parked threads to wake.  All strategies
+ * respond to interrupts.  The default is {@code PARK}, which suits use
+ * as the {@code workQueue} of a {@link ThreadPoolExecutor}, whose idle
+ * workers may wait a long time.
+ *
+ * <p>The capacity is rounded up to a power of two, and to at least
+ * two.  As in other
+ * queues of this kind, {@code offer} may briefly report a full queue
+ * while a consumer is still taking an element from the slot the
+ * producer needs, and {@code size} counts elements being inserted or
+ * removed concurrently.
+ *
+ * <p>The iterator is weakly consistent and returns the elements present
+ * in a snapshot taken when it is created.  Elements may also be removed
+ * from the interior of the queue, by {@code remove(Object)},
+ * {@code removeAll}, {@code retainAll} or {@code Iterator.remove}, as
+ * {@link ThreadPoolExecutor#remove} and {@link ThreadPoolExecutor#purge}
+ * do: the element is replaced in its slot, with a compare-and-set, by a
+ * marker that consumers skip.  The slot itself is freed only when
+ * consumers reach it, so until then it still takes up capacity, though
+ * it is not counted by {@code size}.  Interior removal is linear in the
+ * size of the queue; to support it, each take claims its element with
+ * an atomic exchange.
+ * This queue does not permit {@code null} elements.
+ *
+ * @param <E> the type of elements held in this queue
+ * @see ArrayBlockingQueue
+ */
+public class RingBufferBlockingQueue<E> extends AbstractQueue<E>
+        implements BlockingQueue<E> {
+
+    /**
+     * How a thread waits for space or an element to become available.
+     */
+    public enum WaitStrategy {
+        /**
+         * Busy-spin, re-checking the queue continuously.  Lowest
+         * latency; occupies a processor for as long as the wait lasts.
+         */
+        SPIN,
+        /**
+         * Spin briefly, then call {@link Thread#yield} between checks.
+         */
+        YIELD,
+        /**
+         * Spin and yield briefly, then park until another thread
+         * inserts or removes an element.
+         */
+        PARK
+    }
+
+    /**
+     * The number of failed attempts spent spinning before yielding.
+     */
+    static final int SPINS = 1 << 7;
+
+    /**
+     * The number of further failed attempts spent yielding before
+     * parking, for the PARK strategy.
+     */
+    static final int YIELDS = 1 << 3;
+
+    /**
+     * The largest supported capacity.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /*
+     * Padding of the head and tail indices.  Superclass fields are laid
+     * out before subclass fields, so a value field between two
+     * subclasses of padding sits on a cache line of its own whatever
+     * order the JVM puts fields of one class in.
+     */
+
+    static class LhsPadding {
+        long p00, p01, p02, p03, p04, p05, p06, p07;
+    }
+
+    static class PaddedValue extends LhsPadding {
+        volatile long value;
+    }
+
+    /**
+     * A ring index, padded on both sides against false sharing.
+     */
+    static final class PaddedIndex extends PaddedValue {
+        long p10, p11, p12, p13, p14, p15, p16, p17;
+
+        private static final AtomicLongFieldUpdater<PaddedValue> VALUE =
+            AtomicLongFieldUpdater.newUpdater(PaddedValue.class, "value");
+
+        boolean compareAndSet(long expect, long update) {
+            return VALUE.compareAndSet(this, expect, update);
+        }
+
+        void lazySet(long v) {
+            VALUE.lazySet(this, v);
+        }
+    }
+
+    /**
+     * Node of a stack of parked threads.
+     */
+    static final class WaitNode {
+        volatile Thread thread;
+        WaitNode next;
+
+        WaitNode(Thread thread) {
+            this.thread = thread;
+        }
+    }
+
+    /**
+     * Marker replacing an element removed from the interior of the
+     * queue, until a consumer passes its slot.
+     */
+    private static final Object REMOVED = new Object();
+
+    /**
+     * The ring of elements.  A consumer claims the element of a slot it
+     * has taken with getAndSet(null), and an interior removal replaces
+     * it with REMOVED by compare-and-set, so at most one of them gets it.
+     */
+    private final AtomicReferenceArray<Object> buffer;
+
+    /**
+     * The sequence number of each slot.  Slot i starts at i; it equals
+     * pos when the slot is free for the insertion at position pos, and
+     * pos + 1 when it holds the element inserted at pos.  Taking that
+     * element advances it to pos + capacity, the next turn's insertion.
+     */
+    private final AtomicLongArray sequences;
+
+    /** capacity - 1, for masking positions into slot indices */
+    private final int mask;
+
+    /** The position of the next insertion */
+    private final PaddedIndex tail = new PaddedIndex();
+
+    /** The position of the next removal */
+    private final PaddedIndex head = new PaddedIndex();
+
+    private final boolean singleProducer;
+    private final boolean singleConsumer;
+    private final WaitStrategy waitStrategy;
+
+    /** Whether insertions and removals must signal parked threads */
+    private final boolean signalling;
+
+    /** Consumers parked waiting for an element */
+    private final AtomicReference<WaitNode> takers = new AtomicReference<>();
+
+    /** Producers parked waiting for space */
+    private final AtomicReference<WaitNode> putters = new AtomicReference<>();
+
+    /** The number of REMOVED markers not yet passed by consumers */
+    private final AtomicInteger removedCount = new AtomicInteger();
+
+    /**
+     * Creates a multi-producer, multi-consumer queue with at least the
+     * given capacity, using the {@link WaitStrategy#PARK} strategy.
+     *
+     * @param capacity the minimum capacity of this queue
+     * @throws IllegalArgumentException if {@code capacity < 1} or
+     *         {@code capacity > 2^30}
+     */
+    public RingBufferBlockingQueue(int capacity) {
+        this(capacity, WaitStrategy.PARK);
+    }
+
+    /**
+     * Creates a multi-producer, multi-consumer queue with at least the
+     * given capacity, using the given wait strategy.
+     *
+     * @param capacity the minimum capacity of this queue
+     * @param waitStrategy how blocking operations wait
+     * @throws IllegalArgumentException if {@code capacity < 1} or
+     *         {@code capacity > 2^30}
+     * @throws NullPointerException if {@code waitStrategy} is null
+     */
+    public RingBufferBlockingQueue(int capacity, WaitStrategy waitStrategy) {
+        this(capacity, waitStrategy, false, false);
+    }
+
+    private RingBufferBlockingQueue(int capacity, WaitStrategy waitStrategy,
+                                    boolean singleProducer,
+                                    boolean singleConsumer) {
+        if (capacity < 1 || capacity > MAXIMUM_CAPACITY)
+            throw new IllegalArgumentException();
+        // at least two slots, so that a full slot (sequence pos + 1) is
+        // distinguishable from the free slot for the next turn (pos + n)
+        int n = (capacity <= 2) ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.buffer = new AtomicReferenceArray<>(n);
+        this.sequences = new AtomicLongArray(n);
+        for (int i = 0; i < n; ++i)
+            sequences.lazySet(i, i);
+        this.mask = n - 1;
+        this.waitStrategy = Objects.requireNonNull(waitStrategy);
+        this.signalling = (waitStrategy == WaitStrategy.PARK);
+        this.singleProducer = singleProducer;
+        this.singleConsumer = singleConsumer;
+    }
+
+    /**
+     * Creates a queue for use by any number of producers but only one
+     * consumer thread at a time.
+     *
+     * @param capacity the minimum capacity of the queue
+     * @param waitStrategy how blocking operations wait
+     * @param <E> the type of elements held in the queue
+     * @return a new multi-producer, single-consumer queue
+     * @throws IllegalArgumentException if {@code capacity < 1} or
+     *         {@code capacity > 2^30}
+     * @throws NullPointerException if {@code waitStrategy} is null
+     */
+    public static <E> RingBufferBlockingQueue<E> mpsc(int capacity,
+                                                      WaitStrategy waitStrategy) {
+        return new RingBufferBlockingQueue<>(capacity, waitStrategy, false, true);
+    }
+
+    /**
+     * Creates a queue for use by only one producer and one consumer
+     * thread at a time.
+     *
+     * @param capacity the minimum capacity of the queue
+     * @param waitStrategy how blocking operations wait
+     * @param <E> the type of elements held in the queue
+     * @return a new single-producer, single-consumer queue
+     * @throws IllegalArgumentException if {@code capacity < 1} or
+     *         {@code capacity > 2^30}
+     * @throws NullPointerException if {@code waitStrategy} is null
+     */
+    public static <E> RingBufferBlockingQueue<E> spsc(int capacity,
+                                                      WaitStrategy waitStrategy) {
+        return new RingBufferBlockingQueue<>(capacity, waitStrategy, true, true);
+    }
+
+    /**
+     * Returns the capacity of this queue, which is the requested
+     * capacity rounded up to a power of two, and to at least two.
+     *
+     * @return the capacity of this queue
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Returns the wait strategy of this queue.
+     *
+     * @return the wait strategy of this queue
+     */
+    public WaitStrategy waitStrategy() {
+        return waitStrategy;
+    }
+
+    // Core algorithm
+
+    /**
+     * Inserts e if a slot is free, without waiting.
+     */
+    private boolean tryInsert(E e) {
+        final AtomicLongArray seqs = sequences;
+        final int mask = this.mask;
+        final PaddedIndex tail = this.tail;
+        long pos = tail.value;
+        int slot;
+        for (;;) {
+            slot = (int) pos & mask;
+            long dif = seqs.get(slot) - pos;
+            if (dif == 0L) {
+                if (singleProducer) {
+                    tail.lazySet(pos + 1);
+                    break;
+                }
+                if (tail.compareAndSet(pos, pos + 1))
+                    break;
+                pos = tail.value;
+            } else if (dif < 0L) {
+                return false;           // full: slot not yet taken last turn
+            } else {
+                pos = tail.value;       // lost a race; reload
+            }
+        }
+        buffer.lazySet(slot, e);
+        if (signalling) {
+            seqs.set(slot, pos + 1);    // volatile, ordered before reading takers
+            if (takers.get() != null)
+                signal(takers);
+        } else {
+            seqs.lazySet(slot, pos + 1);
+        }
+        return true;
+    }
+
+    /**
+     * Removes and returns the head element, or null if empty, without
+     * waiting.  Frees and skips slots whose element has been removed.
+     */
+    @SuppressWarnings("unchecked")
+    private E tryRemove() {
+        final AtomicLongArray seqs = sequences;
+        final int mask = this.mask;
+        final PaddedIndex head = this.head;
+        for (;;) {
+            long pos = head.value;
+            int slot;
+            for (;;) {
+                slot = (int) pos & mask;
+                long dif = seqs.get(slot) - (pos + 1);
+                if (dif == 0L) {
+                    if (singleConsumer) {
+                        head.lazySet(pos + 1);
+                        break;
+                    }
+                    if (head.compareAndSet(pos, pos + 1))
+                        break;
+                    pos = head.value;
+                } else if (dif < 0L) {
+                    return null;        // empty: slot not yet published
+                } else {
+                    pos = head.value;
+                }
+            }
+            Object e = buffer.getAndSet(slot, null);
+            long next = pos + mask + 1;
+            if (signalling) {
+                seqs.set(slot, next);
+                if (putters.get() != null)
+                    signal(putters);
+            } else {
+                seqs.lazySet(slot, next);
+            }
+            if (e != REMOVED)
+                return (E) e;
+            removedCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the first element from the head that has not been
+     * removed, or null if there is none, without taking it.
+     */
+    private Object first() {
+        final AtomicLongArray seqs = sequences;
+        for (;;) {
+            long h = head.value;
+            for (long pos = h; ; ++pos) {
+                int slot = (int) pos & mask;
+                long dif = seqs.get(slot) - (pos + 1);
+                if (dif < 0L)
+                    return null;        // not yet published
+                if (dif > 0L)
+                    break;              // taken while scanning; restart
+                Object e = buffer.get(slot);
+                // valid only if the slot was not taken while reading it
+                if (seqs.get(slot) != pos + 1)
+                    break;
+                if (e != null && e != REMOVED)
+                    return e;
+            }
+        }
+    }
+
+    private boolean isFull() {
+        long pos = tail.value;
+        return sequences.get((int) pos & mask) - pos < 0L;
+    }
+
+    // Waiting
+
+    /**
+     * Waits after the given number of failed attempts, according to
+     * the wait strategy.
+     *
+     * @param producer true if waiting for space, false for an element
+     * @return false if the deadline has passed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private boolean await(boolean producer, int attempts,
+                          boolean timed, long deadline)
+        throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        long nanos = 0L;
+        if (timed && (nanos = deadline - System.nanoTime()) <= 0L)
+            return false;
+        if (attempts < SPINS)
+            return true;
+        if (waitStrategy == WaitStrategy.YIELD ||
+            (waitStrategy == WaitStrategy.PARK && attempts < SPINS + YIELDS)) {
+            Thread.yield();
+            return true;
+        }
+        if (waitStrategy == WaitStrategy.PARK)
+            park(producer ? putters : takers, producer, timed, nanos);
+        return true;
+    }
+
+    /**
+     * Pushes the current thread on the given stack of waiters and parks
+     * unless, once pushed, the queue is no longer full (for producers)
+     * or empty (for consumers).  Pushing with a compare-and-set before
+     * re-checking, while the other side publishes with a volatile write
+     * before checking for waiters, ensures that one side or the other
+     * sees the change, so no signal is lost.
+     */
+    private void park(AtomicReference<WaitNode> stack, boolean producer,
+                      boolean timed, long nanos) {
+        WaitNode w = new WaitNode(Thread.currentThread());
+        WaitNode h;
+        do {
+            w.next = h = stack.get();
+        } while (!stack.compareAndSet(h, w));
+        if (producer ? isFull() : isEmpty()) {
+            if (timed)
+                LockSupport.parkNanos(this, nanos);
+            else
+                LockSupport.park(this);
+        }
+        w.thread = null;
+    }
+
+    /**
+     * Pops waiters off the given stack until one that is still parked
+     * (or about to park) is found, and unparks it.
+     */
+    private static void signal(AtomicReference<WaitNode> stack) {
+        for (WaitNode w; (w = stack.get()) != null; ) {
+            if (stack.compareAndSet(w, w.next)) {
+                Thread t = w.thread;
+                if (t != null) {
+                    w.thread = null;
+                    LockSupport.unpark(t);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes on a signal that a waiter may have consumed without using
+     * it: because it gave up on a timeout or interrupt, or because it
+     * was signalled after finding on its re-check that it need not
+     * park.  Called by waiters that have parked or nearly so when they
+     * leave, so that another waiter takes the remaining elements or
+     * space.
+     */
+    private void passSignal(boolean producer) {
+        if (signalling) {
+            if (producer) {
+                if (!isFull() && putters.get() != null)
+                    signal(putters);
+            } else if (!isEmpty() && takers.get() != null) {
+                signal(takers);
+            }
+        }
+    }
+
+    // Queue and BlockingQueue methods
+
+    /**
+     * Inserts the specified element at the tail of this queue if it is
+     * possible to do so immediately without exceeding the queue's
+     * capacity, returning {@code true} upon success and {@code false} if
+     * this queue is full.
+     *
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean offer(E e) {
+        Objects.requireNonNull(e);
+        return tryInsert(e);
+    }
+
+    /**
+     * Inserts the specified element at the tail of this queue, waiting
+     * for space to become available if the queue is full.
+     *
+     * @throws InterruptedException {@inheritDoc}
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public void put(E e) throws InterruptedException {
+        Objects.requireNonNull(e);
+        try {
+            int attempts = 0;
+            while (!tryInsert(e))
+                await(true, attempts++, false, 0L);
+            if (attempts > SPINS + YIELDS)
+                passSignal(true);
+        } catch (InterruptedException ie) {
+            passSignal(true);
+            throw ie;
+        }
+    }
+
+    /**
+     * Inserts the specified element at the tail of this queue, waiting
+     * up to the specified wait time for space to become available if
+     * the queue is full.
+     *
+     * @throws InterruptedException {@inheritDoc}
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public boolean offer(E e, long timeout, TimeUnit unit)
+        throws InterruptedException {
+        Objects.requireNonNull(e);
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            int attempts = 0;
+            while (!tryInsert(e)) {
+                if (!await(true, attempts++, true, deadline)) {
+                    passSignal(true);
+                    return false;
+                }
+            }
+            if (attempts > SPINS + YIELDS)
+                passSignal(true);
+            return true;
+        } catch (InterruptedException ie) {
+            passSignal(true);
+            throw ie;
+        }
+    }
+
+    public E poll() {
+        return tryRemove();
+    }
+
+    public E take() throws InterruptedException {
+        try {
+            E e;
+            int attempts = 0;
+            while ((e = tryRemove()) == null)
+                await(false, attempts++, false, 0L);
+            if (attempts > SPINS + YIELDS)
+                passSignal(false);
+            return e;
+        } catch (InterruptedException ie) {
+            passSignal(false);
+            throw ie;
+        }
+    }
+
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            E e;
+            int attempts = 0;
+            while ((e = tryRemove()) == null) {
+                if (!await(false, attempts++, true, deadline)) {
+                    passSignal(false);
+                    return null;
+                }
+            }
+            if (attempts > SPINS + YIELDS)
+                passSignal(false);
+            return e;
+        } catch (InterruptedException ie) {
+            passSignal(false);
+            throw ie;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        return (E) first();
+    }
+
+    /**
+     * Returns the number of elements in this queue, including elements
+     * whose insertion or removal is in progress.
+     *
+     * @return the number of elements in this queue
+     */
+    public int size() {
+        for (;;) {
+            long h = head.value, t = tail.value;
+            if (h == head.value) {
+                long n = Math.min(t - h, mask + 1L) - removedCount.get();
+                return (n <= 0L) ? 0 : (int) n;
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        long pos = head.value;
+        if (sequences.get((int) pos & mask) - (pos + 1) < 0L)
+            return true;
+        return removedCount.get() != 0 && first() == null;
+    }
+
+    /**
+     * Returns the number of additional elements that this queue can
+     * accept without blocking: the capacity less the number of slots in
+     * use, including those of removed elements that consumers have not
+     * yet passed.
+     */
+    public int remainingCapacity() {
+        return mask + 1 - (size() + Math.max(0, removedCount.get()));
+    }
+
+    /**
+     * Removes a single instance of the specified element from this
+     * queue, if it is present, by replacing it in its slot with a marker
+     * that consumers skip.
+     *
+     * @param o element to be removed from this queue, if present
+     * @return {@code true} if this queue changed as a result of the call
+     */
+    public boolean remove(Object o) {
+        if (o == null)
+            return false;
+        final AtomicLongArray seqs = sequences;
+        long t = tail.value;
+        for (long pos = Math.max(head.value, t - (mask + 1)); pos < t; ++pos) {
+            int slot = (int) pos & mask;
+            if (seqs.get(slot) == pos + 1) {
+                Object e = buffer.get(slot);
+                if (e != null && e != REMOVED && o.equals(e) &&
+                    removeAt(slot, pos, e))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the element e, read from the given slot at the given
+     * position, with the removal marker, unless a consumer has taken it.
+     */
+    private boolean removeAt(int slot, long pos, Object e) {
+        if (sequences.get(slot) == pos + 1 &&
+            buffer.compareAndSet(slot, e, REMOVED)) {
+            removedCount.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @throws UnsupportedOperationException {@inheritDoc}
+     * @throws ClassCastException            {@inheritDoc}
+     * @throws NullPointerException          {@inheritDoc}
+     * @throws IllegalArgumentException      {@inheritDoc}
+     */
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @throws UnsupportedOperationException {@inheritDoc}
+     * @throws ClassCastException            {@inheritDoc}
+     * @throws NullPointerException          {@inheritDoc}
+     * @throws IllegalArgumentException      {@inheritDoc}
+     */
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        Objects.requireNonNull(c);
+        if (c == this)
+            throw new IllegalArgumentException();
+        int n = 0;
+        for (E e; n < maxElements && (e = tryRemove()) != null; ++n)
+            c.add(e);
+        return n;
+    }
+
+    /**
+     * Returns the elements present in a slot-by-slot scan from head to
+     * tail, skipping slots taken, removed or not yet published during
+     * the scan.  If positions is non-null, the position of each element
+     * is added to it.
+     */
+    private ArrayList<Object> snapshot(ArrayList<Long> positions) {
+        ArrayList<Object> list = new ArrayList<>();
+        long h = head.value, t = tail.value;
+        for (long pos = Math.max(h, t - (mask + 1)); pos < t; ++pos) {
+            int slot = (int) pos & mask;
+            if (sequences.get(slot) == pos + 1) {
+                Object e = buffer.get(slot);
+                if (e != null && e != REMOVED && sequences.get(slot) == pos + 1) {
+                    list.add(e);
+                    if (positions != null)
+                        positions.add(pos);
+                }
+            }
+        }
+        return list;
+    }
+
+    public Object[] toArray() {
+        return snapshot(null).toArray();
+    }
+
+    public <T> T[] toArray(T[] a) {
+        return snapshot(null).toArray(a);
+    }
+
+    /**
+     * Returns a weakly consistent iterator over a snapshot of the
+     * elements in this queue, in proper sequence.  The iterator's
+     * {@code remove} removes the last element returned from the queue
+     * if it is still there.
+     *
+     * @return an iterator over the elements in this queue in proper sequence
+     */
+    public Iterator<E> iterator() {
+        ArrayList<Long> positions = new ArrayList<>();
+        return new Itr(snapshot(positions), positions);
+    }
+
+    /**
+     * Iterator over a snapshot, remembering the position of each
+     * element so that remove takes out that element and no other.
+     */
+    private final class Itr implements Iterator<E> {
+        private final ArrayList<Object> elements;
+        private final ArrayList<Long> positions;
+        private int cursor;
+        private int lastRet = -1;
+
+        Itr(ArrayList<Object> elements, ArrayList<Long> positions) {
+            this.elements = elements;
+            this.positions = positions;
+        }
+
+        public boolean hasNext() {
+            return cursor < elements.size();
+        }
+
+        @SuppressWarnings("unchecked")
+        public E next() {
+            int i = cursor;
+            if (i >= elements.size())
+                throw new NoSuchElementException();
+            cursor = i + 1;
+            return (E) elements.get(lastRet = i);
+        }
+
+        public void remove() {
+            int i = lastRet;
+            if (i < 0)
+                throw new IllegalStateException();
+            lastRet = -1;
+            long pos = positions.get(i);
+            removeAt((int) pos & mask, pos, elements.get(i));
+        }
+    }
+}
@@ -267,6 +267,34 @@ import java.util.*;
  * assist in storage reclamation when large numbers of queued tasks
  * become cancelled.</dd>
  *
+ * <dt>Batching</dt>
+ *
+ * <dd>By default each worker takes one task at a time from the queue,
+ * so that pools running many very short tasks pay for a queue
+ * operation, and often a park and unpark, per task.  Setting a
+ * {@linkplain #setTaskBatchSize task batch size} greater than one lets
+ * each worker move up to that many tasks from the queue to itself with
+ * a single {@link BlockingQueue#drainTo(Collection, int) drainTo}, and
+ * setting {@linkplain #setIdleSpins idle spins} lets workers re-check
+ * the queue briefly before blocking.  Method {@link
+ * #executeAll(Collection)} submits a group of tasks at once.  Tasks
+ * held by a worker are no longer in the queue: {@link #remove(Runnable)}
+ * and {@link #purge} do not see them, although {@link #shutdownNow}
+ * returns them, and a worker that dies of a task exception hands them
+ * to its replacement.  Batching trades fairness for throughput, since tasks
+ * held by a busy worker wait for it even while other workers are
+ * idle, so it suits large numbers of short tasks of similar cost.</dd>
+ *
+ * <dt>Adaptive sizing</dt>
+ *
+ * <dd>Rather than tuning core and maximum pool sizes by hand, {@link
+ * #enableAdaptiveSizing enableAdaptiveSizing} attaches an {@link
+ * AdaptivePoolSizer} that periodically samples the arrival rate of
+ * tasks, their execution times and their queue waits, and sets the
+ * core pool size between given bounds to keep queue waits below a
+ * target.  This makes a pool with an unbounded queue, which otherwise
+ * never grows beyond its core size, grow and shrink with its load.</dd>
+ *
  * <dt>Finalization</dt>
  *
  * <dd>A pool that is no longer referenced in a program <em>AND</em>
@@ -461,6 +489,15 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      */
     private final java.util.concurrent.BlockingQueue<Runnable> workQueue;
 
+    /**
+     * Whether, while metrics are enabled, tasks are queued stamped with
+     * the time they were queued.  True only for queue classes known to
+     * keep their elements in FIFO order without looking at them, since
+     * priority or comparator-ordered queues compare the tasks
+     * themselves.
+     */
+    private final boolean stampQueuedTasks;
+
     /**
      * Lock held on access to workers set and related bookkeeping.
      * While we could use a concurrent set of some sort, it turns out
@@ -561,6 +598,28 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      */
     private volatile int maximumPoolSize;
 
+    /**
+     * Maximum number of tasks a worker moves from the queue to its
+     * own batch at a time.  One (the default) disables batching.
+     */
+    private volatile int taskBatchSize = 1;
+
+    /**
+     * Number of times an idle worker re-checks the queue before
+     * blocking in take or poll.
+     */
+    private volatile int idleSpins;
+
+    /**
+     * Metrics being recorded, or null if not enabled.
+     */
+    private volatile ExecutorMetrics metrics;
+
+    /**
+     * Sizer adjusting the core pool size, or null if not enabled.
+     */
+    private volatile AdaptivePoolSizer sizer;
+
     /**
      * The default rejected execution handler
      */
@@ -622,6 +681,10 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         Runnable firstTask;
         /** Per-thread task counter */
         volatile long completedTasks;
+        /** Tasks taken from the queue but not yet run; null unless batching */
+        volatile TaskBatch batch;
+        /** Number of times blocked waiting for a task in an empty queue */
+        volatile long parkCount;
 
         /**
          * Creates with given first task and thread from ThreadFactory.
@@ -678,6 +741,120 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         }
     }
 
+    /**
+     * The tasks a worker has moved from the queue to itself in
+     * batching mode.  The owning worker refills it with drainTo, which
+     * calls add, once it is empty, and takes tasks from it in order; shutdownNow
+     * takes back whatever is left, and a worker dying of a task exception
+     * hands the batch to its replacement.  All access is
+     * synchronized on the batch, which is uncontended except in those
+     * rare cases.  The array is reused across refills, so batching
+     * allocates nothing per task.
+     */
+    static final class TaskBatch extends AbstractCollection<Runnable> {
+        private Runnable[] tasks;
+        private int head, tail;
+
+        TaskBatch(int capacity) {
+            tasks = new Runnable[Math.max(capacity, 2)];
+        }
+
+        /** Called only by drainTo, from within fill. */
+        public boolean add(Runnable r) {
+            if (tail == tasks.length)
+                tasks = Arrays.copyOf(tasks, tail << 1);
+            tasks[tail++] = r;
+            return true;
+        }
+
+        /**
+         * Moves up to max tasks from the queue to this batch, which
+         * must be empty, returning the number moved.
+         */
+        synchronized int fill(BlockingQueue<Runnable> q, int max) {
+            head = tail = 0;
+            return q.drainTo(this, max);
+        }
+
+        synchronized Runnable poll() {
+            if (head == tail)
+                return null;
+            Runnable r = tasks[head];
+            tasks[head++] = null;
+            if (head == tail)
+                head = tail = 0;
+            return r;
+        }
+
+        /** Removes all tasks, adding them to the given list. */
+        synchronized void drainTo(List<Runnable> list) {
+            for (int i = head; i < tail; ++i) {
+                list.add(tasks[i]);
+                tasks[i] = null;
+            }
+            head = tail = 0;
+        }
+
+        public synchronized int size() {
+            return tail - head;
+        }
+
+        public Iterator<Runnable> iterator() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * A queued task stamped with the time it was queued, used in place
+     * of the task itself while metrics are enabled, if the queue is
+     * FIFO.  Workers unwrap it before running the task, so hooks and
+     * the task see no difference.
+     */
+    static final class TimedTask implements Runnable {
+        final Runnable task;
+        final long queuedAt;
+
+        TimedTask(Runnable task) {
+            this.task = task;
+            this.queuedAt = System.nanoTime();
+        }
+
+        public void run() {
+            task.run();
+        }
+    }
+
+    /**
+     * Returns the task to queue for r: r itself, or r stamped with the
+     * current time if metrics are enabled and the queue is FIFO.
+     */
+    private Runnable queueable(Runnable r) {
+        return (metrics == null || !stampQueuedTasks) ? r : new TimedTask(r);
+    }
+
+    /**
+     * Returns whether q is of a class known to keep its elements in
+     * FIFO order whatever they are.  Subclasses are excluded, since
+     * they may inspect or reorder elements.
+     */
+    private static boolean isFifo(java.util.concurrent.BlockingQueue<?> q) {
+        Class<?> k = q.getClass();
+        return k == java.util.concurrent.LinkedBlockingQueue.class ||
+            k == java.util.concurrent.ArrayBlockingQueue.class ||
+            k == java.util.concurrent.LinkedBlockingDeque.class ||
+            k == java.util.concurrent.LinkedTransferQueue.class ||
+            k == LinkedBlockingQueue.class ||
+            k == util.concurrent.ArrayBlockingQueue.class ||
+            k == RingBufferBlockingQueue.class;
+    }
+
+    /**
+     * Returns the task that a queued element stands for.
+     */
+    static Runnable unwrap(Runnable r) {
+        return (r instanceof TimedTask) ? ((TimedTask) r).task : r;
+    }
+
     /*
      * Methods for setting control state
      */
@@ -843,6 +1020,9 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * Package-protected for use by ScheduledThreadPoolExecutor.
      */
     final void reject(Runnable command) {
+        ExecutorMetrics m = metrics;
+        if (m != null)
+            m.recordRejection();
         handler.rejectedExecution(command, this);
     }
 
@@ -916,6 +1096,18 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * @return true if successful
      */
     private boolean addWorker(Runnable firstTask, boolean core) {
+        return addWorker(firstTask, null, core);
+    }
+
+    /**
+     * Like addWorker(firstTask, core), but the new worker also takes
+     * over the given batch of tasks, which, like queued tasks, lets it
+     * start while the pool is shutting down.
+     *
+     * @param batch tasks already taken from the queue for the new
+     * worker to run before any others (or null if none)
+     */
+    private boolean addWorker(Runnable firstTask, TaskBatch batch, boolean core) {
         retry:
         for (;;) {
             int c = ctl.get();
@@ -925,7 +1117,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             if (rs >= SHUTDOWN &&
                 ! (rs == SHUTDOWN &&
                    firstTask == null &&
-                   ! workQueue.isEmpty()))
+                   (batch != null || ! workQueue.isEmpty())))
                 return false;
 
             for (;;) {
@@ -947,6 +1139,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         Worker w = null;
         try {
             w = new Worker(firstTask);
+            w.batch = batch;
             final Thread t = w.thread;
             if (t != null) {
                 final ReentrantLock mainLock = this.mainLock;
@@ -1028,6 +1221,20 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             mainLock.unlock();
         }
 
+        // A worker dying of a task exception may still hold a batch of
+        // tasks that have already left the queue, which may since have
+        // filled up.  Its replacement takes the batch over; if none can
+        // be started, the tasks go to the handler, and a rejection is
+        // rethrown rather than losing them silently.
+        TaskBatch b = w.batch;
+        if (b != null && !b.isEmpty()) {
+            boolean replaced = addWorker(null, b, false);
+            tryTerminate();
+            if (!replaced)
+                rejectAll(b);
+            return;
+        }
+
         tryTerminate();
 
         int c = ctl.get();
@@ -1043,6 +1250,27 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         }
     }
 
+    /**
+     * Invokes the rejected execution handler for each task in the given
+     * batch, rethrowing the first RejectedExecutionException, if any,
+     * once all have been handled.
+     */
+    private void rejectAll(TaskBatch b) {
+        RejectedExecutionException failure = null;
+        for (Runnable r; (r = b.poll()) != null; ) {
+            try {
+                reject(r);
+            } catch (RejectedExecutionException ex) {
+                if (failure == null)
+                    failure = ex;
+                else
+                    failure.addSuppressed(ex);
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+
     /**
      * Performs blocking or timed wait for a task, depending on
      * current configuration settings, or returns null if this worker
@@ -1057,13 +1285,27 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      *    both before and after the timed wait, and if the queue is
      *    non-empty, this worker is not the last thread in the pool.
      *
+     * Tasks left in the worker's batch are returned before any of
+     * these checks, since they have already left the queue; a stopping
+     * pool takes them back in shutdownNow unless the worker gets to
+     * them first.  When the batch is empty, a batching worker refills
+     * it with one drainTo, and when there is nothing to take, a worker
+     * re-checks the queue idleSpins times before blocking.
+     *
+     * @param w the worker
      * @return task, or null if the worker must exit, in which case
      *         workerCount is decremented
      */
-    private Runnable getTask() {
+    private Runnable getTask(Worker w) {
         boolean timedOut = false; // Did the last poll() time out?
 
         for (;;) {
+            // Tasks already taken from the queue run whatever the state
+            TaskBatch b = w.batch;
+            Runnable r = (b == null) ? null : b.poll();
+            if (r != null)
+                return r;
+
             int c = ctl.get();
             int rs = runStateOf(c);
 
@@ -1086,12 +1328,41 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                 continue;
             }
 
+            int batchSize = taskBatchSize;
+            if (batchSize > 1 && b == null)
+                w.batch = b = new TaskBatch(batchSize);
+
+            // Take what is there, spinning briefly if nothing is
+            int spins = idleSpins;
+            if (batchSize > 1 || spins > 0) {
+                for (;;) {
+                    if (!workQueue.isEmpty()) {
+                        if (batchSize <= 1)
+                            r = workQueue.poll();
+                        else if (b.fill(workQueue, batchSize) > 0)
+                            r = b.poll();
+                        if (r != null)
+                            return r;
+                    }
+                    if (--spins < 0)
+                        break;
+                }
+            }
+
             try {
-                Runnable r = timed ?
+                // Count only waits in an empty queue, which park; a
+                // poll or take of a queued task returns at once
+                if (workQueue.isEmpty())
+                    w.parkCount++;
+                r = timed ?
                     workQueue.poll(keepAliveTime, java.util.concurrent.TimeUnit.NANOSECONDS) :
                     workQueue.take();
-                if (r != null)
+                if (r != null) {
+                    // Having had to wait, take any tasks queued behind r
+                    if (batchSize > 1 && !workQueue.isEmpty())
+                        b.fill(workQueue, batchSize - 1);
                     return r;
+                }
                 timedOut = true;
             } catch (InterruptedException retry) {
                 timedOut = false;
@@ -1149,7 +1420,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         w.unlock(); // allow interrupts
         boolean completedAbruptly = true;
         try {
-            while (task != null || (task = getTask()) != null) {
+            while (task != null || (task = getTask(w)) != null) {
                 w.lock();
                 // If pool is stopping, ensure thread is interrupted;
                 // if not, ensure thread is not interrupted.  This
@@ -1160,9 +1431,17 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                       runStateAtLeast(ctl.get(), STOP))) &&
                     !wt.isInterrupted())
                     wt.interrupt();
+                ExecutorMetrics m = metrics;
+                if (task instanceof TimedTask) {
+                    TimedTask tt = (TimedTask) task;
+                    task = tt.task;
+                    if (m != null)
+                        m.recordQueueWait(System.nanoTime() - tt.queuedAt);
+                }
                 try {
                     beforeExecute(wt, task);
                     Throwable thrown = null;
+                    long start = (m == null) ? 0L : System.nanoTime();
                     try {
                         task.run();
                     } catch (RuntimeException x) {
@@ -1172,6 +1451,8 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                     } catch (Throwable x) {
                         thrown = x; throw new Error(x);
                     } finally {
+                        if (m != null)
+                            m.recordExecution(System.nanoTime() - start);
                         afterExecute(task, thrown);
                     }
                 } finally {
@@ -1335,6 +1616,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         this.corePoolSize = corePoolSize;
         this.maximumPoolSize = maximumPoolSize;
         this.workQueue = workQueue;
+        this.stampQueuedTasks = isFifo(workQueue);
         this.keepAliveTime = unit.toNanos(keepAliveTime);
         this.threadFactory = threadFactory;
         this.handler = handler;
@@ -1394,12 +1676,13 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             c = ctl.get();
         }
         //阻塞队列的offer()函数，如果能添加则返回true，否则返回false
-        if (isRunning(c) && workQueue.offer(command)) {
+        Runnable queued = queueable(command);
+        if (isRunning(c) && workQueue.offer(queued)) {
             int recheck = ctl.get();
             //判断线程池是否关闭，如果已经关闭，那么remove(command)
             //remove方法会将阻塞队列里面的刚刚提交的任务移除掉，前提是这个任务还没有开始运行
             //然后进行reject()操作
-            if (!isRunning(recheck) && remove(command))
+            if (!isRunning(recheck) && remove(queued))
                 reject(command);
             //计算运行数量，如果等于0
             else if (workerCountOf(recheck) == 0)
@@ -1417,6 +1700,70 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             reject(command);
     }
 
+    /**
+     * Executes the given tasks sometime in the future, as if by
+     * calling {@link #execute} for each in the collection's iteration
+     * order, but checking the pool state once for the whole group
+     * rather than once per task.  Together with a {@linkplain
+     * #setTaskBatchSize task batch size} greater than one, this lets
+     * groups of small tasks move through the pool with few queue
+     * operations.
+     *
+     * <p>Each task that cannot be accepted for execution is handled by
+     * the current {@code RejectedExecutionHandler}.  If the handler
+     * throws an exception, later tasks in the group may or may not
+     * have been accepted.
+     *
+     * @param commands the tasks to execute
+     * @throws RejectedExecutionException at discretion of
+     *         {@code RejectedExecutionHandler}, if a task
+     *         cannot be accepted for execution
+     * @throws NullPointerException if {@code commands} or any of its
+     *         elements is null
+     */
+    public void executeAll(Collection<? extends Runnable> commands) {
+        Object[] tasks = commands.toArray();
+        for (Object t : tasks)
+            if (t == null)
+                throw new NullPointerException();
+        int n = tasks.length, i = 0;
+        int c = ctl.get();
+        // As in execute: first start core threads, one per task ...
+        while (i < n && workerCountOf(c) < corePoolSize) {
+            if (!addWorker((Runnable) tasks[i], true)) {
+                c = ctl.get();
+                break;
+            }
+            ++i;
+            c = ctl.get();
+        }
+        // ... then queue as many of the rest as fit ...
+        int queued = i;
+        if (isRunning(c)) {
+            while (queued < n &&
+                   workQueue.offer((Runnable) (tasks[queued] =
+                                               queueable((Runnable) tasks[queued]))))
+                ++queued;
+        }
+        if (queued > i) {
+            int recheck = ctl.get();
+            if (!isRunning(recheck)) {
+                for (int j = i; j < queued; ++j) {
+                    Runnable r = (Runnable) tasks[j];
+                    if (remove(r))
+                        reject(unwrap(r));
+                }
+            } else if (workerCountOf(recheck) == 0)
+                addWorker(null, false);
+        }
+        // ... and start non-core threads for the overflow
+        for (int j = queued; j < n; ++j) {
+            Runnable r = unwrap((Runnable) tasks[j]);
+            if (!addWorker(r, false))
+                reject(r);
+        }
+    }
+
     /**
      * Initiates an orderly shutdown in which previously submitted
      * tasks are executed, but no new tasks will be accepted.
@@ -1468,6 +1815,13 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             advanceRunState(STOP);
             interruptWorkers();
             tasks = drainQueue();
+            for (Worker w : workers) {
+                TaskBatch b = w.batch;
+                if (b != null)
+                    b.drainTo(tasks);
+            }
+            for (ListIterator<Runnable> it = tasks.listIterator(); it.hasNext(); )
+                it.set(unwrap(it.next()));
         } finally {
             mainLock.unlock();
         }
@@ -1764,13 +2118,253 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         return unit.convert(keepAliveTime, TimeUnit.NANOSECONDS);
     }
 
+    /**
+     * Sets the maximum number of tasks a worker takes from the queue
+     * at a time.  A value greater than one enables batching: a worker
+     * that has run out of tasks moves up to this many from the queue
+     * to itself with a single {@code drainTo}, and runs them before
+     * returning to the queue.  Tasks held by a worker cannot be removed
+     * with {@link #remove(Runnable)} or {@link #purge}, and wait for
+     * that worker even when other workers are idle.  A value of one
+     * (the default) disables batching.  This overrides any value
+     * previously set, and takes effect the next time each worker
+     * returns to the queue.
+     *
+     * @param batchSize the new maximum number of tasks per batch
+     * @throws IllegalArgumentException if {@code batchSize} is less
+     *         than one
+     * @see #getTaskBatchSize
+     */
+    public void setTaskBatchSize(int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException();
+        this.taskBatchSize = batchSize;
+    }
+
+    /**
+     * Returns the maximum number of tasks a worker takes from the
+     * queue at a time.
+     *
+     * @return the maximum number of tasks per batch
+     * @see #setTaskBatchSize
+     */
+    public int getTaskBatchSize() {
+        return taskBatchSize;
+    }
+
+    /**
+     * Sets the number of times a worker that finds the queue empty
+     * re-checks it before blocking to wait for a task.  Spinning
+     * avoids parking and unparking idle workers when tasks arrive in
+     * quick succession, at the price of processor time; it is most
+     * effective with queues whose {@code isEmpty} does not lock, such
+     * as {@link LinkedBlockingQueue} and {@link RingBufferBlockingQueue}.
+     * The default is zero.
+     *
+     * @param spins the new number of re-checks
+     * @throws IllegalArgumentException if {@code spins} is negative
+     * @see #getIdleSpins
+     */
+    public void setIdleSpins(int spins) {
+        if (spins < 0)
+            throw new IllegalArgumentException();
+        this.idleSpins = spins;
+    }
+
+    /**
+     * Returns the number of times a worker re-checks an empty queue
+     * before blocking.
+     *
+     * @return the number of re-checks
+     * @see #setIdleSpins
+     */
+    public int getIdleSpins() {
+        return idleSpins;
+    }
+
+    /**
+     * Starts recording {@linkplain ExecutorMetrics metrics} for this
+     * executor, if not already doing so, and returns them.  Queue waits
+     * are recorded only if the queue is a {@link LinkedBlockingQueue},
+     * {@link ArrayBlockingQueue}, {@link
+     * java.util.concurrent.LinkedBlockingDeque}, {@link
+     * java.util.concurrent.LinkedTransferQueue} or {@link
+     * RingBufferBlockingQueue}, of exactly that class: while metrics are
+     * enabled, tasks queued by {@code execute} are then held in the
+     * queue stamped with the time they were queued, so elements of
+     * {@link #getQueue()} are not the tasks themselves; {@link
+     * #remove(Runnable)}, {@link #purge} and {@link #shutdownNow} allow
+     * for this.  Tasks in other queues, such as a {@link
+     * java.util.concurrent.PriorityBlockingQueue}, which compares its
+     * elements, are queued as they are.
+     *
+     * @return the metrics being recorded
+     * @see #disableMetrics
+     */
+    public ExecutorMetrics enableMetrics() {
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            ExecutorMetrics m = metrics;
+            if (m == null)
+                metrics = m = new ExecutorMetrics(this);
+            return m;
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * Stops recording metrics for this executor.  The metrics recorded
+     * so far remain available from the object returned by {@link
+     * #enableMetrics}; enabling metrics again starts a new one.
+     */
+    public void disableMetrics() {
+        metrics = null;
+    }
+
+    /**
+     * Returns the metrics being recorded for this executor.
+     *
+     * @return the metrics being recorded, or {@code null} if not enabled
+     * @see #enableMetrics
+     */
+    public ExecutorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Starts sizing this executor adaptively, replacing any sizer
+     * already enabled, with samples taken every 100 milliseconds.
+     * Equivalent to {@link #enableAdaptiveSizing(int, int, long, long,
+     * TimeUnit) enableAdaptiveSizing(minThreads, maxThreads,
+     * targetQueueWait, unit.convert(100, MILLISECONDS), unit)}.
+     *
+     * @param minThreads the least core pool size to set
+     * @param maxThreads the greatest core pool size to set, and the
+     *        maximum pool size
+     * @param targetQueueWait the time tasks should wait in the queue
+     *        at most, on average
+     * @param unit the time unit of the targetQueueWait argument
+     * @return the sizer
+     * @throws IllegalArgumentException if {@code minThreads < 0},
+     *         {@code maxThreads <= 0}, {@code maxThreads < minThreads},
+     *         or {@code targetQueueWait <= 0}
+     * @throws NullPointerException if {@code unit} is null
+     */
+    public AdaptivePoolSizer enableAdaptiveSizing(int minThreads,
+                                                  int maxThreads,
+                                                  long targetQueueWait,
+                                                  TimeUnit unit) {
+        return enableAdaptiveSizing(minThreads, maxThreads, targetQueueWait,
+                                    unit.convert(100L, TimeUnit.MILLISECONDS),
+                                    unit);
+    }
+
+    /**
+     * Starts sizing this executor adaptively, replacing any sizer
+     * already enabled.  The {@linkplain AdaptivePoolSizer sizer}
+     * enables {@linkplain #enableMetrics metrics}, brings the core
+     * pool size within the given bounds and sets the maximum pool size
+     * to {@code maxThreads}, and then sets the core pool size on every
+     * sample, until this executor is shut down or {@link
+     * #disableAdaptiveSizing} is called.
+     *
+     * @param minThreads the least core pool size to set
+     * @param maxThreads the greatest core pool size to set, and the
+     *        maximum pool size
+     * @param targetQueueWait the time tasks should wait in the queue
+     *        at most, on average
+     * @param samplingInterval the time between samples
+     * @param unit the time unit of the targetQueueWait and
+     *        samplingInterval arguments
+     * @return the sizer
+     * @throws IllegalArgumentException if {@code minThreads < 0},
+     *         {@code maxThreads <= 0}, {@code maxThreads < minThreads},
+     *         {@code targetQueueWait <= 0} or {@code samplingInterval <= 0}
+     * @throws NullPointerException if {@code unit} is null
+     */
+    public AdaptivePoolSizer enableAdaptiveSizing(int minThreads,
+                                                  int maxThreads,
+                                                  long targetQueueWait,
+                                                  long samplingInterval,
+                                                  TimeUnit unit) {
+        if (minThreads < 0 || maxThreads <= 0 || maxThreads < minThreads ||
+            targetQueueWait <= 0L || samplingInterval <= 0L)
+            throw new IllegalArgumentException();
+        AdaptivePoolSizer s = new AdaptivePoolSizer
+            (this, minThreads, maxThreads, unit.toNanos(targetQueueWait),
+             unit.toNanos(samplingInterval));
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            AdaptivePoolSizer prev = sizer;
+            if (prev != null)
+                prev.stop();
+            sizer = s;
+            s.start();
+        } finally {
+            mainLock.unlock();
+        }
+        return s;
+    }
+
+    /**
+     * Stops sizing this executor adaptively, leaving its pool sizes
+     * as last set.
+     */
+    public void disableAdaptiveSizing() {
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            AdaptivePoolSizer s = sizer;
+            if (s != null) {
+                s.stop();
+                sizer = null;
+            }
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the sizer adjusting this executor's pool size.
+     *
+     * @return the sizer, or {@code null} if not enabled
+     * @see #enableAdaptiveSizing(int, int, long, TimeUnit)
+     */
+    public AdaptivePoolSizer getAdaptivePoolSizer() {
+        return sizer;
+    }
+
+    /**
+     * Returns, for each worker, the number of times it has found the
+     * queue empty and blocked waiting for a task.  Used by
+     * ExecutorMetrics.
+     */
+    final long[] workerParkCounts() {
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            long[] counts = new long[workers.size()];
+            int i = 0;
+            for (Worker w : workers)
+                counts[i++] = w.parkCount;
+            return counts;
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
     /* User-level queue utilities */
 
     /**
      * Returns the task queue used by this executor. Access to the
      * task queue is intended primarily for debugging and monitoring.
      * This queue may be in active use.  Retrieving the task queue
-     * does not prevent queued tasks from executing.
+     * does not prevent queued tasks from executing.  While {@linkplain
+     * #enableMetrics metrics} are enabled, a FIFO queue may hold
+     * wrappers of the tasks submitted rather than the tasks themselves.
      *
      * @return the task queue
      */
@@ -1796,6 +2390,17 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      */
     public boolean remove(Runnable task) {
         boolean removed = workQueue.remove(task);
+        if (!removed && task != null && !(task instanceof TimedTask)) {
+            // It may have been queued stamped, while metrics were enabled
+            for (Iterator<Runnable> it = workQueue.iterator(); it.hasNext(); ) {
+                Runnable r = it.next();
+                if (r instanceof TimedTask && ((TimedTask) r).task == task) {
+                    it.remove();
+                    removed = true;
+                    break;
+                }
+            }
+        }
         tryTerminate(); // In case SHUTDOWN and now empty
         return removed;
     }
@@ -1815,7 +2420,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         try {
             Iterator<Runnable> it = q.iterator();
             while (it.hasNext()) {
-                Runnable r = it.next();
+                Runnable r = unwrap(it.next());
                 if (r instanceof java.util.concurrent.Future<?> && ((java.util.concurrent.Future<?>)r).isCancelled())
                     it.remove();
             }
@@ -1823,9 +2428,11 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             // Take slow path if we encounter interference during traversal.
             // Make copy for traversal and call remove for cancelled entries.
             // The slow path is more likely to be O(N*N).
-            for (Object r : q.toArray())
+            for (Object e : q.toArray()) {
+                Runnable r = unwrap((Runnable) e);
                 if (r instanceof java.util.concurrent.Future<?> && ((Future<?>)r).isCancelled())
-                    q.remove(r);
+                    q.remove(e);
+            }
         }
 
         tryTerminate(); // In case SHUTDOWN and now empty
@@ -1904,6 +2511,9 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                 n += w.completedTasks;
                 if (w.isLocked())
                     ++n;
+                TaskBatch b = w.batch;
+                if (b != null)
+                    n += b.size();
             }
             return n + workQueue.size();
         } finally {
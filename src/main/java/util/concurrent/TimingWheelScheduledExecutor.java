@@ -0,0 +1,1141 @@
+package util.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * A {@link ScheduledExecutorService} that keeps delayed tasks in
+ * hierarchical hashed timing wheels, one per worker thread, rather than
+ * in a single priority queue.  Scheduling and cancelling a delayed task
+ * take constant time however many tasks are pending, which suits uses
+ * such as connection and request timeouts, where very many tasks are
+ * scheduled and almost all are cancelled before they expire.
+ *
+ * <p>Time is divided into <em>ticks</em> of a fixed duration, one
+ * millisecond unless given to the constructor.  A task runs no earlier
+ * than its delay and, when a worker is free, normally within one tick
+ * of it; tasks due within the same tick run in no particular order.
+ * Tasks submitted through the {@code execute} and {@code submit}
+ * methods, and those scheduled with a delay of zero or less, bypass
+ * the wheels and run as soon as a worker is free.
+ *
+ * <p>Each worker owns a wheel and a queue of ready tasks.  A task
+ * scheduled from a worker thread, including each new period of a
+ * periodic task, goes straight into that worker's wheel; a task
+ * scheduled from any other thread is handed to a worker through a
+ * lock-free inbox.  Workers advance their wheels in batches, moving
+ * every task that has expired since the last advance to their ready
+ * queues in one pass.  A worker that runs out of ready tasks steals
+ * them from the others, and advances the wheels of workers busy
+ * running long tasks, so that their expired tasks are not held up.
+ *
+ * <p>This class behaves like a {@link ScheduledThreadPoolExecutor}
+ * with a fixed number of threads and default policies: after {@link
+ * #shutdown}, pending delayed tasks still run but periodic tasks are
+ * cancelled.  Worker threads are started on the first submission.
+ *
+ * <dl>
+ * <dt>Wheel structure</dt>
+ *
+ * <dd>Each wheel has {@value #LEVELS} levels of 64 slots.  A slot of
+ * level {@code n} spans 64<sup>n</sup> ticks, so that the levels
+ * together cover any {@code long} delay.  A task is linked into the
+ * slot of the lowest level whose range covers its remaining delay, and
+ * tasks in a slot of a higher level are redistributed to lower levels
+ * when the wheel reaches that slot, as in the timer wheels of operating
+ * system kernels.  Each level keeps a bit mask of its non-empty slots,
+ * so that a wheel finds the next tick with work in time proportional to
+ * the number of levels, and idle periods cost nothing.</dd>
+ * </dl>
+ *
+ * @see ScheduledThreadPoolExecutor
+ */
+public class TimingWheelScheduledExecutor extends AbstractExecutorService
+        implements ScheduledExecutorService {
+
+    /*
+     * Overview:
+     *
+     * Each wheel is guarded by its worker's lock, which the owner
+     * takes only to add tasks scheduled from its own thread and to
+     * advance the wheel, and which idle workers take with tryLock to
+     * help.  Other threads never block on it: they push new tasks and
+     * cancellations onto the worker's inbox, a Treiber stack linked
+     * through the tasks themselves, and the wheel's holder drains it.
+     * A task's inboxState guards against pushing it twice.  Cancelling
+     * a task unlinks it at once when the lock is free, and otherwise
+     * leaves the unlinking to the next drain, so cancelled tasks do not
+     * stay in a wheel until their deadline.
+     *
+     * Workers publish the next tick at which their wheel has work in
+     * nextTick, and before parking the tick they will wake at in
+     * wakeTick.  A worker parks until the earliest nextTick of all
+     * workers, so that timers of a busy worker are still expired on
+     * time by an idle one.  Threads that hand a worker an earlier task
+     * unpark it, or if it is running, an idle worker that would sleep
+     * past the task.  Parking uses the usual Dekker-style recheck:
+     * workers set parked and then recheck their sources of work, and
+     * signallers publish work and then read parked.
+     *
+     * Workers exit after shutdown once their own wheel, inbox and
+     * ready queue are empty, setting exited and rechecking.  A thread
+     * that hands a task to a worker rechecks exited afterwards and
+     * cancels and rejects the task if the worker has gone.
+     */
+
+    /** The number of bits of a tick index per wheel level */
+    static final int WHEEL_BITS = 6;
+    static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    /** The number of wheel levels, enough for any long tick */
+    static final int LEVELS = 11;
+
+    // Run states
+    private static final int RUNNING    = 0;
+    private static final int SHUTDOWN   = 1;
+    private static final int STOP       = 2;
+    private static final int TERMINATED = 3;
+
+    private final AtomicInteger runState = new AtomicInteger(RUNNING);
+
+    /** The duration of a tick in nanoseconds */
+    private final long tickNanos;
+
+    /** The time of tick zero */
+    private final long origin;
+
+    private final ThreadFactory threadFactory;
+
+    private final Worker[] workers;
+
+    /** The worker run by the current thread, if any */
+    private final ThreadLocal<Worker> currentWorker = new ThreadLocal<>();
+
+    /** Whether workers have been started, guarded by this */
+    private boolean started;
+
+    /** The number of started workers that have not exited */
+    private final AtomicInteger liveWorkers = new AtomicInteger();
+
+    private final CountDownLatch termination = new CountDownLatch(1);
+
+    /** Sequence number to break scheduling ties */
+    private static final AtomicLong sequencer = new AtomicLong();
+
+    /**
+     * Creates a new executor with the given number of threads, a tick
+     * of one millisecond and the default thread factory.
+     *
+     * @param parallelism the number of worker threads
+     * @throws IllegalArgumentException if {@code parallelism <= 0}
+     */
+    public TimingWheelScheduledExecutor(int parallelism) {
+        this(parallelism, 1L, TimeUnit.MILLISECONDS,
+             Executors.defaultThreadFactory());
+    }
+
+    /**
+     * Creates a new executor with the given number of threads and
+     * thread factory and a tick of one millisecond.
+     *
+     * @param parallelism the number of worker threads
+     * @param threadFactory the factory to use when the executor
+     *        creates a new thread
+     * @throws IllegalArgumentException if {@code parallelism <= 0}
+     * @throws NullPointerException if {@code threadFactory} is null
+     */
+    public TimingWheelScheduledExecutor(int parallelism,
+                                        ThreadFactory threadFactory) {
+        this(parallelism, 1L, TimeUnit.MILLISECONDS, threadFactory);
+    }
+
+    /**
+     * Creates a new executor with the given number of threads, tick
+     * duration and thread factory.
+     *
+     * @param parallelism the number of worker threads
+     * @param tickDuration the duration of a tick, the resolution with
+     *        which delayed tasks are run
+     * @param unit the time unit of the {@code tickDuration} argument
+     * @param threadFactory the factory to use when the executor
+     *        creates a new thread
+     * @throws IllegalArgumentException if {@code parallelism <= 0} or
+     *         {@code tickDuration <= 0}
+     * @throws NullPointerException if {@code unit} or
+     *         {@code threadFactory} is null
+     */
+    public TimingWheelScheduledExecutor(int parallelism,
+                                        long tickDuration,
+                                        TimeUnit unit,
+                                        ThreadFactory threadFactory) {
+        if (unit == null || threadFactory == null)
+            throw new NullPointerException();
+        if (parallelism <= 0 || tickDuration <= 0)
+            throw new IllegalArgumentException();
+        this.tickNanos = Math.max(1L, unit.toNanos(tickDuration));
+        this.threadFactory = threadFactory;
+        this.workers = new Worker[parallelism];
+        for (int i = 0; i < parallelism; ++i)
+            workers[i] = new Worker();
+        this.origin = System.nanoTime();
+    }
+
+    /**
+     * Returns the tick at or after the given time.
+     */
+    final long tickAtOrAfter(long nanos) {
+        long d = nanos - origin;
+        return (d <= 0L) ? 0L : (d - 1L) / tickNanos + 1L;
+    }
+
+    /**
+     * Returns the tick containing the given time.
+     */
+    final long tickOf(long nanos) {
+        long d = nanos - origin;
+        return (d <= 0L) ? 0L : d / tickNanos;
+    }
+
+    /**
+     * Returns the trigger time of a delayed action, kept within
+     * Long.MAX_VALUE >> 1 of now so that differences cannot overflow.
+     */
+    private static long triggerTime(long delay, TimeUnit unit) {
+        long d = unit.toNanos((delay < 0) ? 0 : delay);
+        return System.nanoTime() + Math.min(d, Long.MAX_VALUE >> 1);
+    }
+
+    /**
+     * A delayed or periodic task.  The wheel links, slot and tick are
+     * guarded by the lock of the owning worker.
+     */
+    final class TimerTask<V> extends FutureTask<V>
+            implements RunnableScheduledFuture<V> {
+
+        /** Sequence number to break ties */
+        final long sequenceNumber;
+
+        /** The time the task is enabled to execute, in nanoTime units */
+        volatile long time;
+
+        /**
+         * Period in nanoseconds for repeating tasks.  A positive value
+         * indicates fixed-rate execution, a negative value fixed-delay
+         * execution and zero a non-repeating task.
+         */
+        final long period;
+
+        /** The tick at which the task expires */
+        long tick;
+
+        /** The index of the task's slot in its wheel, or -1 if none */
+        int slot = -1;
+
+        TimerTask<?> prev, next;
+
+        /** The worker whose wheel holds, or will hold, the task */
+        volatile Worker owner;
+
+        /** Link in the owner's inbox */
+        TimerTask<?> inboxNext;
+
+        /** 1 while the task is in an inbox, else 0 */
+        volatile int inboxState;
+
+        TimerTask(Runnable r, V result, long time, long period) {
+            super(r, result);
+            this.time = time;
+            this.period = period;
+            this.sequenceNumber = sequencer.getAndIncrement();
+        }
+
+        TimerTask(Callable<V> callable, long time) {
+            super(callable);
+            this.time = time;
+            this.period = 0L;
+            this.sequenceNumber = sequencer.getAndIncrement();
+        }
+
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - System.nanoTime(), NANOSECONDS);
+        }
+
+        public int compareTo(Delayed other) {
+            if (other == this) // compare zero if same object
+                return 0;
+            if (other instanceof TimingWheelScheduledExecutor.TimerTask) {
+                TimerTask<?> x = (TimerTask<?>)other;
+                long diff = time - x.time;
+                if (diff < 0)
+                    return -1;
+                else if (diff > 0)
+                    return 1;
+                else if (sequenceNumber < x.sequenceNumber)
+                    return -1;
+                else
+                    return 1;
+            }
+            long diff = getDelay(NANOSECONDS) - other.getDelay(NANOSECONDS);
+            return (diff < 0) ? -1 : (diff > 0) ? 1 : 0;
+        }
+
+        public boolean isPeriodic() {
+            return period != 0L;
+        }
+
+        /**
+         * Runs a periodic task once, returning true if it should run
+         * again, after setting its next run time.
+         */
+        boolean runPeriodic() {
+            if (!runAndReset())
+                return false;
+            long p = period;
+            if (p > 0L)
+                time += p;
+            else
+                time = triggerTime(-p, NANOSECONDS);
+            return true;
+        }
+
+        /**
+         * Cancels the task and removes it from its wheel, at once if
+         * the wheel's lock is free and otherwise at the owner's next
+         * drain of its inbox.
+         */
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            Worker w;
+            if (cancelled && (w = owner) != null)
+                w.cancelled(this);
+            return cancelled;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static final AtomicIntegerFieldUpdater<TimerTask<?>> INBOX_STATE =
+        AtomicIntegerFieldUpdater.newUpdater(
+            (Class<TimerTask<?>>) (Class<?>) TimerTask.class, "inboxState");
+
+    /**
+     * A worker thread with its wheel, inbox and ready queue.
+     */
+    final class Worker implements Runnable {
+        Thread thread;
+
+        /** Guards the wheel */
+        final ReentrantLock lock = new ReentrantLock();
+
+        /** Heads of the slot lists, level by level */
+        final TimerTask<?>[] slots = new TimerTask<?>[LEVELS << WHEEL_BITS];
+
+        /** Bit masks of the non-empty slots of each level */
+        final long[] occupied = new long[LEVELS];
+
+        /** The next tick to process */
+        long tick;
+
+        /** The number of tasks in the wheel */
+        int size;
+
+        /** True once periodic tasks have been cancelled after shutdown */
+        boolean periodicCancelled;
+
+        /** The next tick at which the wheel has work, or Long.MAX_VALUE */
+        volatile long nextTick = Long.MAX_VALUE;
+
+        /** The tick at which the worker will wake while parked */
+        volatile long wakeTick;
+
+        volatile boolean parked;
+
+        volatile boolean exited;
+
+        /** Tasks scheduled or cancelled by other threads */
+        final AtomicReference<TimerTask<?>> inbox = new AtomicReference<>();
+
+        /** Tasks ready to run, stealable by other workers */
+        final ConcurrentLinkedQueue<Runnable> ready =
+            new ConcurrentLinkedQueue<>();
+
+        // Wheel operations, called with lock held
+
+        /**
+         * Links a task into the wheel, or adds it to the ready queue if
+         * its tick has already been processed.
+         */
+        void insert(TimerTask<?> t) {
+            long delta = t.tick - tick;
+            if (delta < 0L) {
+                ready.add(t);
+                return;
+            }
+            int level = (delta < WHEEL_SIZE) ? 0 :
+                (63 - Long.numberOfLeadingZeros(delta)) / WHEEL_BITS;
+            int s = (int) (t.tick >>> (level * WHEEL_BITS)) & WHEEL_MASK;
+            int i = (level << WHEEL_BITS) | s;
+            TimerTask<?> h = slots[i];
+            t.prev = null;
+            t.next = h;
+            if (h != null)
+                h.prev = t;
+            slots[i] = t;
+            t.slot = i;
+            occupied[level] |= 1L << s;
+            ++size;
+        }
+
+        void unlink(TimerTask<?> t) {
+            int i = t.slot;
+            TimerTask<?> p = t.prev, n = t.next;
+            if (p == null)
+                slots[i] = n;
+            else
+                p.next = n;
+            if (n != null)
+                n.prev = p;
+            if (slots[i] == null)
+                occupied[i >>> WHEEL_BITS] &= ~(1L << (i & WHEEL_MASK));
+            t.prev = t.next = null;
+            t.slot = -1;
+            --size;
+        }
+
+        /**
+         * Unlinks and returns the list in slot i.
+         */
+        TimerTask<?> takeSlot(int i) {
+            TimerTask<?> h = slots[i];
+            slots[i] = null;
+            occupied[i >>> WHEEL_BITS] &= ~(1L << (i & WHEEL_MASK));
+            return h;
+        }
+
+        /**
+         * Returns the next tick at or after the current one at which
+         * the wheel has tasks to expire or redistribute.
+         */
+        long nextEventTick() {
+            long t = tick, next = Long.MAX_VALUE;
+            long bits = occupied[0];
+            if (bits != 0L) {
+                int cur = (int) t & WHEEL_MASK;
+                next = t + Long.numberOfTrailingZeros(Long.rotateRight(bits, cur));
+            }
+            for (int level = 1; level < LEVELS; ++level) {
+                if ((bits = occupied[level]) == 0L)
+                    continue;
+                // The current slot is still due if t starts its span
+                int shift = level * WHEEL_BITS;
+                long base = t >>> shift;
+                int from = (int) base & WHEEL_MASK;
+                int k = ((base << shift) == t) ? 0 : 1;
+                k += Long.numberOfTrailingZeros(Long.rotateRight(bits, from + k));
+                long c = (base + k) << shift;
+                if (c >= t && c < next) // c < t only on overflow
+                    next = c;
+            }
+            return next;
+        }
+
+        /**
+         * Processes all ticks up to and including the given one,
+         * moving expired tasks to the ready queue.
+         */
+        void advance(long nowTick) {
+            for (long t; (t = nextEventTick()) <= nowTick; ) {
+                tick = t;
+                if ((t & WHEEL_MASK) == 0L) {
+                    for (int level = 1; level < LEVELS; ++level) {
+                        int shift = level * WHEEL_BITS;
+                        int idx = (int) (t >>> shift) & WHEEL_MASK;
+                        for (TimerTask<?> p = takeSlot((level << WHEEL_BITS) | idx),
+                                 n; p != null; p = n) {
+                            n = p.next;
+                            p.prev = p.next = null;
+                            p.slot = -1;
+                            --size;
+                            insert(p);
+                        }
+                        if (idx != 0)
+                            break;
+                    }
+                }
+                for (TimerTask<?> p = takeSlot((int) t & WHEEL_MASK), n;
+                     p != null; p = n) {
+                    n = p.next;
+                    p.prev = p.next = null;
+                    p.slot = -1;
+                    --size;
+                    if (!p.isCancelled())
+                        ready.add(p);
+                }
+                tick = t + 1L;
+            }
+            if (tick <= nowTick)
+                tick = nowTick + 1L;
+        }
+
+        /**
+         * Adds the tasks scheduled by other threads to the wheel, and
+         * unlinks those cancelled since.
+         */
+        void drainInbox() {
+            TimerTask<?> t = inbox.getAndSet(null);
+            while (t != null) {
+                TimerTask<?> n = t.inboxNext;
+                t.inboxNext = null;
+                t.inboxState = 0;
+                if (t.isCancelled()) {
+                    if (t.slot >= 0 && t.owner == this)
+                        unlink(t);
+                } else if (t.slot < 0 && !t.isDone()) {
+                    if (t.isPeriodic() && runState.get() != RUNNING)
+                        t.cancel(false);
+                    else
+                        insert(t);
+                }
+                t = n;
+            }
+        }
+
+        void publish() {
+            nextTick = nextEventTick();
+        }
+
+        /**
+         * Drains the inbox and advances the wheel if either has work.
+         * Returns false if another worker holds the wheel.
+         */
+        boolean poll(long nowTick, boolean wait) {
+            if (inbox.get() == null && nextTick > nowTick &&
+                !(wait && !periodicCancelled && runState.get() != RUNNING))
+                return true;
+            if (wait)
+                lock.lock();
+            else if (!lock.tryLock())
+                return false;
+            try {
+                drainInbox();
+                if (wait && runState.get() != RUNNING && !periodicCancelled) {
+                    periodicCancelled = true;
+                    cancelPeriodic();
+                }
+                advance(nowTick);
+                publish();
+            } finally {
+                lock.unlock();
+            }
+            return true;
+        }
+
+        void cancelPeriodic() {
+            for (int i = 0; i < slots.length; ++i) {
+                for (TimerTask<?> p = slots[i], n; p != null; p = n) {
+                    n = p.next;
+                    if (p.isPeriodic()) {
+                        unlink(p);
+                        p.cancel(false);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Removes all tasks, adding those not cancelled to the list.
+         */
+        void drainTo(List<Runnable> list) {
+            lock.lock();
+            try {
+                for (TimerTask<?> t = inbox.getAndSet(null), n; t != null; t = n) {
+                    n = t.inboxNext;
+                    t.inboxNext = null;
+                    t.inboxState = 0;
+                    if (t.slot < 0 && !t.isDone())
+                        list.add(t);
+                }
+                for (int i = 0; i < slots.length; ++i) {
+                    for (TimerTask<?> p = takeSlot(i), n; p != null; p = n) {
+                        n = p.next;
+                        p.prev = p.next = null;
+                        p.slot = -1;
+                        if (!p.isCancelled())
+                            list.add(p);
+                    }
+                }
+                size = 0;
+                publish();
+            } finally {
+                lock.unlock();
+            }
+            for (Runnable r; (r = ready.poll()) != null; )
+                list.add(r);
+        }
+
+        // Scheduling, called by any thread
+
+        void cancelled(TimerTask<?> t) {
+            if (lock.tryLock()) {
+                try {
+                    if (t.slot >= 0 && t.owner == this) {
+                        unlink(t);
+                        publish();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            } else if (INBOX_STATE.compareAndSet(t, 0, 1)) {
+                push(t);
+            }
+        }
+
+        void push(TimerTask<?> t) {
+            for (TimerTask<?> h;;) {
+                t.inboxNext = h = inbox.get();
+                if (inbox.compareAndSet(h, t))
+                    break;
+            }
+        }
+
+        /**
+         * Adds a task scheduled by the worker's own thread.
+         */
+        void addLocal(TimerTask<?> t) {
+            lock.lock();
+            try {
+                insert(t);
+                if (t.isCancelled() && t.slot >= 0)
+                    unlink(t);
+                publish();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Hands a task scheduled by another thread to this worker,
+         * returning false if the worker has exited.
+         */
+        boolean addRemote(TimerTask<?> t) {
+            t.owner = this;
+            t.inboxState = 1;
+            push(t);
+            signalTimer(this, t.tick);
+            return !exited;
+        }
+
+        // Running
+
+        public void run() {
+            currentWorker.set(this);
+            try {
+                runWorker();
+            } finally {
+                currentWorker.remove();
+                workerExited();
+            }
+        }
+
+        void runWorker() {
+            for (;;) {
+                int rs = runState.get();
+                if (rs >= STOP)
+                    return;
+                long nowTick = tickOf(System.nanoTime());
+                poll(nowTick, true);
+                Runnable r = ready.poll();
+                if (r == null)
+                    r = help(nowTick);
+                if (r != null) {
+                    runTask(r);
+                    continue;
+                }
+                if (rs != RUNNING && isEmpty()) {
+                    exited = true;
+                    if (inbox.get() == null && ready.isEmpty())
+                        return;
+                    exited = false;
+                    continue;
+                }
+                await();
+            }
+        }
+
+        boolean isEmpty() {
+            lock.lock();
+            try {
+                return size == 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Advances the wheels of other workers with work due and tries
+         * to steal a ready task from each.
+         */
+        Runnable help(long nowTick) {
+            Worker[] ws = workers;
+            int n = ws.length;
+            int origin = (n > 1) ? ThreadLocalRandom.current().nextInt(n) : 0;
+            for (int k = 0; k < n; ++k) {
+                Worker v = ws[(origin + k) % n];
+                if (v == this)
+                    continue;
+                v.poll(nowTick, false);
+                Runnable r = v.ready.poll();
+                if (r != null)
+                    return r;
+            }
+            return null;
+        }
+
+        void runTask(Runnable r) {
+            if (r instanceof TimingWheelScheduledExecutor.TimerTask) {
+                TimerTask<?> t = (TimerTask<?>) r;
+                if (!t.isPeriodic())
+                    t.run();
+                else if (runState.get() != RUNNING)
+                    t.cancel(false);
+                else if (t.runPeriodic()) {
+                    t.tick = tickAtOrAfter(t.time);
+                    t.owner = this;
+                    if (runState.get() == RUNNING)
+                        addLocal(t);
+                    else
+                        t.cancel(false);
+                }
+            } else {
+                r.run();
+            }
+            if (runState.get() < STOP)
+                Thread.interrupted();
+        }
+
+        /**
+         * Parks until the earliest tick at which any wheel has work,
+         * or until signalled.
+         */
+        void await() {
+            Worker[] ws = workers;
+            long wake = Long.MAX_VALUE;
+            for (Worker v : ws)
+                wake = Math.min(wake, v.nextTick);
+            wakeTick = wake;
+            parked = true;
+            try {
+                for (Worker v : ws) {
+                    if (v.inbox.get() != null || !v.ready.isEmpty() ||
+                        v.nextTick < wake)
+                        return;
+                }
+                if (!periodicCancelled && runState.get() != RUNNING)
+                    return;
+                long now = System.nanoTime();
+                if (wake == Long.MAX_VALUE)
+                    LockSupport.park(this);
+                else if (wake - tickOf(now) >= (Long.MAX_VALUE >> 1) / tickNanos)
+                    LockSupport.parkNanos(this, Long.MAX_VALUE >> 1);
+                else {
+                    long nanos = origin + wake * tickNanos - now;
+                    if (nanos > 0L)
+                        LockSupport.parkNanos(this, nanos);
+                }
+            } finally {
+                parked = false;
+            }
+        }
+    }
+
+    /**
+     * Wakes a worker to handle a task due at the given tick that was
+     * handed to the given worker: the worker itself if parked past the
+     * tick, or if it is running, another worker parked past it.
+     */
+    final void signalTimer(Worker w, long tick) {
+        if (w.parked) {
+            if (tick < w.wakeTick)
+                LockSupport.unpark(w.thread);
+            return;
+        }
+        for (Worker v : workers) {
+            if (v.parked && tick < v.wakeTick) {
+                LockSupport.unpark(v.thread);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Wakes a parked worker, preferring the given one, to run a task
+     * added to its ready queue.
+     */
+    final void signalWork(Worker w) {
+        if (w.parked) {
+            LockSupport.unpark(w.thread);
+            return;
+        }
+        for (Worker v : workers) {
+            if (v.parked) {
+                LockSupport.unpark(v.thread);
+                return;
+            }
+        }
+    }
+
+    private void startWorkers() {
+        synchronized (this) {
+            if (started)
+                return;
+            started = true;
+            if (runState.get() != RUNNING)
+                return;
+            liveWorkers.set(workers.length);
+            for (Worker w : workers) {
+                Thread t = threadFactory.newThread(w);
+                if (t == null) {
+                    workerExited();
+                    continue;
+                }
+                w.thread = t;
+            }
+            for (Worker w : workers) {
+                if (w.thread != null)
+                    w.thread.start();
+            }
+        }
+    }
+
+    private void workerExited() {
+        if (liveWorkers.decrementAndGet() == 0)
+            terminate();
+    }
+
+    private void terminate() {
+        runState.set(TERMINATED);
+        termination.countDown();
+        terminated();
+    }
+
+    /**
+     * Method invoked when the executor has terminated.  Default
+     * implementation does nothing.
+     */
+    protected void terminated() { }
+
+    private void reject(Runnable task) {
+        throw new RejectedExecutionException("Task " + task.toString() +
+                                             " rejected from " +
+                                             toString());
+    }
+
+    /**
+     * Main execution method for delayed or periodic tasks.
+     */
+    private void delayedExecute(TimerTask<?> t) {
+        if (runState.get() != RUNNING)
+            reject(t);
+        if (!started)
+            startWorkers();
+        Worker self = currentWorker.get();
+        long nowTick = tickOf(System.nanoTime());
+        t.tick = tickAtOrAfter(t.time);
+        if (t.tick <= nowTick) {
+            Worker w = (self != null) ? self : pick();
+            t.owner = w;
+            w.ready.add(t);
+            signalWork(w);
+            if (w.exited && w.ready.remove(t))
+                reject(t);
+        } else if (self != null) {
+            t.owner = self;
+            self.addLocal(t);
+        } else if (!pick().addRemote(t) && t.cancel(false)) {
+            reject(t);
+        }
+    }
+
+    private Worker pick() {
+        Worker[] ws = workers;
+        return ws[(ws.length == 1) ? 0 :
+                  ThreadLocalRandom.current().nextInt(ws.length)];
+    }
+
+    /**
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     */
+    public ScheduledFuture<?> schedule(Runnable command,
+                                       long delay,
+                                       TimeUnit unit) {
+        if (command == null || unit == null)
+            throw new NullPointerException();
+        TimerTask<Void> t = new TimerTask<Void>(command, null,
+                                                triggerTime(delay, unit), 0L);
+        delayedExecute(t);
+        return t;
+    }
+
+    /**
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     */
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable,
+                                           long delay,
+                                           TimeUnit unit) {
+        if (callable == null || unit == null)
+            throw new NullPointerException();
+        TimerTask<V> t = new TimerTask<V>(callable, triggerTime(delay, unit));
+        delayedExecute(t);
+        return t;
+    }
+
+    /**
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     * @throws IllegalArgumentException   {@inheritDoc}
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command,
+                                                  long initialDelay,
+                                                  long period,
+                                                  TimeUnit unit) {
+        if (command == null || unit == null)
+            throw new NullPointerException();
+        if (period <= 0)
+            throw new IllegalArgumentException();
+        TimerTask<Void> t =
+            new TimerTask<Void>(command, null,
+                                triggerTime(initialDelay, unit),
+                                unit.toNanos(period));
+        delayedExecute(t);
+        return t;
+    }
+
+    /**
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     * @throws IllegalArgumentException   {@inheritDoc}
+     */
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command,
+                                                     long initialDelay,
+                                                     long delay,
+                                                     TimeUnit unit) {
+        if (command == null || unit == null)
+            throw new NullPointerException();
+        if (delay <= 0)
+            throw new IllegalArgumentException();
+        TimerTask<Void> t =
+            new TimerTask<Void>(command, null,
+                                triggerTime(initialDelay, unit),
+                                unit.toNanos(-delay));
+        delayedExecute(t);
+        return t;
+    }
+
+    /**
+     * Executes {@code command} with zero required delay.
+     *
+     * @throws RejectedExecutionException at discretion of
+     *         {@code RejectedExecutionHandler}, if the task
+     *         cannot be accepted for execution because the
+     *         executor has been shut down
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public void execute(Runnable command) {
+        schedule(command, 0, NANOSECONDS);
+    }
+
+    /**
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     */
+    public Future<?> submit(Runnable task) {
+        return schedule(task, 0, NANOSECONDS);
+    }
+
+    /**
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     */
+    public <T> Future<T> submit(Runnable task, T result) {
+        return schedule(Executors.callable(task, result), 0, NANOSECONDS);
+    }
+
+    /**
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        return schedule(task, 0, NANOSECONDS);
+    }
+
+    /**
+     * Initiates an orderly shutdown in which previously submitted
+     * tasks are executed, but no new tasks will be accepted.  Delayed
+     * tasks still run at their scheduled times, while periodic tasks
+     * are cancelled.  Invocation has no additional effect if already
+     * shut down.
+     *
+     * <p>This method does not wait for previously submitted tasks to
+     * complete execution.  Use {@link #awaitTermination awaitTermination}
+     * to do that.
+     */
+    public void shutdown() {
+        if (!runState.compareAndSet(RUNNING, SHUTDOWN))
+            return;
+        if (!startedOrTerminate())
+            return;
+        for (Worker w : workers)
+            LockSupport.unpark(w.thread);
+    }
+
+    /**
+     * Attempts to stop all actively executing tasks, halts the
+     * processing of waiting tasks, and returns a list of the tasks
+     * that were awaiting execution.
+     *
+     * <p>There are no guarantees beyond best-effort attempts to stop
+     * processing actively executing tasks.  This implementation
+     * cancels tasks via {@link Thread#interrupt}, so any task that
+     * fails to respond to interrupts may never terminate.
+     *
+     * @return list of tasks that never commenced execution.
+     *         Each element of this list is a {@link ScheduledFuture}.
+     *         For tasks submitted via one of the {@code schedule}
+     *         methods, the element will be identical to the returned
+     *         {@code ScheduledFuture}.  For tasks submitted using
+     *         {@link #execute execute}, the element will be a
+     *         zero-delay {@code ScheduledFuture}.
+     */
+    public List<Runnable> shutdownNow() {
+        for (int rs; (rs = runState.get()) < STOP; ) {
+            if (runState.compareAndSet(rs, STOP))
+                break;
+        }
+        List<Runnable> tasks = new ArrayList<>();
+        if (!startedOrTerminate())
+            return tasks;
+        for (Worker w : workers) {
+            Thread t = w.thread;
+            if (t != null) {
+                try {
+                    t.interrupt();
+                } catch (SecurityException ignore) {
+                }
+            }
+        }
+        for (Worker w : workers)
+            w.drainTo(tasks);
+        return tasks;
+    }
+
+    /**
+     * Returns true if workers were started, and otherwise prevents
+     * them starting and terminates.
+     */
+    private boolean startedOrTerminate() {
+        synchronized (this) {
+            if (started)
+                return true;
+            started = true;
+        }
+        for (Worker w : workers)
+            w.exited = true;
+        terminate();
+        return false;
+    }
+
+    public boolean isShutdown() {
+        return runState.get() != RUNNING;
+    }
+
+    public boolean isTerminated() {
+        return runState.get() == TERMINATED;
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+        throws InterruptedException {
+        return termination.await(timeout, unit);
+    }
+
+    /**
+     * Returns the number of worker threads.
+     *
+     * @return the number of worker threads
+     */
+    public int getParallelism() {
+        return workers.length;
+    }
+
+    /**
+     * Returns the duration of a tick.
+     *
+     * @param unit the desired time unit
+     * @return the duration of a tick
+     */
+    public long getTickDuration(TimeUnit unit) {
+        return unit.convert(tickNanos, NANOSECONDS);
+    }
+
+    /**
+     * Returns an estimate of the number of delayed tasks held in the
+     * workers' wheels and the number of tasks ready to run.  Tasks
+     * handed to a worker but not yet added to its wheel are not
+     * counted.
+     *
+     * @return the number of pending tasks
+     */
+    public long getPendingTaskCount() {
+        long n = 0L;
+        for (Worker w : workers) {
+            w.lock.lock();
+            try {
+                n += w.size;
+            } finally {
+                w.lock.unlock();
+            }
+            n += w.ready.size();
+        }
+        return n;
+    }
+
+    /**
+     * Returns a string identifying this executor, as well as its
+     * state, including indications of run state and parallelism.
+     *
+     * @return a string identifying this executor, as well as its state
+     */
+    public String toString() {
+        int rs = runState.get();
+        String s = (rs == RUNNING) ? "Running" :
+            (rs == TERMINATED) ? "Terminated" : "Shutting down";
+        return super.toString() +
+            "[" + s +
+            ", parallelism = " + workers.length +
+            ", tick = " + tickNanos + "ns]";
+    }
+}
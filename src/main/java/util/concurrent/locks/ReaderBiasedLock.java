@@ -0,0 +1,696 @@
+package util.concurrent.locks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A read-write lock for read-mostly data, built on a {@link
+ * StampedLock} with reader counts striped across cells, one per
+ * processor, so that readers on different processors do not contend
+ * on a shared lock word.
+ *
+ * <p>The lock starts out <em>read-biased</em>.  While biased, a
+ * reader acquires the lock by incrementing one of the cells, chosen by
+ * hashing the current thread, and releases it by decrementing the same
+ * cell; the stamp it gets back identifies the cell.  A writer first
+ * acquires the underlying {@code StampedLock} in write mode, which
+ * blocks readers that do not hold the bias, and then <em>revokes</em>
+ * the bias and waits until every cell is zero.  Revocation makes
+ * writes more expensive, so after one the lock stays unbiased, with
+ * reads going through the {@code StampedLock}, for a period
+ * proportional to the time the writer spent waiting for readers.  The
+ * first read after that period restores the bias.  Under a workload
+ * of frequent writes the lock therefore behaves like a plain {@code
+ * StampedLock}, and under a read-mostly one reads scale with the
+ * number of processors.
+ *
+ * <p>Like {@code StampedLock}, this class provides stamp-based
+ * reading, writing and optimistic reading, and {@link Lock} views
+ * through {@link #asReadLock()}, {@link #asWriteLock()} and {@link
+ * #asReadWriteLock()}.  Optimistic read stamps are those of the
+ * underlying {@code StampedLock}; they are validated by any write and
+ * need not touch the cells at all.  Locks are not reentrant, except
+ * that a thread may acquire the read lock view more than once, and
+ * stamps cannot be converted between modes.  Acquiring the read lock
+ * view costs a {@link ThreadLocal} lookup, which the view needs to
+ * count the thread's holds; holds after the first are taken on a cell
+ * whether or not the lock is biased, so that a waiting writer cannot
+ * block them.
+ *
+ * <p>Like those of {@link java.util.concurrent.atomic.LongAdder}, the
+ * cells are padded against false sharing.  A thread starts at the cell
+ * chosen by a hash of its id and moves on to others only while it
+ * finds cells contended.  The cells are updated through field updaters
+ * and the underlying lock is the platform {@code StampedLock}, so the
+ * class needs no access to {@code sun.misc.Unsafe}.
+ *
+ * @see StampedLock
+ */
+public class ReaderBiasedLock {
+
+    /*
+     * The reader fast path follows the BRAVO design (Dice and Kogan,
+     * "BRAVO -- Biased Locking for Reader-Writer Locks").  A reader
+     * CASes its cell and then re-reads readBias; a writer clears
+     * readBias and then reads every cell.  All four accesses are
+     * volatile, so either the reader sees the bias revoked, undoes
+     * its increment and takes the slow path, or the writer sees the
+     * reader's count and waits for it.  Writers wait for the cells to
+     * drain even when the bias is already revoked, since a tryWriteLock
+     * may have revoked it and then given up while readers remained.
+     * Readers always decrement the
+     * cell they incremented, so no cell is ever negative and a
+     * writer's scan cannot miss a reader that holds the lock.
+     *
+     * Bias is restored only by slow-path readers, which hold the
+     * StampedLock in read mode and so cannot race with a revoking
+     * writer.
+     */
+
+    /** Number of processors, to size the cells */
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /** Spins before yielding while waiting for readers to drain */
+    private static final int SPINS = (NCPU > 1) ? 1 << 6 : 0;
+
+    /**
+     * The length of the unbiased period after a revocation, as a
+     * multiple of the time the writer waited for readers.
+     */
+    private static final int INHIBIT_MULTIPLIER = 9;
+
+    /** The bit marking stamps of biased reads */
+    private static final long BIASED = Long.MIN_VALUE;
+
+    /*
+     * Reader counts are padded on both sides, as Striped64 cells are
+     * by @Contended, which is only honoured for JDK classes.
+     * Superclass fields are laid out before subclass fields, so the
+     * value sits on a cache line of its own.
+     */
+
+    static class LhsPadding {
+        long p00, p01, p02, p03, p04, p05, p06, p07;
+    }
+
+    static class CellValue extends LhsPadding {
+        volatile long value;
+    }
+
+    /**
+     * Padded reader count.
+     */
+    static final class Cell extends CellValue {
+        long p10, p11, p12, p13, p14, p15, p16, p17;
+
+        private static final AtomicLongFieldUpdater<CellValue> VALUE =
+            AtomicLongFieldUpdater.newUpdater(CellValue.class, "value");
+
+        final boolean cas(long cmp, long val) {
+            return VALUE.compareAndSet(this, cmp, val);
+        }
+        final long getAndAdd(long x) {
+            return VALUE.getAndAdd(this, x);
+        }
+    }
+
+    /**
+     * A thread's holds of the read lock view: count holds in all, of
+     * which the first is of the underlying lock if underlying is set,
+     * and the others are on the given cell.
+     */
+    static final class ReadHolds {
+        int cell;
+        int count;
+        boolean underlying;
+    }
+
+    /** The underlying lock */
+    private final StampedLock lock = new StampedLock();
+
+    /** Reader counts; length is a power of two */
+    private final Cell[] cells;
+
+    /** True while readers may use the cells */
+    private volatile boolean readBias = true;
+
+    /** The nanoTime before which readers must not restore the bias */
+    private volatile long inhibitUntil;
+
+    /** Holds of the read lock view, per thread */
+    private final ThreadLocal<ReadHolds> readHolds =
+        new ThreadLocal<ReadHolds>() {
+            protected ReadHolds initialValue() {
+                return new ReadHolds();
+            }
+        };
+
+    // views
+    ReadLockView readLockView;
+    WriteLockView writeLockView;
+    ReadWriteLockView readWriteLockView;
+
+    /**
+     * Creates a new lock, initially unlocked and read-biased.
+     */
+    public ReaderBiasedLock() {
+        int n = 1;
+        while (n < NCPU)
+            n <<= 1;
+        Cell[] cs = new Cell[n];
+        for (int i = 0; i < n; ++i)
+            cs[i] = new Cell();
+        cells = cs;
+    }
+
+    // Biased reads
+
+    /**
+     * Increments the cell chosen by the current thread's hash if the
+     * lock is biased, returning a biased stamp, or zero if not biased.
+     */
+    private long tryBiasedRead() {
+        if (!readBias)
+            return 0L;
+        int h = threadHash();
+        Cell[] cs = cells;
+        int m = cs.length - 1;
+        Cell c;
+        for (long v;;) {
+            c = cs[h & m];
+            if (c.cas(v = c.value, v + 1L))
+                break;
+            h = advanceHash(h);
+        }
+        if (readBias)
+            return BIASED | (h & m);
+        c.getAndAdd(-1L);
+        return 0L;
+    }
+
+    /**
+     * Restores the bias, if the period since the last revocation has
+     * passed, on behalf of a reader holding the underlying read lock.
+     */
+    private long biasAfterRead(long stamp) {
+        if (stamp != 0L && !readBias &&
+            System.nanoTime() - inhibitUntil >= 0L)
+            readBias = true;
+        return stamp;
+    }
+
+    /**
+     * Releases a biased read, throwing if the stamp is not one.
+     */
+    private void unlockBiasedRead(long stamp) {
+        long i = stamp & ~BIASED;
+        Cell[] cs = cells;
+        if (i >= cs.length || cs[(int) i].value <= 0L)
+            throw new IllegalMonitorStateException();
+        cs[(int) i].getAndAdd(-1L);
+    }
+
+    // Writes
+
+    /**
+     * Revokes the bias on behalf of a writer holding the underlying
+     * write lock, and waits for biased readers to leave.  Readers may
+     * remain even if the bias was already revoked, when a tryWriteLock
+     * gave up waiting for them.
+     */
+    private long revokeBias(long stamp) {
+        if (stamp != 0L) {
+            boolean revoke = readBias;
+            if (revoke)
+                readBias = false;
+            long start = System.nanoTime();
+            for (Cell c : cells) {
+                for (int spins = SPINS; c.value != 0L; ) {
+                    if (spins > 0)
+                        --spins;
+                    else
+                        Thread.yield();
+                }
+            }
+            if (revoke) {
+                long now = System.nanoTime();
+                inhibitUntil = now + (now - start) * INHIBIT_MULTIPLIER;
+            }
+        }
+        return stamp;
+    }
+
+    /** Returns true if no biased reader holds the lock. */
+    private boolean noBiasedReaders() {
+        for (Cell c : cells) {
+            if (c.value != 0L)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Exclusively acquires the lock, blocking if necessary until
+     * available, and revoking the read bias if it is in effect.
+     *
+     * @return a stamp that can be used to unlock
+     */
+    public long writeLock() {
+        return revokeBias(lock.writeLock());
+    }
+
+    /**
+     * Exclusively acquires the lock if it is immediately available.
+     * If the lock is read-biased, the bias is revoked, and the lock
+     * is available only if no reader holds it.
+     *
+     * @return a stamp that can be used to unlock, or zero if the lock
+     * is not available
+     */
+    public long tryWriteLock() {
+        long s = lock.tryWriteLock();
+        if (s != 0L) {
+            if (readBias) {
+                readBias = false;
+                inhibitUntil = System.nanoTime();
+            }
+            if (!noBiasedReaders()) {
+                lock.unlockWrite(s);
+                return 0L;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Exclusively acquires the lock if it is available within the
+     * given time and the current thread has not been interrupted.
+     * Behavior under timeout and interruption matches that specified
+     * for method {@link Lock#tryLock(long,TimeUnit)}, except that
+     * revoking the read bias may wait beyond the timeout for biased
+     * readers to release the lock.
+     *
+     * @param time the maximum time to wait for the lock
+     * @param unit the time unit of the {@code time} argument
+     * @return a stamp that can be used to unlock, or zero if the lock
+     * is not available
+     * @throws InterruptedException if the current thread is interrupted
+     * before acquiring the lock
+     */
+    public long tryWriteLock(long time, TimeUnit unit)
+        throws InterruptedException {
+        return revokeBias(lock.tryWriteLock(time, unit));
+    }
+
+    /**
+     * Exclusively acquires the lock, blocking if necessary until
+     * available or the current thread is interrupted.  Behavior under
+     * interruption matches that specified for method {@link
+     * Lock#lockInterruptibly()}.
+     *
+     * @return a stamp that can be used to unlock
+     * @throws InterruptedException if the current thread is interrupted
+     * before acquiring the lock
+     */
+    public long writeLockInterruptibly() throws InterruptedException {
+        return revokeBias(lock.writeLockInterruptibly());
+    }
+
+    // Reads
+
+    /**
+     * Non-exclusively acquires the lock, blocking if necessary until
+     * available.
+     *
+     * @return a stamp that can be used to unlock
+     */
+    public long readLock() {
+        long s;
+        return ((s = tryBiasedRead()) != 0L) ? s :
+            biasAfterRead(lock.readLock());
+    }
+
+    /**
+     * Non-exclusively acquires the lock if it is immediately available.
+     *
+     * @return a stamp that can be used to unlock, or zero if the lock
+     * is not available
+     */
+    public long tryReadLock() {
+        long s;
+        return ((s = tryBiasedRead()) != 0L) ? s :
+            biasAfterRead(lock.tryReadLock());
+    }
+
+    /**
+     * Non-exclusively acquires the lock if it is available within the
+     * given time and the current thread has not been interrupted.
+     * Behavior under timeout and interruption matches that specified
+     * for method {@link Lock#tryLock(long,TimeUnit)}.
+     *
+     * @param time the maximum time to wait for the lock
+     * @param unit the time unit of the {@code time} argument
+     * @return a stamp that can be used to unlock, or zero if the lock
+     * is not available
+     * @throws InterruptedException if the current thread is interrupted
+     * before acquiring the lock
+     */
+    public long tryReadLock(long time, TimeUnit unit)
+        throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        long s;
+        return ((s = tryBiasedRead()) != 0L) ? s :
+            biasAfterRead(lock.tryReadLock(time, unit));
+    }
+
+    /**
+     * Non-exclusively acquires the lock, blocking if necessary until
+     * available or the current thread is interrupted.  Behavior under
+     * interruption matches that specified for method {@link
+     * Lock#lockInterruptibly()}.
+     *
+     * @return a stamp that can be used to unlock
+     * @throws InterruptedException if the current thread is interrupted
+     * before acquiring the lock
+     */
+    public long readLockInterruptibly() throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        long s;
+        return ((s = tryBiasedRead()) != 0L) ? s :
+            biasAfterRead(lock.readLockInterruptibly());
+    }
+
+    /**
+     * Returns a stamp that can later be validated, or zero if
+     * exclusively locked.
+     *
+     * @return a stamp, or zero if exclusively locked
+     */
+    public long tryOptimisticRead() {
+        return lock.tryOptimisticRead();
+    }
+
+    /**
+     * Returns true if the lock has not been exclusively acquired
+     * since issuance of the given stamp.  Always returns false if the
+     * stamp is zero.  Always returns true if the stamp represents a
+     * currently held lock.
+     *
+     * @param stamp a stamp
+     * @return {@code true} if the lock has not been exclusively
+     * acquired since issuance of the given stamp; else false
+     */
+    public boolean validate(long stamp) {
+        return (stamp < 0L) || lock.validate(stamp);
+    }
+
+    // Release
+
+    /**
+     * If the lock state matches the given stamp, releases the
+     * exclusive lock.
+     *
+     * @param stamp a stamp returned by a write-lock operation
+     * @throws IllegalMonitorStateException if the stamp does
+     * not match the current state of this lock
+     */
+    public void unlockWrite(long stamp) {
+        if (stamp < 0L)
+            throw new IllegalMonitorStateException();
+        lock.unlockWrite(stamp);
+    }
+
+    /**
+     * If the lock state matches the given stamp, releases the
+     * non-exclusive lock.
+     *
+     * @param stamp a stamp returned by a read-lock operation
+     * @throws IllegalMonitorStateException if the stamp does
+     * not match the current state of this lock
+     */
+    public void unlockRead(long stamp) {
+        if (stamp < 0L)
+            unlockBiasedRead(stamp);
+        else
+            lock.unlockRead(stamp);
+    }
+
+    /**
+     * If the lock state matches the given stamp, releases the
+     * corresponding mode of the lock.
+     *
+     * @param stamp a stamp returned by a lock operation
+     * @throws IllegalMonitorStateException if the stamp does
+     * not match the current state of this lock
+     */
+    public void unlock(long stamp) {
+        if (stamp < 0L)
+            unlockBiasedRead(stamp);
+        else
+            lock.unlock(stamp);
+    }
+
+    // status monitoring methods
+
+    /**
+     * Returns {@code true} if the lock is currently held exclusively.
+     *
+     * @return {@code true} if the lock is currently held exclusively
+     */
+    public boolean isWriteLocked() {
+        return lock.isWriteLocked();
+    }
+
+    /**
+     * Returns {@code true} if the lock is currently held
+     * non-exclusively.
+     *
+     * @return {@code true} if the lock is currently held non-exclusively
+     */
+    public boolean isReadLocked() {
+        return lock.isReadLocked() || !noBiasedReaders();
+    }
+
+    /**
+     * Returns {@code true} if readers currently acquire the lock
+     * through the striped cells.
+     *
+     * @return {@code true} if the lock is read-biased
+     */
+    public boolean isReadBiased() {
+        return readBias;
+    }
+
+    /**
+     * Queries the number of read locks held for this lock.  This
+     * method is designed for use in monitoring system state, not for
+     * synchronization control.
+     *
+     * @return the number of read locks held
+     */
+    public int getReadLockCount() {
+        long n = lock.getReadLockCount();
+        for (Cell c : cells)
+            n += c.value;
+        return (int) Math.min(n, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns a string identifying this lock, as well as its lock
+     * state.  The state, in brackets, includes the String {@code
+     * "Unlocked"} or the String {@code "Write-locked"} or the String
+     * {@code "Read-locks:"} followed by the current number of
+     * read-locks held, and whether the lock is read-biased.
+     *
+     * @return a string identifying this lock, as well as its lock state
+     */
+    public String toString() {
+        int r;
+        String s = isWriteLocked() ? "[Write-locked" :
+            ((r = getReadLockCount()) == 0) ? "[Unlocked" :
+            "[Read-locks:" + r;
+        return super.toString() + s +
+            (readBias ? ", read-biased]" : "]");
+    }
+
+    // views
+
+    /**
+     * Returns a plain {@link Lock} view of this lock in which the
+     * {@link Lock#lock} method is mapped to {@link #readLock}, and
+     * similarly for other methods.  A thread may hold the view more
+     * than once, and must release it from the thread that acquired
+     * it.  The returned Lock does not support a {@link Condition};
+     * method {@link Lock#newCondition()} throws {@code
+     * UnsupportedOperationException}.
+     *
+     * @return the lock
+     */
+    public Lock asReadLock() {
+        ReadLockView v;
+        return ((v = readLockView) != null ? v :
+                (readLockView = new ReadLockView()));
+    }
+
+    /**
+     * Returns a plain {@link Lock} view of this lock in which the
+     * {@link Lock#lock} method is mapped to {@link #writeLock}, and
+     * similarly for other methods.  The returned Lock does not
+     * support a {@link Condition}; method {@link
+     * Lock#newCondition()} throws {@code
+     * UnsupportedOperationException}.
+     *
+     * @return the lock
+     */
+    public Lock asWriteLock() {
+        WriteLockView v;
+        return ((v = writeLockView) != null ? v :
+                (writeLockView = new WriteLockView()));
+    }
+
+    /**
+     * Returns a {@link ReadWriteLock} view of this lock in which the
+     * {@link ReadWriteLock#readLock()} method is mapped to {@link
+     * #asReadLock()}, and {@link ReadWriteLock#writeLock()} to {@link
+     * #asWriteLock()}.
+     *
+     * @return the lock
+     */
+    public ReadWriteLock asReadWriteLock() {
+        ReadWriteLockView v;
+        return ((v = readWriteLockView) != null ? v :
+                (readWriteLockView = new ReadWriteLockView()));
+    }
+
+    /**
+     * Records a read view acquisition with the given stamp, returning
+     * true if it succeeded.
+     */
+    private boolean viewAcquired(ReadHolds h, long s) {
+        if (s == 0L)
+            return false;
+        if (s < 0L) {
+            h.cell = (int) (s & ~BIASED);
+            h.underlying = false;
+        } else {
+            h.cell = threadHash() & (cells.length - 1);
+            h.underlying = true;
+        }
+        h.count = 1;
+        return true;
+    }
+
+    /**
+     * Acquires another hold for a thread that already has one, on its
+     * cell.  A writer cannot get past the first hold, whether biased
+     * or of the underlying lock, so this needs no check of the bias,
+     * and cannot queue behind a waiting writer as a second read of the
+     * underlying lock would; a writer that gets the lock afterwards
+     * waits for the cell to drain.
+     */
+    private boolean viewReacquired(ReadHolds h) {
+        if (h.count > 0) {
+            cells[h.cell].getAndAdd(1L);
+            ++h.count;
+            return true;
+        }
+        return false;
+    }
+
+    final class ReadLockView implements Lock {
+        public void lock() {
+            ReadHolds h = readHolds.get();
+            if (!viewReacquired(h))
+                viewAcquired(h, readLock());
+        }
+        public void lockInterruptibly() throws InterruptedException {
+            ReadHolds h = readHolds.get();
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            if (!viewReacquired(h))
+                viewAcquired(h, readLockInterruptibly());
+        }
+        public boolean tryLock() {
+            ReadHolds h = readHolds.get();
+            return viewReacquired(h) || viewAcquired(h, tryReadLock());
+        }
+        public boolean tryLock(long time, TimeUnit unit)
+            throws InterruptedException {
+            ReadHolds h = readHolds.get();
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            return viewReacquired(h) ||
+                viewAcquired(h, tryReadLock(time, unit));
+        }
+        public void unlock() {
+            ReadHolds h = readHolds.get();
+            if (h.count > 0) {
+                if (--h.count == 0 && h.underlying) {
+                    h.underlying = false;
+                    if (!lock.tryUnlockRead())
+                        throw new IllegalMonitorStateException();
+                }
+                else
+                    cells[h.cell].getAndAdd(-1L);
+            }
+            else if (!lock.tryUnlockRead())
+                throw new IllegalMonitorStateException();
+        }
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    final class WriteLockView implements Lock {
+        public void lock() { writeLock(); }
+        public void lockInterruptibly() throws InterruptedException {
+            writeLockInterruptibly();
+        }
+        public boolean tryLock() { return tryWriteLock() != 0L; }
+        public boolean tryLock(long time, TimeUnit unit)
+            throws InterruptedException {
+            return tryWriteLock(time, unit) != 0L;
+        }
+        public void unlock() {
+            if (!lock.tryUnlockWrite())
+                throw new IllegalMonitorStateException();
+        }
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    final class ReadWriteLockView implements ReadWriteLock {
+        public Lock readLock() { return asReadLock(); }
+        public Lock writeLock() { return asWriteLock(); }
+    }
+
+    /**
+     * Returns a non-zero hash of the current thread's id, spread so
+     * that threads with consecutive ids start on different cells.
+     */
+    static final int threadHash() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9e3779b9;
+        h ^= h >>> 16;
+        return (h == 0) ? 1 : h;
+    }
+
+    /**
+     * Pseudo-randomly advances the given non-zero hash, to move a
+     * reader off a contended cell.  Unlike the probe of
+     * ThreadLocalRandom, the result is not recorded for the thread.
+     */
+    static final int advanceHash(int h) {
+        h ^= h << 13;   // xorshift
+        h ^= h >>> 17;
+        h ^= h << 5;
+        return h;
+    }
+}
@@ -0,0 +1,33 @@
+package util.function;
+
+import java.util.function.BiConsumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Represents an operation that accepts an {@code int}-valued and an
+ * object-valued argument, and returns no result.  This is the
+ * {@code (int, reference)} specialization of
+ * {@link java.util.function.BiConsumer}, typically used to visit the
+ * mappings of an {@code int}-keyed map without boxing the keys.
+ * Unlike most other functional interfaces, {@code IntObjConsumer} is
+ * expected to operate via side-effects.
+ *
+ * <p>This is a <a href="package-summary.html">functional interface</a>
+ * whose functional method is {@link #accept(int, Object)}.
+ *
+ * @param <T> the type of the object argument to the operation
+ *
+ * @see BiConsumer
+ * @see ObjIntConsumer
+ */
+@FunctionalInterface
+public interface IntObjConsumer<T> {
+
+    /**
+     * Performs this operation on the given arguments.
+     *
+     * @param value the first input argument
+     * @param t the second input argument
+     */
+    void accept(int value, T t);
+}
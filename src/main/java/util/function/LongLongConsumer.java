@@ -0,0 +1,30 @@
+package util.function;
+
+import java.util.function.BiConsumer;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Represents an operation that accepts two {@code long}-valued arguments,
+ * and returns no result.  This is the {@code (long, long)} specialization
+ * of {@link java.util.function.BiConsumer}, typically used to visit the
+ * mappings of a {@code long}-keyed, {@code long}-valued map without boxing.
+ * Unlike most other functional interfaces, {@code LongLongConsumer} is
+ * expected to operate via side-effects.
+ *
+ * <p>This is a <a href="package-summary.html">functional interface</a>
+ * whose functional method is {@link #accept(long, long)}.
+ *
+ * @see BiConsumer
+ * @see ObjLongConsumer
+ */
+@FunctionalInterface
+public interface LongLongConsumer {
+
+    /**
+     * Performs this operation on the given arguments.
+     *
+     * @param key the first input argument
+     * @param value the second input argument
+     */
+    void accept(long key, long value);
+}
@@ -25,18 +25,18 @@
 package util.stream;
 
 import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.Objects;
 import java.util.Set;
 import java.util.Spliterator;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.IntFunction;
 import java.util.stream.*;
 import java.util.stream.ForEachOps;
 import java.util.stream.Node;
 import java.util.stream.Nodes;
-import java.util.stream.ReduceOps;
 import java.util.stream.Sink;
 import java.util.stream.TerminalOp;
 
@@ -48,8 +48,19 @@ import java.util.stream.TerminalOp;
  */
 final class DistinctOps {
 
+    /** The fewest elements per block of a parallel ordered distinct */
+    static final int MIN_BLOCK_SIZE = 1 << 12;
+
     private DistinctOps() { }
 
+    /**
+     * Returns the start of block {@code b} of {@code blocks} equal blocks
+     * of {@code n} elements.
+     */
+    static int blockStart(int b, int blocks, int n) {
+        return (int) ((long) n * b / blocks);
+    }
+
     /**
      * Appends a "distinct" operation to the provided stream, and returns the
      * new stream.
@@ -62,13 +73,63 @@ final class DistinctOps {
         return new ReferencePipeline.StatefulOp<T, T>(upstream, StreamShape.REFERENCE,
                                                       StreamOpFlag.IS_DISTINCT | StreamOpFlag.NOT_SIZED) {
 
-            <P_IN> java.util.stream.Node<T> reduce(PipelineHelper<T> helper, Spliterator<P_IN> spliterator) {
+            /**
+             * Parallel ordered distinct.  The elements are collected into
+             * an array, then the index of the first occurrence of each
+             * distinct element is recorded in a shared map, by blocks of
+             * the array in parallel, keeping the least index where blocks
+             * race.  Finally each block is compacted, in parallel, to the
+             * elements at their first occurrence, and the compacted
+             * blocks are concatenated.  This avoids building and merging
+             * a {@code LinkedHashSet} per leaf, which merges serially
+             * along the spine of the computation.
+             */
+            <P_IN> java.util.stream.Node<T> reduce(PipelineHelper<T> helper, Spliterator<P_IN> spliterator,
+                                                   IntFunction<T[]> generator) {
                 // If the stream is SORTED then it should also be ORDERED so the following will also
                 // preserve the sort order
-                java.util.stream.TerminalOp<T, LinkedHashSet<T>> reduceOp
-                        = java.util.stream.ReduceOps.<T, LinkedHashSet<T>>makeRef(LinkedHashSet::new, LinkedHashSet::add,
-                                                                 LinkedHashSet::addAll);
-                return java.util.stream.Nodes.node(reduceOp.evaluateParallel(helper, spliterator));
+                T[] data = helper.evaluate(spliterator, true, generator).asArray(generator);
+                int n = data.length;
+                int blocks = Math.min(ForkJoinPool.getCommonPoolParallelism() << 2,
+                                      Math.max(1, n / MIN_BLOCK_SIZE));
+                ConcurrentHashMap<T, Integer> first = new ConcurrentHashMap<>();
+                // Holder of null state since ConcurrentHashMap does not support null keys
+                AtomicInteger firstNull = new AtomicInteger(Integer.MAX_VALUE);
+                RangeTask.forEach(blocks, b -> {
+                    for (int i = blockStart(b, blocks, n), end = blockStart(b + 1, blocks, n); i < end; i++) {
+                        T t = data[i];
+                        if (t == null) {
+                            if (i < firstNull.get())
+                                firstNull.accumulateAndGet(i, Math::min);
+                        }
+                        else {
+                            Integer prev = first.putIfAbsent(t, i);
+                            if (prev != null && i < prev)
+                                first.merge(t, i, Math::min);
+                        }
+                    }
+                });
+
+                int[] counts = new int[blocks];
+                RangeTask.forEach(blocks, b -> {
+                    int start = blockStart(b, blocks, n), m = start;
+                    for (int i = start, end = blockStart(b + 1, blocks, n); i < end; i++) {
+                        T t = data[i];
+                        if ((t == null) ? firstNull.get() == i : first.get(t) == i)
+                            data[m++] = t;
+                    }
+                    counts[b] = m - start;
+                });
+                int[] offsets = new int[blocks];
+                int size = 0;
+                for (int b = 0; b < blocks; b++) {
+                    offsets[b] = size;
+                    size += counts[b];
+                }
+                T[] out = generator.apply(size);
+                RangeTask.forEach(blocks, b ->
+                        System.arraycopy(data, blockStart(b, blocks, n), out, offsets[b], counts[b]));
+                return java.util.stream.Nodes.node(out);
             }
 
             @Override
@@ -80,7 +141,7 @@ final class DistinctOps {
                     return helper.evaluate(spliterator, false, generator);
                 }
                 else if (StreamOpFlag.ORDERED.isKnown(helper.getStreamAndOpFlags())) {
-                    return reduce(helper, spliterator);
+                    return reduce(helper, spliterator, generator);
                 }
                 else {
                     // Holder of null state since ConcurrentHashMap does not support null values
@@ -114,7 +175,9 @@ final class DistinctOps {
                 }
                 else if (StreamOpFlag.ORDERED.isKnown(helper.getStreamAndOpFlags())) {
                     // Not lazy, barrier required to preserve order
-                    return reduce(helper, spliterator).spliterator();
+                    @SuppressWarnings("unchecked")
+                    IntFunction<T[]> generator = size -> (T[]) new Object[size];
+                    return reduce(helper, spliterator, generator).spliterator();
                 }
                 else {
                     // Lazy
@@ -496,6 +496,13 @@ abstract class DoublePipeline<E_IN>
         return evaluate(java.util.stream.ReduceOps.makeDouble(supplier, accumulator, operator));
     }
 
+    // Collection with a PrimitiveCollector from util.stream.DoubleStream
+
+    public final <A, R> R collect(PrimitiveCollector.OfDouble<A, R> collector) {
+        return collector.finisher().apply(
+                collect(collector.supplier(), collector.accumulator(), collector.combiner()));
+    }
+
     @Override
     public final boolean anyMatch(DoublePredicate predicate) {
         return evaluate(java.util.stream.MatchOps.makeDouble(predicate, java.util.stream.MatchOps.MatchKind.ANY));
@@ -460,6 +460,27 @@ public interface DoubleStream extends BaseStream<Double, DoubleStream> {
                   ObjDoubleConsumer<R> accumulator,
                   BiConsumer<R, R> combiner);
 
+    /**
+     * Performs a <a href="package-summary.html#MutableReduction">mutable
+     * reduction</a> operation on the elements of this stream using a
+     * {@code PrimitiveCollector}, which encapsulates the functions used as
+     * arguments to {@link #collect(Supplier, ObjDoubleConsumer, BiConsumer)} and a
+     * finishing transformation.  Unlike collecting the {@link #boxed()}
+     * stream with a {@code Collector}, this passes each element to the
+     * collector unboxed.
+     *
+     * <p>This is a <a href="package-summary.html#StreamOps">terminal
+     * operation</a>.
+     *
+     * @param <A> the intermediate accumulation type of the collector
+     * @param <R> the type of the result
+     * @param collector the {@code PrimitiveCollector} describing the reduction
+     * @return the result of the reduction
+     * @see #collect(Supplier, ObjDoubleConsumer, BiConsumer)
+     * @see PrimitiveCollectors
+     */
+    <A, R> R collect(PrimitiveCollector.OfDouble<A, R> collector);
+
     /**
      * Returns the sum of elements in this stream.
      *
@@ -0,0 +1,683 @@
+package util.stream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Implementations of {@link java.util.stream.Collector} for inputs too
+ * large to hold in memory, which spill elements to temporary files once
+ * a memory budget is reached and stream the results back from them.
+ *
+ * <p>Each collector holds up to a given number of elements, its budget,
+ * in each of its result containers (one per leaf of a parallel
+ * evaluation).  When a container reaches its budget, its elements are
+ * written, with Java serialization, to a new file in the collector's
+ * directory, through a {@link FileChannel}.  The elements must
+ * therefore be {@link java.io.Serializable}, and in the case of
+ * {@link #groupingBy groupingBy} the classifier must return equal keys
+ * for an element before and after its round trip through a file.  Files
+ * are named with the prefix {@code stream-spill}.
+ *
+ * <p>The result of each collector is a sequential {@code Stream}, which
+ * reads back the spilled elements as it is traversed.  A spill file is
+ * deleted once the stream has read all it needs from it, and all
+ * remaining files are deleted when the stream is closed, so a stream
+ * that may not be traversed to the end should be closed, for example
+ * with a try-with-resources statement:
+ * <pre>{@code
+ *     try (Stream<Record> sorted = records.collect(
+ *              ExternalCollectors.sorting(byTimestamp, 1_000_000))) {
+ *         sorted.forEach(out::write);
+ *     }
+ * }</pre>
+ * Files written by a collection that fails, or whose result is never
+ * traversed or closed, are not deleted.
+ *
+ * <p>Reading or writing a file may throw {@link UncheckedIOException},
+ * either from the collection or from the traversal of the result.
+ *
+ * @see Collectors
+ */
+public final class ExternalCollectors {
+
+    /** The most runs merged at once; more are first merged in groups */
+    static final int MAX_MERGE_WIDTH = 64;
+
+    /** The number of partitions of a spilled {@code groupingBy} */
+    static final int GROUPING_PARTITIONS = 64;
+
+    /** The number of objects written between resets of an object stream */
+    static final int RESET_INTERVAL = 1024;
+
+    /** The size of the buffers of streams over spill files */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private ExternalCollectors() { }
+
+    /**
+     * Returns a {@code Collector} that accumulates the input elements,
+     * spilling them to files in the default temporary-file directory, into
+     * a {@code Stream} of the elements in encounter order.  This is the
+     * external-memory counterpart of {@link Collectors#toList()}.
+     *
+     * @param <T> the type of the input elements
+     * @param budget the most elements held in memory per result container
+     * @return a {@code Collector} which collects all the input elements
+     *         into a {@code Stream}, in encounter order
+     * @throws IllegalArgumentException if {@code budget} is not positive
+     */
+    public static <T> java.util.stream.Collector<T, ?, Stream<T>> toStream(int budget) {
+        return toStream(budget, defaultDirectory());
+    }
+
+    /**
+     * Returns a {@code Collector} that accumulates the input elements,
+     * spilling them to files in the given directory, into a
+     * {@code Stream} of the elements in encounter order.
+     *
+     * @param <T> the type of the input elements
+     * @param budget the most elements held in memory per result container
+     * @param directory the directory in which to create spill files
+     * @return a {@code Collector} which collects all the input elements
+     *         into a {@code Stream}, in encounter order
+     * @throws IllegalArgumentException if {@code budget} is not positive
+     * @throws NullPointerException if {@code directory} is null
+     */
+    public static <T> java.util.stream.Collector<T, ?, Stream<T>>
+    toStream(int budget, Path directory) {
+        checkBudget(budget);
+        Objects.requireNonNull(directory);
+        return new Collectors.CollectorImpl<T, SpillBuffer<T>, Stream<T>>(
+                () -> new SpillBuffer<>(budget, directory, null, null),
+                SpillBuffer::add, SpillBuffer::combine,
+                SpillBuffer::concatenated, Collectors.CH_NOID);
+    }
+
+    /**
+     * Returns a {@code Collector} that sorts the input elements with an
+     * external merge sort, spilling sorted runs to files in the default
+     * temporary-file directory, into a {@code Stream} of the elements in
+     * the order of the comparator.  The sort is stable.
+     *
+     * @param <T> the type of the input elements
+     * @param comparator the comparator of the elements
+     * @param budget the most elements held in memory per result container
+     * @return a {@code Collector} which collects all the input elements
+     *         into a {@code Stream}, in sorted order
+     * @throws IllegalArgumentException if {@code budget} is not positive
+     * @throws NullPointerException if {@code comparator} is null
+     */
+    public static <T> java.util.stream.Collector<T, ?, Stream<T>>
+    sorting(Comparator<? super T> comparator, int budget) {
+        return sorting(comparator, budget, defaultDirectory());
+    }
+
+    /**
+     * Returns a {@code Collector} that sorts the input elements with an
+     * external merge sort, spilling sorted runs to files in the given
+     * directory, into a {@code Stream} of the elements in the order of the
+     * comparator.  The sort is stable.
+     *
+     * <p>Each run holds up to {@code budget} elements.  When the result is
+     * requested, the runs are merged as they are streamed; if there are
+     * more than 64, consecutive groups of them are first merged into
+     * longer runs, so that no more than 64 files are open at once.
+     *
+     * @param <T> the type of the input elements
+     * @param comparator the comparator of the elements
+     * @param budget the most elements held in memory per result container
+     * @param directory the directory in which to create spill files
+     * @return a {@code Collector} which collects all the input elements
+     *         into a {@code Stream}, in sorted order
+     * @throws IllegalArgumentException if {@code budget} is not positive
+     * @throws NullPointerException if {@code comparator} or
+     *         {@code directory} is null
+     */
+    public static <T> java.util.stream.Collector<T, ?, Stream<T>>
+    sorting(Comparator<? super T> comparator, int budget, Path directory) {
+        checkBudget(budget);
+        Objects.requireNonNull(comparator);
+        Objects.requireNonNull(directory);
+        return new Collectors.CollectorImpl<T, SpillBuffer<T>, Stream<T>>(
+                () -> new SpillBuffer<>(budget, directory, comparator, null),
+                SpillBuffer::add, SpillBuffer::combine,
+                SpillBuffer::merged, Collectors.CH_NOID);
+    }
+
+    /**
+     * Returns a {@code Collector} implementing a "group by" operation on
+     * input elements of type {@code T}, spilling them to files in the
+     * default temporary-file directory, into a {@code Stream} of the
+     * groups, each a key and a {@code List} of the elements with that key
+     * in encounter order.  This is the external-memory counterpart of
+     * {@link Collectors#groupingBy(Function)}.
+     *
+     * @param <T> the type of the input elements
+     * @param <K> the type of the keys
+     * @param classifier the classifier function mapping input elements to keys
+     * @param budget the most elements held in memory per result container
+     * @return a {@code Collector} implementing the group-by operation
+     * @throws IllegalArgumentException if {@code budget} is not positive
+     * @throws NullPointerException if {@code classifier} is null
+     * @see #groupingBy(Function, java.util.stream.Collector, int, Path)
+     */
+    public static <T, K> java.util.stream.Collector<T, ?, Stream<Map.Entry<K, List<T>>>>
+    groupingBy(Function<? super T, ? extends K> classifier, int budget) {
+        return groupingBy(classifier, Collectors.toList(), budget, defaultDirectory());
+    }
+
+    /**
+     * Returns a {@code Collector} implementing a cascaded "group by"
+     * operation on input elements of type {@code T}, spilling them to
+     * files in the given directory, into a {@code Stream} of the groups,
+     * each a key and the result of the downstream reduction of the
+     * elements with that key.
+     *
+     * <p>When a result container reaches its budget, its elements are
+     * written to a file in 64 partitions by the hash codes of their keys.
+     * When the result is traversed, the partitions are grouped one at a
+     * time, reading the elements of a partition back from every file, so
+     * that only the groups of one partition, rather than the elements, are
+     * held in memory at once.  The groups are in no particular order; the
+     * elements of each group are passed to the downstream collector in
+     * encounter order.  If nothing was spilled, the elements are grouped
+     * in memory.
+     *
+     * @param <T> the type of the input elements
+     * @param <K> the type of the keys
+     * @param <A> the intermediate accumulation type of the downstream collector
+     * @param <D> the result type of the downstream reduction
+     * @param classifier a classifier function mapping input elements to keys
+     * @param downstream a {@code Collector} implementing the downstream reduction
+     * @param budget the most elements held in memory per result container
+     * @param directory the directory in which to create spill files
+     * @return a {@code Collector} implementing the cascaded group-by operation
+     * @throws IllegalArgumentException if {@code budget} is not positive
+     * @throws NullPointerException if {@code classifier}, {@code downstream}
+     *         or {@code directory} is null
+     */
+    public static <T, K, A, D> java.util.stream.Collector<T, ?, Stream<Map.Entry<K, D>>>
+    groupingBy(Function<? super T, ? extends K> classifier,
+               java.util.stream.Collector<? super T, A, D> downstream,
+               int budget, Path directory) {
+        checkBudget(budget);
+        Objects.requireNonNull(classifier);
+        Objects.requireNonNull(downstream);
+        Objects.requireNonNull(directory);
+        Function<? super T, ? extends K> keyOf = t ->
+            Objects.requireNonNull(classifier.apply(t), "element cannot be mapped to a null key");
+        return new Collectors.CollectorImpl<T, SpillBuffer<T>, Stream<Map.Entry<K, D>>>(
+                () -> new SpillBuffer<>(budget, directory, null, keyOf),
+                SpillBuffer::add, SpillBuffer::combine,
+                b -> b.grouped(keyOf, downstream), Collectors.CH_NOID);
+    }
+
+    private static void checkBudget(int budget) {
+        if (budget <= 0)
+            throw new IllegalArgumentException("budget must be positive: " + budget);
+    }
+
+    private static Path defaultDirectory() {
+        return Paths.get(System.getProperty("java.io.tmpdir"));
+    }
+
+    /**
+     * A result container of the collectors.  It holds up to a budget of
+     * elements in memory, and spills them to a new file when full: sorted
+     * if there is a comparator, and in partitions by key if there is a
+     * classifier.  The spill files are kept in encounter order, all before
+     * the elements held in memory.
+     */
+    static final class SpillBuffer<T> {
+        final int budget;
+        final Path directory;
+        final Comparator<? super T> comparator;       // null if unsorted
+        final Function<? super T, ?> classifier;      // null if unpartitioned
+        ArrayList<T> buffer = new ArrayList<>();
+        final ArrayList<SpillFile> files = new ArrayList<>();
+
+        SpillBuffer(int budget, Path directory,
+                    Comparator<? super T> comparator,
+                    Function<? super T, ?> classifier) {
+            this.budget = budget;
+            this.directory = directory;
+            this.comparator = comparator;
+            this.classifier = classifier;
+        }
+
+        void add(T t) {
+            buffer.add(t);
+            if (buffer.size() >= budget)
+                spill();
+        }
+
+        SpillBuffer<T> combine(SpillBuffer<T> other) {
+            if (other.files.isEmpty()) {
+                for (T t : other.buffer)
+                    add(t);
+            }
+            else {
+                spill();
+                files.addAll(other.files);
+                buffer = other.buffer;
+            }
+            return this;
+        }
+
+        /**
+         * Writes the elements held in memory to a new file.
+         */
+        void spill() {
+            if (buffer.isEmpty())
+                return;
+            List<? extends Iterable<?>> segments;
+            if (classifier == null) {
+                if (comparator != null)
+                    buffer.sort(comparator);
+                segments = Collections.singletonList(buffer);
+            }
+            else {
+                @SuppressWarnings("unchecked")
+                ArrayList<T>[] parts = (ArrayList<T>[]) new ArrayList<?>[GROUPING_PARTITIONS];
+                for (int p = 0; p < parts.length; p++)
+                    parts[p] = new ArrayList<>();
+                for (T t : buffer)
+                    parts[partition(classifier.apply(t))].add(t);
+                segments = Arrays.asList(parts);
+            }
+            files.add(SpillFile.write(directory, segments));
+            buffer = new ArrayList<>();
+        }
+
+        static int partition(Object key) {
+            int h = key.hashCode();
+            return (h ^ (h >>> 16)) & (GROUPING_PARTITIONS - 1);
+        }
+
+        /** Returns the elements, in encounter order. */
+        Stream<T> concatenated() {
+            long size = buffer.size();
+            for (SpillFile f : files)
+                size += f.counts[0];
+            ArrayList<SpillFile> fs = files;
+            List<T> rest = buffer;
+            Iterator<T> it = new Iterator<T>() {
+                int next;                       // index of the next file to open
+                Iterator<T> current = Collections.emptyIterator();
+
+                @Override
+                public boolean hasNext() {
+                    while (!current.hasNext()) {
+                        if (next < fs.size())
+                            current = fs.get(next++).reader(0, true);
+                        else if (next++ == fs.size())
+                            current = rest.iterator();
+                        else
+                            return false;
+                    }
+                    return true;
+                }
+
+                @Override
+                public T next() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    return current.next();
+                }
+            };
+            return stream(Spliterators.spliterator(it, size, Spliterator.ORDERED), fs);
+        }
+
+        /** Returns the elements, in the order of the comparator. */
+        Stream<T> merged() {
+            if (files.isEmpty()) {
+                buffer.sort(comparator);
+                return StreamSupport.stream(buffer.spliterator(), false);
+            }
+            spill();
+            ArrayList<SpillFile> fs = files;
+            while (fs.size() > MAX_MERGE_WIDTH) {   // merge a level of groups
+                ArrayList<SpillFile> next = new ArrayList<>();
+                try {
+                    for (int i = 0, n = fs.size(); i < n; i += MAX_MERGE_WIDTH) {
+                        List<SpillFile> group = fs.subList(i, Math.min(n, i + MAX_MERGE_WIDTH));
+                        if (group.size() == 1) {
+                            next.add(group.get(0));
+                            continue;
+                        }
+                        MergingIterator<T> it = new MergingIterator<>(group, comparator);
+                        try {
+                            next.add(SpillFile.write(directory,
+                                                     Collections.singletonList((Iterable<T>) () -> it)));
+                        } finally {
+                            it.close();
+                        }
+                    }
+                } catch (RuntimeException | Error ex) {
+                    deleteAll(fs);
+                    deleteAll(next);
+                    throw ex;
+                }
+                fs = next;
+            }
+            long size = 0L;
+            for (SpillFile f : fs)
+                size += f.counts[0];
+            MergingIterator<T> it = new MergingIterator<>(fs, comparator);
+            return stream(Spliterators.spliterator(it, size, Spliterator.ORDERED), fs)
+                .onClose(it::close);
+        }
+
+        /**
+         * Returns the groups of the elements by the classifier, each
+         * reduced with the downstream collector.
+         */
+        <K, A, D> Stream<Map.Entry<K, D>>
+        grouped(Function<? super T, ? extends K> keyOf,
+                java.util.stream.Collector<? super T, A, D> downstream) {
+            Supplier<A> supplier = downstream.supplier();
+            BiConsumer<A, ? super T> accumulator = downstream.accumulator();
+            Function<A, D> finisher = downstream.finisher();
+            if (files.isEmpty()) {
+                HashMap<K, A> groups = new HashMap<>();
+                for (T t : buffer)
+                    accumulator.accept(groups.computeIfAbsent(keyOf.apply(t), k -> supplier.get()), t);
+                buffer = null;
+                return groups.entrySet().stream().map(e ->
+                    new AbstractMap.SimpleImmutableEntry<>(e.getKey(), finisher.apply(e.getValue())));
+            }
+            spill();
+            ArrayList<SpillFile> fs = files;
+            Iterator<Map.Entry<K, D>> it = new Iterator<Map.Entry<K, D>>() {
+                int partition;                  // the next partition to group
+                Iterator<Map.Entry<K, A>> groups = Collections.emptyIterator();
+
+                @Override
+                public boolean hasNext() {
+                    while (!groups.hasNext()) {
+                        if (partition == GROUPING_PARTITIONS)
+                            return false;
+                        HashMap<K, A> g = new HashMap<>();
+                        boolean last = (partition == GROUPING_PARTITIONS - 1);
+                        for (SpillFile f : fs) {
+                            for (Iterator<T> r = f.reader(partition, last); r.hasNext(); ) {
+                                T t = r.next();
+                                accumulator.accept(g.computeIfAbsent(keyOf.apply(t), k -> supplier.get()), t);
+                            }
+                        }
+                        partition++;
+                        groups = g.entrySet().iterator();
+                    }
+                    return true;
+                }
+
+                @Override
+                public Map.Entry<K, D> next() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    Map.Entry<K, A> e = groups.next();
+                    groups.remove();            // release the group once finished
+                    return new AbstractMap.SimpleImmutableEntry<>(e.getKey(), finisher.apply(e.getValue()));
+                }
+            };
+            return stream(Spliterators.spliteratorUnknownSize(it, 0), fs);
+        }
+
+        /**
+         * Returns a sequential stream over the spliterator that deletes
+         * the files when closed.
+         */
+        private static <E> Stream<E> stream(Spliterator<E> spliterator,
+                                            List<SpillFile> files) {
+            return StreamSupport.stream(spliterator, false)
+                .onClose(() -> deleteAll(files));
+        }
+
+        private static void deleteAll(List<SpillFile> files) {
+            for (SpillFile f : files)
+                f.delete();
+        }
+    }
+
+    /**
+     * A spill file, holding one or more segments of serialized elements,
+     * each written with its own object stream.
+     */
+    static final class SpillFile {
+        final Path path;
+        final long[] offsets;       // the start of each segment, then the end
+        final int[] counts;         // the number of elements in each segment
+
+        private SpillFile(Path path, long[] offsets, int[] counts) {
+            this.path = path;
+            this.offsets = offsets;
+            this.counts = counts;
+        }
+
+        /**
+         * Writes the segments to a new file in the directory.
+         */
+        static SpillFile write(Path directory, List<? extends Iterable<?>> segments) {
+            int n = segments.size();
+            long[] offsets = new long[n + 1];
+            int[] counts = new int[n];
+            Path path = null;
+            try {
+                path = Files.createTempFile(directory, "stream-spill", null);
+                try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    OutputStream out = new BufferedOutputStream(Channels.newOutputStream(ch),
+                                                                BUFFER_SIZE);
+                    for (int s = 0; s < n; s++) {
+                        offsets[s] = ch.position();
+                        ObjectOutputStream oos = new ObjectOutputStream(out);
+                        int c = 0;
+                        for (Object e : segments.get(s)) {
+                            oos.writeObject(e);
+                            if (++c % RESET_INTERVAL == 0)
+                                oos.reset();    // release references to written objects
+                        }
+                        oos.flush();            // also flushes out, so position is exact
+                        counts[s] = c;
+                    }
+                    offsets[n] = ch.position();
+                }
+                return new SpillFile(path, offsets, counts);
+            } catch (IOException ex) {
+                deleteQuietly(path);
+                throw new UncheckedIOException(ex);
+            } catch (RuntimeException | Error ex) {
+                deleteQuietly(path);
+                throw ex;
+            }
+        }
+
+        /**
+         * Returns a reader of the elements of a segment, which closes the
+         * file once all have been read, deleting it if {@code last}.
+         */
+        <T> SegmentReader<T> reader(int segment, boolean last) {
+            return new SegmentReader<>(this, segment, last);
+        }
+
+        void delete() {
+            deleteQuietly(path);
+        }
+
+        private static void deleteQuietly(Path path) {
+            if (path != null) {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Iterator over the elements of a segment of a spill file.  The file
+     * is opened on the first call to {@code hasNext}.
+     */
+    static final class SegmentReader<T> implements Iterator<T>, Closeable {
+        final SpillFile file;
+        final int segment;
+        final boolean deleteWhenDone;
+        int remaining;
+        FileChannel channel;
+        ObjectInputStream in;
+
+        SegmentReader(SpillFile file, int segment, boolean deleteWhenDone) {
+            this.file = file;
+            this.segment = segment;
+            this.deleteWhenDone = deleteWhenDone;
+            this.remaining = file.counts[segment];
+            if (remaining == 0 && deleteWhenDone)
+                file.delete();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (remaining <= 0)
+                throw new NoSuchElementException();
+            try {
+                if (in == null) {
+                    channel = FileChannel.open(file.path, StandardOpenOption.READ);
+                    channel.position(file.offsets[segment]);
+                    in = new ObjectInputStream(new BufferedInputStream(Channels.newInputStream(channel),
+                                                                       BUFFER_SIZE));
+                }
+                T t = (T) in.readObject();
+                if (--remaining == 0)
+                    close();
+                return t;
+            } catch (IOException ex) {
+                close();
+                throw new UncheckedIOException(ex);
+            } catch (ClassNotFoundException ex) {
+                close();
+                throw new UncheckedIOException(new IOException(ex));
+            }
+        }
+
+        @Override
+        public void close() {
+            remaining = 0;
+            FileChannel ch = channel;
+            channel = null;
+            in = null;
+            if (ch != null) {
+                try {
+                    ch.close();
+                } catch (IOException ignore) {
+                }
+            }
+            if (deleteWhenDone)
+                file.delete();
+        }
+    }
+
+    /**
+     * Iterator merging the sorted single-segment files in order, taking
+     * equal elements from earlier files first.  It deletes each file once
+     * read.
+     */
+    static final class MergingIterator<T> implements Iterator<T>, Closeable {
+        /** The next element of a file, ordered by element, then by file. */
+        static final class Head<T> {
+            final int index;
+            final SegmentReader<T> reader;
+            T element;
+
+            Head(int index, SegmentReader<T> reader) {
+                this.index = index;
+                this.reader = reader;
+            }
+        }
+
+        final PriorityQueue<Head<T>> queue;
+        final ArrayList<SegmentReader<T>> readers;
+
+        MergingIterator(List<SpillFile> files, Comparator<? super T> comparator) {
+            int k = files.size();
+            queue = new PriorityQueue<>(Math.max(1, k), (a, b) -> {
+                int c = comparator.compare(a.element, b.element);
+                return (c != 0) ? c : Integer.compare(a.index, b.index);
+            });
+            readers = new ArrayList<>(k);
+            try {
+                for (int i = 0; i < k; i++) {
+                    SegmentReader<T> r = files.get(i).reader(0, true);
+                    readers.add(r);
+                    if (r.hasNext()) {
+                        Head<T> h = new Head<>(i, r);
+                        h.element = r.next();
+                        queue.add(h);
+                    }
+                }
+            } catch (RuntimeException | Error ex) {
+                close();
+                throw ex;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            Head<T> h = queue.poll();
+            if (h == null)
+                throw new NoSuchElementException();
+            T t = h.element;
+            if (h.reader.hasNext()) {
+                h.element = h.reader.next();
+                queue.add(h);
+            }
+            return t;
+        }
+
+        @Override
+        public void close() {
+            queue.clear();
+            for (SegmentReader<T> r : readers)
+                r.close();
+        }
+    }
+}
@@ -399,6 +399,28 @@ abstract class IntPipeline<E_IN>
             return java.util.stream.SliceOps.makeInt(this, n, -1);
     }
 
+    // Windowing operations from util.stream.IntStream
+
+    public final Stream<int[]> windowed(int size) {
+        return windows(size, true, false);
+    }
+
+    public final Stream<int[]> chunked(int size) {
+        return windows(size, false, false);
+    }
+
+    public final Stream<int[]> chunked(int size, boolean reuseBuffer) {
+        return windows(size, false, reuseBuffer);
+    }
+
+    private Stream<int[]> windows(int size, boolean sliding, boolean reuse) {
+        if (size <= 0)
+            throw new IllegalArgumentException(Integer.toString(size));
+        Spliterator<int[]> split = new StreamSpliterators.WindowingSpliterator.OfInt(
+                spliterator(), size, sliding, reuse);
+        return StreamSupport.stream(split, isParallel()).onClose(this::close);
+    }
+
     @Override
     public final java.util.stream.IntStream sorted() {
         return java.util.stream.SortedOps.makeInt(this);
@@ -486,6 +508,13 @@ abstract class IntPipeline<E_IN>
         return evaluate(java.util.stream.ReduceOps.makeInt(supplier, accumulator, operator));
     }
 
+    // Collection with a PrimitiveCollector from util.stream.IntStream
+
+    public final <A, R> R collect(PrimitiveCollector.OfInt<A, R> collector) {
+        return collector.finisher().apply(
+                collect(collector.supplier(), collector.accumulator(), collector.combiner()));
+    }
+
     @Override
     public final boolean anyMatch(IntPredicate predicate) {
         return evaluate(java.util.stream.MatchOps.makeInt(predicate, java.util.stream.MatchOps.MatchKind.ANY));
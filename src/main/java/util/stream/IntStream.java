@@ -275,6 +275,57 @@ public interface IntStream extends BaseStream<Integer, IntStream> {
      */
     IntStream skip(long n);
 
+    /**
+     * Returns a stream of the sliding windows of this stream: for each
+     * element that is followed by at least {@code size - 1} more, an array
+     * of that element and the {@code size - 1} elements after it, in
+     * encounter order.  A stream of fewer than {@code size} elements has
+     * no windows.  Each window is a new array.
+     *
+     * <p>This is an <a href="package-summary.html#StreamOps">intermediate
+     * operation</a>, lazy and splitting as for
+     * {@link util.stream.Stream#windowed(int)}.
+     *
+     * @param size the number of elements per window
+     * @return the new stream
+     * @throws IllegalArgumentException if {@code size} is not positive
+     */
+    Stream<int[]> windowed(int size);
+
+    /**
+     * Returns a stream of the chunks of this stream: arrays of
+     * {@code size} consecutive elements, in encounter order, the last of
+     * which may hold fewer.  Each chunk is a new array.
+     *
+     * <p>This is an <a href="package-summary.html#StreamOps">intermediate
+     * operation</a>, lazy and splitting at chunk boundaries as for
+     * {@link util.stream.Stream#chunked(int)}.
+     *
+     * @param size the number of elements per chunk
+     * @return the new stream
+     * @throws IllegalArgumentException if {@code size} is not positive
+     * @see #chunked(int, boolean)
+     */
+    Stream<int[]> chunked(int size);
+
+    /**
+     * Returns a stream of the chunks of this stream, as for
+     * {@link #chunked(int)}, optionally reusing one array for all full
+     * chunks of each part of the stream.
+     *
+     * <p>If {@code reuseBuffer} is true, the array passed downstream is
+     * refilled with the next chunk once the operation that received it
+     * returns, so that no array is allocated per chunk.  It must then not
+     * be kept or passed on by later operations.  A last chunk of fewer
+     * than {@code size} elements is always a new array.
+     *
+     * @param size the number of elements per chunk
+     * @param reuseBuffer whether to reuse one array for all full chunks
+     * @return the new stream
+     * @throws IllegalArgumentException if {@code size} is not positive
+     */
+    Stream<int[]> chunked(int size, boolean reuseBuffer);
+
     /**
      * Performs an action for each element of this stream.
      *
@@ -449,6 +500,27 @@ public interface IntStream extends BaseStream<Integer, IntStream> {
                   ObjIntConsumer<R> accumulator,
                   BiConsumer<R, R> combiner);
 
+    /**
+     * Performs a <a href="package-summary.html#MutableReduction">mutable
+     * reduction</a> operation on the elements of this stream using a
+     * {@code PrimitiveCollector}, which encapsulates the functions used as
+     * arguments to {@link #collect(Supplier, ObjIntConsumer, BiConsumer)} and a
+     * finishing transformation.  Unlike collecting the {@link #boxed()}
+     * stream with a {@code Collector}, this passes each element to the
+     * collector unboxed.
+     *
+     * <p>This is a <a href="package-summary.html#StreamOps">terminal
+     * operation</a>.
+     *
+     * @param <A> the intermediate accumulation type of the collector
+     * @param <R> the type of the result
+     * @param collector the {@code PrimitiveCollector} describing the reduction
+     * @return the result of the reduction
+     * @see #collect(Supplier, ObjIntConsumer, BiConsumer)
+     * @see PrimitiveCollectors
+     */
+    <A, R> R collect(PrimitiveCollector.OfInt<A, R> collector);
+
     /**
      * Returns the sum of elements in this stream.  This is a special case
      * of a <a href="package-summary.html#Reduction">reduction</a>
@@ -856,6 +928,34 @@ public interface IntStream extends BaseStream<Integer, IntStream> {
         return stream.onClose(java.util.stream.Streams.composedClose(a, b));
     }
 
+    /**
+     * Creates a lazily zipped stream whose elements are the results of
+     * applying the given function to the corresponding elements of the
+     * two streams, up to the end of the shorter stream.  The resulting
+     * stream is ordered if both of the input streams are ordered, and
+     * parallel if either of the input streams is parallel.  When the
+     * resulting stream is closed, the close handlers for both input
+     * streams are invoked.  Splitting is as for
+     * {@link util.stream.Stream#zip(util.stream.Stream, util.stream.Stream, java.util.function.BiFunction)}.
+     *
+     * @param a the first stream
+     * @param b the second stream
+     * @param zipper a <a href="package-summary.html#NonInterference">non-interfering</a>,
+     *               <a href="package-summary.html#Statelessness">stateless</a>
+     *               function combining corresponding elements
+     * @return the zip of the two input streams
+     */
+    public static IntStream zip(IntStream a, IntStream b, IntBinaryOperator zipper) {
+        Objects.requireNonNull(a);
+        Objects.requireNonNull(b);
+        Objects.requireNonNull(zipper);
+
+        Spliterator.OfInt split = new StreamSpliterators.ZipSpliterator.OfInt(
+                a.spliterator(), b.spliterator(), zipper);
+        IntStream stream = StreamSupport.intStream(split, a.isParallel() || b.isParallel());
+        return stream.onClose(java.util.stream.Streams.composedClose(a, b));
+    }
+
     /**
      * A mutable builder for an {@code IntStream}.
      *
@@ -471,6 +471,13 @@ abstract class LongPipeline<E_IN>
         return evaluate(java.util.stream.ReduceOps.makeLong(supplier, accumulator, operator));
     }
 
+    // Collection with a PrimitiveCollector from util.stream.LongStream
+
+    public final <A, R> R collect(PrimitiveCollector.OfLong<A, R> collector) {
+        return collector.finisher().apply(
+                collect(collector.supplier(), collector.accumulator(), collector.combiner()));
+    }
+
     @Override
     public final boolean anyMatch(LongPredicate predicate) {
         return evaluate(java.util.stream.MatchOps.makeLong(predicate, java.util.stream.MatchOps.MatchKind.ANY));
@@ -456,6 +456,27 @@ public interface LongStream extends BaseStream<Long, LongStream> {
                   ObjLongConsumer<R> accumulator,
                   BiConsumer<R, R> combiner);
 
+    /**
+     * Performs a <a href="package-summary.html#MutableReduction">mutable
+     * reduction</a> operation on the elements of this stream using a
+     * {@code PrimitiveCollector}, which encapsulates the functions used as
+     * arguments to {@link #collect(Supplier, ObjLongConsumer, BiConsumer)} and a
+     * finishing transformation.  Unlike collecting the {@link #boxed()}
+     * stream with a {@code Collector}, this passes each element to the
+     * collector unboxed.
+     *
+     * <p>This is a <a href="package-summary.html#StreamOps">terminal
+     * operation</a>.
+     *
+     * @param <A> the intermediate accumulation type of the collector
+     * @param <R> the type of the result
+     * @param collector the {@code PrimitiveCollector} describing the reduction
+     * @return the result of the reduction
+     * @see #collect(Supplier, ObjLongConsumer, BiConsumer)
+     * @see PrimitiveCollectors
+     */
+    <A, R> R collect(PrimitiveCollector.OfLong<A, R> collector);
+
     /**
      * Returns the sum of elements in this stream.  This is a special case
      * of a <a href="package-summary.html#Reduction">reduction</a>
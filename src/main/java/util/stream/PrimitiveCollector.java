@@ -0,0 +1,186 @@
+package util.stream;
+
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * A <a href="package-summary.html#Reduction">mutable reduction operation</a>
+ * over the elements of a primitive stream, the counterpart for
+ * {@link IntStream}, {@link LongStream} and {@link DoubleStream} of a
+ * {@link Collector}.  Where a {@code Collector} of a primitive stream's
+ * boxed view is passed each element as an {@code Integer}, {@code Long}
+ * or {@code Double}, the accumulator of a primitive collector receives it
+ * unboxed, so that a collector whose container holds primitives, such as
+ * those of {@link PrimitiveCollectors}, allocates nothing per element.
+ *
+ * <p>A primitive collector is specified by the same functions as the
+ * three-argument {@code collect} methods of the primitive streams, and a
+ * finisher: {@code IntStream.collect(collector)} is equivalent to
+ * <pre>{@code
+ *     collector.finisher().apply(
+ *         intStream.collect(collector.supplier(),
+ *                           collector.accumulator(),
+ *                           collector.combiner()));
+ * }</pre>
+ * and the functions are subject to the same constraints as there.  In
+ * particular the combiner folds the state of its second argument into
+ * its first.  There are no characteristics; a primitive collection is
+ * never concurrent.
+ *
+ * @see IntStream#collect(PrimitiveCollector.OfInt)
+ * @see PrimitiveCollectors
+ *
+ * @param <A> the mutable accumulation type of the reduction operation (often
+ *            hidden as an implementation detail)
+ * @param <R> the result type of the reduction operation
+ */
+public interface PrimitiveCollector<A, R> {
+    /**
+     * A function that creates and returns a new mutable result container.
+     *
+     * @return a function which returns a new, mutable result container
+     */
+    Supplier<A> supplier();
+
+    /**
+     * A function that folds the state of a second partial result into a
+     * first.
+     *
+     * @return a function which combines two partial results into the first
+     */
+    BiConsumer<A, A> combiner();
+
+    /**
+     * Perform the final transformation from the intermediate accumulation type
+     * {@code A} to the final result type {@code R}.
+     *
+     * @return a function which transforms the intermediate result to the final
+     * result
+     */
+    Function<A, R> finisher();
+
+    /**
+     * A primitive collector of {@code int} values.
+     *
+     * @param <A> the mutable accumulation type of the reduction operation
+     * @param <R> the result type of the reduction operation
+     */
+    interface OfInt<A, R> extends PrimitiveCollector<A, R> {
+        /**
+         * A function that folds a value into a mutable result container.
+         *
+         * @return a function which folds a value into a mutable result container
+         */
+        ObjIntConsumer<A> accumulator();
+
+        /**
+         * Returns a new {@code PrimitiveCollector.OfInt} described by the
+         * given functions.
+         *
+         * @param supplier The supplier function for the new collector
+         * @param accumulator The accumulator function for the new collector
+         * @param combiner The combiner function for the new collector
+         * @param finisher The finisher function for the new collector
+         * @param <A> The intermediate accumulation type of the new collector
+         * @param <R> The final result type of the new collector
+         * @throws NullPointerException if any argument is null
+         * @return the new collector
+         */
+        static <A, R> OfInt<A, R> of(Supplier<A> supplier,
+                                     ObjIntConsumer<A> accumulator,
+                                     BiConsumer<A, A> combiner,
+                                     Function<A, R> finisher) {
+            Objects.requireNonNull(supplier);
+            Objects.requireNonNull(accumulator);
+            Objects.requireNonNull(combiner);
+            Objects.requireNonNull(finisher);
+            return new PrimitiveCollectors.IntCollectorImpl<>(supplier, accumulator,
+                                                              combiner, finisher);
+        }
+    }
+
+    /**
+     * A primitive collector of {@code long} values.
+     *
+     * @param <A> the mutable accumulation type of the reduction operation
+     * @param <R> the result type of the reduction operation
+     */
+    interface OfLong<A, R> extends PrimitiveCollector<A, R> {
+        /**
+         * A function that folds a value into a mutable result container.
+         *
+         * @return a function which folds a value into a mutable result container
+         */
+        ObjLongConsumer<A> accumulator();
+
+        /**
+         * Returns a new {@code PrimitiveCollector.OfLong} described by the
+         * given functions.
+         *
+         * @param supplier The supplier function for the new collector
+         * @param accumulator The accumulator function for the new collector
+         * @param combiner The combiner function for the new collector
+         * @param finisher The finisher function for the new collector
+         * @param <A> The intermediate accumulation type of the new collector
+         * @param <R> The final result type of the new collector
+         * @throws NullPointerException if any argument is null
+         * @return the new collector
+         */
+        static <A, R> OfLong<A, R> of(Supplier<A> supplier,
+                                      ObjLongConsumer<A> accumulator,
+                                      BiConsumer<A, A> combiner,
+                                      Function<A, R> finisher) {
+            Objects.requireNonNull(supplier);
+            Objects.requireNonNull(accumulator);
+            Objects.requireNonNull(combiner);
+            Objects.requireNonNull(finisher);
+            return new PrimitiveCollectors.LongCollectorImpl<>(supplier, accumulator,
+                                                               combiner, finisher);
+        }
+    }
+
+    /**
+     * A primitive collector of {@code double} values.
+     *
+     * @param <A> the mutable accumulation type of the reduction operation
+     * @param <R> the result type of the reduction operation
+     */
+    interface OfDouble<A, R> extends PrimitiveCollector<A, R> {
+        /**
+         * A function that folds a value into a mutable result container.
+         *
+         * @return a function which folds a value into a mutable result container
+         */
+        ObjDoubleConsumer<A> accumulator();
+
+        /**
+         * Returns a new {@code PrimitiveCollector.OfDouble} described by the
+         * given functions.
+         *
+         * @param supplier The supplier function for the new collector
+         * @param accumulator The accumulator function for the new collector
+         * @param combiner The combiner function for the new collector
+         * @param finisher The finisher function for the new collector
+         * @param <A> The intermediate accumulation type of the new collector
+         * @param <R> The final result type of the new collector
+         * @throws NullPointerException if any argument is null
+         * @return the new collector
+         */
+        static <A, R> OfDouble<A, R> of(Supplier<A> supplier,
+                                        ObjDoubleConsumer<A> accumulator,
+                                        BiConsumer<A, A> combiner,
+                                        Function<A, R> finisher) {
+            Objects.requireNonNull(supplier);
+            Objects.requireNonNull(accumulator);
+            Objects.requireNonNull(combiner);
+            Objects.requireNonNull(finisher);
+            return new PrimitiveCollectors.DoubleCollectorImpl<>(supplier, accumulator,
+                                                                 combiner, finisher);
+        }
+    }
+}
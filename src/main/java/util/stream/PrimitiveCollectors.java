@@ -0,0 +1,578 @@
+package util.stream;
+
+import java.util.Arrays;
+import java.util.DoubleSummaryStatistics;
+import java.util.IntSummaryStatistics;
+import java.util.LongSummaryStatistics;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.IntToLongFunction;
+import java.util.function.LongConsumer;
+import java.util.function.LongUnaryOperator;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import util.LongHashMap;
+import util.LongLongHashMap;
+import util.concurrent.ConcurrentCountingMap;
+
+/**
+ * Implementations of {@link PrimitiveCollector} and
+ * {@link java.util.stream.Collector} whose result containers hold
+ * primitive values, so that, unlike the corresponding compositions of
+ * {@link Collectors}, they neither box elements nor allocate anything per
+ * element.
+ *
+ * <p>{@link Collectors#summingInt summingInt}, {@link Collectors#counting
+ * counting} and the like keep their running result in a one-element
+ * array, and box it into the result; composed with
+ * {@link Collectors#groupingBy groupingBy} they allocate such an array for
+ * each key and a {@code Map.Entry} and boxed value besides.  A primitive
+ * stream's {@code boxed()} view boxes every element.  The collectors here
+ * instead accumulate into:
+ *
+ * <ul>
+ * <li>a {@code SpinedBuffer}, for {@link #toIntArray()} and its
+ * counterparts, copied once into the array returned;
+ * <li>the {@code SummaryStatistics} classes, for {@link #summarizingInt()}
+ * and its counterparts, held per key in a {@link LongHashMap} by
+ * {@link #summarizingIntBy(IntToLongFunction)};
+ * <li>a {@link LongLongHashMap} of counts, for {@link #countingInt()} and
+ * {@link #countingByLong(ToLongFunction)};
+ * <li>a {@link ConcurrentCountingMap}, a concurrent collector shared by
+ * all threads, for {@link #countingBy(Function)} and
+ * {@link #summingLongBy(Function, ToLongFunction)}; and
+ * <li>an array of bin counts, for {@link #histogram(double, double, int)},
+ * or a buffer of all values sorted once at the end, for
+ * {@link #percentiles(double...)}.
+ * </ul>
+ *
+ * <p>The collectors of primitive values are applied with the
+ * {@code collect(PrimitiveCollector)} methods of {@link IntStream},
+ * {@link LongStream} and {@link DoubleStream}:
+ * <pre>{@code
+ *     double[] p = latencies.collect(PrimitiveCollectors.percentiles(50, 99, 99.9));
+ *     LongLongHashMap sizes = lengths.collect(PrimitiveCollectors.countingInt());
+ * }</pre>
+ *
+ * @see PrimitiveCollector
+ * @see Collectors
+ */
+public final class PrimitiveCollectors {
+
+    private PrimitiveCollectors() { }
+
+    /**
+     * Simple implementation class for {@code PrimitiveCollector.OfInt}.
+     *
+     * @param <A> the mutable accumulation type
+     * @param <R> the type of the result
+     */
+    static final class IntCollectorImpl<A, R> implements PrimitiveCollector.OfInt<A, R> {
+        private final Supplier<A> supplier;
+        private final ObjIntConsumer<A> accumulator;
+        private final BiConsumer<A, A> combiner;
+        private final Function<A, R> finisher;
+
+        IntCollectorImpl(Supplier<A> supplier,
+                         ObjIntConsumer<A> accumulator,
+                         BiConsumer<A, A> combiner,
+                         Function<A, R> finisher) {
+            this.supplier = supplier;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+            this.finisher = finisher;
+        }
+
+        @Override
+        public Supplier<A> supplier() {
+            return supplier;
+        }
+
+        @Override
+        public ObjIntConsumer<A> accumulator() {
+            return accumulator;
+        }
+
+        @Override
+        public BiConsumer<A, A> combiner() {
+            return combiner;
+        }
+
+        @Override
+        public Function<A, R> finisher() {
+            return finisher;
+        }
+    }
+
+    /**
+     * Simple implementation class for {@code PrimitiveCollector.OfLong}.
+     *
+     * @param <A> the mutable accumulation type
+     * @param <R> the type of the result
+     */
+    static final class LongCollectorImpl<A, R> implements PrimitiveCollector.OfLong<A, R> {
+        private final Supplier<A> supplier;
+        private final ObjLongConsumer<A> accumulator;
+        private final BiConsumer<A, A> combiner;
+        private final Function<A, R> finisher;
+
+        LongCollectorImpl(Supplier<A> supplier,
+                          ObjLongConsumer<A> accumulator,
+                          BiConsumer<A, A> combiner,
+                          Function<A, R> finisher) {
+            this.supplier = supplier;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+            this.finisher = finisher;
+        }
+
+        @Override
+        public Supplier<A> supplier() {
+            return supplier;
+        }
+
+        @Override
+        public ObjLongConsumer<A> accumulator() {
+            return accumulator;
+        }
+
+        @Override
+        public BiConsumer<A, A> combiner() {
+            return combiner;
+        }
+
+        @Override
+        public Function<A, R> finisher() {
+            return finisher;
+        }
+    }
+
+    /**
+     * Simple implementation class for {@code PrimitiveCollector.OfDouble}.
+     *
+     * @param <A> the mutable accumulation type
+     * @param <R> the type of the result
+     */
+    static final class DoubleCollectorImpl<A, R> implements PrimitiveCollector.OfDouble<A, R> {
+        private final Supplier<A> supplier;
+        private final ObjDoubleConsumer<A> accumulator;
+        private final BiConsumer<A, A> combiner;
+        private final Function<A, R> finisher;
+
+        DoubleCollectorImpl(Supplier<A> supplier,
+                            ObjDoubleConsumer<A> accumulator,
+                            BiConsumer<A, A> combiner,
+                            Function<A, R> finisher) {
+            this.supplier = supplier;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+            this.finisher = finisher;
+        }
+
+        @Override
+        public Supplier<A> supplier() {
+            return supplier;
+        }
+
+        @Override
+        public ObjDoubleConsumer<A> accumulator() {
+            return accumulator;
+        }
+
+        @Override
+        public BiConsumer<A, A> combiner() {
+            return combiner;
+        }
+
+        @Override
+        public Function<A, R> finisher() {
+            return finisher;
+        }
+    }
+
+    // Arrays
+
+    /**
+     * Returns a collector that accumulates the values of an
+     * {@code IntStream}, in encounter order, into an {@code int} array.
+     * Values are appended to a {@code SpinedBuffer}, which grows without
+     * copying, and copied once into the result.
+     *
+     * @return a collector of the values into an array
+     * @throws IllegalArgumentException from the finisher if there are more
+     *         values than an array can hold
+     */
+    public static PrimitiveCollector.OfInt<?, int[]> toIntArray() {
+        return new IntCollectorImpl<>(SpinedBuffer.OfInt::new,
+                                      SpinedBuffer.OfInt::accept,
+                                      (left, right) -> right.forEach((IntConsumer) left),
+                                      SpinedBuffer.OfInt::asPrimitiveArray);
+    }
+
+    /**
+     * Returns a collector that accumulates the values of a
+     * {@code LongStream}, in encounter order, into a {@code long} array.
+     *
+     * @return a collector of the values into an array
+     * @throws IllegalArgumentException from the finisher if there are more
+     *         values than an array can hold
+     * @see #toIntArray()
+     */
+    public static PrimitiveCollector.OfLong<?, long[]> toLongArray() {
+        return new LongCollectorImpl<>(SpinedBuffer.OfLong::new,
+                                       SpinedBuffer.OfLong::accept,
+                                       (left, right) -> right.forEach((LongConsumer) left),
+                                       SpinedBuffer.OfLong::asPrimitiveArray);
+    }
+
+    /**
+     * Returns a collector that accumulates the values of a
+     * {@code DoubleStream}, in encounter order, into a {@code double}
+     * array.
+     *
+     * @return a collector of the values into an array
+     * @throws IllegalArgumentException from the finisher if there are more
+     *         values than an array can hold
+     * @see #toIntArray()
+     */
+    public static PrimitiveCollector.OfDouble<?, double[]> toDoubleArray() {
+        return new DoubleCollectorImpl<>(SpinedBuffer.OfDouble::new,
+                                         SpinedBuffer.OfDouble::accept,
+                                         (left, right) -> right.forEach((DoubleConsumer) left),
+                                         SpinedBuffer.OfDouble::asPrimitiveArray);
+    }
+
+    // Summary statistics
+
+    /**
+     * Returns a collector of the summary statistics of the values of an
+     * {@code IntStream}, as by {@link IntStream#summaryStatistics()}, for
+     * use where a {@code PrimitiveCollector} is expected.
+     *
+     * @return a collector of summary statistics
+     */
+    public static PrimitiveCollector.OfInt<?, IntSummaryStatistics> summarizingInt() {
+        return new IntCollectorImpl<>(IntSummaryStatistics::new,
+                                      IntSummaryStatistics::accept,
+                                      IntSummaryStatistics::combine,
+                                      Function.identity());
+    }
+
+    /**
+     * Returns a collector of the summary statistics of the values of a
+     * {@code LongStream}, as by {@link LongStream#summaryStatistics()}.
+     *
+     * @return a collector of summary statistics
+     */
+    public static PrimitiveCollector.OfLong<?, LongSummaryStatistics> summarizingLong() {
+        return new LongCollectorImpl<>(LongSummaryStatistics::new,
+                                       LongSummaryStatistics::accept,
+                                       LongSummaryStatistics::combine,
+                                       Function.identity());
+    }
+
+    /**
+     * Returns a collector of the summary statistics of the values of a
+     * {@code DoubleStream}, as by {@link DoubleStream#summaryStatistics()}.
+     *
+     * @return a collector of summary statistics
+     */
+    public static PrimitiveCollector.OfDouble<?, DoubleSummaryStatistics> summarizingDouble() {
+        return new DoubleCollectorImpl<>(DoubleSummaryStatistics::new,
+                                         DoubleSummaryStatistics::accept,
+                                         DoubleSummaryStatistics::combine,
+                                         Function.identity());
+    }
+
+    /**
+     * Returns a collector grouping the values of an {@code IntStream} by
+     * the {@code long} key the classifier maps them to, and computing the
+     * summary statistics of each group.  One
+     * {@code IntSummaryStatistics} is allocated per key, and keys are not
+     * boxed.
+     *
+     * @param classifier a classifier function mapping values to keys
+     * @return a collector of the summary statistics of each group
+     */
+    public static PrimitiveCollector.OfInt<?, LongHashMap<IntSummaryStatistics>>
+    summarizingIntBy(IntToLongFunction classifier) {
+        Objects.requireNonNull(classifier);
+        return new IntCollectorImpl<>(
+                LongHashMap::new,
+                (m, t) -> m.computeIfAbsent(classifier.applyAsLong(t),
+                                            k -> new IntSummaryStatistics()).accept(t),
+                (left, right) -> right.forEachEntry(
+                        (long k, IntSummaryStatistics s) ->
+                                left.computeIfAbsent(k, x -> new IntSummaryStatistics())
+                                    .combine(s)),
+                Function.identity());
+    }
+
+    /**
+     * Returns a collector grouping the values of a {@code LongStream} by
+     * the key the classifier maps them to, and computing the summary
+     * statistics of each group.
+     *
+     * @param classifier a classifier function mapping values to keys
+     * @return a collector of the summary statistics of each group
+     * @see #summarizingIntBy(IntToLongFunction)
+     */
+    public static PrimitiveCollector.OfLong<?, LongHashMap<LongSummaryStatistics>>
+    summarizingLongBy(LongUnaryOperator classifier) {
+        Objects.requireNonNull(classifier);
+        return new LongCollectorImpl<>(
+                LongHashMap::new,
+                (m, t) -> m.computeIfAbsent(classifier.applyAsLong(t),
+                                            k -> new LongSummaryStatistics()).accept(t),
+                (left, right) -> right.forEachEntry(
+                        (long k, LongSummaryStatistics s) ->
+                                left.computeIfAbsent(k, x -> new LongSummaryStatistics())
+                                    .combine(s)),
+                Function.identity());
+    }
+
+    // Counting
+
+    /**
+     * Returns a collector counting the occurrences of each distinct value
+     * of an {@code IntStream}, into a map from value to count.
+     *
+     * @return a collector of the count of each value
+     */
+    public static PrimitiveCollector.OfInt<?, LongLongHashMap> countingInt() {
+        return new IntCollectorImpl<>(LongLongHashMap::new,
+                                      (m, t) -> m.addTo(t, 1L),
+                                      PrimitiveCollectors::addAll,
+                                      Function.identity());
+    }
+
+    /**
+     * Returns a collector counting the values of an {@code IntStream} by
+     * the key the classifier maps them to, into a map from key to count.
+     *
+     * @param classifier a classifier function mapping values to keys
+     * @return a collector of the count of each key
+     */
+    public static PrimitiveCollector.OfInt<?, LongLongHashMap>
+    countingInt(IntToLongFunction classifier) {
+        Objects.requireNonNull(classifier);
+        return new IntCollectorImpl<>(LongLongHashMap::new,
+                                      (m, t) -> m.addTo(classifier.applyAsLong(t), 1L),
+                                      PrimitiveCollectors::addAll,
+                                      Function.identity());
+    }
+
+    /**
+     * Returns a collector counting the occurrences of each distinct value
+     * of a {@code LongStream}, into a map from value to count.
+     *
+     * @return a collector of the count of each value
+     */
+    public static PrimitiveCollector.OfLong<?, LongLongHashMap> countingLong() {
+        return new LongCollectorImpl<>(LongLongHashMap::new,
+                                       (m, t) -> m.addTo(t, 1L),
+                                       PrimitiveCollectors::addAll,
+                                       Function.identity());
+    }
+
+    /**
+     * Returns a collector counting the values of a {@code LongStream} by
+     * the key the classifier maps them to, into a map from key to count.
+     *
+     * @param classifier a classifier function mapping values to keys
+     * @return a collector of the count of each key
+     */
+    public static PrimitiveCollector.OfLong<?, LongLongHashMap>
+    countingLong(LongUnaryOperator classifier) {
+        Objects.requireNonNull(classifier);
+        return new LongCollectorImpl<>(LongLongHashMap::new,
+                                       (m, t) -> m.addTo(classifier.applyAsLong(t), 1L),
+                                       PrimitiveCollectors::addAll,
+                                       Function.identity());
+    }
+
+    /**
+     * Returns a {@code Collector} counting the input elements by the
+     * {@code long} key the classifier maps them to, into a map from key to
+     * count.  This is the unboxed equivalent of
+     * {@code groupingBy(classifier, counting())} for primitive keys.
+     *
+     * @param <T> the type of the input elements
+     * @param classifier a classifier function mapping input elements to keys
+     * @return a {@code Collector} of the count of each key
+     */
+    public static <T> java.util.stream.Collector<T, ?, LongLongHashMap>
+    countingByLong(ToLongFunction<? super T> classifier) {
+        Objects.requireNonNull(classifier);
+        return new Collectors.CollectorImpl<>(
+                LongLongHashMap::new,
+                (m, t) -> m.addTo(classifier.applyAsLong(t), 1L),
+                (left, right) -> {
+                    addAll(left, right);
+                    return left;
+                },
+                Collectors.CH_UNORDERED_ID);
+    }
+
+    /**
+     * Adds the counts of the second map to those of the first.
+     */
+    private static void addAll(LongLongHashMap left, LongLongHashMap right) {
+        right.forEachEntry(left::addTo);
+    }
+
+    /**
+     * Returns a concurrent {@code Collector} counting the input elements
+     * by the key the classifier maps them to.  This is the equivalent of
+     * {@code groupingByConcurrent(classifier, counting())}, with the
+     * counts held unboxed in a {@link ConcurrentCountingMap}, which all
+     * threads of a parallel collection update directly.
+     *
+     * @param <T> the type of the input elements
+     * @param <K> the type of the keys
+     * @param classifier a classifier function mapping input elements to keys
+     * @return a concurrent, unordered {@code Collector} of the count of
+     *         each key
+     * @throws NullPointerException from the collection if the classifier
+     *         returns {@code null}
+     */
+    public static <T, K> java.util.stream.Collector<T, ?, ConcurrentCountingMap<K>>
+    countingBy(Function<? super T, ? extends K> classifier) {
+        Objects.requireNonNull(classifier);
+        return new Collectors.CollectorImpl<>(
+                ConcurrentCountingMap<K>::new,
+                (m, t) -> m.increment(classifier.apply(t)),
+                (left, right) -> {
+                    right.forEach(left::add);
+                    return left;
+                },
+                Collectors.CH_CONCURRENT_ID);
+    }
+
+    /**
+     * Returns a concurrent {@code Collector} summing a {@code long}-valued
+     * function of the input elements by the key the classifier maps them
+     * to.  This is the equivalent of
+     * {@code groupingByConcurrent(classifier, summingLong(mapper))}, with
+     * the sums held unboxed in a {@link ConcurrentCountingMap}.
+     *
+     * @param <T> the type of the input elements
+     * @param <K> the type of the keys
+     * @param classifier a classifier function mapping input elements to keys
+     * @param mapper a function extracting the value to be summed
+     * @return a concurrent, unordered {@code Collector} of the sum for
+     *         each key
+     * @throws NullPointerException from the collection if the classifier
+     *         returns {@code null}
+     */
+    public static <T, K> java.util.stream.Collector<T, ?, ConcurrentCountingMap<K>>
+    summingLongBy(Function<? super T, ? extends K> classifier,
+                  ToLongFunction<? super T> mapper) {
+        Objects.requireNonNull(classifier);
+        Objects.requireNonNull(mapper);
+        return new Collectors.CollectorImpl<>(
+                ConcurrentCountingMap<K>::new,
+                (m, t) -> m.add(classifier.apply(t), mapper.applyAsLong(t)),
+                (left, right) -> {
+                    right.forEach(left::add);
+                    return left;
+                },
+                Collectors.CH_CONCURRENT_ID);
+    }
+
+    // Distributions
+
+    /**
+     * Returns a collector counting the values of a {@code DoubleStream}
+     * that fall into each of {@code bins} bins of equal width between
+     * {@code min} and {@code max}.  Bin {@code i} holds the values
+     * {@code v} with {@code min + i * w <= v < min + (i + 1) * w}, where
+     * {@code w} is {@code (max - min) / bins}, except that the last bin
+     * also holds {@code max}.  Values outside the range, and NaN, are not
+     * counted.
+     *
+     * @param min the least value counted
+     * @param max the greatest value counted
+     * @param bins the number of bins
+     * @return a collector of the count of each bin
+     * @throws IllegalArgumentException if {@code min} and {@code max} are
+     *         not finite with {@code min < max}, or {@code bins} is not
+     *         positive
+     */
+    public static PrimitiveCollector.OfDouble<?, long[]> histogram(double min, double max,
+                                                                   int bins) {
+        if (!(min < max) || Double.isInfinite(min) || Double.isInfinite(max) || bins <= 0)
+            throw new IllegalArgumentException("min: " + min + ", max: " + max +
+                                               ", bins: " + bins);
+        double scale = bins / (max - min);
+        return new DoubleCollectorImpl<>(
+                () -> new long[bins],
+                (a, v) -> {
+                    if (v >= min && v <= max) {
+                        int i = (int) ((v - min) * scale);
+                        a[(i < bins) ? i : bins - 1]++;
+                    }
+                },
+                (left, right) -> {
+                    for (int i = 0; i < bins; i++)
+                        left[i] += right[i];
+                },
+                Function.identity());
+    }
+
+    /**
+     * Returns a collector computing the given percentiles of the values
+     * of a {@code DoubleStream}, exactly, by linear interpolation between
+     * the nearest ranks: for values {@code v[0] <= ... <= v[n - 1]}, the
+     * percentile {@code p} is {@code v[i] + f * (v[i + 1] - v[i])} where
+     * {@code i + f} is {@code p / 100 * (n - 1)}.  Values are compared as
+     * by {@link Double#compare}, so that NaN values are greater than all
+     * others.  The percentiles of no values are NaN.
+     *
+     * <p>The values are held in a {@code SpinedBuffer} and sorted once,
+     * as an array, by the finisher, so the collection needs memory for
+     * two copies of them; for an approximation in bounded space use
+     * {@link #histogram(double, double, int)}.
+     *
+     * @param percentiles the percentiles to compute, each from
+     *        {@code 0} to {@code 100}
+     * @return a collector of an array holding the value of each
+     *         percentile, in the order given
+     * @throws IllegalArgumentException if a percentile is out of range
+     */
+    public static PrimitiveCollector.OfDouble<?, double[]> percentiles(double... percentiles) {
+        double[] ps = percentiles.clone();
+        for (double p : ps) {
+            if (!(p >= 0.0 && p <= 100.0))
+                throw new IllegalArgumentException("percentile: " + p);
+        }
+        return new DoubleCollectorImpl<>(
+                SpinedBuffer.OfDouble::new,
+                SpinedBuffer.OfDouble::accept,
+                (left, right) -> right.forEach((DoubleConsumer) left),
+                b -> {
+                    double[] v = b.asPrimitiveArray();
+                    Arrays.sort(v);
+                    double[] r = new double[ps.length];
+                    int n = v.length;
+                    for (int j = 0; j < ps.length; j++) {
+                        if (n == 0)
+                            r[j] = Double.NaN;
+                        else {
+                            double x = ps[j] / 100.0 * (n - 1);
+                            int i = (int) x;
+                            double f = x - i;
+                            r[j] = (f == 0.0 || v[i] == v[i + 1]) ? v[i]
+                                : v[i] + f * (v[i + 1] - v[i]);
+                        }
+                    }
+                    return r;
+                });
+    }
+}
@@ -0,0 +1,54 @@
+package util.stream;
+
+import java.util.concurrent.CountedCompleter;
+import java.util.function.IntConsumer;
+
+/**
+ * A task that performs an action for each index of a range, in parallel,
+ * by splitting the range in halves down to single indices.  Used by
+ * stateful operations for the phases of their parallel evaluation that
+ * work over an array of leaves, partitions or blocks.
+ */
+final class RangeTask extends CountedCompleter<Void> {
+    private static final long serialVersionUID = 3412829542213466137L;
+
+    private final IntConsumer action;
+    private final int lo, hi;
+
+    private RangeTask(CountedCompleter<?> parent, IntConsumer action,
+                      int lo, int hi) {
+        super(parent);
+        this.action = action;
+        this.lo = lo;
+        this.hi = hi;
+    }
+
+    /**
+     * Performs the action for each index from zero to {@code n - 1}, in
+     * parallel, and returns when all have completed.  Runs in the pool of
+     * the calling worker thread, or else in the common pool.  If an
+     * action throws an exception, it is rethrown.
+     *
+     * @param n the number of indices
+     * @param action the action
+     */
+    static void forEach(int n, IntConsumer action) {
+        if (n == 1)
+            action.accept(0);
+        else if (n > 1)
+            new RangeTask(null, action, 0, n).invoke();
+    }
+
+    @Override
+    public void compute() {
+        int l = lo, h = hi;
+        while (h - l > 1) {
+            int mid = (l + h) >>> 1;
+            addToPendingCount(1);
+            new RangeTask(this, action, mid, h).fork();
+            h = mid;
+        }
+        action.accept(l);
+        propagateCompletion();
+    }
+}
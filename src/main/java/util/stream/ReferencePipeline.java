@@ -26,6 +26,7 @@ package util.stream;
 
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Spliterator;
@@ -434,6 +435,28 @@ abstract class ReferencePipeline<P_IN, P_OUT>
             return java.util.stream.SliceOps.makeRef(this, n, -1);
     }
 
+    // Windowing operations from util.stream.Stream
+
+    public final Stream<List<P_OUT>> windowed(int size) {
+        return windows(size, true, false);
+    }
+
+    public final Stream<List<P_OUT>> chunked(int size) {
+        return windows(size, false, false);
+    }
+
+    public final Stream<List<P_OUT>> chunked(int size, boolean reuseBuffer) {
+        return windows(size, false, reuseBuffer);
+    }
+
+    private Stream<List<P_OUT>> windows(int size, boolean sliding, boolean reuse) {
+        if (size <= 0)
+            throw new IllegalArgumentException(Integer.toString(size));
+        Spliterator<List<P_OUT>> split = new util.stream.StreamSpliterators.WindowingSpliterator.OfRef<>(
+                spliterator(), size, sliding, reuse);
+        return StreamSupport.stream(split, isParallel()).onClose(this::close);
+    }
+
     // Terminal operations from Stream
 
     @Override
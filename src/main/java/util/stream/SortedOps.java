@@ -29,6 +29,7 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Objects;
 import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.IntFunction;
 import java.util.stream.*;
 import java.util.stream.IntStream;
@@ -159,10 +160,15 @@ final class SortedOps {
                 return helper.evaluate(spliterator, false, generator);
             }
             else {
-                // @@@ Weak two-pass parallel implementation; parallel collect, parallel sort
-                T[] flattenedData = helper.evaluate(spliterator, true, generator).asArray(generator);
-                Arrays.parallelSort(flattenedData, comparator);
-                return java.util.stream.Nodes.node(flattenedData);
+                // Parallel collect, then sort the leaves and merge them in
+                // parallel, unless there are too few to be worth it
+                java.util.stream.Node<T> tree = helper.evaluate(spliterator, false, generator);
+                T[] sorted = new RunMerger<T>(comparator, generator).sort(tree);
+                if (sorted == null) {
+                    sorted = java.util.stream.Nodes.flatten(tree, generator).asArray(generator);
+                    Arrays.parallelSort(sorted, comparator);
+                }
+                return java.util.stream.Nodes.node(sorted);
             }
         }
     }
@@ -284,6 +290,191 @@ final class SortedOps {
         }
     }
 
+    /**
+     * Parallel sort of the unflattened node tree produced by the upstream
+     * of a sort on a reference stream.  The leaves of the tree are sorted
+     * concurrently, each in place, and the sorted leaves, or runs, are
+     * then merged with a k-way merge over all of them at once.  The merge
+     * is split into partitions by splitter elements sampled from the runs;
+     * each partition takes, from every run, the elements between
+     * consecutive splitters, and the partitions are merged concurrently,
+     * each into its own range of the output.  Elements equal to a splitter
+     * all fall into the same partition, and ties are broken by run, so the
+     * sort is stable.
+     *
+     * <p>Compared with flattening the tree and sorting the flat array,
+     * this copies each element one time fewer and needs no merge buffer
+     * as large as the whole input.
+     *
+     * @param <T> the type of elements
+     */
+    private static final class RunMerger<T> {
+        /** The fewest elements for which runs are sorted and merged */
+        static final int MIN_SORT_SIZE = 1 << 13;
+
+        /** The fewest elements per merge partition */
+        static final int MIN_PARTITION_SIZE = 1 << 12;
+
+        /** The number of elements sampled from each run for splitters */
+        static final int SAMPLES_PER_RUN = 8;
+
+        final Comparator<? super T> comparator;
+        final IntFunction<T[]> generator;
+
+        RunMerger(Comparator<? super T> comparator, IntFunction<T[]> generator) {
+            this.comparator = comparator;
+            this.generator = generator;
+        }
+
+        /**
+         * Returns the sorted elements of the node, or null if it has too
+         * few leaves or elements for its runs to be worth merging.
+         */
+        T[] sort(java.util.stream.Node<T> node) {
+            ArrayList<java.util.stream.Node<T>> leaves = new ArrayList<>();
+            addLeaves(node, leaves);
+            int k = leaves.size();
+            long size = node.count();
+            if (k < 2 || size < MIN_SORT_SIZE || size >= Integer.MAX_VALUE - 8)
+                return null;
+
+            @SuppressWarnings("unchecked")
+            T[][] runs = (T[][]) new Object[k][];
+            RangeTask.forEach(k, r -> {
+                T[] run = leaves.get(r).asArray(generator);
+                Arrays.sort(run, comparator);
+                runs[r] = run;
+            });
+
+            int n = (int) size;
+            int parts = (int) Math.min((long) ForkJoinPool.getCommonPoolParallelism() << 2,
+                                       Math.max(1, n / MIN_PARTITION_SIZE));
+            long[] splitters = splitters(runs, parts);
+            T[] out = generator.apply(n);
+            RangeTask.forEach(splitters.length + 1, j -> {
+                int[] from = new int[k], to = new int[k];
+                int off = 0;
+                for (int r = 0; r < k; r++) {
+                    T[] run = runs[r];
+                    from[r] = (j == 0) ? 0 : lowerBound(run, runs, splitters[j - 1]);
+                    to[r] = (j == splitters.length) ? run.length : lowerBound(run, runs, splitters[j]);
+                    off += from[r];
+                }
+                merge(runs, from, to, out, off);
+            });
+            return out;
+        }
+
+        private static <T> void addLeaves(java.util.stream.Node<T> node,
+                                          ArrayList<java.util.stream.Node<T>> leaves) {
+            int c = node.getChildCount();
+            if (c == 0) {
+                if (node.count() > 0)
+                    leaves.add(node);
+            }
+            else {
+                for (int i = 0; i < c; i++)
+                    addLeaves(node.getChild(i), leaves);
+            }
+        }
+
+        /**
+         * Chooses up to {@code parts - 1} splitters from an ordered sample
+         * of the runs, each encoded as its run number in the high word and
+         * its index in the low word.
+         */
+        private long[] splitters(T[][] runs, int parts) {
+            if (parts <= 1)
+                return new long[0];
+            int k = runs.length;
+            Long[] sample = new Long[k * SAMPLES_PER_RUN];
+            int m = 0;
+            for (int r = 0; r < k; r++) {
+                int len = runs[r].length;
+                for (int s = 1; s <= SAMPLES_PER_RUN; s++)
+                    sample[m++] = ((long) r << 32) | (int) ((long) len * s / (SAMPLES_PER_RUN + 1));
+            }
+            Arrays.sort(sample, (x, y) -> {
+                int c = comparator.compare(runs[(int) (x >>> 32)][x.intValue()],
+                                           runs[(int) (y >>> 32)][y.intValue()]);
+                return (c != 0) ? c : Long.compare(x, y);
+            });
+            long[] splitters = new long[parts - 1];
+            for (int j = 1; j < parts; j++)
+                splitters[j - 1] = sample[(int) ((long) m * j / parts)];
+            return splitters;
+        }
+
+        /**
+         * Returns the index of the first element of the run not less
+         * than the splitter.
+         */
+        private int lowerBound(T[] run, T[][] runs, long splitter) {
+            T s = runs[(int) (splitter >>> 32)][(int) splitter];
+            int lo = 0, hi = run.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (comparator.compare(run[mid], s) < 0)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+
+        /**
+         * Merges the ranges {@code from[r]} to {@code to[r]} of each run
+         * {@code r} into {@code out}, starting at {@code off}, taking equal
+         * elements from lower-numbered runs first.
+         */
+        private void merge(T[][] runs, int[] from, int[] to, T[] out, int off) {
+            Comparator<? super T> cmp = comparator;
+            int k = runs.length;
+            int[] heap = new int[k];                // runs ordered by head element
+            int size = 0;
+            for (int r = 0; r < k; r++) {
+                if (from[r] < to[r]) {
+                    int c = size++;
+                    while (c > 0) {
+                        int p = (c - 1) >>> 1, q = heap[p];
+                        if (cmp.compare(runs[q][from[q]], runs[r][from[r]]) <= 0)
+                            break;
+                        heap[c] = q;
+                        c = p;
+                    }
+                    heap[c] = r;
+                }
+            }
+            while (size > 0) {
+                int r = heap[0];
+                out[off++] = runs[r][from[r]++];
+                if (from[r] == to[r]) {         // exhausted; replace by last
+                    if (--size == 0)
+                        break;
+                    r = heap[size];
+                }
+                // sift r down from the root
+                int c = 0;
+                for (int child; (child = (c << 1) + 1) < size; c = child) {
+                    int right = child + 1, x = heap[child];
+                    if (right < size) {
+                        int y = heap[right];
+                        int d = cmp.compare(runs[y][from[y]], runs[x][from[x]]);
+                        if (d < 0 || (d == 0 && y < x)) {
+                            child = right;
+                            x = y;
+                        }
+                    }
+                    int d = cmp.compare(runs[x][from[x]], runs[r][from[r]]);
+                    if (d > 0 || (d == 0 && x > r))
+                        break;
+                    heap[c] = x;
+                }
+                heap[c] = r;
+            }
+        }
+    }
+
     /**
      * Abstract {@link java.util.stream.Sink} for implementing sort on reference streams.
      *
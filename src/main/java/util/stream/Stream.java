@@ -31,6 +31,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Spliterator;
@@ -479,6 +480,69 @@ public interface Stream<T> extends BaseStream<T, Stream<T>> {
      */
     Stream<T> skip(long n);
 
+    /**
+     * Returns a stream of the sliding windows of this stream: for each
+     * element that is followed by at least {@code size - 1} more, a list of
+     * that element and the {@code size - 1} elements after it, in
+     * encounter order.  A stream of fewer than {@code size} elements has
+     * no windows.  Each window is a new unmodifiable list.
+     *
+     * <p>This is an <a href="package-summary.html#StreamOps">intermediate
+     * operation</a>.  It is lazy: windows are filled from this stream as
+     * they are consumed, and only the current window is held.  In a
+     * parallel pipeline, the elements are split where the source splits,
+     * and the {@code size - 1} elements after each split point are copied
+     * to both sides, so that each window is formed on one side.
+     *
+     * @apiNote
+     * For example, the differences between consecutive readings:
+     * <pre>{@code
+     *     Stream<Double> deltas = readings.windowed(2).map(w -> w.get(1) - w.get(0));
+     * }</pre>
+     *
+     * @param size the number of elements per window
+     * @return the new stream
+     * @throws IllegalArgumentException if {@code size} is not positive
+     */
+    Stream<List<T>> windowed(int size);
+
+    /**
+     * Returns a stream of the chunks of this stream: lists of
+     * {@code size} consecutive elements, in encounter order, the last of
+     * which may hold fewer.  Each chunk is a new unmodifiable list.
+     *
+     * <p>This is an <a href="package-summary.html#StreamOps">intermediate
+     * operation</a>.  It is lazy: chunks are filled from this stream as
+     * they are consumed, and only the current chunk is held.  In a
+     * parallel pipeline, the elements are split at chunk boundaries: where
+     * the source splits elsewhere, the elements up to the next boundary
+     * are moved to the first part.
+     *
+     * @param size the number of elements per chunk
+     * @return the new stream
+     * @throws IllegalArgumentException if {@code size} is not positive
+     * @see #chunked(int, boolean)
+     */
+    Stream<List<T>> chunked(int size);
+
+    /**
+     * Returns a stream of the chunks of this stream, as for
+     * {@link #chunked(int)}, optionally reusing one list for all chunks
+     * of each part of the stream.
+     *
+     * <p>If {@code reuseBuffer} is true, the list passed downstream is
+     * refilled with the next chunk once the operation that received it
+     * returns, so that no list is allocated per chunk.  It must then not
+     * be kept or passed on by later operations, as by a terminal
+     * {@code forEach} that processes each chunk in turn.
+     *
+     * @param size the number of elements per chunk
+     * @param reuseBuffer whether to reuse one list for all chunks
+     * @return the new stream
+     * @throws IllegalArgumentException if {@code size} is not positive
+     */
+    Stream<List<T>> chunked(int size, boolean reuseBuffer);
+
     /**
      * Performs an action for each element of this stream.
      *
@@ -1083,6 +1147,44 @@ public interface Stream<T> extends BaseStream<T, Stream<T>> {
         return stream.onClose(Streams.composedClose(a, b));
     }
 
+    /**
+     * Creates a lazily zipped stream whose elements are the results of
+     * applying the given function to the corresponding elements of the
+     * two streams, up to the end of the shorter stream.  The resulting
+     * stream is ordered if both of the input streams are ordered, and
+     * parallel if either of the input streams is parallel.  When the
+     * resulting stream is closed, the close handlers for both input
+     * streams are invoked.
+     *
+     * <p>In a parallel pipeline, both streams are split where they report
+     * exact sizes for their splits, and the shorter of two corresponding
+     * parts is extended with the elements following it, so that pairs
+     * stay together.  Otherwise batches of results are computed
+     * sequentially and processed in parallel.
+     *
+     * @param <A> the type of elements of the first stream
+     * @param <B> the type of elements of the second stream
+     * @param <R> the type of elements of the resulting stream
+     * @param a the first stream
+     * @param b the second stream
+     * @param zipper a <a href="package-summary.html#NonInterference">non-interfering</a>,
+     *               <a href="package-summary.html#Statelessness">stateless</a>
+     *               function combining corresponding elements
+     * @return the zip of the two input streams
+     */
+    public static <A, B, R> Stream<R> zip(Stream<? extends A> a, Stream<? extends B> b,
+                                          BiFunction<? super A, ? super B, ? extends R> zipper) {
+        Objects.requireNonNull(a);
+        Objects.requireNonNull(b);
+        Objects.requireNonNull(zipper);
+
+        @SuppressWarnings("unchecked")
+        Spliterator<R> split = new StreamSpliterators.ZipSpliterator.OfRef<>(
+                (Spliterator<A>) a.spliterator(), (Spliterator<B>) b.spliterator(), zipper);
+        Stream<R> stream = StreamSupport.stream(split, a.isParallel() || b.isParallel());
+        return stream.onClose(Streams.composedClose(a, b));
+    }
+
     /**
      * A mutable builder for a {@code Stream}.  This allows the creation of a
      * {@code Stream} by generating elements individually and adding them to the
@@ -24,15 +24,22 @@
  */
 package util.stream;
 
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Objects;
+import java.util.RandomAccess;
 import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
 import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.function.DoubleConsumer;
 import java.util.function.DoubleSupplier;
+import java.util.function.IntBinaryOperator;
 import java.util.function.IntConsumer;
 import java.util.function.IntSupplier;
 import java.util.function.LongConsumer;
@@ -1320,6 +1327,647 @@ class StreamSpliterators {
         }
     }
 
+    /**
+     * A spliterator grouping consecutive elements of a source spliterator
+     * into windows of a fixed size: either sliding windows, one starting
+     * at each element that is followed by at least {@code size - 1} more,
+     * or chunks, adjacent windows covering the source, the last of which
+     * may be shorter.  Windows are filled lazily, as they are traversed.
+     *
+     * <p>Splitting keeps windows whole.  If the source is {@code SUBSIZED}
+     * it is split, and the prefix is extended with elements taken from the
+     * start of the remainder: for chunks, up to the next chunk boundary;
+     * for sliding windows, the {@code size - 1} elements into which the
+     * last windows starting in the prefix extend, which are also put back
+     * at the start of the remainder.  Borrowed elements are kept apart from
+     * the source, traversed before or after it, so that later splits still
+     * divide the source itself evenly.  Otherwise a batch of elements is
+     * copied into an array for the prefix, as by
+     * {@link java.util.Spliterators.AbstractSpliterator}, a whole number of
+     * chunks long for chunks.  A source holding {@code n} elements thus
+     * always yields {@code n - size + 1} sliding windows, however it is
+     * split.
+     *
+     * @param <T> type of source elements
+     * @param <T_SPLITR> type of source spliterator
+     * @param <T_ARR> type of array holding source elements
+     * @param <R> type of windows
+     */
+    abstract static class WindowingSpliterator<T, T_SPLITR extends Spliterator<T>, T_ARR, R>
+            implements Spliterator<R> {
+        static final int BATCH_UNIT = 1 << 10;  // batch array size increment
+        static final int MAX_BATCH = 1 << 25;  // max batch array size
+
+        // The number of elements per window
+        final int size;
+
+        // True for sliding windows, false for chunks
+        final boolean sliding;
+
+        // True if chunks are views of, or are, a single reused buffer
+        final boolean reuse;
+
+        // The underlying spliterator
+        T_SPLITR s;
+
+        // Elements borrowed from before and after the source, or null
+        T_SPLITR head, tail;
+
+        // The number of elements of the current window held in the buffer
+        int fill;
+
+        // The size of the last batch copied when splitting an unsized source
+        private int batch;
+
+        WindowingSpliterator(T_SPLITR s, int size, boolean sliding, boolean reuse) {
+            this.s = s;
+            this.size = size;
+            this.sliding = sliding;
+            this.reuse = reuse;
+        }
+
+        /**
+         * Takes up to {@code n} elements from the source, returning an
+         * array of exactly those taken.
+         */
+        abstract T_ARR take(int n);
+
+        abstract int length(T_ARR array);
+
+        abstract T_SPLITR spliterator(T_ARR array);
+
+        abstract T_SPLITR concat(T_SPLITR a, T_SPLITR b);
+
+        abstract WindowingSpliterator<T, T_SPLITR, T_ARR, R> makeSpliterator(T_SPLITR s);
+
+        /**
+         * Passes the next element of the given spliterator to this,
+         * returning false if there is none.
+         */
+        abstract boolean advance(T_SPLITR sp);
+
+        /**
+         * Passes the next element of the head, source or tail to this,
+         * returning false if there is none.
+         */
+        final boolean advance() {
+            if (head != null) {
+                if (advance(head))
+                    return true;
+                head = null;
+            }
+            if (advance(s))
+                return true;
+            if (tail != null) {
+                if (advance(tail))
+                    return true;
+                tail = null;
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<R> trySplit() {
+            if (fill != 0)                      // traversal has started
+                return null;
+            T_SPLITR split;
+            long p;
+            if (s.hasCharacteristics(Spliterator.SUBSIZED)) {
+                @SuppressWarnings("unchecked")
+                T_SPLITR sp = (T_SPLITR) s.trySplit();
+                if ((split = sp) == null)
+                    return null;
+                p = split.getExactSizeIfKnown();
+            }
+            else {
+                int n = Math.min(batch + BATCH_UNIT, MAX_BATCH);
+                if (!sliding)
+                    n = (int) Math.min(((long) n + size - 1) / size * size,
+                                       Integer.MAX_VALUE - 8);
+                T_ARR a = take(n);
+                if ((batch = length(a)) == 0)
+                    return null;
+                split = spliterator(a);
+                p = batch;
+            }
+            if (head != null)
+                p += head.getExactSizeIfKnown();
+            int m = sliding ? size - 1 : (int) ((size - p % size) % size);
+            T_ARR next = (m > 0) ? take(m) : null;
+            int k = (m > 0) ? length(next) : 0;
+            if (k < m || s.getExactSizeIfKnown() == 0) {
+                // No windows would be left for the remainder, so the prefix
+                // would be no smaller than this; put it back
+                s = (k > 0) ? concat(split, spliterator(next)) : split;
+                return null;
+            }
+            WindowingSpliterator<T, T_SPLITR, T_ARR, R> prefix = makeSpliterator(split);
+            prefix.head = head;
+            if (k > 0)
+                prefix.tail = spliterator(next);
+            head = (sliding && k > 0) ? spliterator(next) : null;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            long est = s.estimateSize();
+            if (est == Long.MAX_VALUE)
+                return est;
+            if (head != null)
+                est += head.estimateSize();
+            if (tail != null)
+                est += tail.estimateSize();
+            if (!sliding)
+                return est / size + ((est % size == 0) ? 0 : 1);
+            else if (fill == size)              // each element ends a window
+                return est;
+            else
+                return Math.max(0L, est - (size - fill) + 1);
+        }
+
+        @Override
+        public int characteristics() {
+            return (s.characteristics() &
+                    (Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED))
+                   | Spliterator.NONNULL;
+        }
+
+        /**
+         * A list view of the start of an array, the window type of
+         * reference streams.  It is unmodifiable, except by the spliterator
+         * that reuses it.
+         */
+        static final class ArrayWindow<T> extends AbstractList<T> implements RandomAccess {
+            final Object[] array;
+            int length;
+
+            ArrayWindow(Object[] array, int length) {
+                this.array = array;
+                this.length = length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T get(int index) {
+                if (index >= length)
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+                return (T) array[index];
+            }
+
+            @Override
+            public int size() {
+                return length;
+            }
+
+            @Override
+            public Object[] toArray() {
+                return Arrays.copyOf(array, length);
+            }
+        }
+
+        static final class OfRef<T>
+                extends WindowingSpliterator<T, Spliterator<T>, Object[], List<T>>
+                implements Consumer<T> {
+            // The elements of the current window; a ring for sliding windows
+            Object[] buffer;
+
+            // The index in the buffer of the first element of the window
+            int start;
+
+            // The view of the buffer handed out when reusing it
+            ArrayWindow<T> view;
+
+            // The number of elements taken by take
+            private int taken;
+
+            OfRef(Spliterator<T> s, int size, boolean sliding, boolean reuse) {
+                super(s, size, sliding, reuse);
+            }
+
+            @Override
+            public void accept(T t) {
+                Object[] b = buffer;
+                if (b == null)
+                    buffer = b = new Object[size];
+                if (fill < size) {
+                    int i = start + fill++;
+                    b[(i < size) ? i : i - size] = t;
+                }
+                else {                          // slide
+                    b[start] = t;
+                    if (++start == size)
+                        start = 0;
+                }
+            }
+
+            /**
+             * Passes the window in the buffer to the action.
+             */
+            private void emit(Consumer<? super List<T>> action) {
+                Object[] b = buffer;
+                if (sliding) {
+                    Object[] w = new Object[size];
+                    System.arraycopy(b, start, w, 0, size - start);
+                    System.arraycopy(b, 0, w, size - start, start);
+                    action.accept(new ArrayWindow<>(w, size));
+                }
+                else {
+                    int n = fill;
+                    fill = 0;
+                    if (!reuse) {
+                        buffer = null;
+                        action.accept(new ArrayWindow<>(b, n));
+                    }
+                    else {
+                        ArrayWindow<T> v = view;
+                        if (v == null)
+                            view = v = new ArrayWindow<>(b, n);
+                        else
+                            v.length = n;
+                        action.accept(v);
+                    }
+                }
+            }
+
+            @Override
+            public boolean tryAdvance(Consumer<? super List<T>> action) {
+                if (sliding) {
+                    do {
+                        if (!advance())
+                            return false;
+                    } while (fill < size);
+                }
+                else {
+                    while (fill < size && advance()) { }
+                    if (fill == 0)
+                        return false;
+                }
+                emit(action);
+                return true;
+            }
+
+            @Override
+            public void forEachRemaining(Consumer<? super List<T>> action) {
+                Consumer<T> c = t -> {
+                    accept(t);
+                    if (fill == size)
+                        emit(action);
+                };
+                if (head != null)
+                    head.forEachRemaining(c);
+                s.forEachRemaining(c);
+                if (tail != null)
+                    tail.forEachRemaining(c);
+                head = tail = null;
+                if (!sliding && fill > 0)
+                    emit(action);
+            }
+
+            @Override
+            Object[] take(int n) {
+                Object[] a = new Object[n];
+                Consumer<T> c = t -> a[taken++] = t;
+                taken = 0;
+                while (taken < n && s.tryAdvance(c)) { }
+                return (taken == n) ? a : Arrays.copyOf(a, taken);
+            }
+
+            @Override
+            int length(Object[] array) {
+                return array.length;
+            }
+
+            @Override
+            Spliterator<T> spliterator(Object[] array) {
+                return Spliterators.spliterator(array, Spliterator.ORDERED);
+            }
+
+            @Override
+            Spliterator<T> concat(Spliterator<T> a, Spliterator<T> b) {
+                return new Streams.ConcatSpliterator.OfRef<>(a, b);
+            }
+
+            @Override
+            boolean advance(Spliterator<T> sp) {
+                return sp.tryAdvance(this);
+            }
+
+            @Override
+            OfRef<T> makeSpliterator(Spliterator<T> s) {
+                return new OfRef<>(s, size, sliding, reuse);
+            }
+        }
+
+        static final class OfInt
+                extends WindowingSpliterator<Integer, Spliterator.OfInt, int[], int[]>
+                implements IntConsumer {
+            // The elements of the current window; a ring for sliding windows
+            int[] buffer;
+
+            // The index in the buffer of the first element of the window
+            int start;
+
+            // The number of elements taken by take
+            private int taken;
+
+            OfInt(Spliterator.OfInt s, int size, boolean sliding, boolean reuse) {
+                super(s, size, sliding, reuse);
+            }
+
+            @Override
+            public void accept(int t) {
+                int[] b = buffer;
+                if (b == null)
+                    buffer = b = new int[size];
+                if (fill < size) {
+                    int i = start + fill++;
+                    b[(i < size) ? i : i - size] = t;
+                }
+                else {                          // slide
+                    b[start] = t;
+                    if (++start == size)
+                        start = 0;
+                }
+            }
+
+            /**
+             * Passes the window in the buffer to the action.  A reused
+             * buffer is passed only when full; a shorter last chunk is
+             * copied.
+             */
+            private void emit(Consumer<? super int[]> action) {
+                int[] b = buffer;
+                if (sliding) {
+                    int[] w = new int[size];
+                    System.arraycopy(b, start, w, 0, size - start);
+                    System.arraycopy(b, 0, w, size - start, start);
+                    action.accept(w);
+                }
+                else {
+                    int n = fill;
+                    fill = 0;
+                    if (n < size)
+                        action.accept(Arrays.copyOf(b, n));
+                    else if (reuse)
+                        action.accept(b);
+                    else {
+                        buffer = null;
+                        action.accept(b);
+                    }
+                }
+            }
+
+            @Override
+            public boolean tryAdvance(Consumer<? super int[]> action) {
+                if (sliding) {
+                    do {
+                        if (!advance())
+                            return false;
+                    } while (fill < size);
+                }
+                else {
+                    while (fill < size && advance()) { }
+                    if (fill == 0)
+                        return false;
+                }
+                emit(action);
+                return true;
+            }
+
+            @Override
+            public void forEachRemaining(Consumer<? super int[]> action) {
+                IntConsumer c = t -> {
+                    accept(t);
+                    if (fill == size)
+                        emit(action);
+                };
+                if (head != null)
+                    head.forEachRemaining(c);
+                s.forEachRemaining(c);
+                if (tail != null)
+                    tail.forEachRemaining(c);
+                head = tail = null;
+                if (!sliding && fill > 0)
+                    emit(action);
+            }
+
+            @Override
+            int[] take(int n) {
+                int[] a = new int[n];
+                IntConsumer c = t -> a[taken++] = t;
+                taken = 0;
+                while (taken < n && s.tryAdvance(c)) { }
+                return (taken == n) ? a : Arrays.copyOf(a, taken);
+            }
+
+            @Override
+            int length(int[] array) {
+                return array.length;
+            }
+
+            @Override
+            Spliterator.OfInt spliterator(int[] array) {
+                return Spliterators.spliterator(array, Spliterator.ORDERED);
+            }
+
+            @Override
+            Spliterator.OfInt concat(Spliterator.OfInt a, Spliterator.OfInt b) {
+                return new Streams.ConcatSpliterator.OfInt(a, b);
+            }
+
+            @Override
+            boolean advance(Spliterator.OfInt sp) {
+                return sp.tryAdvance((IntConsumer) this);
+            }
+
+            @Override
+            WindowingSpliterator.OfInt makeSpliterator(Spliterator.OfInt s) {
+                return new WindowingSpliterator.OfInt(s, size, sliding, reuse);
+            }
+        }
+    }
+
+    /**
+     * A spliterator over the results of a function applied to the
+     * corresponding elements of two source spliterators, ending with the
+     * shorter source.
+     *
+     * <p>If both sources are {@code SUBSIZED}, splitting splits both, and
+     * aligns the prefixes by extending the shorter with elements taken
+     * from the start of the remainder of its source.  If the prefixes
+     * differ by more than a maximum batch, they are put back and the
+     * split proceeds as for unsized sources, for which a batch of results
+     * is copied into an array for the prefix, as by
+     * {@link java.util.Spliterators.AbstractSpliterator}.
+     */
+    abstract static class ZipSpliterator {
+        static final int BATCH_UNIT = 1 << 10;  // batch array size increment
+        static final int MAX_BATCH = 1 << 25;  // max batch array size
+
+        private ZipSpliterator() { }
+
+        static final class OfRef<A, B, R> implements Spliterator<R> {
+            Spliterator<A> a;
+            Spliterator<B> b;
+            final BiFunction<? super A, ? super B, ? extends R> zipper;
+            A aValue;
+            B bValue;
+            final Consumer<A> aHolder = t -> aValue = t;
+            final Consumer<B> bHolder = t -> bValue = t;
+            private int batch;
+
+            OfRef(Spliterator<A> a, Spliterator<B> b,
+                  BiFunction<? super A, ? super B, ? extends R> zipper) {
+                this.a = a;
+                this.b = b;
+                this.zipper = zipper;
+            }
+
+            @Override
+            public boolean tryAdvance(Consumer<? super R> action) {
+                if (!a.tryAdvance(aHolder) || !b.tryAdvance(bHolder))
+                    return false;
+                A x = aValue;
+                B y = bValue;
+                aValue = null;
+                bValue = null;
+                action.accept(zipper.apply(x, y));
+                return true;
+            }
+
+            @Override
+            public Spliterator<R> trySplit() {
+                if (a.hasCharacteristics(Spliterator.SUBSIZED) &&
+                    b.hasCharacteristics(Spliterator.SUBSIZED)) {
+                    Spliterator<A> ap = a.trySplit();
+                    if (ap != null) {
+                        Spliterator<B> bp = b.trySplit();
+                        long p = ap.getExactSizeIfKnown();
+                        long q = (bp == null) ? 0L : bp.getExactSizeIfKnown();
+                        if (Math.abs(p - q) <= MAX_BATCH) {
+                            if (p < q)
+                                ap = new Streams.ConcatSpliterator.OfRef<>(ap, take(a, (int) (q - p)));
+                            else if (q < p)
+                                bp = (bp == null) ? take(b, (int) p)
+                                     : new Streams.ConcatSpliterator.OfRef<>(bp, take(b, (int) (p - q)));
+                            return new OfRef<>(ap, bp, zipper);
+                        }
+                        a = new Streams.ConcatSpliterator.OfRef<>(ap, a);
+                        if (bp != null)
+                            b = new Streams.ConcatSpliterator.OfRef<>(bp, b);
+                    }
+                }
+                int n = Math.min(batch + BATCH_UNIT, MAX_BATCH);
+                Object[] results = new Object[n];
+                int j = 0;
+                while (j < n && a.tryAdvance(aHolder) && b.tryAdvance(bHolder)) {
+                    results[j++] = zipper.apply(aValue, bValue);
+                }
+                aValue = null;
+                bValue = null;
+                if ((batch = j) == 0)
+                    return null;
+                return Spliterators.spliterator(results, 0, j, characteristics());
+            }
+
+            private static <T> Spliterator<T> take(Spliterator<T> s, int n) {
+                Object[] array = new Object[n];
+                int[] j = new int[1];
+                Consumer<T> c = t -> array[j[0]++] = t;
+                while (j[0] < n && s.tryAdvance(c)) { }
+                return Spliterators.spliterator(array, 0, j[0], Spliterator.ORDERED);
+            }
+
+            @Override
+            public long estimateSize() {
+                return Math.min(a.estimateSize(), b.estimateSize());
+            }
+
+            @Override
+            public int characteristics() {
+                return a.characteristics() & b.characteristics() &
+                       (Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED);
+            }
+        }
+
+        static final class OfInt implements Spliterator.OfInt {
+            Spliterator.OfInt a;
+            Spliterator.OfInt b;
+            final IntBinaryOperator zipper;
+            int aValue, bValue;
+            final IntConsumer aHolder = t -> aValue = t;
+            final IntConsumer bHolder = t -> bValue = t;
+            private int batch;
+
+            OfInt(Spliterator.OfInt a, Spliterator.OfInt b, IntBinaryOperator zipper) {
+                this.a = a;
+                this.b = b;
+                this.zipper = zipper;
+            }
+
+            @Override
+            public boolean tryAdvance(IntConsumer action) {
+                if (!a.tryAdvance(aHolder) || !b.tryAdvance(bHolder))
+                    return false;
+                action.accept(zipper.applyAsInt(aValue, bValue));
+                return true;
+            }
+
+            @Override
+            public Spliterator.OfInt trySplit() {
+                if (a.hasCharacteristics(Spliterator.SUBSIZED) &&
+                    b.hasCharacteristics(Spliterator.SUBSIZED)) {
+                    Spliterator.OfInt ap = a.trySplit();
+                    if (ap != null) {
+                        Spliterator.OfInt bp = b.trySplit();
+                        long p = ap.getExactSizeIfKnown();
+                        long q = (bp == null) ? 0L : bp.getExactSizeIfKnown();
+                        if (Math.abs(p - q) <= MAX_BATCH) {
+                            if (p < q)
+                                ap = new Streams.ConcatSpliterator.OfInt(ap, take(a, (int) (q - p)));
+                            else if (q < p)
+                                bp = (bp == null) ? take(b, (int) p)
+                                     : new Streams.ConcatSpliterator.OfInt(bp, take(b, (int) (p - q)));
+                            return new ZipSpliterator.OfInt(ap, bp, zipper);
+                        }
+                        a = new Streams.ConcatSpliterator.OfInt(ap, a);
+                        if (bp != null)
+                            b = new Streams.ConcatSpliterator.OfInt(bp, b);
+                    }
+                }
+                int n = Math.min(batch + BATCH_UNIT, MAX_BATCH);
+                int[] results = new int[n];
+                int j = 0;
+                while (j < n && a.tryAdvance(aHolder) && b.tryAdvance(bHolder)) {
+                    results[j++] = zipper.applyAsInt(aValue, bValue);
+                }
+                if ((batch = j) == 0)
+                    return null;
+                return Spliterators.spliterator(results, 0, j, characteristics());
+            }
+
+            private static Spliterator.OfInt take(Spliterator.OfInt s, int n) {
+                int[] array = new int[n];
+                int[] j = new int[1];
+                IntConsumer c = t -> array[j[0]++] = t;
+                while (j[0] < n && s.tryAdvance(c)) { }
+                return Spliterators.spliterator(array, 0, j[0], Spliterator.ORDERED);
+            }
+
+            @Override
+            public long estimateSize() {
+                return Math.min(a.estimateSize(), b.estimateSize());
+            }
+
+            @Override
+            public int characteristics() {
+                return a.characteristics() & b.characteristics() &
+                       (Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED);
+            }
+        }
+    }
+
     /**
      * A Spliterator that infinitely supplies elements in no particular order.
      *
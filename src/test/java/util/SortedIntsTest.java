@@ -0,0 +1,32 @@
+package util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SortedIntsTest {
+
+    @Test
+    public void mergeOfNoListsWritesNothing() {
+        int[] dst = new int[0];
+        assertEquals(0, SortedInts.merge(new int[0][], dst, 0));
+        assertEquals(0, SortedInts.parallelMerge(new int[0][], dst, 0));
+    }
+
+    @Test
+    public void mergeOfEmptyListsWritesNothing() {
+        int[] dst = new int[0];
+        assertEquals(0, SortedInts.merge(new int[][] { {} }, dst, 0));
+        assertEquals(0, SortedInts.merge(new int[][] { {}, {}, {} }, dst, 0));
+        assertEquals(0, SortedInts.parallelMerge(new int[][] { {}, {} }, dst, 0));
+    }
+
+    @Test
+    public void mergeSkipsEmptyLists() {
+        int[][] lists = { {}, { 1, 4, 4 }, {}, { 2, 3 }, { 0, 5 } };
+        int[] dst = new int[8];
+        assertEquals(7, SortedInts.merge(lists, dst, 1));
+        assertArrayEquals(new int[] { 0, 0, 1, 2, 3, 4, 4, 5 }, dst);
+    }
+}
@@ -0,0 +1,32 @@
+package util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SortedLongsTest {
+
+    @Test
+    public void mergeOfNoListsWritesNothing() {
+        long[] dst = new long[0];
+        assertEquals(0, SortedLongs.merge(new long[0][], dst, 0));
+        assertEquals(0, SortedLongs.parallelMerge(new long[0][], dst, 0));
+    }
+
+    @Test
+    public void mergeOfEmptyListsWritesNothing() {
+        long[] dst = new long[0];
+        assertEquals(0, SortedLongs.merge(new long[][] { {} }, dst, 0));
+        assertEquals(0, SortedLongs.merge(new long[][] { {}, {}, {} }, dst, 0));
+        assertEquals(0, SortedLongs.parallelMerge(new long[][] { {}, {} }, dst, 0));
+    }
+
+    @Test
+    public void mergeSkipsEmptyLists() {
+        long[][] lists = { {}, { 1, 4, 4 }, {}, { 2, 3 }, { 0, 5 } };
+        long[] dst = new long[8];
+        assertEquals(7, SortedLongs.merge(lists, dst, 1));
+        assertArrayEquals(new long[] { 0, 0, 1, 2, 3, 4, 4, 5 }, dst);
+    }
+}
@@ -0,0 +1,88 @@
+package util.concurrent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RingBufferBlockingQueueTest {
+
+    private static RingBufferBlockingQueue<Integer> filled(int capacity, int n) {
+        RingBufferBlockingQueue<Integer> q = new RingBufferBlockingQueue<>(capacity);
+        for (int i = 0; i < n; i++)
+            q.add(i);
+        return q;
+    }
+
+    @Test
+    public void removeTakesOutInteriorElement() {
+        RingBufferBlockingQueue<Integer> q = filled(8, 6);
+        assertTrue(q.remove(2));
+        assertFalse(q.remove(2));
+        assertEquals(5, q.size());
+        assertArrayEquals(new Object[] { 0, 1, 3, 4, 5 }, q.toArray());
+        assertTrue(q.remove(0));
+        assertEquals(Integer.valueOf(1), q.peek());
+        assertEquals(Integer.valueOf(1), q.poll());
+        assertEquals(Integer.valueOf(3), q.poll());
+    }
+
+    @Test
+    public void iteratorRemoveAndBulkRemoval() {
+        RingBufferBlockingQueue<Integer> q = filled(8, 6);
+        Iterator<Integer> it = q.iterator();
+        assertEquals(Integer.valueOf(0), it.next());
+        it.remove();
+        assertTrue(q.removeAll(Arrays.asList(2, 4)));
+        assertTrue(q.retainAll(Arrays.asList(1, 5)));
+        assertArrayEquals(new Object[] { 1, 5 }, q.toArray());
+    }
+
+    @Test
+    public void removedSlotIsFreedWhenConsumersPassIt() {
+        RingBufferBlockingQueue<Integer> q = filled(8, 1);
+        assertTrue(q.remove(0));
+        assertTrue(q.isEmpty());
+        assertEquals(0, q.size());
+        assertEquals(7, q.remainingCapacity());
+        assertNull(q.poll());
+        assertEquals(8, q.remainingCapacity());
+    }
+
+    @Test
+    public void threadPoolExecutorCanRemoveAndPurgeTasks() throws Exception {
+        ThreadPoolExecutor ex = new ThreadPoolExecutor(
+            1, 1, 0L, TimeUnit.SECONDS, new RingBufferBlockingQueue<Runnable>(16));
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            ex.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException ignore) {
+                }
+            });
+            Runnable queued = () -> { };
+            ex.execute(queued);
+            ex.execute(() -> { });
+            assertTrue(ex.remove(queued));
+            assertEquals(1, ex.getQueue().size());
+            Future<?> cancelled = ex.submit(() -> { });
+            cancelled.cancel(false);
+            ex.purge();
+            assertEquals(1, ex.getQueue().size());
+        } finally {
+            release.countDown();
+            ex.shutdown();
+        }
+        assertTrue(ex.awaitTermination(10L, TimeUnit.SECONDS));
+    }
+}
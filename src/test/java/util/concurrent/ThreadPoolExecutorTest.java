@@ -0,0 +1,93 @@
+package util.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ThreadPoolExecutorTest {
+
+    @Test
+    public void batchOfDyingWorkerRunsWhenQueueIsFull() throws Exception {
+        ThreadPoolExecutor ex = new ThreadPoolExecutor(
+            1, 1, 0L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(4));
+        ex.setTaskBatchSize(4);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch ran = new CountDownLatch(7);
+        try {
+            ex.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException ignore) {
+                }
+            });
+            // Taken as the head of a batch; refills the queue, then dies
+            // while the worker still holds the other three tasks
+            ex.execute(() -> {
+                for (int i = 0; i < 4; i++)
+                    ex.execute(ran::countDown);
+                throw new IllegalStateException();
+            });
+            for (int i = 0; i < 3; i++)
+                ex.execute(ran::countDown);
+            release.countDown();
+            assertTrue(ran.await(10L, TimeUnit.SECONDS));
+        } finally {
+            ex.shutdown();
+        }
+        assertTrue(ex.awaitTermination(10L, TimeUnit.SECONDS));
+    }
+
+    static final class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        final int priority;
+        final StringBuffer log;
+
+        PrioritizedTask(int priority, StringBuffer log) {
+            this.priority = priority;
+            this.log = log;
+        }
+
+        public void run() {
+            log.append(priority);
+        }
+
+        public int compareTo(PrioritizedTask other) {
+            return Integer.compare(priority, other.priority);
+        }
+    }
+
+    @Test
+    public void metricsLeaveTasksOfPriorityQueueAsTheyAre() throws Exception {
+        ThreadPoolExecutor ex = new ThreadPoolExecutor(
+            1, 1, 0L, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>());
+        ExecutorMetrics metrics = ex.enableMetrics();
+        CountDownLatch release = new CountDownLatch(1);
+        StringBuffer log = new StringBuffer();
+        try {
+            ex.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException ignore) {
+                }
+            });
+            PrioritizedTask removed = new PrioritizedTask(0, log);
+            ex.execute(new PrioritizedTask(3, log));
+            ex.execute(removed);
+            ex.execute(new PrioritizedTask(1, log));
+            ex.execute(new PrioritizedTask(2, log));
+            assertTrue(ex.getQueue().contains(removed));
+            assertTrue(ex.remove(removed));
+        } finally {
+            release.countDown();
+            ex.shutdown();
+        }
+        assertTrue(ex.awaitTermination(10L, TimeUnit.SECONDS));
+        assertEquals("123", log.toString());
+        assertEquals(0, metrics.getWorkerStealCounts().length);
+    }
+}
@@ -0,0 +1,48 @@
+package util.concurrent.locks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.concurrent.locks.Lock;
+
+import org.junit.Test;
+
+public class ReaderBiasedLockTest {
+
+    /** Revokes the bias for long enough that the next reads are unbiased. */
+    private static void revokeBias(ReaderBiasedLock lock) throws InterruptedException {
+        long stamp = lock.readLock();
+        Thread writer = new Thread(() -> lock.unlockWrite(lock.writeLock()));
+        writer.start();
+        while (lock.isReadBiased())
+            Thread.yield();
+        Thread.sleep(100L);
+        lock.unlockRead(stamp);
+        writer.join();
+    }
+
+    @Test
+    public void readViewReentersPastWaitingWriter() throws Exception {
+        ReaderBiasedLock lock = new ReaderBiasedLock();
+        Lock view = lock.asReadLock();
+        revokeBias(lock);
+        Thread writer = new Thread(() -> lock.unlockWrite(lock.writeLock()));
+        Thread reader = new Thread(() -> {
+            view.lock();
+            writer.start();
+            while (writer.getState() != Thread.State.WAITING)
+                Thread.yield();
+            view.lock();
+            view.unlock();
+            view.unlock();
+        });
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        reader.join(10000L);
+        assertFalse(reader.isAlive());
+        writer.join(10000L);
+        assertFalse(writer.isAlive());
+        assertEquals(0, lock.getReadLockCount());
+    }
+}